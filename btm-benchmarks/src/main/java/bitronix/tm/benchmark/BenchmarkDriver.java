@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.mock.resource.jdbc.MockDriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.mockito.Mockito.doNothing;
+
+/**
+ * {@link MockDriver} which connections can be committed and rolled back more than once, as the Last Resource Commit
+ * emulation does with pooled connections.
+ */
+public class BenchmarkDriver extends MockDriver {
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        Connection connection = super.connect(url, info);
+        doNothing().when(connection).commit();
+        doNothing().when(connection).rollback();
+        return connection;
+    }
+
+}
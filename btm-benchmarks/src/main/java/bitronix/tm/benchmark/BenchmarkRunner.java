@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Run the benchmarks with the JMH command line, writing the results as JSON to <code>jmh-result.json</code> unless
+ * another result format or file is given on the command line. The JSON reports of different releases can be compared
+ * to track regressions.
+ * <p>Usage: <code>java -jar btm-benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]</code></p>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add(0, "json");
+            arguments.add(0, "-rf");
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.add(0, "jmh-result.json");
+            arguments.add(0, "-rff");
+        }
+        Main.main(arguments.toArray(new String[0]));
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.Configuration;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.mock.events.EventRecorder;
+import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import bitronix.tm.resource.jdbc.lrc.LrcXADataSource;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * Setup shared by the benchmarks. Each benchmark runs in its own forked JVM so the static transaction manager
+ * services can be configured from scratch before they are first used.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Configure the transaction manager for a benchmark run.
+     *
+     * @param journal      the journal implementation to use.
+     * @param logDirectory the directory in which the journal files are created.
+     * @return the configuration.
+     */
+    static Configuration configure(String journal, String logDirectory) {
+        // events capture their call stack and are never cleared during a benchmark
+        EventRecorder.setEnabled(false);
+
+        File directory = new File(logDirectory);
+        directory.mkdirs();
+        File logPart1 = new File(directory, "btm1.tlog");
+        File logPart2 = new File(directory, "btm2.tlog");
+        logPart1.delete();
+        logPart2.delete();
+
+        return TransactionManagerServices.getConfiguration()
+                .setServerId("btm-benchmark")
+                .setJournal(journal)
+                .setLogPart1Filename(logPart1.getPath())
+                .setLogPart2Filename(logPart2.getPath())
+                .setBackgroundRecoveryInterval(Duration.ofDays(1))
+                .setWarnAboutZeroResourceTransaction(false)
+                .setDisableJmx(true);
+    }
+
+    /**
+     * Create a pool of the mock XA data source.
+     *
+     * @param uniqueName the resource unique name.
+     * @param poolSize   the amount of connections in the pool.
+     * @return the initialized pool.
+     */
+    static PoolingDataSource createXaDataSource(String uniqueName, int poolSize) {
+        PoolingDataSource pds = new PoolingDataSource();
+        pds.setClassName(MockitoXADataSource.class.getName());
+        pds.setUniqueName(uniqueName);
+        pds.setMinPoolSize(poolSize);
+        pds.setMaxPoolSize(poolSize);
+        pds.init();
+        return pds;
+    }
+
+    /**
+     * Create a pool of Last Resource Commit connections of the benchmark driver.
+     *
+     * @param uniqueName the resource unique name.
+     * @param poolSize   the amount of connections in the pool.
+     * @return the initialized pool.
+     */
+    static PoolingDataSource createLrcDataSource(String uniqueName, int poolSize) {
+        PoolingDataSource pds = new PoolingDataSource();
+        pds.setClassName(LrcXADataSource.class.getName());
+        pds.setUniqueName(uniqueName);
+        pds.setMinPoolSize(poolSize);
+        pds.setMaxPoolSize(poolSize);
+        pds.getDriverProperties().setProperty("driverClassName", BenchmarkDriver.class.getName());
+        pds.init();
+        return pds;
+    }
+
+}
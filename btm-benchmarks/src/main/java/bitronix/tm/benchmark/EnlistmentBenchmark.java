@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.resource.ResourceRegistrar;
+import bitronix.tm.resource.common.XAResourceHolder;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import bitronix.tm.resource.jdbc.PooledConnectionProxy;
+import org.openjdk.jmh.annotations.*;
+
+import javax.transaction.xa.XAResource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the holder of an enlisted resource depending on the amount of registered resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EnlistmentBenchmark {
+
+    @Param({"1", "8", "32", "64"})
+    public int resources;
+
+    private BitronixTransactionManager tm;
+    private final List<PoolingDataSource> dataSources = new ArrayList<>();
+    private PoolingDataSource dataSource;
+    private XAResource xaResource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkSupport.configure("null", "target/journal");
+        for (int i = 0; i < resources; i++) {
+            dataSources.add(BenchmarkSupport.createXaDataSource("xa-ds" + i, 1));
+        }
+        dataSource = dataSources.get(dataSources.size() - 1);
+        try (Connection connection = dataSource.getConnection()) {
+            xaResource = ((PooledConnectionProxy) connection).getPooledConnection().getXAResource();
+        }
+        tm = TransactionManagerServices.getTransactionManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tm.shutdown();
+        for (PoolingDataSource pds : dataSources) {
+            pds.close();
+        }
+    }
+
+    @Benchmark
+    public XAResourceHolder findXAResourceHolder() {
+        return ResourceRegistrar.findXAResourceHolder(xaResource);
+    }
+
+    /**
+     * Enlistment and delistment of a connection in a transaction which is then rolled back.
+     */
+    @Benchmark
+    public void enlistDelist() throws Exception {
+        tm.begin();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.getUpdateCount();
+        }
+        tm.rollback();
+    }
+
+}
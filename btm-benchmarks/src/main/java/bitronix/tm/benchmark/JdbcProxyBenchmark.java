@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import bitronix.tm.resource.jdbc.proxy.JdbcProxyFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of each {@link bitronix.tm.resource.jdbc.proxy.JdbcProxyFactory}: the connection and the statements
+ * handed out by the pool are proxies created by the factory. The factory is selected once per JVM, which JMH forks
+ * for each parameter value.
+ * <p>{@link bitronix.tm.resource.jdbc.proxy.JdbcCglibProxyFactory} is left out by default as cglib defines its proxies
+ * in the class loader of the JDBC interfaces on recent JDKs, where they cannot see the BTM classes. Pass it with
+ * <code>-p proxyFactory=...</code> to measure it where it works.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens", "java.base/java.lang=ALL-UNNAMED"})
+public class JdbcProxyBenchmark {
+
+    @Param({"bitronix.tm.resource.jdbc.proxy.JdbcJavaProxyFactory",
+            "bitronix.tm.resource.jdbc.proxy.JdbcJavassistProxyFactory",
+            "bitronix.tm.resource.jdbc.proxy.JdbcHiddenClassProxyFactory"})
+    public String proxyFactory;
+
+    private BitronixTransactionManager tm;
+    private PoolingDataSource dataSource;
+    private ResultSet resultSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.configure("null", "target/journal").setJdbcProxyFactoryClass(proxyFactory);
+        dataSource = new PoolingDataSource();
+        dataSource.setClassName(MockitoXADataSource.class.getName());
+        dataSource.setUniqueName("xa-ds");
+        dataSource.setMaxPoolSize(1);
+        dataSource.setPreparedStatementCacheSize(16);
+        dataSource.setAllowLocalTransactions(true);
+        dataSource.init();
+        tm = TransactionManagerServices.getTransactionManager();
+
+        // a plain JDK proxy answering a constant keeps the cost of the driver side the same for every factory
+        ResultSet driverResultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> "value");
+        resultSet = JdbcProxyFactory.INSTANCE.getProxyResultSet(null, driverResultSet);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tm.shutdown();
+        dataSource.close();
+    }
+
+    /**
+     * Connection and cached prepared statement outside of any transaction.
+     */
+    @Benchmark
+    public void prepareStatement() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT * FROM TABLE_1 WHERE ID = ?")) {
+            statement.setInt(1, 1);
+        }
+    }
+
+    /**
+     * Connection and cached prepared statement enlisted in a transaction.
+     */
+    @Benchmark
+    public void prepareStatementInTransaction() throws Exception {
+        tm.begin();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT * FROM TABLE_1 WHERE ID = ?")) {
+            statement.setInt(1, 1);
+        }
+        tm.commit();
+    }
+
+    /**
+     * A single call to a result set method which the proxy only has to forward to the driver.
+     */
+    @Benchmark
+    public String resultSetGetString() throws Exception {
+        return resultSet.getString(1);
+    }
+
+}
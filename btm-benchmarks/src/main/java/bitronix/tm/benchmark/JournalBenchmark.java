@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.journal.Journal;
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the journal, on disk and on tmpfs, with an increasing amount of threads logging concurrently.
+ * <p>The nested classes only differ by their amount of threads, which JMH cannot take as a parameter.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class JournalBenchmark {
+
+    private static final Set<String> UNIQUE_NAMES = new TreeSet<>(Set.of("xa-ds1", "xa-ds2"));
+
+    @Param({"disk", "mapped"})
+    public String journal;
+
+    @Param({"target/journal", "/dev/shm/btm-journal"})
+    public String logDirectory;
+
+    private Journal journalImpl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkSupport.configure(journal, logDirectory);
+        journalImpl = TransactionManagerServices.getJournal();
+        journalImpl.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        journalImpl.shutdown();
+    }
+
+    /**
+     * The journal writes of a two phase commit: a forced COMMITTING record, then a COMMITTED record.
+     */
+    @Benchmark
+    public void logAndForce() throws Exception {
+        Uid gtrid = UidGenerator.generateUid();
+        journalImpl.log(Status.STATUS_COMMITTING, gtrid, UNIQUE_NAMES);
+        journalImpl.force();
+        journalImpl.log(Status.STATUS_COMMITTED, gtrid, UNIQUE_NAMES);
+    }
+
+    /**
+     * An unforced record write.
+     */
+    @Benchmark
+    public void log() throws Exception {
+        journalImpl.log(Status.STATUS_COMMITTED, UidGenerator.generateUid(), UNIQUE_NAMES);
+    }
+
+    @Threads(1)
+    public static class Threads1 extends JournalBenchmark {
+    }
+
+    @Threads(8)
+    public static class Threads8 extends JournalBenchmark {
+    }
+
+    @Threads(32)
+    public static class Threads32 extends JournalBenchmark {
+    }
+
+    @Threads(128)
+    public static class Threads128 extends JournalBenchmark {
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.utils.Scheduler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark of {@link Scheduler} alone: latency of the calls a two-phase commit makes on the schedulers a
+ * transaction keeps its resources and synchronizations in, replayed on plain objects. These are enlistment and
+ * registration, beforeCompletion, prepare and commit phases, afterCompletion and clean up. Resources are all enlisted
+ * at the default position, synchronizations use the default position and the one of the synchronization clearing the
+ * thread context, like in most transactions.
+ * <p>No resource nor transaction is involved, see {@link TransactionBenchmark} for complete two-phase commits.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"1", "3", "10"})
+    public int count;
+
+    private final Object clearContextSynchronization = new Object();
+    private Object[] resources;
+    private Object[] synchronizations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        resources = new Object[count];
+        synchronizations = new Object[count];
+        for (int i = 0; i < count; i++) {
+            resources[i] = new Object();
+            synchronizations[i] = new Object();
+        }
+    }
+
+    @Benchmark
+    public void twoPhaseCommitCallPattern(Blackhole blackhole) {
+        Scheduler<Object> synchronizationScheduler = new Scheduler<>();
+        Scheduler<Object> resourceScheduler = new Scheduler<>();
+        synchronizationScheduler.add(clearContextSynchronization, Scheduler.ALWAYS_LAST_POSITION - 1);
+        for (int i = 0; i < count; i++) {
+            resourceScheduler.add(resources[i], Scheduler.DEFAULT_POSITION);
+            synchronizationScheduler.add(synchronizations[i], Scheduler.DEFAULT_POSITION);
+        }
+
+        // beforeCompletion
+        Iterator<Object> it = synchronizationScheduler.reverseIterator();
+        while (it.hasNext()) {
+            blackhole.consume(it.next());
+        }
+
+        // prepare and commit phases
+        for (Integer position : resourceScheduler.getNaturalOrderPositions()) {
+            for (Object resource : resourceScheduler.getByNaturalOrderForPosition(position)) {
+                blackhole.consume(resource);
+            }
+        }
+        for (Integer position : resourceScheduler.getReverseOrderPositions()) {
+            for (Object resource : resourceScheduler.getByReverseOrderForPosition(position)) {
+                blackhole.consume(resource);
+            }
+        }
+
+        // afterCompletion, after the resources states got cleared
+        for (Object resource : resourceScheduler) {
+            blackhole.consume(resource);
+        }
+        resourceScheduler.clear();
+        for (Object synchronization : synchronizationScheduler) {
+            blackhole.consume(synchronization);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.resource.jdbc.LruStatementCache;
+import bitronix.tm.resource.jdbc.LruStatementCache.CacheKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Latency of a statement cache lookup followed by the return of the statement to the cache, as done by a pooled
+ * connection when a statement is prepared then closed. The amount of distinct statements cycled through controls the
+ * hit ratio.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    @Param({"50"})
+    public int cacheSize;
+
+    @Param({"16", "256"})
+    public int distinctStatements;
+
+    private LruStatementCache cache;
+    private CacheKey[] keys;
+    private PreparedStatement[] statements;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.configure("null", "target/journal");
+        cache = new LruStatementCache(cacheSize);
+        keys = new CacheKey[distinctStatements];
+        statements = new PreparedStatement[distinctStatements];
+        for (int i = 0; i < distinctStatements; i++) {
+            keys[i] = new CacheKey("SELECT * FROM TABLE_" + i + " WHERE ID = ?");
+            statements[i] = mock(PreparedStatement.class, withSettings().stubOnly());
+        }
+    }
+
+    @Benchmark
+    public PreparedStatement getAndPut() {
+        int index = next;
+        next = (index + 1) % distinctStatements;
+
+        PreparedStatement statement = cache.get(keys[index]);
+        if (statement == null) {
+            statement = statements[index];
+        }
+        return cache.put(keys[index], statement);
+    }
+
+}
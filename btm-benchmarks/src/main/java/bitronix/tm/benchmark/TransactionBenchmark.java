@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of complete transactions: begin, enlistment of the resources and commit.
+ * <p>The disk journal is created in <code>logDirectory</code>, pass <code>-p logDirectory=/dev/shm/btm</code> to run
+ * it on tmpfs.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransactionBenchmark {
+
+    @Param({"null", "disk"})
+    public String journal;
+
+    @Param({"target/journal"})
+    public String logDirectory;
+
+    private BitronixTransactionManager tm;
+    private PoolingDataSource xaDataSource1;
+    private PoolingDataSource xaDataSource2;
+    private PoolingDataSource lrcDataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.configure(journal, logDirectory);
+        xaDataSource1 = BenchmarkSupport.createXaDataSource("xa-ds1", 32);
+        xaDataSource2 = BenchmarkSupport.createXaDataSource("xa-ds2", 32);
+        lrcDataSource = BenchmarkSupport.createLrcDataSource("lrc-ds", 32);
+        tm = TransactionManagerServices.getTransactionManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tm.shutdown();
+        xaDataSource1.close();
+        xaDataSource2.close();
+        lrcDataSource.close();
+    }
+
+    /**
+     * A single XA resource, committed with one phase commit.
+     */
+    @Benchmark
+    public void onePhaseCommit() throws Exception {
+        tm.begin();
+        useConnection(xaDataSource1);
+        tm.commit();
+    }
+
+    /**
+     * Two XA resources, committed with two phase commit.
+     */
+    @Benchmark
+    public void twoPhaseCommit() throws Exception {
+        tm.begin();
+        useConnection(xaDataSource1);
+        useConnection(xaDataSource2);
+        tm.commit();
+    }
+
+    /**
+     * An XA resource and a Last Resource Commit one.
+     */
+    @Benchmark
+    public void lastResourceCommit() throws Exception {
+        tm.begin();
+        useConnection(xaDataSource1);
+        useConnection(lrcDataSource);
+        tm.commit();
+    }
+
+    @Benchmark
+    public void rollback() throws Exception {
+        tm.begin();
+        useConnection(xaDataSource1);
+        useConnection(xaDataSource2);
+        tm.rollback();
+    }
+
+    private static void useConnection(PoolingDataSource dataSource) throws SQLException {
+        // creating a statement enlists the resource
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.getUpdateCount();
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.benchmark;
+
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of acquiring and releasing a pooled connection outside of any transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class XAPoolBenchmark {
+
+    @Param({"8"})
+    public int poolSize;
+
+    private PoolingDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.configure("null", "target/journal");
+        dataSource = BenchmarkSupport.createXaDataSource("xa-ds", poolSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void acquireRelease() throws Exception {
+        Connection connection = dataSource.getConnection();
+        connection.close();
+    }
+
+    /**
+     * As many threads as connections in the pool.
+     */
+    @Benchmark
+    @Threads(8)
+    public void acquireReleaseContended() throws Exception {
+        Connection connection = dataSource.getConnection();
+        connection.close();
+    }
+
+}
@@ -16,13 +16,18 @@
 package bitronix.tm.integration.jetty9;
 
 import bitronix.tm.TransactionManagerServices;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 
 import java.util.logging.Logger;
 
+@ManagedObject("Bitronix Transaction Manager lifecycle")
 public class BTMLifeCycle extends AbstractLifeCycle {
     private static final Logger log = Logger.getLogger(BTMLifeCycle.class.getName());
 
+    private volatile int inFlightTransactionsToDrain;
+
     @Override
     protected void doStart() throws Exception {
         log.info("Starting Bitronix Transaction Manager");
@@ -32,7 +37,23 @@ public class BTMLifeCycle extends AbstractLifeCycle {
     @Override
     protected void doStop() throws Exception {
         log.info("Shutting down Bitronix Transaction Manager");
-        TransactionManagerServices.getTransactionManager().shutdown();
+        TransactionManagerServices.getTransactionManager().shutdown(left -> {
+            inFlightTransactionsToDrain = left;
+            if (left > 0) {
+                log.info("Waiting for " + left + " in-flight transaction(s) to complete");
+            }
+        });
+        inFlightTransactionsToDrain = 0;
+    }
+
+    /**
+     * Get the amount of in-flight transactions the transaction manager is still waiting for while it shuts down.
+     *
+     * @return the amount of in-flight transactions left, 0 when not stopping.
+     */
+    @ManagedAttribute("in-flight transactions left to complete while stopping")
+    public int getInFlightTransactionsToDrain() {
+        return inFlightTransactionsToDrain;
     }
 
 }
@@ -1,14 +1,115 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package bitronix.tm.integration.spring.boot;
 
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.resource.common.XAResourceProducer;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import bitronix.tm.resource.jms.PoolingConnectionFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Bitronix Spring Boot Starter Configuration
+ * Bitronix Spring Boot Starter Configuration.
+ * <p>The transaction manager {@link bitronix.tm.Configuration} is bound to the <code>bitronix.tm</code> properties
+ * using its property names, for instance <code>bitronix.tm.server-id</code> or
+ * <code>bitronix.tm.default-transaction-timeout</code>. A {@link PoolingDataSource} is created when
+ * <code>bitronix.datasource.class-name</code> is set and a {@link PoolingConnectionFactory} when
+ * <code>bitronix.connection-factory.class-name</code> is set, both bound to the properties under their prefix.
+ * A Spring {@link org.springframework.transaction.PlatformTransactionManager} backed by BTM is registered unless the
+ * application defines its own, and BTM metrics are published when Micrometer is available.</p>
  *
  * @author laingke
  */
-@Configuration
+@AutoConfiguration(beforeName = {
+        "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+        "org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration",
+        "org.springframework.boot.autoconfigure.transaction.jta.JtaAutoConfiguration"
+})
+@ConditionalOnClass(BitronixTransactionManager.class)
 @EnableConfigurationProperties
 public class BitronixConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConfigurationProperties("bitronix.tm")
+    public bitronix.tm.Configuration btmConfiguration() {
+        return TransactionManagerServices.getConfiguration();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean
+    public BitronixTransactionManager bitronixTransactionManager(bitronix.tm.Configuration btmConfiguration) {
+        return TransactionManagerServices.getTransactionManager();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(org.springframework.transaction.PlatformTransactionManager.class)
+    public bitronix.tm.integration.spring.PlatformTransactionManager transactionManager(BitronixTransactionManager bitronixTransactionManager) {
+        return new bitronix.tm.integration.spring.PlatformTransactionManager();
+    }
+
+    // the pools depend on the transaction manager so that they are closed before it shuts down
+    @Bean(initMethod = "init", destroyMethod = "close")
+    @ConditionalOnMissingBean(DataSource.class)
+    @ConditionalOnProperty(prefix = "bitronix.datasource", name = "class-name")
+    @ConfigurationProperties("bitronix.datasource")
+    public PoolingDataSource dataSource(BitronixTransactionManager bitronixTransactionManager) {
+        return new PoolingDataSource();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "jakarta.jms.ConnectionFactory")
+    static class JmsConfiguration {
+
+        @Bean(initMethod = "init", destroyMethod = "close")
+        @ConditionalOnMissingBean(type = "jakarta.jms.ConnectionFactory")
+        @ConditionalOnProperty(prefix = "bitronix.connection-factory", name = "class-name")
+        @ConfigurationProperties("bitronix.connection-factory")
+        public PoolingConnectionFactory connectionFactory(BitronixTransactionManager bitronixTransactionManager) {
+            return new PoolingConnectionFactory();
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterBinder.class)
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public BitronixMetrics bitronixMetrics(BitronixTransactionManager bitronixTransactionManager,
+                                               ObjectProvider<PoolingDataSource> dataSources,
+                                               ObjectProvider<PoolingConnectionFactory> connectionFactories) {
+            List<XAResourceProducer<?, ?>> pools = new ArrayList<>();
+            dataSources.orderedStream().forEach(pools::add);
+            connectionFactories.orderedStream().forEach(pools::add);
+            return new BitronixMetrics(bitronixTransactionManager, pools);
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.integration.spring.boot;
+
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.journal.DiskJournalMBean;
+import bitronix.tm.journal.Journal;
+import bitronix.tm.recovery.Recoverer;
+import bitronix.tm.resource.common.XAResourceProducer;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import bitronix.tm.resource.jms.PoolingConnectionFactory;
+import bitronix.tm.twopc.PhaseStatistics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Micrometer {@link MeterBinder} publishing the statistics BTM otherwise exposes over JMX: pool sizes and connection
+ * acquisition times, journal write and force latencies, two-phase commit phase durations and recovery counts.
+ * <p>Timers are {@link FunctionTimer}s reading the cumulative counters BTM maintains, so publishing them does not add
+ * any work to the transactions themselves.</p>
+ *
+ * @author laingke
+ */
+public class BitronixMetrics implements MeterBinder {
+
+    private final BitronixTransactionManager transactionManager;
+    private final Collection<? extends XAResourceProducer<?, ?>> pools;
+
+    /**
+     * @param transactionManager the transaction manager.
+     * @param pools              the pools to publish metrics for, in addition to the ones created by the
+     *                           {@link bitronix.tm.resource.ResourceLoader}.
+     */
+    public BitronixMetrics(BitronixTransactionManager transactionManager, Collection<? extends XAResourceProducer<?, ?>> pools) {
+        this.transactionManager = transactionManager;
+        this.pools = pools;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("btm.transactions.in-flight", transactionManager, BitronixTransactionManager::getInFlightTransactionCount)
+                .description("Amount of in-flight transactions")
+                .register(registry);
+
+        bindPhase(registry, PhaseStatistics.PREPARE);
+        bindPhase(registry, PhaseStatistics.COMMIT);
+        bindPhase(registry, PhaseStatistics.ROLLBACK);
+
+        Journal journal = TransactionManagerServices.getJournal();
+        if (journal instanceof DiskJournalMBean diskJournal) {
+            FunctionTimer.builder("btm.journal.write", diskJournal,
+                            DiskJournalMBean::getWriteCount, DiskJournalMBean::getTotalWriteLatencyMicros, TimeUnit.MICROSECONDS)
+                    .description("Transaction log records writes")
+                    .register(registry);
+            FunctionTimer.builder("btm.journal.force", diskJournal,
+                            DiskJournalMBean::getForceCount, DiskJournalMBean::getTotalForceLatencyMicros, TimeUnit.MICROSECONDS)
+                    .description("Transaction log disk forces")
+                    .register(registry);
+        }
+
+        Recoverer recoverer = TransactionManagerServices.getRecoverer();
+        FunctionCounter.builder("btm.recovery.executions", recoverer, Recoverer::getExecutionsCount)
+                .description("Amount of recovery runs")
+                .register(registry);
+        Gauge.builder("btm.recovery.transactions", recoverer, Recoverer::getCommittedCount)
+                .tag("outcome", "committed")
+                .description("Amount of transactions recovered by the last recovery run")
+                .register(registry);
+        Gauge.builder("btm.recovery.transactions", recoverer, Recoverer::getRolledbackCount)
+                .tag("outcome", "rolledback")
+                .description("Amount of transactions recovered by the last recovery run")
+                .register(registry);
+
+        Map<XAResourceProducer<?, ?>, Boolean> allPools = new IdentityHashMap<>();
+        for (XAResourceProducer<?, ?> pool : pools) {
+            allPools.put(pool, Boolean.TRUE);
+        }
+        for (XAResourceProducer<?, ?> pool : TransactionManagerServices.getResourceLoader().getResources().values()) {
+            allPools.put(pool, Boolean.TRUE);
+        }
+        for (XAResourceProducer<?, ?> pool : allPools.keySet()) {
+            if (pool instanceof PoolingDataSource dataSource) {
+                bindPool(registry, dataSource.getUniqueName(), dataSource, PoolingDataSource::getTotalPoolSize,
+                        PoolingDataSource::getInPoolSize, PoolingDataSource::getAcquisitionCount, PoolingDataSource::getTotalAcquisitionTimeMicros);
+            } else if (pool instanceof PoolingConnectionFactory connectionFactory) {
+                bindPool(registry, connectionFactory.getUniqueName(), connectionFactory, PoolingConnectionFactory::getTotalPoolSize,
+                        PoolingConnectionFactory::getInPoolSize, PoolingConnectionFactory::getAcquisitionCount, PoolingConnectionFactory::getTotalAcquisitionTimeMicros);
+            }
+        }
+    }
+
+    private static void bindPhase(MeterRegistry registry, PhaseStatistics phase) {
+        FunctionTimer.builder("btm.twopc.phase", phase, PhaseStatistics::getCount, PhaseStatistics::getTotalTimeMicros, TimeUnit.MICROSECONDS)
+                .tag("phase", phase.getName())
+                .description("Two-phase commit phases executions")
+                .register(registry);
+    }
+
+    private static <T> void bindPool(MeterRegistry registry, String uniqueName, T pool, ToDoubleFunction<T> totalSize,
+                                     ToDoubleFunction<T> inPoolSize, ToLongFunction<T> acquisitionCount,
+                                     ToDoubleFunction<T> totalAcquisitionTimeMicros) {
+        Tags tags = Tags.of("pool", uniqueName);
+        Gauge.builder("btm.pool.connections", pool, totalSize)
+                .tags(tags).tag("state", "total")
+                .description("Amount of connections of the pool")
+                .register(registry);
+        Gauge.builder("btm.pool.connections", pool, inPoolSize)
+                .tags(tags).tag("state", "idle")
+                .description("Amount of connections of the pool")
+                .register(registry);
+        FunctionTimer.builder("btm.pool.acquisition", pool, acquisitionCount, totalAcquisitionTimeMicros, TimeUnit.MICROSECONDS)
+                .tags(tags)
+                .description("Connection acquisitions from the pool, waiting included")
+                .register(registry);
+    }
+}
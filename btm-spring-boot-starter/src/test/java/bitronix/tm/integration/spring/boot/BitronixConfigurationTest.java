@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.integration.spring.boot;
+
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.sql.Connection;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author laingke
+ */
+public class BitronixConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(BitronixConfiguration.class))
+            .withPropertyValues("bitronix.tm.server-id=btm-spring-boot-test", "bitronix.tm.journal=null");
+
+    @Test
+    public void testTransactionManagerIsConfigured() {
+        contextRunner.withPropertyValues("bitronix.tm.default-transaction-timeout=PT42S").run(context -> {
+            bitronix.tm.Configuration configuration = context.getBean(bitronix.tm.Configuration.class);
+            assertEquals("btm-spring-boot-test", configuration.getServerId());
+            assertEquals(Duration.ofSeconds(42L), configuration.getDefaultTransactionTimeout());
+            assertNotNull(context.getBean(BitronixTransactionManager.class));
+            assertTrue(context.getBean(PlatformTransactionManager.class) instanceof bitronix.tm.integration.spring.PlatformTransactionManager);
+            assertFalse(context.containsBean("dataSource"));
+        });
+    }
+
+    @Test
+    public void testPoolingDataSourceAndMetrics() {
+        contextRunner.withPropertyValues(
+                "bitronix.datasource.class-name=" + MockitoXADataSource.class.getName(),
+                "bitronix.datasource.unique-name=spring-boot-pds",
+                "bitronix.datasource.min-pool-size=1",
+                "bitronix.datasource.max-pool-size=3"
+        ).run(context -> {
+            PoolingDataSource dataSource = context.getBean(PoolingDataSource.class);
+            assertEquals("spring-boot-pds", dataSource.getUniqueName());
+            assertEquals(3, dataSource.getMaxPoolSize());
+            assertEquals(1, dataSource.getTotalPoolSize());
+
+            long acquisitions = dataSource.getAcquisitionCount();
+            PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+            TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+            try (Connection connection = dataSource.getConnection()) {
+                connection.createStatement();
+            }
+            transactionManager.commit(status);
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            context.getBean(BitronixMetrics.class).bindTo(registry);
+            assertEquals(1.0, registry.get("btm.pool.connections").tag("pool", "spring-boot-pds").tag("state", "total").gauge().value());
+            FunctionTimer acquisition = registry.get("btm.pool.acquisition").tag("pool", "spring-boot-pds").functionTimer();
+            assertEquals(acquisitions + 1, (long) acquisition.count());
+            assertTrue(registry.get("btm.twopc.phase").tag("phase", "commit").functionTimer().count() >= 1.0);
+            assertEquals(0.0, registry.get("btm.transactions.in-flight").gauge().value());
+        });
+    }
+
+}
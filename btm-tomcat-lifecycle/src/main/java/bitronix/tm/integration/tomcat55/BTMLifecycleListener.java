@@ -26,6 +26,8 @@ public class BTMLifecycleListener implements LifecycleListener {
 
     private static final Logger log = Logger.getLogger(BTMLifecycleListener.class.getName());
 
+    private volatile int inFlightTransactionsToDrain;
+
     @Override
     public void lifecycleEvent(LifecycleEvent event) {
         if (Lifecycle.BEFORE_START_EVENT.equals(event.getType())) {
@@ -34,8 +36,23 @@ public class BTMLifecycleListener implements LifecycleListener {
         }
         else if (Lifecycle.AFTER_STOP_EVENT.equals(event.getType())) {
             log.info("Shutting down Bitronix Transaction Manager");
-            TransactionManagerServices.getTransactionManager().shutdown();
+            TransactionManagerServices.getTransactionManager().shutdown(left -> {
+                inFlightTransactionsToDrain = left;
+                if (left > 0) {
+                    log.info("Waiting for " + left + " in-flight transaction(s) to complete");
+                }
+            });
+            inFlightTransactionsToDrain = 0;
         }
     }
 
+    /**
+     * Get the amount of in-flight transactions the transaction manager is still waiting for while it shuts down.
+     *
+     * @return the amount of in-flight transactions left, 0 when not shutting down.
+     */
+    public int getInFlightTransactionsToDrain() {
+        return inFlightTransactionsToDrain;
+    }
+
 }
\ No newline at end of file
@@ -18,9 +18,12 @@ package bitronix.tm;
 import bitronix.tm.internal.*;
 import bitronix.tm.journal.Journal;
 import bitronix.tm.resource.ResourceRegistrar;
+import bitronix.tm.resource.common.DeferredReleaseSynchronization;
 import bitronix.tm.resource.common.XAResourceHolder;
 import bitronix.tm.resource.common.XAResourceHolderStateVisitor;
+import bitronix.tm.resource.common.XAStatefulHolder;
 import bitronix.tm.timer.TaskScheduler;
+import bitronix.tm.timer.TransactionTimeoutTask;
 import bitronix.tm.twopc.Committer;
 import bitronix.tm.twopc.PhaseException;
 import bitronix.tm.twopc.Preparer;
@@ -51,10 +54,15 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
     private final XAResourceManager resourceManager;
     private final Scheduler<Synchronization> synchronizationScheduler = new Scheduler<>();
     private final List<TransactionStatusChangeListener> transactionStatusListeners = new ArrayList<>();
+    // created on first use, guarded by this
+    private Map<XAStatefulHolder<?>, DeferredReleaseSynchronization> deferredReleases;
 
     private volatile int status = Status.STATUS_NO_TRANSACTION;
     private volatile boolean timeout = false;
     private volatile LocalDateTime timeoutDate;
+    private volatile TransactionTimeoutTask timeoutTask;
+    private volatile boolean leavesPreparedResources;
+    private volatile boolean committingLogged;
 
     private final Executor executor = TransactionManagerServices.getExecutor();
     private final TaskScheduler taskScheduler = TransactionManagerServices.getTaskScheduler();
@@ -223,6 +231,42 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
         return synchronizationScheduler;
     }
 
+    /**
+     * Register a {@link DeferredReleaseSynchronization} releasing a pooled resource after this transaction completes,
+     * unless one already is registered for it.
+     *
+     * @param xaStatefulHolder the pooled resource.
+     * @return true if a synchronization has been registered, false if one already was.
+     */
+    public synchronized boolean registerDeferredRelease(XAStatefulHolder<?> xaStatefulHolder) {
+        if (deferredReleases == null) {
+            deferredReleases = new IdentityHashMap<>();
+        } else if (deferredReleases.containsKey(xaStatefulHolder)) {
+            return false;
+        }
+
+        DeferredReleaseSynchronization synchronization = new DeferredReleaseSynchronization(xaStatefulHolder);
+        deferredReleases.put(xaStatefulHolder, synchronization);
+        synchronizationScheduler.add(synchronization, Scheduler.ALWAYS_LAST_POSITION);
+        return true;
+    }
+
+    /**
+     * Unregister the {@link DeferredReleaseSynchronization} of a pooled resource recycled in this transaction.
+     *
+     * @param xaStatefulHolder the pooled resource.
+     * @return true if a synchronization has been unregistered, false if none was registered.
+     */
+    public synchronized boolean unregisterDeferredRelease(XAStatefulHolder<?> xaStatefulHolder) {
+        DeferredReleaseSynchronization synchronization = deferredReleases == null ? null : deferredReleases.remove(xaStatefulHolder);
+        if (synchronization == null) {
+            return false;
+        }
+
+        synchronizationScheduler.remove(synchronization);
+        return true;
+    }
+
     @Override
     public void commit() throws RollbackException, HeuristicMixedException, HeuristicRollbackException, SecurityException, SystemException {
         if (status == Status.STATUS_NO_TRANSACTION) {
@@ -232,7 +276,7 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
             throw new IllegalStateException("transaction is done, cannot commit it");
         }
 
-        taskScheduler.cancelTransactionTimeout(this);
+        cancelTimeout();
 
         // beforeCompletion must be called before the check to STATUS_MARKED_ROLLBACK as the synchronization
         // can still set the status to STATUS_MARKED_ROLLBACK.
@@ -286,6 +330,7 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
                 }
 
                 interestedResources = preparer.prepare(this);
+                leavesPreparedResources = resourceManager.size() > 1 && !interestedResources.isEmpty();
             } catch (RollbackException ex) {
                 if (log.isDebugEnabled()) {
                     log.debug("caught rollback exception during prepare, trying to rollback");
@@ -325,7 +370,7 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
             throw new IllegalStateException("transaction is done, cannot roll it back");
         }
 
-        taskScheduler.cancelTransactionTimeout(this);
+        cancelTimeout();
 
         try {
             delistUnclosedResources(XAResource.TMSUCCESS);
@@ -403,7 +448,14 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
             this.activationStackTrace = new StackTrace();
         }
 
-        taskScheduler.scheduleTransactionTimeout(this, timeoutDate);
+        this.timeoutTask = taskScheduler.scheduleTransactionTimeout(this, timeoutDate);
+    }
+
+    private void cancelTimeout() {
+        TransactionTimeoutTask task = timeoutTask;
+        if (task != null) {
+            taskScheduler.cancelTransactionTimeout(task);
+        }
     }
 
 
@@ -420,14 +472,14 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
 
             int oldStatus = this.status;
             this.status = status;
-            Journal journal = TransactionManagerServices.getJournal();
-            journal.log(status, resourceManager.getGtrid(), uniqueNames);
-            if (force) {
-                journal.force();
-            }
-
-            if (status == Status.STATUS_ACTIVE) {
-                ManagementRegistrar.register("bitronix.tm:type=Transaction,Gtrid=" + resourceManager.getGtrid(), this);
+            if (mustLog(status)) {
+                Journal journal = TransactionManagerServices.getJournal();
+                journal.log(status, resourceManager.getGtrid(), uniqueNames);
+                if (force) {
+                    journal.force();
+                }
+            } else if (log.isDebugEnabled()) {
+                log.debug("recovery does not need status " + Decoder.decodeStatus(status) + " to be logged");
             }
 
             fireTransactionStatusChangedEvent(oldStatus, status);
@@ -437,6 +489,34 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
         }
     }
 
+    /**
+     * Check if a status change must be logged. Every status is logged unless
+     * {@link bitronix.tm.Configuration#isRecoveryLogsOnly()} is enabled, in which case only the statuses recovery relies
+     * on are: COMMITTING when phase 2 is about to commit resources left prepared by phase 1, which are the only ones
+     * recovery may have to commit, then the status the transaction ends with, which tells recovery which of these
+     * resources do not need it anymore. Zero resource, one-phase and read-only transactions leave no prepared resource
+     * behind so they are never logged, recovery presumes any other prepared resource has to be rolled back.
+     *
+     * @param status the new status.
+     * @return true if the status must be logged.
+     */
+    private boolean mustLog(int status) {
+        if (!TransactionManagerServices.getConfiguration().isRecoveryLogsOnly()) {
+            return true;
+        }
+        switch (status) {
+            case Status.STATUS_COMMITTING:
+                committingLogged = leavesPreparedResources;
+                return committingLogged;
+            case Status.STATUS_COMMITTED:
+            case Status.STATUS_UNKNOWN:
+            case Status.STATUS_ROLLEDBACK:
+                return committingLogged;
+            default:
+                return false;
+        }
+    }
+
     private void fireTransactionStatusChangedEvent(int oldStatus, int newStatus) {
         if (log.isDebugEnabled()) {
             log.debug("transaction status is changing from " + Decoder.decodeStatus(oldStatus) + " to " +
@@ -614,8 +694,6 @@ public class BitronixTransaction implements Transaction, BitronixTransactionMBea
                 log.warn("Synchronization.afterCompletion() call failed for " + synchronization, ex);
             }
         }
-
-        ManagementRegistrar.unregister("bitronix.tm:type=Transaction,Gtrid=" + resourceManager.getGtrid());
     }
 
     static String buildZeroTransactionDebugMessage(StackTrace activationStackTrace, StackTrace commitStackTrace) {
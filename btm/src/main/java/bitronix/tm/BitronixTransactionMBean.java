@@ -20,6 +20,7 @@ import java.util.Collection;
 
 /**
  * {@link BitronixTransaction} Management interface.
+ * <p>Transactions are not registered individually, they are exposed all together by {@link InFlightTransactions}.</p>
  *
  * @author Ludovic Orban
  */
@@ -30,13 +30,12 @@ import javax.naming.Referenceable;
 import javax.naming.StringRefAddr;
 import javax.transaction.xa.XAException;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 
 /**
  * Implementation of {@link TransactionManager} and {@link UserTransaction}.
@@ -48,7 +47,10 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
     private static final Logger log = LoggerFactory.getLogger(BitronixTransactionManager.class);
     private static final String MDC_GTRID_KEY = "btm-gtrid";
 
-    private final SortedMap<BitronixTransaction, ClearContextSynchronization> inFlightTransactions;
+    private final InFlightTransactionRegistry<ClearContextSynchronization> inFlightTransactions;
+    private final String inFlightTransactionsJmxName;
+    // ManagementRegistrar only weakly references the MBeans it registers asynchronously
+    private final InFlightTransactions inFlightTransactionsMBean;
 
     private volatile boolean shuttingDown;
 
@@ -75,7 +77,11 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
                 throw new InitializationException("invalid configuration value for backgroundRecoveryInterval, found '" + backgroundRecoveryInterval + "' but it must be greater than 0");
             }
 
-            inFlightTransactions = createInFlightTransactionsMap();
+            inFlightTransactions = new InFlightTransactionRegistry<>();
+            String serverId = configuration.getServerId() == null ? "" : configuration.getServerId();
+            inFlightTransactionsJmxName = "bitronix.tm:type=InFlightTransactions,ServerId=" + ManagementRegistrar.makeValidName(serverId);
+            inFlightTransactionsMBean = new InFlightTransactions(inFlightTransactions.transactions());
+            ManagementRegistrar.register(inFlightTransactionsJmxName, inFlightTransactionsMBean);
 
             if (log.isDebugEnabled()) {
                 log.debug("recovery will run in the background every {} second(s)", backgroundRecoveryInterval);
@@ -92,43 +98,6 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
         }
     }
 
-    private SortedMap<BitronixTransaction, ClearContextSynchronization> createInFlightTransactionsMap()
-            throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        final boolean debug = log.isDebugEnabled();
-        if (debug) {
-            log.debug("Creating sorted memory storage for inflight transactions.");
-        }
-
-        final Comparator<BitronixTransaction> timestampSortComparator = (t1, t2) -> {
-            Long timestamp1 = t1.getResourceManager().getGtrid().extractTimestamp();
-            Long timestamp2 = t2.getResourceManager().getGtrid().extractTimestamp();
-
-            int compareTo = timestamp1.compareTo(timestamp2);
-            if (compareTo == 0 && !t1.getResourceManager().getGtrid().equals(t2.getResourceManager().getGtrid())) {
-                // if timestamps are equal, use the Uid as the tie-breaker.  the !equals() check above avoids an expensive string compare() here.
-                return t1.getGtrid().compareTo(t2.getGtrid());
-            }
-            return compareTo;
-        };
-
-        if (debug) {
-            log.debug("Attempting to use a concurrent sorted map of type 'ConcurrentSkipListMap' (from jre6 or custom supplied backport)");
-        }
-        try {
-            @SuppressWarnings("unchecked")
-            SortedMap<BitronixTransaction, ClearContextSynchronization> mapInstance = (SortedMap<BitronixTransaction, ClearContextSynchronization>)
-                    ClassLoaderUtils.loadClass("java.util.concurrent.ConcurrentSkipListMap").
-                            getConstructor(Comparator.class).newInstance(timestampSortComparator);
-            return mapInstance;
-        } catch (ClassNotFoundException e) {
-            if (debug) {
-                log.debug("Concurrent sorted map 'ConcurrentSkipListMap' is not available. Falling back to a synchronized TreeMap.");
-            }
-            return Collections.synchronizedSortedMap(
-                    new TreeMap<BitronixTransaction, ClearContextSynchronization>(timestampSortComparator));
-        }
-    }
-
     /**
      * Start a new transaction and bind the context to the calling thread.
      *
@@ -306,6 +275,7 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
 
     /**
      * Return a count of the current in-flight transactions.  Currently this method is only called by unit tests.
+     * This is a constant time operation.
      *
      * @return a count of in-flight transactions
      */
@@ -319,21 +289,11 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
      * @return the timestamp or Long.MIN_VALUE if there is no in-flight transaction.
      */
     public long getOldestInFlightTransactionTimestamp() {
-        try {
-            // The inFlightTransactions map is sorted by timestamp, so the first transaction is always the oldest
-            BitronixTransaction oldestTransaction = inFlightTransactions.firstKey();
-            long oldestTimestamp = oldestTransaction.getResourceManager().getGtrid().extractTimestamp();
-            if (log.isDebugEnabled()) {
-                log.debug("oldest in-flight transaction's timestamp: {}", oldestTimestamp);
-            }
-            return oldestTimestamp;
-
-        } catch (NoSuchElementException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("oldest in-flight transaction's timestamp: " + Long.MIN_VALUE);
-            }
-            return Long.MIN_VALUE;
+        long oldestTimestamp = inFlightTransactions.getOldestTimestamp();
+        if (log.isDebugEnabled()) {
+            log.debug("oldest in-flight transaction's timestamp: {}", oldestTimestamp);
         }
+        return oldestTimestamp;
     }
 
     /**
@@ -362,12 +322,9 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
             return;
         }
 
-        // We're using an iterator, so we must synchronize on the collection
-        synchronized (inFlightTransactions) {
-            log.debug("dumping {} transaction context(s)", inFlightTransactions.size());
-            for (BitronixTransaction tx : inFlightTransactions.keySet()) {
-                log.debug(tx.toString());
-            }
+        log.debug("dumping {} transaction context(s)", inFlightTransactions.size());
+        for (BitronixTransaction tx : inFlightTransactions.transactions()) {
+            log.debug(tx.toString());
         }
     }
 
@@ -383,7 +340,19 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
      * @see Configuration#getGracefulShutdownInterval()
      */
     @Override
-    public synchronized void shutdown() {
+    public void shutdown() {
+        shutdown(null);
+    }
+
+    /**
+     * Shut down the transaction manager like {@link #shutdown()} does, reporting the progress of the wait for the
+     * in-flight transactions to complete.
+     *
+     * @param drainListener notified with the amount of in-flight transactions left when the wait starts and each time
+     *                      it changes, from the thread calling this method. Can be null.
+     * @see #shutdown()
+     */
+    public synchronized void shutdown(IntConsumer drainListener) {
         if (isShuttingDown()) {
             if (log.isDebugEnabled()) {
                 log.debug("Transaction Manager has already shut down");
@@ -392,7 +361,8 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
         }
 
         log.info("shutting down Bitronix Transaction Manager");
-        internalShutdown();
+        internalShutdown(drainListener);
+        ManagementRegistrar.unregister(inFlightTransactionsJmxName);
 
         if (log.isDebugEnabled()) {
             log.debug("shutting down resource loader");
@@ -432,29 +402,25 @@ public class BitronixTransactionManager implements TransactionManager, UserTrans
         }
     }
 
-    private void internalShutdown() {
+    private void internalShutdown(IntConsumer drainListener) {
         shuttingDown = true;
         dumpTransactionContexts();
 
         Duration gracefulShutdownInterval = TransactionManagerServices.getConfiguration().getGracefulShutdownInterval();
-        int txCount = 0;
+        int txCount;
         try {
-            txCount = inFlightTransactions.size();
-            while (!gracefulShutdownInterval.isZero() && txCount > 0) {
-                if (log.isDebugEnabled()) {
-                    log.debug("still {} in-flight transactions, waiting... ({} left)",
-                            txCount, gracefulShutdownInterval);
+            txCount = inFlightTransactions.awaitEmpty(gracefulShutdownInterval, left -> {
+                if (left > 0 && log.isDebugEnabled()) {
+                    log.debug("still {} in-flight transactions, waiting at most {}", left, gracefulShutdownInterval);
                 }
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ex) {
-                    // ignore
+                if (drainListener != null) {
+                    drainListener.accept(left);
                 }
-                gracefulShutdownInterval = gracefulShutdownInterval.minusSeconds(1L);
-                txCount = inFlightTransactions.size();
-            }
-        } catch (Exception ex) {
-            log.error("cannot get a list of in-flight transactions", ex);
+            });
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            txCount = inFlightTransactions.size();
+            log.warn("interrupted while waiting for {} in-flight transaction(s) to complete", txCount);
         }
 
         if (txCount > 0) {
@@ -46,7 +46,7 @@ public class BitronixXid implements Xid {
     private final Uid globalTransactionId;
     private final Uid branchQualifier;
     private final int hashCodeValue;
-    private final String toStringValue;
+    private String toStringValue;
 
     /**
      * Create a new XID using the specified GTRID and BQUAL.
@@ -57,14 +57,12 @@ public class BitronixXid implements Xid {
     public BitronixXid(Uid globalTransactionId, Uid branchQualifier) {
         this.globalTransactionId = globalTransactionId;
         this.branchQualifier = branchQualifier;
-        this.toStringValue = precalculateToString();
         this.hashCodeValue = precalculateHashCode();
     }
 
     public BitronixXid(Xid xid) {
         this.globalTransactionId = new Uid(xid.getGlobalTransactionId());
         this.branchQualifier = new Uid(xid.getBranchQualifier());
-        this.toStringValue = precalculateToString();
         this.hashCodeValue = precalculateHashCode();
     }
 
@@ -113,10 +111,15 @@ public class BitronixXid implements Xid {
      */
     @Override
     public String toString() {
-        return toStringValue;
+        String result = toStringValue;
+        if (result == null) {
+            result = buildToString();
+            toStringValue = result;
+        }
+        return result;
     }
 
-    private String precalculateToString() {
+    private String buildToString() {
         return "a Bitronix XID [" +
                 globalTransactionId.toString() +
                 " : " +
@@ -55,10 +55,15 @@ public class Configuration implements Service {
     private volatile String logPart2Filename;
     private volatile boolean forcedWriteEnabled;
     private volatile boolean forceBatchingEnabled;
+    private volatile Duration forceBatchingWindow;
+    private volatile int forceBatchingMaxSize;
     private volatile int maxLogSizeInMb;
+    private volatile int logFormatVersion;
     private volatile boolean filterLogStatus;
+    private volatile boolean recoveryLogsOnly;
     private volatile boolean skipCorruptedLogs;
     private volatile boolean asynchronous2Pc;
+    private volatile boolean asynchronous2PcVirtualThreads;
     private volatile boolean warnAboutZeroResourceTransaction;
     private volatile boolean debugZeroResourceTransaction;
     private volatile Duration defaultTransactionTimeout;
@@ -71,8 +76,14 @@ public class Configuration implements Service {
     private volatile String journal;
     private volatile String exceptionAnalyzer;
     private volatile boolean currentNodeOnlyRecovery;
+    private volatile int recoveryParallelism;
+    private volatile Duration recoveryTimeout;
     private volatile boolean allowMultipleLrc;
     private volatile String resourceConfigurationFilename;
+    private volatile int resourceStartupParallelism;
+    private volatile int resourceShutdownParallelism;
+    private volatile int poolPrefillParallelism;
+    private volatile boolean backgroundPoolPrefill;
     private volatile boolean conservativeJournaling;
     private volatile String jdbcProxyFactoryClass;
 
@@ -110,10 +121,15 @@ public class Configuration implements Service {
             logPart2Filename = getString(properties, "bitronix.tm.journal.disk.logPart2Filename", "btm2.tlog");
             forcedWriteEnabled = getBoolean(properties, "bitronix.tm.journal.disk.forcedWriteEnabled", true);
             forceBatchingEnabled = getBoolean(properties, "bitronix.tm.journal.disk.forceBatchingEnabled", true);
+            forceBatchingWindow = getDuration(properties, "bitronix.tm.journal.disk.forceBatchingWindow", Duration.ZERO);
+            forceBatchingMaxSize = getInt(properties, "bitronix.tm.journal.disk.forceBatchingMaxSize", 64);
             maxLogSizeInMb = getInt(properties, "bitronix.tm.journal.disk.maxLogSize", 2);
+            logFormatVersion = getInt(properties, "bitronix.tm.journal.disk.logFormatVersion", 1);
             filterLogStatus = getBoolean(properties, "bitronix.tm.journal.disk.filterLogStatus", false);
+            recoveryLogsOnly = getBoolean(properties, "bitronix.tm.journal.recoveryLogsOnly", false);
             skipCorruptedLogs = getBoolean(properties, "bitronix.tm.journal.disk.skipCorruptedLogs", false);
             asynchronous2Pc = getBoolean(properties, "bitronix.tm.2pc.async", false);
+            asynchronous2PcVirtualThreads = getBoolean(properties, "bitronix.tm.2pc.async.virtualThreads", false);
             warnAboutZeroResourceTransaction = getBoolean(properties, "bitronix.tm.2pc.warnAboutZeroResourceTransactions", true);
             debugZeroResourceTransaction = getBoolean(properties, "bitronix.tm.2pc.debugZeroResourceTransactions", false);
             defaultTransactionTimeout = getDuration(properties, "bitronix.tm.timer.defaultTransactionTimeout", Duration.ofSeconds(60L));
@@ -126,8 +142,14 @@ public class Configuration implements Service {
             journal = getString(properties, "bitronix.tm.journal", "disk");
             exceptionAnalyzer = getString(properties, "bitronix.tm.exceptionAnalyzer", null);
             currentNodeOnlyRecovery = getBoolean(properties, "bitronix.tm.currentNodeOnlyRecovery", true);
+            recoveryParallelism = getInt(properties, "bitronix.tm.recovery.parallelism", 1);
+            recoveryTimeout = getDuration(properties, "bitronix.tm.recovery.timeout", Duration.ZERO);
             allowMultipleLrc = getBoolean(properties, "bitronix.tm.allowMultipleLrc", false);
             resourceConfigurationFilename = getString(properties, "bitronix.tm.resource.configuration", null);
+            resourceStartupParallelism = getInt(properties, "bitronix.tm.resource.startup.parallelism", 1);
+            resourceShutdownParallelism = getInt(properties, "bitronix.tm.resource.shutdown.parallelism", 1);
+            poolPrefillParallelism = getInt(properties, "bitronix.tm.resource.prefill.parallelism", 1);
+            backgroundPoolPrefill = getBoolean(properties, "bitronix.tm.resource.prefill.background", false);
             conservativeJournaling = getBoolean(properties, "bitronix.tm.conservativeJournaling", false);
             jdbcProxyFactoryClass = getString(properties, "bitronix.tm.jdbcProxyFactoryClass", "auto");
         } catch (IOException ex) {
@@ -233,7 +255,9 @@ public class Configuration implements Service {
     }
 
     /**
-     * Are disk forces batched? Disabling batching can seriously lower the transaction manager's throughput.
+     * Are disk forces batched? When enabled, threads concurrently forcing the journal join the force currently in
+     * progress and are all released by a single disk force. Disabling batching can seriously lower the transaction
+     * manager's throughput.
      * <p>Property name:<br><b>bitronix.tm.journal.disk.forceBatchingEnabled -</b> <i>(defaults to true)</i></p>
      *
      * @return true if disk forces are batched, false otherwise.
@@ -251,11 +275,58 @@ public class Configuration implements Service {
      */
     public Configuration setForceBatchingEnabled(boolean forceBatchingEnabled) {
         checkNotStarted();
-        log.warn("forceBatchingEnabled is not longer used");
         this.forceBatchingEnabled = forceBatchingEnabled;
         return this;
     }
 
+    /**
+     * Maximum amount of time the thread leading a batch of disk forces waits for other threads to join it before
+     * forcing the journal. A zero window only batches the threads arriving while a force is already in progress.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.forceBatchingWindow -</b> <i>(defaults to PT0S)</i></p>
+     *
+     * @return the maximum amount of time to wait for a batch to fill up.
+     */
+    public Duration getForceBatchingWindow() {
+        return forceBatchingWindow;
+    }
+
+    /**
+     * Set the maximum amount of time the thread leading a batch of disk forces waits for other threads to join it
+     * before forcing the journal.
+     *
+     * @param forceBatchingWindow the maximum amount of time to wait for a batch to fill up.
+     * @return this.
+     * @see #getForceBatchingWindow()
+     */
+    public Configuration setForceBatchingWindow(Duration forceBatchingWindow) {
+        checkNotStarted();
+        this.forceBatchingWindow = forceBatchingWindow;
+        return this;
+    }
+
+    /**
+     * Amount of threads waiting for a disk force after which the batching window is closed early.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.forceBatchingMaxSize -</b> <i>(defaults to 64)</i></p>
+     *
+     * @return the amount of threads that closes the batching window.
+     */
+    public int getForceBatchingMaxSize() {
+        return forceBatchingMaxSize;
+    }
+
+    /**
+     * Set the amount of threads waiting for a disk force after which the batching window is closed early.
+     *
+     * @param forceBatchingMaxSize the amount of threads that closes the batching window.
+     * @return this.
+     * @see #getForceBatchingMaxSize()
+     */
+    public Configuration setForceBatchingMaxSize(int forceBatchingMaxSize) {
+        checkNotStarted();
+        this.forceBatchingMaxSize = forceBatchingMaxSize;
+        return this;
+    }
+
     /**
      * Maximum size in megabytes of the journal fragments. Larger logs allow transactions to stay longer in-doubt but
      * the TM pauses longer when a fragment is full.
@@ -281,6 +352,33 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Version of the on-disk format in which the disk journal writes its fragments. Version 1 repeats the GTRID and
+     * the unique names in every record, version 2 writes the unique names once per fragment and refers to them by
+     * number. Both versions can be read, a fragment written in another version is converted when the journal opens.
+     * Version 2 is opt-in as BTM versions which only read version 1 cannot recover from a fragment in version 2.
+     * <p>Property name:<br><b>bitronix.tm.journal.disk.logFormatVersion -</b> <i>(defaults to 1)</i></p>
+     *
+     * @return the version of the journal fragments format, 1 or 2.
+     */
+    public int getLogFormatVersion() {
+        return logFormatVersion;
+    }
+
+    /**
+     * Set the version of the on-disk format in which the disk journal writes its fragments. Set it back to 1 and
+     * restart the transaction manager once before downgrading to a version which only reads format 1.
+     *
+     * @param logFormatVersion the version of the journal fragments format, 1 or 2.
+     * @return this.
+     * @see #getLogFormatVersion()
+     */
+    public Configuration setLogFormatVersion(int logFormatVersion) {
+        checkNotStarted();
+        this.logFormatVersion = logFormatVersion;
+        return this;
+    }
+
     /**
      * Should only mandatory logs be written? Enabling this parameter lowers space usage of the fragments but makes
      * debugging more complex.
@@ -306,6 +404,31 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Should only the logs needed by recovery be written? When enabled, a transaction only gets logged when it commits
+     * in two phases with at least one resource which did not vote read-only: its COMMITTING status and the status it
+     * ends with are logged. Zero resource, one-phase and read-only transactions never touch the journal.
+     * <p>Property name:<br><b>bitronix.tm.journal.recoveryLogsOnly -</b> <i>(defaults to false)</i></p>
+     *
+     * @return true if only the logs needed by recovery should be written.
+     */
+    public boolean isRecoveryLogsOnly() {
+        return recoveryLogsOnly;
+    }
+
+    /**
+     * Set if only the logs needed by recovery should be written.
+     *
+     * @param recoveryLogsOnly true if only the logs needed by recovery should be written.
+     * @return this.
+     * @see #isRecoveryLogsOnly()
+     */
+    public Configuration setRecoveryLogsOnly(boolean recoveryLogsOnly) {
+        checkNotStarted();
+        this.recoveryLogsOnly = recoveryLogsOnly;
+        return this;
+    }
+
     /**
      * Should corrupted logs be skipped?
      * <p>Property name:<br><b>bitronix.tm.journal.disk.skipCorruptedLogs -</b> <i>(defaults to false)</i></p>
@@ -356,6 +479,31 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Should asynchronous two phase commit run its jobs on virtual threads? Jobs mostly block on the network I/O of
+     * the resources, which virtual threads handle without creating a platform thread per job. The platform thread
+     * pool is used instead when the JVM does not support virtual threads. Ignored if two phase commit is synchronous.
+     * <p>Property name:<br><b>bitronix.tm.2pc.async.virtualThreads -</b> <i>(defaults to false)</i></p>
+     *
+     * @return true if asynchronous two phase commit should run its jobs on virtual threads.
+     */
+    public boolean isAsynchronous2PcVirtualThreads() {
+        return asynchronous2PcVirtualThreads;
+    }
+
+    /**
+     * Set if asynchronous two phase commit should run its jobs on virtual threads.
+     *
+     * @param asynchronous2PcVirtualThreads true if asynchronous two phase commit should run its jobs on virtual threads.
+     * @return this.
+     * @see #isAsynchronous2PcVirtualThreads()
+     */
+    public Configuration setAsynchronous2PcVirtualThreads(boolean asynchronous2PcVirtualThreads) {
+        checkNotStarted();
+        this.asynchronous2PcVirtualThreads = asynchronous2PcVirtualThreads;
+        return this;
+    }
+
     /**
      * Should transactions executed without a single enlisted resource result in a warning or not? Most of the time
      * transactions executed with no enlisted resource reflect a bug or a mis-configuration somewhere.
@@ -581,7 +729,7 @@ public class Configuration implements Service {
     }
 
     /**
-     * Get the journal implementation. Can be <code>disk</code>, <code>null</code> or a class name.
+     * Get the journal implementation. Can be <code>disk</code>, <code>mapped</code>, <code>null</code> or a class name.
      *
      * @return the journal name.
      */
@@ -590,7 +738,7 @@ public class Configuration implements Service {
     }
 
     /**
-     * Set the journal name. Can be <code>disk</code>, <code>null</code> or a class name.
+     * Set the journal name. Can be <code>disk</code>, <code>mapped</code>, <code>null</code> or a class name.
      *
      * @param journal the journal name.
      * @return this.
@@ -648,6 +796,54 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Maximum amount of resources the recovery process works on concurrently. Each resource is recovered, committed
+     * and rolled back by a single thread at a time. Recovery is sequential when set to 1.
+     * <p>Property name:<br><b>bitronix.tm.recovery.parallelism -</b> <i>(defaults to 1)</i></p>
+     *
+     * @return the maximum amount of resources recovered concurrently.
+     */
+    public int getRecoveryParallelism() {
+        return recoveryParallelism;
+    }
+
+    /**
+     * Set the maximum amount of resources the recovery process works on concurrently.
+     *
+     * @param recoveryParallelism the maximum amount of resources recovered concurrently.
+     * @return this.
+     * @see #getRecoveryParallelism()
+     */
+    public Configuration setRecoveryParallelism(int recoveryParallelism) {
+        checkNotStarted();
+        this.recoveryParallelism = recoveryParallelism;
+        return this;
+    }
+
+    /**
+     * Maximum duration of each step (recover, commit, rollback) of a parallel recovery run. The resources which did not
+     * complete a step in time are left for the next run, exactly like resources which failed. Disabled when set to 0.
+     * <p>Property name:<br><b>bitronix.tm.recovery.timeout -</b> <i>(defaults to 0)</i></p>
+     *
+     * @return the maximum duration of a parallel recovery step.
+     */
+    public Duration getRecoveryTimeout() {
+        return recoveryTimeout;
+    }
+
+    /**
+     * Set the maximum duration of each step of a parallel recovery run.
+     *
+     * @param recoveryTimeout the maximum duration of a parallel recovery step.
+     * @return this.
+     * @see #getRecoveryTimeout()
+     */
+    public Configuration setRecoveryTimeout(Duration recoveryTimeout) {
+        checkNotStarted();
+        this.recoveryTimeout = recoveryTimeout;
+        return this;
+    }
+
     /**
      * Should the transaction manager allow enlistment of multiple LRC resources in a single transaction?
      * This is highly unsafe but could be useful for testing.
@@ -692,7 +888,10 @@ public class Configuration implements Service {
     }
 
     /**
-     * Get the factory class for creating JDBC proxy instances.
+     * Get the factory class for creating JDBC proxy instances. Either <code>auto</code>, which picks Javassist then
+     * cglib when they are on the classpath and falls back to JDK dynamic proxies, or the name of a
+     * {@link bitronix.tm.resource.jdbc.proxy.JdbcProxyFactory} implementation like
+     * <code>bitronix.tm.resource.jdbc.proxy.JdbcHiddenClassProxyFactory</code> which requires no bytecode library.
      *
      * @return the name of the factory class
      */
@@ -736,6 +935,103 @@ public class Configuration implements Service {
         return this;
     }
 
+    /**
+     * Maximum amount of resources the {@link bitronix.tm.resource.ResourceLoader} initializes concurrently. Resources
+     * are initialized one after the other when set to 1.
+     * <p>Property name:<br><b>bitronix.tm.resource.startup.parallelism -</b> <i>(defaults to 1)</i></p>
+     *
+     * @return the maximum amount of resources initialized concurrently.
+     */
+    public int getResourceStartupParallelism() {
+        return resourceStartupParallelism;
+    }
+
+    /**
+     * Set the maximum amount of resources the {@link bitronix.tm.resource.ResourceLoader} initializes concurrently.
+     *
+     * @param resourceStartupParallelism the maximum amount of resources initialized concurrently.
+     * @return this.
+     * @see #getResourceStartupParallelism()
+     */
+    public Configuration setResourceStartupParallelism(int resourceStartupParallelism) {
+        checkNotStarted();
+        this.resourceStartupParallelism = resourceStartupParallelism;
+        return this;
+    }
+
+    /**
+     * Maximum amount of resources the {@link bitronix.tm.resource.ResourceLoader} closes concurrently when the
+     * transaction manager shuts down. Resources are closed one after the other when set to 1. In both cases the shutdown
+     * waits for all resources to be closed.
+     * <p>Property name:<br><b>bitronix.tm.resource.shutdown.parallelism -</b> <i>(defaults to 1)</i></p>
+     *
+     * @return the maximum amount of resources closed concurrently.
+     */
+    public int getResourceShutdownParallelism() {
+        return resourceShutdownParallelism;
+    }
+
+    /**
+     * Set the maximum amount of resources the {@link bitronix.tm.resource.ResourceLoader} closes concurrently.
+     *
+     * @param resourceShutdownParallelism the maximum amount of resources closed concurrently.
+     * @return this.
+     * @see #getResourceShutdownParallelism()
+     */
+    public Configuration setResourceShutdownParallelism(int resourceShutdownParallelism) {
+        checkNotStarted();
+        this.resourceShutdownParallelism = resourceShutdownParallelism;
+        return this;
+    }
+
+    /**
+     * Maximum amount of connections a pool creates concurrently when it grows to its minimum size. Connections are
+     * created one after the other when set to 1.
+     * <p>Property name:<br><b>bitronix.tm.resource.prefill.parallelism -</b> <i>(defaults to 1)</i></p>
+     *
+     * @return the maximum amount of connections created concurrently by a pool.
+     */
+    public int getPoolPrefillParallelism() {
+        return poolPrefillParallelism;
+    }
+
+    /**
+     * Set the maximum amount of connections a pool creates concurrently when it grows to its minimum size.
+     *
+     * @param poolPrefillParallelism the maximum amount of connections created concurrently by a pool.
+     * @return this.
+     * @see #getPoolPrefillParallelism()
+     */
+    public Configuration setPoolPrefillParallelism(int poolPrefillParallelism) {
+        checkNotStarted();
+        this.poolPrefillParallelism = poolPrefillParallelism;
+        return this;
+    }
+
+    /**
+     * Should pools only open a single connection when they are initialized and reach their minimum size in the
+     * background? Startup then does not wait for all the connections to be opened.
+     * <p>Property name:<br><b>bitronix.tm.resource.prefill.background -</b> <i>(defaults to false)</i></p>
+     *
+     * @return true if pools should reach their minimum size in the background.
+     */
+    public boolean isBackgroundPoolPrefill() {
+        return backgroundPoolPrefill;
+    }
+
+    /**
+     * Set to true if pools should reach their minimum size in the background.
+     *
+     * @param backgroundPoolPrefill true if pools should reach their minimum size in the background.
+     * @return this.
+     * @see #isBackgroundPoolPrefill()
+     */
+    public Configuration setBackgroundPoolPrefill(boolean backgroundPoolPrefill) {
+        checkNotStarted();
+        this.backgroundPoolPrefill = backgroundPoolPrefill;
+        return this;
+    }
+
     /**
      * Build the server ID byte array that will be prepended in generated UIDs. Once built, the value is cached for the duration of the JVM lifespan.
      *
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Registry of the in-flight transactions of the {@link BitronixTransactionManager}.
+ * <p>Transactions are spread by GTRID over independently locked stripes so that threads beginning and completing
+ * transactions seldom contend, and their count is kept by a counter instead of being computed. Each stripe tracks the
+ * timestamp of its oldest transaction as a low watermark which is only recomputed, by the next query, after that
+ * transaction completed: no sorted structure has to be maintained for the sake of the rare oldest timestamp queries
+ * made by the recoverer.</p>
+ * <p>Completing transactions only signal {@link #awaitEmpty(Duration, IntConsumer)} callers while one is waiting, so
+ * that a shutdown resumes as soon as the last transaction completed without slowing down transactions otherwise.</p>
+ *
+ * @param <V> the type of the value attached to each transaction.
+ */
+final class InFlightTransactionRegistry<V> {
+
+    private final Stripe<V>[] stripes;
+    private final int mask;
+    private final LongAdder count = new LongAdder();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Condition drained = drainLock.newCondition();
+    private volatile int drainWaiters;
+    private final Collection<BitronixTransaction> transactions = new AbstractCollection<>() {
+        @Override
+        public Iterator<BitronixTransaction> iterator() {
+            return Collections.unmodifiableList(snapshot()).iterator();
+        }
+
+        @Override
+        public int size() {
+            return InFlightTransactionRegistry.this.size();
+        }
+    };
+
+    InFlightTransactionRegistry() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param concurrency the expected amount of threads concurrently beginning or completing transactions, rounded up
+     *                    to a power of two to get the amount of stripes.
+     */
+    @SuppressWarnings("unchecked")
+    InFlightTransactionRegistry(int concurrency) {
+        int stripeCount = 1;
+        while (stripeCount < concurrency) {
+            stripeCount <<= 1;
+        }
+        stripes = (Stripe<V>[]) new Stripe<?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        mask = stripeCount - 1;
+    }
+
+    /**
+     * Register an in-flight transaction.
+     *
+     * @param transaction the transaction.
+     * @param value       the value attached to the transaction.
+     */
+    void put(BitronixTransaction transaction, V value) {
+        if (stripeOf(transaction).put(transaction, timestampOf(transaction), value) == null) {
+            count.increment();
+        }
+    }
+
+    /**
+     * @param transaction the transaction.
+     * @return the value attached to the transaction or null if it is not in-flight.
+     */
+    V get(BitronixTransaction transaction) {
+        return stripeOf(transaction).get(transaction);
+    }
+
+    /**
+     * Unregister a transaction which completed.
+     *
+     * @param transaction the transaction.
+     * @return the value which was attached to the transaction or null if it was not in-flight.
+     */
+    V remove(BitronixTransaction transaction) {
+        V removed = stripeOf(transaction).remove(transaction, timestampOf(transaction));
+        if (removed != null) {
+            count.decrement();
+            if (drainWaiters > 0) {
+                drainLock.lock();
+                try {
+                    drained.signalAll();
+                } finally {
+                    drainLock.unlock();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Wait until all in-flight transactions completed.
+     *
+     * @param timeout          the maximum amount of time to wait.
+     * @param progressListener notified, from the calling thread, with the amount of in-flight transactions left when
+     *                         waiting starts and each time it changes. Can be null.
+     * @return the amount of in-flight transactions left, 0 unless the timeout elapsed.
+     * @throws InterruptedException if the calling thread got interrupted while waiting.
+     */
+    int awaitEmpty(Duration timeout, IntConsumer progressListener) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int reported = -1;
+        while (true) {
+            int left;
+            drainLock.lock();
+            drainWaiters++;
+            try {
+                left = size();
+                long remainingNanos = deadline - System.nanoTime();
+                while (left > 0 && left == reported && remainingNanos > 0L) {
+                    remainingNanos = drained.awaitNanos(remainingNanos);
+                    left = size();
+                }
+            } finally {
+                drainWaiters--;
+                drainLock.unlock();
+            }
+
+            if (left != reported && progressListener != null) {
+                progressListener.accept(left);
+            }
+            reported = left;
+            if (left == 0 || deadline - System.nanoTime() <= 0L) {
+                return left;
+            }
+        }
+    }
+
+    /**
+     * @return the amount of in-flight transactions.
+     */
+    int size() {
+        return count.intValue();
+    }
+
+    /**
+     * @return the GTRID timestamp of the oldest in-flight transaction or Long.MIN_VALUE if there is none.
+     */
+    long getOldestTimestamp() {
+        long oldestTimestamp = Long.MAX_VALUE;
+        for (Stripe<V> stripe : stripes) {
+            oldestTimestamp = Math.min(oldestTimestamp, stripe.getOldestTimestamp());
+        }
+        return oldestTimestamp == Long.MAX_VALUE ? Long.MIN_VALUE : oldestTimestamp;
+    }
+
+    /**
+     * @return a live, concurrently readable view of the in-flight transactions. Iterating it iterates over a snapshot.
+     */
+    Collection<BitronixTransaction> transactions() {
+        return transactions;
+    }
+
+    private List<BitronixTransaction> snapshot() {
+        List<BitronixTransaction> snapshot = new ArrayList<>(size());
+        for (Stripe<V> stripe : stripes) {
+            stripe.copyTransactionsTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    private Stripe<V> stripeOf(BitronixTransaction transaction) {
+        int hash = transaction.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static long timestampOf(BitronixTransaction transaction) {
+        return transaction.getResourceManager().getGtrid().extractTimestamp();
+    }
+
+    private static final class Stripe<V> {
+        private final Map<BitronixTransaction, V> transactions = new HashMap<>();
+        private long oldestTimestamp = Long.MAX_VALUE;
+        private boolean oldestTimestampStale;
+
+        synchronized V put(BitronixTransaction transaction, long timestamp, V value) {
+            if (timestamp < oldestTimestamp) {
+                oldestTimestamp = timestamp;
+            }
+            return transactions.put(transaction, value);
+        }
+
+        synchronized V get(BitronixTransaction transaction) {
+            return transactions.get(transaction);
+        }
+
+        synchronized V remove(BitronixTransaction transaction, long timestamp) {
+            V removed = transactions.remove(transaction);
+            if (transactions.isEmpty()) {
+                oldestTimestamp = Long.MAX_VALUE;
+                oldestTimestampStale = false;
+            } else if (removed != null && timestamp == oldestTimestamp) {
+                // another transaction may share the timestamp, let the next query find out
+                oldestTimestampStale = true;
+            }
+            return removed;
+        }
+
+        synchronized long getOldestTimestamp() {
+            if (oldestTimestampStale) {
+                long timestamp = Long.MAX_VALUE;
+                for (BitronixTransaction transaction : transactions.keySet()) {
+                    timestamp = Math.min(timestamp, timestampOf(transaction));
+                }
+                oldestTimestamp = timestamp;
+                oldestTimestampStale = false;
+            }
+            return oldestTimestamp;
+        }
+
+        synchronized void copyTransactionsTo(Collection<BitronixTransaction> target) {
+            target.addAll(transactions.keySet());
+        }
+    }
+
+}
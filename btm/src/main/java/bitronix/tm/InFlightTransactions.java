@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm;
+
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Management view of the in-flight transactions of the {@link BitronixTransactionManager}.
+ * <p>A single instance is registered for the whole transaction manager instead of one MBean per transaction, the
+ * tabular data is only built when the attribute is read so beginning and ending transactions never touch JMX.</p>
+ *
+ * @author Ludovic Orban
+ */
+public final class InFlightTransactions implements InFlightTransactionsMBean {
+
+    private static final String[] ITEM_NAMES = {"gtrid", "status", "threadName", "startDate", "enlistedResources"};
+    private static final CompositeType ROW_TYPE;
+    private static final TabularType TABLE_TYPE;
+
+    static {
+        try {
+            ROW_TYPE = new CompositeType("InFlightTransaction", "an in-flight transaction", ITEM_NAMES,
+                    new String[]{"global transaction ID", "transaction status", "name of the thread which began the transaction",
+                            "date at which the transaction began", "unique names of the enlisted resources"},
+                    new OpenType<?>[]{SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING,
+                            ArrayType.getArrayType(SimpleType.STRING)});
+            TABLE_TYPE = new TabularType("InFlightTransactions", "in-flight transactions", ROW_TYPE, new String[]{"gtrid"});
+        } catch (OpenDataException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final Collection<BitronixTransaction> transactions;
+
+    /**
+     * Create the view.
+     *
+     * @param transactions a live, concurrently readable view of the in-flight transactions.
+     */
+    InFlightTransactions(Collection<BitronixTransaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    @Override
+    public int getTransactionCount() {
+        return transactions.size();
+    }
+
+    @Override
+    public TabularData getTransactions() {
+        TabularDataSupport table = new TabularDataSupport(TABLE_TYPE);
+        for (BitronixTransaction transaction : transactions) {
+            LocalDateTime startDate = transaction.getStartDate();
+            Object[] values = {
+                    transaction.getGtrid(),
+                    transaction.getStatusDescription(),
+                    transaction.getThreadName(),
+                    startDate == null ? null : startDate.toString(),
+                    transaction.getEnlistedResourcesUniqueNames().toArray(new String[0])
+            };
+            try {
+                table.put(new CompositeDataSupport(ROW_TYPE, ITEM_NAMES, values));
+            } catch (OpenDataException ex) {
+                throw new IllegalStateException("cannot describe transaction " + transaction, ex);
+            }
+        }
+        return table;
+    }
+
+}
@@ -17,6 +17,7 @@ package bitronix.tm;
 
 import bitronix.tm.journal.DiskJournal;
 import bitronix.tm.journal.Journal;
+import bitronix.tm.journal.MappedDiskJournal;
 import bitronix.tm.journal.NullJournal;
 import bitronix.tm.recovery.Recoverer;
 import bitronix.tm.resource.ResourceLoader;
@@ -24,6 +25,7 @@ import bitronix.tm.timer.TaskScheduler;
 import bitronix.tm.twopc.executor.AsyncExecutor;
 import bitronix.tm.twopc.executor.Executor;
 import bitronix.tm.twopc.executor.SyncExecutor;
+import bitronix.tm.twopc.executor.VirtualThreadExecutor;
 import bitronix.tm.utils.ClassLoaderUtils;
 import bitronix.tm.utils.DefaultExceptionAnalyzer;
 import bitronix.tm.utils.ExceptionAnalyzer;
@@ -121,6 +123,8 @@ public class TransactionManagerServices {
                 journal = new NullJournal();
             } else if ("disk".equals(configuredJournal)) {
                 journal = new DiskJournal();
+            } else if ("mapped".equals(configuredJournal)) {
+                journal = new MappedDiskJournal();
             } else {
                 try {
                     Class<?> clazz = ClassLoaderUtils.loadClass(configuredJournal);
@@ -198,7 +202,15 @@ public class TransactionManagerServices {
     public static Executor getExecutor() {
         Executor executor = executorRef.get();
         if (executor == null) {
-            if (getConfiguration().isAsynchronous2Pc()) {
+            if (getConfiguration().isAsynchronous2Pc() && getConfiguration().isAsynchronous2PcVirtualThreads() && VirtualThreadExecutor.isSupported()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("using VirtualThreadExecutor");
+                }
+                executor = new VirtualThreadExecutor();
+            } else if (getConfiguration().isAsynchronous2Pc()) {
+                if (getConfiguration().isAsynchronous2PcVirtualThreads()) {
+                    log.warn("virtual threads are not supported by this JVM, asynchronous 2PC falls back to platform threads");
+                }
                 if (log.isDebugEnabled()) {
                     log.debug("using AsyncExecutor");
                 }
@@ -262,9 +262,7 @@ public class XAResourceManager {
         if (log.isDebugEnabled()) {
             log.debug("clearing XAResourceHolder states on {} resource(s)", resources.size());
         }
-        Iterator<XAResourceHolderState> it = resources.iterator();
-        while (it.hasNext()) {
-            XAResourceHolderState xaResourceHolderState = it.next();
+        for (XAResourceHolderState xaResourceHolderState : resources) {
             XAResourceHolder resourceHolder = xaResourceHolderState.getXAResourceHolder();
 
             // clear out the current state
@@ -277,9 +275,8 @@ public class XAResourceManager {
             } else if (log.isDebugEnabled()) {
                 log.debug("resource {} cleaned up all transaction states for GTRID [{}]", resourceHolder, gtrid);
             }
-
-            it.remove();
         }
+        resources.clear();
     }
 
     /**
@@ -296,25 +293,25 @@ public class XAResourceManager {
     }
 
     public SortedSet<Integer> getNaturalOrderPositions() {
-        return Collections.unmodifiableSortedSet(resources.getNaturalOrderPositions());
+        return resources.getNaturalOrderPositions();
     }
 
     public SortedSet<Integer> getReverseOrderPositions() {
-        return Collections.unmodifiableSortedSet(resources.getReverseOrderPositions());
+        return resources.getReverseOrderPositions();
     }
 
     public List<XAResourceHolderState> getNaturalOrderResourcesForPosition(Integer position) {
-        return Collections.unmodifiableList(resources.getByNaturalOrderForPosition(position));
+        return resources.getByNaturalOrderForPosition(position);
     }
 
     public List<XAResourceHolderState> getReverseOrderResourcesForPosition(Integer position) {
-        return Collections.unmodifiableList(resources.getByReverseOrderForPosition(position));
+        return resources.getByReverseOrderForPosition(position);
     }
 
     public List<XAResourceHolderState> getAllResources() {
         List<XAResourceHolderState> result = new ArrayList<>(resources.size());
-        for (Integer positionKey : resources.getNaturalOrderPositions()) {
-            result.addAll(resources.getByNaturalOrderForPosition(positionKey));
+        for (XAResourceHolderState resource : resources) {
+            result.add(resource);
         }
         return Collections.unmodifiableList(result);
     }
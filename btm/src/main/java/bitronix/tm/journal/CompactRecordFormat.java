@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Version 2 of the on-disk format of the transaction log records, see {@link TransactionLogHeader#FORMAT_VERSION_2}.
+ * <p>Unique names and the server ID prefix of the GTRIDs are stored once per file in a dictionary made of definition
+ * records, the transaction records refer to dictionary entries by number. A definition record is always written before
+ * or together with the first transaction record referring to it, so reading a file sequentially always meets the
+ * definitions first.</p>
+ * <p>Definition record: <code>[RECORD_TYPE :1] [RECORD_LEN :V] [ENTRY NUMBER :V] [ENTRY LENGTH :V] [ENTRY :Y]
+ * [END_RECORD_INDICATOR :4]</code></p>
+ * <p>Transaction record: <code>[RECORD_TYPE :1] [RECORD_LEN :V] [System.currentTimeMillis :8] [Sequence number :V]
+ * [Checksum :4] [GTRID] [UNIQUE NAMES COUNT :V] ([UNIQUE NAME ENTRY NUMBER :V] ...) [END_RECORD_INDICATOR :4]</code></p>
+ * <p>Where :V fields are unsigned variable length integers using 7 bits per byte. [RECORD_TYPE] is the transaction
+ * status or {@link #DEFINITION_RECORD}, [RECORD_LEN] is the length of the remainder of the record. The [GTRID] is
+ * either <code>[0 :1] [GTRID LENGTH :1] [GTRID :A]</code> or, when it starts with the server ID of the transaction
+ * manager that wrote the record, <code>[SERVER ID ENTRY NUMBER + 1 :V] [GTRID TIMESTAMP AND SEQUENCE :12]</code>.
+ * Unique names entries are listed in unique names order. The [Checksum] is the one the record would have in
+ * version 1, which does not depend on the dictionary.</p>
+ */
+final class CompactRecordFormat {
+
+    /**
+     * Type of the dictionary definition records. Transaction records have their status as type.
+     */
+    static final int DEFINITION_RECORD = 0x7F;
+
+    /**
+     * Maximum length of a variable length integer.
+     */
+    static final int MAX_VAR_INT_LENGTH = 5;
+
+    /**
+     * Length of the timestamp and sequence number ending the GTRIDs generated by {@link bitronix.tm.utils.UidGenerator}.
+     */
+    static final int GTRID_SUFFIX_LENGTH = 8 + 4;
+
+    private CompactRecordFormat() {
+    }
+
+    /**
+     * Calculate the maximum length of a definition record.
+     *
+     * @param entry the dictionary entry.
+     * @return the maximum length.
+     */
+    static int maxDefinitionLength(byte[] entry) {
+        return 1 + 3 * MAX_VAR_INT_LENGTH + entry.length + 4;
+    }
+
+    /**
+     * Calculate the maximum length of a transaction record.
+     *
+     * @param tlog the record.
+     * @return the maximum length.
+     */
+    static int maxTransactionLength(TransactionLogRecord tlog) {
+        return 1 + MAX_VAR_INT_LENGTH + 8 + MAX_VAR_INT_LENGTH + 4 + MAX_VAR_INT_LENGTH + 1 + tlog.getGtrid().length()
+                + MAX_VAR_INT_LENGTH * (1 + tlog.getUniqueNames().size()) + 4;
+    }
+
+    /**
+     * Serialize a definition record.
+     *
+     * @param buf         the buffer to write to.
+     * @param entryNumber the number of the entry in the dictionary.
+     * @param entry       the dictionary entry.
+     */
+    static void writeDefinition(ByteBuffer buf, int entryNumber, byte[] entry) {
+        buf.put((byte) DEFINITION_RECORD);
+        putVarInt(buf, varIntLength(entryNumber) + varIntLength(entry.length) + entry.length + 4);
+        putVarInt(buf, entryNumber);
+        putVarInt(buf, entry.length);
+        buf.put(entry);
+        buf.putInt(TransactionLogAppender.END_RECORD);
+    }
+
+    /**
+     * Serialize a transaction record.
+     *
+     * @param buf               the buffer to write to.
+     * @param tlog              the record.
+     * @param serverIdEntry     the dictionary entry number of the server ID prefixing the GTRID, or -1 to write the
+     *                          whole GTRID.
+     * @param uniqueNameEntries the dictionary entry numbers of the unique names, in unique names order.
+     */
+    static void writeTransaction(ByteBuffer buf, TransactionLogRecord tlog, int serverIdEntry, int[] uniqueNameEntries) {
+        Uid gtrid = tlog.getGtrid();
+        int gtridLength = serverIdEntry < 0 ? 1 + 1 + gtrid.length() : varIntLength(serverIdEntry + 1) + GTRID_SUFFIX_LENGTH;
+        int length = 8 + varIntLength(tlog.getSequenceNumber()) + 4 + gtridLength + varIntLength(uniqueNameEntries.length) + 4;
+        for (int entry : uniqueNameEntries) {
+            length += varIntLength(entry);
+        }
+
+        buf.put((byte) tlog.getStatus());
+        putVarInt(buf, length);
+        buf.putLong(tlog.getTime());
+        putVarInt(buf, tlog.getSequenceNumber());
+        buf.putInt(tlog.getCrc32());
+        byte[] gtridArray = gtrid.getArray();
+        if (serverIdEntry < 0) {
+            buf.put((byte) 0);
+            buf.put((byte) gtridArray.length);
+            buf.put(gtridArray);
+        } else {
+            putVarInt(buf, serverIdEntry + 1);
+            buf.put(gtridArray, gtridArray.length - GTRID_SUFFIX_LENGTH, GTRID_SUFFIX_LENGTH);
+        }
+        putVarInt(buf, uniqueNameEntries.length);
+        for (int entry : uniqueNameEntries) {
+            putVarInt(buf, entry);
+        }
+        buf.putInt(TransactionLogAppender.END_RECORD);
+    }
+
+    /**
+     * Check if a GTRID is made of a server ID followed by a timestamp and a sequence number.
+     *
+     * @param gtrid    the GTRID.
+     * @param serverId the server ID.
+     * @return true if the GTRID can be written relative to the server ID.
+     */
+    static boolean isPrefixedBy(Uid gtrid, byte[] serverId) {
+        byte[] array = gtrid.getArray();
+        return array.length == serverId.length + GTRID_SUFFIX_LENGTH
+                && Arrays.equals(array, 0, serverId.length, serverId, 0, serverId.length);
+    }
+
+    /**
+     * Write an int as an unsigned variable length integer.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value, negative values take {@link #MAX_VAR_INT_LENGTH} bytes.
+     */
+    static void putVarInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * Read an unsigned variable length integer.
+     *
+     * @param buf the buffer to read from.
+     * @return the value.
+     * @throws CorruptedTransactionLogException if the value is longer than {@link #MAX_VAR_INT_LENGTH} bytes.
+     */
+    static int getVarInt(ByteBuffer buf) throws CorruptedTransactionLogException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VAR_INT_LENGTH; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedTransactionLogException("variable length integer longer than " + MAX_VAR_INT_LENGTH + " bytes");
+    }
+
+    /**
+     * @param value the value.
+     * @return the amount of bytes taken by value written as an unsigned variable length integer.
+     */
+    static int varIntLength(int value) {
+        return value == 0 ? 1 : (32 - Integer.numberOfLeadingZeros(value) + 6) / 7;
+    }
+
+}
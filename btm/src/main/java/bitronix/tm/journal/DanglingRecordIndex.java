@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.utils.Uid;
+import jakarta.transaction.Status;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Incrementally maintained index of the dangling records of a journal, ordered by GTRID sequence.
+ * <p>A GTRID is dangling when a COMMITTING record has been logged for it and not all its unique names have been
+ * terminated by a COMMITTED, UNKNOWN or ROLLEDBACK record. The index applies exactly the same rules as a full scan of
+ * the journal file would, so that it can be rebuilt from the active file on startup and then kept up to date as
+ * records are written, making recovery and rollover independent of the journal file size.</p>
+ * <p>Indexed records are immutable and entries are replaced atomically, so the index can be read while it is being
+ * updated.</p>
+ */
+final class DanglingRecordIndex {
+
+    private static final Comparator<Uid> SEQUENCE_ORDER = Comparator.comparingInt(Uid::extractSequence)
+            .thenComparing(Uid::getArray, Arrays::compare);
+
+    private final ConcurrentNavigableMap<Uid, TransactionLogRecord> records = new ConcurrentSkipListMap<>(SEQUENCE_ORDER);
+
+    /**
+     * Update the index with a record that has been written to the journal.
+     *
+     * @param tlog the written record.
+     */
+    void update(TransactionLogRecord tlog) {
+        int status = tlog.getStatus();
+        if (status == Status.STATUS_COMMITTING) {
+            records.put(tlog.getGtrid(), tlog);
+        }
+
+        // COMMITTED is when there was no problem in the transaction
+        // UNKNOWN is when a 2PC transaction heuristically terminated
+        // ROLLEDBACK is when a 1PC transaction rolled back during commit
+        if (status == Status.STATUS_COMMITTED || status == Status.STATUS_UNKNOWN || status == Status.STATUS_ROLLEDBACK) {
+            records.computeIfPresent(tlog.getGtrid(), (gtrid, rec) -> {
+                Set<String> recUniqueNames = new HashSet<>(rec.getUniqueNames());
+                recUniqueNames.removeAll(tlog.getUniqueNames());
+                if (recUniqueNames.isEmpty()) {
+                    return null;
+                }
+                return new TransactionLogRecord(rec.getStatus(), gtrid, recUniqueNames);
+            });
+        }
+    }
+
+    void clear() {
+        records.clear();
+    }
+
+    /**
+     * @return the amount of dangling GTRIDs.
+     */
+    int size() {
+        return records.size();
+    }
+
+    /**
+     * @return a live, read-only view of the dangling records ordered by GTRID sequence.
+     */
+    Collection<TransactionLogRecord> records() {
+        return Collections.unmodifiableCollection(records.values());
+    }
+
+    /**
+     * @return a point-in-time copy of the index which does not reflect later updates.
+     */
+    Map<Uid, JournalRecord> snapshot() {
+        return new HashMap<>(records);
+    }
+
+}
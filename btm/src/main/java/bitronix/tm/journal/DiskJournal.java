@@ -15,10 +15,10 @@
  */
 package bitronix.tm.journal;
 
-import bitronix.tm.BitronixXid;
 import bitronix.tm.Configuration;
 import bitronix.tm.TransactionManagerServices;
 import bitronix.tm.utils.Decoder;
+import bitronix.tm.utils.ManagementRegistrar;
 import bitronix.tm.utils.MonotonicClock;
 import bitronix.tm.utils.Uid;
 import jakarta.transaction.Status;
@@ -29,19 +29,27 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Simple implementation of a journal that writes on a two-files disk log.
  * <p>Files are pre-allocated in size, never grow and when the first one is full, dangling records are copied to the
  * second file and logging starts again on the latter.</p>
+ * <p>Dangling records are indexed in memory: the index is rebuilt by scanning the active file when the journal is
+ * opened, then kept up to date as records are written. Since the active file always starts with a copy of the records
+ * that were dangling when it was activated, it acts as the checkpoint from which the index is rebuilt.</p>
  * <p>This implementation is not highly efficient but quite robust and simple. It is based on one of the implementations
  * proposed by Mike Spille.</p>
+ * <p>Records are written in the on-disk format version configured with
+ * {@link bitronix.tm.Configuration#getLogFormatVersion()}. Files in any version can be read, when the active file is
+ * in another version than the configured one it is converted by a swap as soon as the journal is opened.</p>
+ * <p>Disk forces requested concurrently are batched: threads calling {@link #force()} while another one is forcing
+ * the log join the next batch and are all released by a single disk force, see {@link ForceBatcher}.</p>
  * <p>Configurable properties are all starting with <code>bitronix.tm.journal.disk</code>.</p>
  *
  * @author Ludovic Orban
@@ -49,7 +57,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @see bitronix.tm.Configuration
  * @see <a href="http://jroller.com/page/pyrasun?entry=xa_exposed_part_iii_the">XA Exposed, Part III: The Implementor's Notebook</a>
  */
-public class DiskJournal implements Journal, MigratableJournal, ReadableJournal {
+public class DiskJournal implements Journal, MigratableJournal, ReadableJournal, DiskJournalMBean {
 
     private static final Logger log = LoggerFactory.getLogger(DiskJournal.class);
 
@@ -70,19 +78,32 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
     private TransactionLogAppender tla2;
 
     private final Lock conservativeJournalingLock = new ReentrantLock();
-    private final ReadWriteLock swapForceLock = new ReentrantReadWriteLock(true);
-    private final Object positionLock = new Object();
-    private final AtomicBoolean needsForce;
+    /**
+     * Held in read mode while a position is reserved and the record written, in write mode while the journal files
+     * are swapped or forced.
+     */
+    private final StampedLock swapForceLock = new StampedLock();
+    private volatile ForceBatcher forceBatcher;
+    private final DanglingRecordIndex danglingIndex = new DanglingRecordIndex();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
 
     private final Configuration configuration;
+    private final String jmxName;
 
     /**
      * Create an uninitialized disk journal. You must call open() prior you can use it.
      */
     public DiskJournal() {
         configuration = TransactionManagerServices.getConfiguration();
-        needsForce = new AtomicBoolean();
         activeTla = new AtomicReference<>();
+        forceBatcher = createForceBatcher();
+
+        String serverId = configuration.getServerId();
+        if (serverId == null) {
+            serverId = "";
+        }
+        jmxName = "bitronix.tm:type=Journal,ServerId=" + ManagementRegistrar.makeValidName(serverId);
     }
 
     /**
@@ -110,6 +131,7 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             }
         }
 
+        long startNanos = System.nanoTime();
         TransactionLogRecord tlog = new TransactionLogRecord(status, gtrid, uniqueNames);
 
         try {
@@ -117,28 +139,39 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
                 conservativeJournalingLock.lock();
             }
 
-            synchronized (positionLock) {
-                boolean rollover = activeTla.get().setPositionAndAdvance(tlog);
-                if (rollover) {
-                    // time to swap log files
-                    swapForceLock.writeLock().lock();
-                    try {
-                        swapJournalFiles();
-                        activeTla.get().setPositionAndAdvance(tlog);
-                    } finally {
-                        swapForceLock.writeLock().unlock();
+            while (true) {
+                TransactionLogAppender fullTla;
+
+                // the position MUST be reserved under the read lock so that no swap can happen before the record is written
+                long stamp = swapForceLock.readLock();
+                try {
+                    TransactionLogAppender tla = activeTla.get();
+                    if (tla == null) {
+                        throw new IOException("cannot write log, disk logger is not open");
                     }
+                    if (!tla.setPositionAndAdvance(tlog)) {
+                        tla.writeLog(tlog);
+                        // the index MUST be updated under the read lock so that a swap copies every record written to the full file
+                        danglingIndex.update(tlog);
+                        forceBatcher.recordWritten();
+                        writeCount.increment();
+                        writeNanos.add(System.nanoTime() - startNanos);
+                        return;
+                    }
+                    fullTla = tla;
+                } finally {
+                    swapForceLock.unlockRead(stamp);
                 }
 
-                // this read lock MUST be acquired under positionLock
-                swapForceLock.readLock().lock();
-            }
-
-            try {
-                activeTla.get().writeLog(tlog);
-                needsForce.set(true);
-            } finally {
-                swapForceLock.readLock().unlock();
+                // time to swap log files, unless another thread already did it
+                stamp = swapForceLock.writeLock();
+                try {
+                    if (activeTla.get() == fullTla) {
+                        swapJournalFiles();
+                    }
+                } finally {
+                    swapForceLock.unlockWrite(stamp);
+                }
             }
         } finally {
             if (configuration.isConservativeJournaling()) {
@@ -158,17 +191,71 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             throw new IOException("cannot force log writing, disk logger is not open");
         }
 
-        if (needsForce.get() && configuration.isForcedWriteEnabled()) {
-            swapForceLock.writeLock().lock();
-            try {
-                activeTla.get().force();
-                needsForce.set(false);
-            } finally {
-                swapForceLock.writeLock().unlock();
+        if (configuration.isForcedWriteEnabled()) {
+            if (configuration.isForceBatchingEnabled()) {
+                forceBatcher.force();
+            } else {
+                forceBatcher.forceUnbatched();
             }
         }
     }
 
+    @Override
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    @Override
+    public long getTotalWriteLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(writeNanos.sum());
+    }
+
+    @Override
+    public long getForceCount() {
+        return forceBatcher.getForceCount();
+    }
+
+    @Override
+    public long getForceRequestCount() {
+        return forceBatcher.getForceRequestCount();
+    }
+
+    @Override
+    public double getAverageForceBatchSize() {
+        return forceBatcher.getAverageForceBatchSize();
+    }
+
+    @Override
+    public int getMaxForceBatchSize() {
+        return forceBatcher.getMaxForceBatchSize();
+    }
+
+    @Override
+    public long getAverageForceLatencyMicros() {
+        return forceBatcher.getAverageForceLatencyMicros();
+    }
+
+    @Override
+    public long getTotalForceLatencyMicros() {
+        return forceBatcher.getTotalForceLatencyMicros();
+    }
+
+    @Override
+    public long getMaxForceLatencyMicros() {
+        return forceBatcher.getMaxForceLatencyMicros();
+    }
+
+    @Override
+    public int getDanglingRecordCount() {
+        return danglingIndex.size();
+    }
+
+    @Override
+    public int getActiveLogFormatVersion() {
+        TransactionLogAppender tla = activeTla.get();
+        return tla == null ? 0 : tla.getFormatVersion();
+    }
+
     /**
      * Open the disk journal. Files are checked for integrity and DiskJournal will refuse to open corrupted log files.
      * If files are not present on disk, this method will create and pre-allocate them.
@@ -182,12 +269,17 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             return;
         }
 
+        int formatVersion = configuration.getLogFormatVersion();
+        if (formatVersion != TransactionLogHeader.FORMAT_VERSION_1 && formatVersion != TransactionLogHeader.FORMAT_VERSION_2) {
+            throw new IOException("unsupported transaction log format version " + formatVersion);
+        }
+
         File file1 = new File(configuration.getLogPart1Filename());
         File file2 = new File(configuration.getLogPart2Filename());
 
         if (!file1.exists() && !file2.exists()) {
             log.debug("creation of log files");
-            createLogfile(file2, configuration.getMaxLogSizeInMb());
+            createLogfile(file2, configuration.getMaxLogSizeInMb(), formatVersion);
 
             // make the clock run a little before creating the 2nd log file to ensure the timestamp headers are not the same
             long before = MonotonicClock.currentTimeMillis();
@@ -197,7 +289,7 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
                 } catch (InterruptedException ex) { /* ignore */ }
             }
 
-            createLogfile(file1, configuration.getMaxLogSizeInMb());
+            createLogfile(file1, configuration.getMaxLogSizeInMb(), formatVersion);
         }
 
         if (file1.length() != file2.length()) {
@@ -212,13 +304,32 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
             log.debug("disk journal files max length: {}", maxFileLength);
         }
 
-        tla1 = new TransactionLogAppender(file1, maxFileLength);
-        tla2 = new TransactionLogAppender(file2, maxFileLength);
+        tla1 = createTransactionLogAppender(file1, maxFileLength);
+        tla2 = createTransactionLogAppender(file2, maxFileLength);
+        forceBatcher = createForceBatcher();
 
         byte cleanStatus = pickActiveJournalFile(tla1, tla2);
         if (cleanStatus != TransactionLogHeader.CLEAN_LOG_STATE) {
             log.warn("active log file is unclean, did you call BitronixTransactionManager.shutdown() at the end of the last run?");
         }
+        try {
+            indexDanglingRecords(activeTla.get(), danglingIndex);
+
+            if (activeTla.get().getFormatVersion() != formatVersion) {
+                log.info("converting transaction log to format version {}, active log file is in version {}", formatVersion, activeTla.get().getFormatVersion());
+                long stamp = swapForceLock.writeLock();
+                try {
+                    swapJournalFiles();
+                } finally {
+                    swapForceLock.unlockWrite(stamp);
+                }
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+
+        ManagementRegistrar.register(jmxName, this);
 
         if (log.isDebugEnabled()) {
             log.debug("disk journal opened");
@@ -249,6 +360,8 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         }
         tla2 = null;
         activeTla.set(null);
+        danglingIndex.clear();
+        ManagementRegistrar.unregister(jmxName);
 
         if (log.isDebugEnabled()) {
             log.debug("disk journal closed");
@@ -265,7 +378,8 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
     }
 
     /**
-     * Collect all dangling records of the active log file.
+     * Collect all dangling records of the active log file. The records are read from the in-memory index, the log
+     * file is not scanned.
      *
      * @return a Map using Uid objects GTRID as key and {@link TransactionLogRecord} as value
      * @throws java.io.IOException in case of disk IO failure or if the disk journal is not open.
@@ -275,7 +389,7 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         if (activeTla.get() == null) {
             throw new IOException("cannot collect dangling records, disk logger is not open");
         }
-        return collectDanglingRecords(activeTla.get());
+        return danglingIndex.snapshot();
     }
 
     /**
@@ -313,14 +427,49 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
      * Internal impl.
      */
 
+    /**
+     * Create the appender writing to one of the two journal files.
+     *
+     * @param file          the journal file.
+     * @param maxFileLength the length of the journal file.
+     * @return the appender.
+     * @throws java.io.IOException in case of disk IO failure.
+     */
+    protected TransactionLogAppender createTransactionLogAppender(File file, long maxFileLength) throws IOException {
+        return new TransactionLogAppender(file, maxFileLength);
+    }
+
+    private ForceBatcher createForceBatcher() {
+        return new ForceBatcher(this::forceActiveLog, configuration.getForceBatchingWindow(), configuration.getForceBatchingMaxSize());
+    }
+
+    /**
+     * Force the active log file, excluding concurrent writes and swaps.
+     *
+     * @throws java.io.IOException in case of disk IO failure or if the disk journal has been closed.
+     */
+    private void forceActiveLog() throws IOException {
+        long stamp = swapForceLock.writeLock();
+        try {
+            TransactionLogAppender tla = activeTla.get();
+            if (tla == null) {
+                throw new IOException("cannot force log writing, disk logger is not open");
+            }
+            tla.force();
+        } finally {
+            swapForceLock.unlockWrite(stamp);
+        }
+    }
+
     /**
      * Create a fresh log file on disk. If the specified file already exists it will be deleted then recreated.
      *
      * @param logfile        the file to create
      * @param maxLogSizeInMb the file size in megabytes to preallocate
+     * @param formatVersion  the version of the on-disk format of the records
      * @throws java.io.IOException in case of disk IO failure.
      */
-    private static void createLogfile(File logfile, int maxLogSizeInMb) throws IOException {
+    private static void createLogfile(File logfile, int maxLogSizeInMb, int formatVersion) throws IOException {
         if (logfile.isDirectory()) {
             throw new IOException("log file is referring to a directory: " + logfile.getAbsolutePath());
         }
@@ -337,7 +486,7 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
         try (RandomAccessFile raf = new RandomAccessFile(logfile, "rw")) {
 
             raf.seek(TransactionLogHeader.FORMAT_ID_HEADER);
-            raf.writeInt(BitronixXid.FORMAT_ID);
+            raf.writeInt(TransactionLogHeader.formatIdOf(formatVersion));
             raf.writeLong(MonotonicClock.currentTimeMillis());
             raf.writeByte(TransactionLogHeader.CLEAN_LOG_STATE);
             raf.writeLong(TransactionLogHeader.HEADER_LENGTH);
@@ -385,11 +534,11 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
 
     /**
      * <p>Swap the active and the passive journal files so that the active one becomes passive and the passive one
-     * becomes active.</p>
+     * becomes active. Must be called while holding the swap/force lock in write mode.</p>
      * List of actions taken by this method:
      * <ul>
      *   <li>ensure the all data has been forced to the active log file.</li>
-     *   <li>copy dangling COMMITTING records to the passive log file.</li>
+     *   <li>copy dangling COMMITTING records to the passive log file, in the configured format.</li>
      *   <li>update header timestamp of passive log file (makes it become active).</li>
      *   <li>do a force on passive log file. It is now the active file.</li>
      *   <li>switch references of active/passive files.</li>
@@ -397,7 +546,7 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
      *
      * @throws java.io.IOException in case of disk IO failure.
      */
-    private synchronized void swapJournalFiles() throws IOException {
+    private void swapJournalFiles() throws IOException {
         if (log.isDebugEnabled()) {
             log.debug("swapping journal log file to {}", getPassiveTransactionLogAppender());
         }
@@ -407,23 +556,24 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
 
         //step 2
         TransactionLogAppender passiveTla = getPassiveTransactionLogAppender();
-        passiveTla.rewind();
+        passiveTla.rewind(configuration.getLogFormatVersion());
 
-        List<TransactionLogRecord> danglingLogs = activeTla.get().getDanglingLogs();
+        List<TransactionLogRecord> danglingLogs = new ArrayList<>(danglingIndex.size());
+        for (TransactionLogRecord dangling : danglingIndex.records()) {
+            danglingLogs.add(new TransactionLogRecord(Status.STATUS_COMMITTING, dangling.getGtrid(), dangling.getUniqueNames()));
+        }
         for (TransactionLogRecord tlog : danglingLogs) {
             boolean rolloverError = passiveTla.setPositionAndAdvance(tlog);
             if (rolloverError) {
                 throw new IOException("moving in-flight transactions the rollover log file would have resulted in an overflow of that file");
             }
-            passiveTla.writeLog(tlog);
         }
+        passiveTla.writeLogs(danglingLogs);
 
         if (log.isDebugEnabled()) {
             log.debug("{} dangling record(s) copied to passive log file", danglingLogs.size());
         }
 
-        activeTla.get().clearDanglingLogs();
-
         //step 3
         passiveTla.setTimestamp(MonotonicClock.currentTimeMillis());
 
@@ -441,25 +591,25 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
     /**
      * @return the TransactionFileAppender of the passive journal file.
      */
-    private synchronized TransactionLogAppender getPassiveTransactionLogAppender() {
+    private TransactionLogAppender getPassiveTransactionLogAppender() {
         return (tla1 == activeTla.get() ? tla2 : tla1);
     }
 
     /**
-     * Create a Map of TransactionLogRecord with COMMITTING status objects using the GTRID byte[] as key that have
-     * no corresponding COMMITTED record
+     * Rebuild the index of TransactionLogRecord with COMMITTING status that have no corresponding COMMITTED record
+     * by scanning a log file. The dictionary of a file in the compact format is rebuilt at the same time.
      *
-     * @param tla the TransactionLogAppender to scan
-     * @return a Map using Uid objects GTRID as key and {@link TransactionLogRecord} as value
+     * @param tla   the TransactionLogAppender to scan
+     * @param index the index to rebuild
      * @throws java.io.IOException in case of disk IO failure.
      */
-    private static Map<Uid, JournalRecord> collectDanglingRecords(TransactionLogAppender tla) throws IOException {
-        Map<Uid, JournalRecord> danglingRecords = new HashMap<>(64);
+    private static void indexDanglingRecords(TransactionLogAppender tla, DanglingRecordIndex index) throws IOException {
+        index.clear();
         TransactionLogCursor tlc = tla.getCursor();
 
         try {
             int committing = 0;
-            int committed = 0;
+            int terminated = 0;
 
             while (true) {
                 TransactionLogRecord tlog;
@@ -477,37 +627,21 @@ public class DiskJournal implements Journal, MigratableJournal, ReadableJournal
                     break;
                 }
 
-                int status = tlog.getStatus();
-                if (status == Status.STATUS_COMMITTING) {
-                    danglingRecords.put(tlog.getGtrid(), tlog);
+                if (tlog.getStatus() == Status.STATUS_COMMITTING) {
                     committing++;
+                } else {
+                    terminated++;
                 }
-
-                // COMMITTED is when there was no problem in the transaction
-                // UNKNOWN is when a 2PC transaction heuristically terminated
-                // ROLLEDBACK is when a 1PC transaction rolled back during commit
-                if (status == Status.STATUS_COMMITTED || status == Status.STATUS_UNKNOWN || status == Status.STATUS_ROLLEDBACK) {
-                    JournalRecord rec = danglingRecords.get(tlog.getGtrid());
-                    if (rec != null) {
-                        Set<String> recUniqueNames = new HashSet<String>(rec.getUniqueNames());
-                        recUniqueNames.removeAll(tlog.getUniqueNames());
-                        if (recUniqueNames.isEmpty()) {
-                            danglingRecords.remove(tlog.getGtrid());
-                            committed++;
-                        } else {
-                            danglingRecords.put(tlog.getGtrid(), new TransactionLogRecord(rec.getStatus(), rec.getGtrid(), recUniqueNames));
-                        }
-                    }
-                }
+                index.update(tlog);
             }
+            tla.loadDictionary(tlc);
 
             if (log.isDebugEnabled()) {
-                log.debug("collected dangling records of " + tla + ", committing: " + committing + ", committed: " + committed + ", delta: " + danglingRecords.size());
+                log.debug("indexed dangling records of " + tla + ", committing: " + committing + ", terminated: " + terminated + ", delta: " + index.size());
             }
         } finally {
             tlc.close();
         }
-        return danglingRecords;
     }
 
     /**
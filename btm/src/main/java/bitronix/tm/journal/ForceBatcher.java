@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group commit engine amortizing disk forces across concurrent callers.
+ * <p>Every written record is counted. A thread calling {@link #force()} only needs the records written before its call
+ * to be forced: if no force is in progress it becomes the leader of a new batch, optionally waits for the batching
+ * window to let other threads join, then forces the log once on behalf of all of them. Threads arriving while a force
+ * is in progress wait for it to complete and only force again if their records were not covered by it.</p>
+ * <p>A failed force does not release the waiting threads: one of them becomes the leader of the next batch and retries,
+ * so every caller either returns after a successful force covering its records or gets its own exception.</p>
+ */
+final class ForceBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ForceBatcher.class);
+
+    /**
+     * The actual disk force operation performed on behalf of a batch.
+     */
+    interface ForceAction {
+        void force() throws IOException;
+    }
+
+    private final ForceAction forceAction;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition forceCompleted = lock.newCondition();
+    private final Condition batchFull = lock.newCondition();
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    // all those fields are guarded by lock
+    private volatile long forcedCount;
+    private boolean forcing;
+    private int waitingCount;
+
+    // statistics, only updated while holding lock
+    private volatile long forceCount;
+    private volatile long forceRequestCount;
+    private volatile int maxForceBatchSize;
+    private volatile long totalForceNanos;
+    private volatile long maxForceNanos;
+
+    /**
+     * Create a batcher.
+     *
+     * @param forceAction  the action forcing the log to disk.
+     * @param window       the maximum amount of time a leader waits for other threads to join its batch.
+     * @param maxBatchSize the amount of threads in a batch closing the window early.
+     */
+    ForceBatcher(ForceAction forceAction, Duration window, int maxBatchSize) {
+        this.forceAction = forceAction;
+        this.windowNanos = window == null ? 0L : Math.max(0L, window.toNanos());
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Must be called each time a record has been completely written, before the writer calls {@link #force()}.
+     */
+    void recordWritten() {
+        writtenCount.incrementAndGet();
+    }
+
+    /**
+     * Force all records written before this call, joining any batch in progress.
+     *
+     * @throws IOException if the force performed by this thread failed.
+     */
+    void force() throws IOException {
+        final long target = writtenCount.get();
+        if (forcedCount >= target) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            while (forcedCount < target) {
+                if (forcing) {
+                    waitingCount++;
+                    try {
+                        if (waitingCount + 1 >= maxBatchSize) {
+                            batchFull.signal();
+                        }
+                        forceCompleted.awaitUninterruptibly();
+                    } finally {
+                        waitingCount--;
+                    }
+                    continue;
+                }
+
+                forcing = true;
+                try {
+                    awaitBatchWindow();
+                    long upTo = writtenCount.get();
+                    int batchSize = waitingCount + 1;
+
+                    long elapsed;
+                    lock.unlock();
+                    try {
+                        long start = System.nanoTime();
+                        forceAction.force();
+                        elapsed = System.nanoTime() - start;
+                    } finally {
+                        lock.lock();
+                    }
+
+                    updateStatistics(batchSize, elapsed);
+                    if (upTo > forcedCount) {
+                        forcedCount = upTo;
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("forced a batch of {} thread(s) in {}us", batchSize, TimeUnit.NANOSECONDS.toMicros(elapsed));
+                    }
+                } finally {
+                    forcing = false;
+                    forceCompleted.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Force all records written before this call without coordinating with other threads.
+     *
+     * @throws IOException if the force failed.
+     */
+    void forceUnbatched() throws IOException {
+        final long upTo = writtenCount.get();
+        if (forcedCount >= upTo) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        forceAction.force();
+        long elapsed = System.nanoTime() - start;
+
+        lock.lock();
+        try {
+            updateStatistics(1, elapsed);
+            if (upTo > forcedCount) {
+                forcedCount = upTo;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the amount of disk forces performed.
+     */
+    long getForceCount() {
+        return forceCount;
+    }
+
+    /**
+     * @return the amount of force requests served by the disk forces performed.
+     */
+    long getForceRequestCount() {
+        return forceRequestCount;
+    }
+
+    /**
+     * @return the largest amount of force requests served by a single disk force.
+     */
+    int getMaxForceBatchSize() {
+        return maxForceBatchSize;
+    }
+
+    /**
+     * @return the average amount of force requests served by a single disk force.
+     */
+    double getAverageForceBatchSize() {
+        long count = forceCount;
+        return count == 0 ? 0.0 : (double) forceRequestCount / count;
+    }
+
+    /**
+     * @return the average duration of a disk force in microseconds.
+     */
+    long getAverageForceLatencyMicros() {
+        long count = forceCount;
+        return count == 0 ? 0L : TimeUnit.NANOSECONDS.toMicros(totalForceNanos / count);
+    }
+
+    /**
+     * @return the total duration of the disk forces in microseconds.
+     */
+    long getTotalForceLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(totalForceNanos);
+    }
+
+    /**
+     * @return the longest duration of a disk force in microseconds.
+     */
+    long getMaxForceLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxForceNanos);
+    }
+
+    /*
+     * Internal impl.
+     */
+
+    /**
+     * Wait until the batching window elapses or enough threads joined the batch. Must be called with lock held.
+     */
+    private void awaitBatchWindow() {
+        long remaining = windowNanos;
+        while (remaining > 0L && waitingCount + 1 < maxBatchSize) {
+            try {
+                remaining = batchFull.awaitNanos(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void updateStatistics(int batchSize, long elapsedNanos) {
+        forceCount++;
+        forceRequestCount += batchSize;
+        if (batchSize > maxForceBatchSize) {
+            maxForceBatchSize = batchSize;
+        }
+        totalForceNanos += elapsedNanos;
+        if (elapsedNanos > maxForceNanos) {
+            maxForceNanos = elapsedNanos;
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Implementation of a journal that writes on a two-files disk log mapped in memory.
+ * <p>It works exactly like the {@link DiskJournal} and uses the very same files, except that records are appended with
+ * plain memory stores into the mapped files and forces synchronize the used part of the mapped active file instead of
+ * the whole file channel. Files written by one implementation can be read by the other, so switching from one to the
+ * other is safe.</p>
+ * <p>The journal fragments must not be larger than 2 GB. Configurable properties are the same as the disk journal's,
+ * all starting with <code>bitronix.tm.journal.disk</code>.</p>
+ *
+ * @see bitronix.tm.Configuration
+ */
+public class MappedDiskJournal extends DiskJournal {
+
+    /**
+     * Create an uninitialized mapped disk journal. You must call open() prior you can use it.
+     */
+    public MappedDiskJournal() {
+    }
+
+    @Override
+    protected TransactionLogAppender createTransactionLogAppender(File file, long maxFileLength) throws IOException {
+        return new MappedTransactionLogAppender(file, maxFileLength);
+    }
+
+    @Override
+    public String toString() {
+        return "a MappedDiskJournal";
+    }
+}
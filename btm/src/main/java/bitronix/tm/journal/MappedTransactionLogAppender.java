@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Used to write {@link TransactionLogRecord} objects to a log file mapped in memory.
+ * <p>Records and header fields are serialized straight into the mapped file region, forcing the log synchronizes the
+ * used part of the mapped region with the underlying disk device. The file content is exactly the same as the one
+ * written by {@link TransactionLogAppender}.</p>
+ */
+final class MappedTransactionLogAppender extends TransactionLogAppender {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedTransactionLogAppender.class);
+
+    private final MappedByteBuffer mappedFile;
+
+    /**
+     * Create an appender that will map the specified file up to the specified maximum length.
+     *
+     * @param file          the underlying File used to write to disk.
+     * @param maxFileLength size of the file on disk that can never be bypassed.
+     * @throws IOException if an I/O error occurs or if the file is too large to be mapped.
+     */
+    MappedTransactionLogAppender(File file, long maxFileLength) throws IOException {
+        super(file, checkMappable(file, maxFileLength));
+        this.mappedFile = getFileChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxFileLength);
+        getHeader().map(mappedFile);
+    }
+
+    private static long checkMappable(File file, long maxFileLength) throws IOException {
+        if (maxFileLength > Integer.MAX_VALUE) {
+            throw new IOException("transaction log file " + file.getName() + " is too large to be mapped in memory (" + maxFileLength + " bytes)");
+        }
+        return maxFileLength;
+    }
+
+    @Override
+    protected ByteBuffer getWriteBuffer(long writePosition, int size) {
+        return mappedFile.slice((int) writePosition, size);
+    }
+
+    @Override
+    protected void flushWriteBuffer(ByteBuffer buf, long writePosition) {
+        // records have been serialized straight into the mapped file region
+    }
+
+    @Override
+    protected void force() throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("forcing mapped log writing");
+        }
+        mappedFile.force(0, (int) getPosition());
+        if (log.isDebugEnabled()) {
+            log.debug("done forcing mapped log");
+        }
+    }
+
+    @Override
+    protected void close() throws IOException {
+        getHeader().setState(TransactionLogHeader.CLEAN_LOG_STATE);
+        mappedFile.force();
+        super.close();
+    }
+
+    @Override
+    public String toString() {
+        return "a MappedTransactionLogAppender on " + getFileName();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of the unique names and server ID written to a log file in the compact format, used to serialize
+ * records in that format, see {@link CompactRecordFormat}.
+ * <p>Records referring to known entries only are serialized without locking. A record introducing new entries must
+ * be serialized with {@link #encodeDefining(TransactionLogRecord)} while holding this object's monitor, and its
+ * position reserved before the new entries are published with {@link #endDefining(boolean)}: any record referring to
+ * them is then reserved a later position in the file, after their definitions.</p>
+ */
+final class NameDictionary {
+
+    private final byte[] serverId;
+
+    // published entries, readable without locking
+    private final ConcurrentMap<String, Integer> uniqueNameEntries = new ConcurrentHashMap<>();
+    private volatile int serverIdEntry = -1;
+
+    // ISO-8859-1 decoded entry -> entry number, guarded by this
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int size;
+
+    // entries defined by the record being reserved, guarded by this
+    private final Map<String, Integer> pendingEntries = new LinkedHashMap<>();
+    private final Map<String, Integer> pendingUniqueNames = new HashMap<>();
+    private final List<byte[]> pendingDefinitions = new ArrayList<>();
+    private int pendingServerIdEntry = -1;
+
+    /**
+     * @param serverId the server ID of this transaction manager, prefixing the GTRIDs it generates.
+     */
+    NameDictionary(byte[] serverId) {
+        this.serverId = serverId;
+    }
+
+    /**
+     * Load the entries read from the beginning of a log file, before records get appended to it.
+     *
+     * @param definitions the entries in entry number order.
+     */
+    synchronized void load(List<byte[]> definitions) {
+        for (byte[] definition : definitions) {
+            int entryNumber = size++;
+            entries.put(new String(definition, StandardCharsets.ISO_8859_1), entryNumber);
+            uniqueNameEntries.putIfAbsent(new String(definition, StandardCharsets.US_ASCII), entryNumber);
+            if (serverIdEntry < 0 && Arrays.equals(definition, serverId)) {
+                serverIdEntry = entryNumber;
+            }
+        }
+    }
+
+    /**
+     * Serialize a record referring to known entries only.
+     *
+     * @param tlog the record.
+     * @return the serialized record or null if the record refers to an unknown entry.
+     */
+    byte[] encode(TransactionLogRecord tlog) {
+        int serverIdEntry = -1;
+        if (CompactRecordFormat.isPrefixedBy(tlog.getGtrid(), serverId)) {
+            serverIdEntry = this.serverIdEntry;
+            if (serverIdEntry < 0) {
+                return null;
+            }
+        }
+
+        Set<String> uniqueNames = tlog.getUniqueNames();
+        int[] uniqueNameEntries = new int[uniqueNames.size()];
+        int i = 0;
+        for (String uniqueName : uniqueNames) {
+            Integer entry = this.uniqueNameEntries.get(uniqueName);
+            if (entry == null) {
+                return null;
+            }
+            uniqueNameEntries[i++] = entry;
+        }
+
+        ByteBuffer buf = RecordBuffers.heapBuffer(CompactRecordFormat.maxTransactionLength(tlog));
+        CompactRecordFormat.writeTransaction(buf, tlog, serverIdEntry, uniqueNameEntries);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    /**
+     * Serialize a record preceded by the definitions of the entries it refers to which are not known yet. The caller
+     * must hold this object's monitor and call {@link #endDefining(boolean)} once the record's position is reserved.
+     *
+     * @param tlog the record.
+     * @return the serialized definitions and record.
+     */
+    byte[] encodeDefining(TransactionLogRecord tlog) {
+        int serverIdEntry = -1;
+        if (CompactRecordFormat.isPrefixedBy(tlog.getGtrid(), serverId)) {
+            serverIdEntry = this.serverIdEntry;
+            if (serverIdEntry < 0) {
+                serverIdEntry = define(serverId);
+                pendingServerIdEntry = serverIdEntry;
+            }
+        }
+
+        Set<String> uniqueNames = tlog.getUniqueNames();
+        int[] uniqueNameEntries = new int[uniqueNames.size()];
+        int i = 0;
+        for (String uniqueName : uniqueNames) {
+            Integer entry = this.uniqueNameEntries.get(uniqueName);
+            if (entry == null) {
+                entry = define(TransactionLogRecord.encodeName(uniqueName));
+                pendingUniqueNames.put(uniqueName, entry);
+            }
+            uniqueNameEntries[i++] = entry;
+        }
+
+        int length = CompactRecordFormat.maxTransactionLength(tlog);
+        for (byte[] definition : pendingDefinitions) {
+            length += CompactRecordFormat.maxDefinitionLength(definition);
+        }
+        ByteBuffer buf = RecordBuffers.heapBuffer(length);
+        int entryNumber = size;
+        for (byte[] definition : pendingDefinitions) {
+            CompactRecordFormat.writeDefinition(buf, entryNumber++, definition);
+        }
+        CompactRecordFormat.writeTransaction(buf, tlog, serverIdEntry, uniqueNameEntries);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    /**
+     * Publish or forget the entries defined by the last call to {@link #encodeDefining(TransactionLogRecord)}.
+     *
+     * @param reserved true if the definitions have been reserved a position in the file, false if they won't be
+     *                 written.
+     */
+    void endDefining(boolean reserved) {
+        if (reserved) {
+            entries.putAll(pendingEntries);
+            size += pendingDefinitions.size();
+            uniqueNameEntries.putAll(pendingUniqueNames);
+            if (pendingServerIdEntry >= 0) {
+                serverIdEntry = pendingServerIdEntry;
+            }
+        }
+        pendingEntries.clear();
+        pendingUniqueNames.clear();
+        pendingDefinitions.clear();
+        pendingServerIdEntry = -1;
+    }
+
+    private int define(byte[] definition) {
+        String key = new String(definition, StandardCharsets.ISO_8859_1);
+        Integer entry = entries.get(key);
+        if (entry == null) {
+            entry = pendingEntries.get(key);
+        }
+        if (entry == null) {
+            entry = size + pendingDefinitions.size();
+            pendingEntries.put(key, entry);
+            pendingDefinitions.add(definition);
+        }
+        return entry;
+    }
+
+}
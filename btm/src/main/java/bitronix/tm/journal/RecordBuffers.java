@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-thread scratch buffers used to serialize {@link TransactionLogRecord}s without allocating a buffer per record.
+ * <p>Buffers grow on demand up to {@link #MAX_CACHED_CAPACITY}; larger requests get a temporary buffer that is not
+ * kept around. A returned buffer is cleared and its limit set to the requested capacity, it must not be used anymore
+ * once the calling thread requests another buffer of the same kind.</p>
+ */
+final class RecordBuffers {
+
+    static final int MAX_CACHED_CAPACITY = 16 * 1024;
+    private static final int INITIAL_CAPACITY = 512;
+
+    private static final ThreadLocal<ByteBuffer> heapBuffers = new ThreadLocal<>();
+    private static final ThreadLocal<ByteBuffer> directBuffers = new ThreadLocal<>();
+
+    private RecordBuffers() {
+    }
+
+    /**
+     * Get the calling thread's heap buffer. Its backing array always starts at offset 0.
+     *
+     * @param capacity the required capacity.
+     * @return a cleared buffer with its limit set to capacity.
+     */
+    static ByteBuffer heapBuffer(int capacity) {
+        return get(heapBuffers, capacity, false);
+    }
+
+    /**
+     * Get the calling thread's direct buffer, suitable for writing to a {@link java.nio.channels.FileChannel} without
+     * an extra copy.
+     *
+     * @param capacity the required capacity.
+     * @return a cleared buffer with its limit set to capacity.
+     */
+    static ByteBuffer directBuffer(int capacity) {
+        return get(directBuffers, capacity, true);
+    }
+
+    private static ByteBuffer get(ThreadLocal<ByteBuffer> buffers, int capacity, boolean direct) {
+        ByteBuffer buf = buffers.get();
+        if (buf == null || buf.capacity() < capacity) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+            buf = direct ? ByteBuffer.allocateDirect(newCapacity) : ByteBuffer.allocate(newCapacity);
+            if (newCapacity <= MAX_CACHED_CAPACITY) {
+                buffers.set(buf);
+            }
+        }
+        buf.clear();
+        buf.limit(capacity);
+        return buf;
+    }
+
+}
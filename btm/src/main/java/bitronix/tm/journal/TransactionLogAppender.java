@@ -15,8 +15,7 @@
  */
 package bitronix.tm.journal;
 
-import bitronix.tm.utils.Uid;
-import jakarta.transaction.Status;
+import bitronix.tm.TransactionManagerServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,8 +25,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import java.util.*;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Used to write {@link TransactionLogRecord} objects to a log file.
@@ -53,8 +53,12 @@ public class TransactionLogAppender {
     private final TransactionLogHeader header;
     private final long maxFileLength;
     private final AtomicInteger outstandingWrites;
-    private final HashMap<Uid, Set<String>> danglingRecords;
-    private long position;
+    private final AtomicLong position;
+    private final byte[] serverId;
+    /**
+     * Dictionary of the file when it is in the compact format, null when it is in the original format.
+     */
+    private volatile NameDictionary dictionary;
 
     /**
      * Create an appender that will write to specified file up to the specified maximum length.
@@ -76,34 +80,75 @@ public class TransactionLogAppender {
 
         this.outstandingWrites = new AtomicInteger();
 
-        this.danglingRecords = new HashMap<>();
+        this.position = new AtomicLong(header.getPosition());
+        this.serverId = TransactionManagerServices.getConfiguration().buildServerIdArray();
+        this.dictionary = createDictionary(header.getFormatVersion());
+    }
 
-        this.position = header.getPosition();
+    private NameDictionary createDictionary(int formatVersion) {
+        return formatVersion == TransactionLogHeader.FORMAT_VERSION_2 ? new NameDictionary(serverId) : null;
     }
 
     /**
      * Get the current file position and advance the position by recordSize if
-     * the maximum file length won't be exceeded.  Callers to this method are
-     * synchronized within the DiskJournal and it is guaranteed there will
-     * never be two callers to this method.  This creates a Java memory barrier
-     * that guarantees that 'position' will never be viewed inconsistently
-     * between threads.
+     * the maximum file length won't be exceeded. The position is reserved with
+     * a compare-and-set loop so that any number of threads can concurrently
+     * call this method, each of them getting a distinct region of the file.
+     * <p>The outstanding writes counter is incremented before the position is
+     * advanced so that the header position can never cover a reserved region
+     * that has not been written yet, see {@link #writesCompleted(int)}.</p>
+     *
+     * <p>When the file is in the compact format, the record is serialized in that format first. Dictionary entries
+     * the record introduces are reserved together with it.</p>
      *
      * @param tlog the TransactionLogRecord
      * @return true if the log should rollover, false otherwise
-     * @throws IOException if an I/O error occurs
+     * @throws IOException if the record is larger than the file
      */
     protected boolean setPositionAndAdvance(TransactionLogRecord tlog) throws IOException {
-        int tlogSize = tlog.calculateTotalRecordSize();
-        if (position + tlogSize > maxFileLength) {
-            return true;
+        NameDictionary names = dictionary;
+        if (names == null) {
+            tlog.setCompactForm(null);
+            return reserve(tlog);
         }
 
-        long writePosition = position;
-        position += tlogSize;
-        tlog.setWritePosition(writePosition);
+        byte[] compactForm = names.encode(tlog);
+        if (compactForm != null) {
+            tlog.setCompactForm(compactForm);
+            return reserve(tlog);
+        }
+
+        // new entries must be published only once their definitions have a position, before any record using them
+        synchronized (names) {
+            boolean reserved = false;
+            try {
+                tlog.setCompactForm(names.encodeDefining(tlog));
+                boolean rollover = reserve(tlog);
+                reserved = !rollover;
+                return rollover;
+            } finally {
+                names.endDefining(reserved);
+            }
+        }
+    }
+
+    private boolean reserve(TransactionLogRecord tlog) throws IOException {
+        int tlogSize = tlog.getWriteSize();
+        if (tlogSize > maxFileLength - TransactionLogHeader.HEADER_LENGTH) {
+            throw new IOException("record of " + tlogSize + " bytes cannot fit in transaction log file " + file.getName() + " of " + maxFileLength + " bytes");
+        }
 
         outstandingWrites.incrementAndGet();
+        long writePosition;
+        do {
+            writePosition = position.get();
+            if (writePosition + tlogSize > maxFileLength) {
+                writesCompleted(1);
+                return true;
+            }
+        } while (!position.compareAndSet(writePosition, writePosition + tlogSize));
+
+        tlog.setWritePosition(writePosition);
         return false;
     }
 
@@ -115,114 +160,168 @@ public class TransactionLogAppender {
      */
     protected void writeLog(TransactionLogRecord tlog) throws IOException {
         try {
-            int status = tlog.getStatus();
-            Uid gtrid = tlog.getGtrid();
-
-            int recordSize = tlog.calculateTotalRecordSize();
-            ByteBuffer buf = ByteBuffer.allocate(recordSize);
-            buf.putInt(tlog.getStatus());
-            buf.putInt(tlog.getRecordLength());
-            buf.putInt(tlog.getHeaderLength());
-            buf.putLong(tlog.getTime());
-            buf.putInt(tlog.getSequenceNumber());
-            buf.putInt(tlog.getCrc32());
-            buf.put((byte) gtrid.getArray().length);
-            buf.put(gtrid.getArray());
-            Set<String> uniqueNames = tlog.getUniqueNames();
-            buf.putInt(uniqueNames.size());
-            for (String uniqueName : uniqueNames) {
-                buf.putShort((short) uniqueName.length());
-                buf.put(uniqueName.getBytes());
-            }
-            buf.putInt(tlog.getEndRecord());
-            buf.flip();
+            final long writePosition = tlog.getWritePosition();
+            final int size = tlog.getWriteSize();
+            ByteBuffer buf = getWriteBuffer(writePosition, size);
+            tlog.writeRecord(buf);
 
             if (log.isDebugEnabled()) {
-                log.debug("between " + tlog.getWritePosition() + " and " + tlog.getWritePosition() + tlog.calculateTotalRecordSize() + ", writing " + tlog);
+                log.debug("between " + writePosition + " and " + (writePosition + size) + ", writing " + tlog);
             }
 
-            final long writePosition = tlog.getWritePosition();
-            while (buf.hasRemaining()) {
-                fc.write(buf, writePosition + buf.position());
-            }
-
-            trackOutstanding(status, gtrid, uniqueNames);
+            flushWriteBuffer(buf, writePosition);
         } finally {
-            if (outstandingWrites.decrementAndGet() == 0) {
-                header.setPosition(position);
-            }
+            tlog.setCompactForm(null);
+            writesCompleted(1);
         }
     }
 
-    protected List<TransactionLogRecord> getDanglingLogs() {
-        synchronized (danglingRecords) {
-            List<Uid> sortedUids = new ArrayList<>(danglingRecords.keySet());
-            sortedUids.sort(Comparator.comparingInt(Uid::extractSequence));
+    /**
+     * Write several {@link TransactionLogRecord}s to disk. Records which positions are contiguous are serialized
+     * together and written with a single write call.
+     *
+     * @param tlogs the records to write to disk, their positions must all have been set with
+     *              {@link #setPositionAndAdvance(TransactionLogRecord)}.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void writeLogs(List<TransactionLogRecord> tlogs) throws IOException {
+        try {
+            int start = 0;
+            while (start < tlogs.size()) {
+                final long writePosition = tlogs.get(start).getWritePosition();
+                int size = tlogs.get(start).getWriteSize();
+                int end = start + 1;
+                while (end < tlogs.size()) {
+                    TransactionLogRecord next = tlogs.get(end);
+                    int nextSize = next.getWriteSize();
+                    if (next.getWritePosition() != writePosition + size || size + nextSize > RecordBuffers.MAX_CACHED_CAPACITY) {
+                        break;
+                    }
+                    size += nextSize;
+                    end++;
+                }
 
-            List<TransactionLogRecord> outstandingLogs = new ArrayList<>(danglingRecords.size());
-            for (Uid uid : sortedUids) {
-                Set<String> uniqueNames = danglingRecords.get(uid);
-                outstandingLogs.add(new TransactionLogRecord(Status.STATUS_COMMITTING, uid, uniqueNames));
-            }
+                ByteBuffer buf = getWriteBuffer(writePosition, size);
+                for (int i = start; i < end; i++) {
+                    tlogs.get(i).writeRecord(buf);
+                    tlogs.get(i).setCompactForm(null);
+                }
 
-            return outstandingLogs;
-        }
-    }
+                if (log.isDebugEnabled()) {
+                    log.debug("between " + writePosition + " and " + (writePosition + size) + ", writing " + (end - start) + " record(s)");
+                }
 
-    protected void clearDanglingLogs() {
-        synchronized (danglingRecords) {
-            danglingRecords.clear();
+                flushWriteBuffer(buf, writePosition);
+                start = end;
+            }
+        } finally {
+            writesCompleted(tlogs.size());
         }
     }
 
     /**
-     * This method tracks outstanding (uncommitted) resources by gtrid.  Access
-     * to the danglingRecords map, and the TreeSets contained within are guarded
-     * by a synchronization lock on danglingRecords itself.
+     * Account for completed writes and update the header position once no write is outstanding anymore. The
+     * position is read after the counter dropped to zero and only stored if the counter is still zero: a reservation
+     * made in between could otherwise be covered by the header before it is written.
      *
-     * @param status      the transaction log record status
-     * @param gtrid       the transaction id
-     * @param uniqueNames the set of uniquely named resources
+     * @param count the amount of completed writes.
+     * @throws IOException if an I/O error occurs.
      */
-    private void trackOutstanding(int status, Uid gtrid, Set<String> uniqueNames) {
-        if (uniqueNames.isEmpty()) {
-            return;
-        }
-
-        switch (status) {
-            case Status.STATUS_COMMITTING: {
-                synchronized (danglingRecords) {
-                    Set<String> outstanding = danglingRecords.get(gtrid);
-                    if (outstanding == null) {
-                        outstanding = new TreeSet<>(uniqueNames);
-                        danglingRecords.put(gtrid, outstanding);
+    private void writesCompleted(int count) throws IOException {
+        if (outstandingWrites.addAndGet(-count) == 0) {
+            long writtenPosition = position.get();
+            if (outstandingWrites.get() == 0) {
+                synchronized (header) {
+                    // concurrent updates may complete out of order, the header position must never move backwards
+                    if (writtenPosition > header.getPosition()) {
+                        header.setPosition(writtenPosition);
                     }
-                    outstanding.addAll(uniqueNames);
                 }
-                break;
-            }
-            case Status.STATUS_ROLLEDBACK:
-            case Status.STATUS_COMMITTED:
-            case Status.STATUS_UNKNOWN: {
-                synchronized (danglingRecords) {
-                    Set<String> outstanding = danglingRecords.get(gtrid);
-                    if (outstanding != null && outstanding.removeAll(uniqueNames) && outstanding.isEmpty()) {
-                        danglingRecords.remove(gtrid);
-                    }
-                }
-                break;
             }
         }
     }
 
     /**
-     * Return a {@link TransactionLogHeader} that allows reading and controlling the log file's header.
+     * Get the buffer to which records about to be written at the specified position must be serialized.
+     *
+     * @param writePosition the position in the file at which the records will be written.
+     * @param size          the total size of the records.
+     * @return a buffer with exactly size bytes remaining.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected ByteBuffer getWriteBuffer(long writePosition, int size) throws IOException {
+        return RecordBuffers.directBuffer(size);
+    }
+
+    /**
+     * Write the records serialized in a buffer returned by {@link #getWriteBuffer(long, int)} to the file.
+     *
+     * @param buf           the buffer containing the serialized records.
+     * @param writePosition the position in the file at which the records must be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void flushWriteBuffer(ByteBuffer buf, long writePosition) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            fc.write(buf, writePosition + buf.position());
+        }
+    }
+
+    /**
+     * Move the position back to the beginning of the file, which is then written in the specified format.
      *
+     * @param formatVersion the version of the on-disk format of the records, see
+     *                      {@link TransactionLogHeader#FORMAT_VERSION_2}.
      * @throws IOException if an I/O error occurs
      */
-    void rewind() throws IOException {
-        header.rewind();
-        position = header.getPosition();
+    void rewind(int formatVersion) throws IOException {
+        synchronized (header) {
+            header.rewind();
+            header.setFormatVersion(formatVersion);
+            position.set(header.getPosition());
+            dictionary = createDictionary(formatVersion);
+        }
+    }
+
+    /**
+     * Load the dictionary of a file in the compact format, which must be done once the file has been read to the
+     * end and before records get appended to it.
+     *
+     * @param cursor the cursor which read the file.
+     */
+    void loadDictionary(TransactionLogCursor cursor) {
+        NameDictionary names = dictionary;
+        if (names != null) {
+            names.load(cursor.getDictionary());
+        }
+    }
+
+    /**
+     * @return the version of the on-disk format of the records.
+     */
+    int getFormatVersion() {
+        return header.getFormatVersion();
+    }
+
+    /**
+     * @return the name of the underlying file.
+     */
+    String getFileName() {
+        return file.getName();
+    }
+
+    /**
+     * @return the channel of the underlying file.
+     */
+    FileChannel getFileChannel() {
+        return fc;
+    }
+
+    /**
+     * @return the header of the underlying file.
+     */
+    TransactionLogHeader getHeader() {
+        return header;
     }
 
     /**
@@ -269,7 +368,7 @@ public class TransactionLogAppender {
      * @return the file position
      */
     public long getPosition() {
-        return position;
+        return position.get();
     }
 
 
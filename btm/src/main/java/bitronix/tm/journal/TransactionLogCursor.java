@@ -25,11 +25,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
- * Used to read {@link TransactionLogRecord} objects from a log file.
+ * Used to read {@link TransactionLogRecord} objects from a log file in any version of the on-disk format.
+ * <p>When the file is in the compact format, the dictionary definition records are consumed while reading and are not
+ * returned, see {@link CompactRecordFormat}.</p>
  *
  * @author Ludovic Orban
  */
@@ -43,6 +48,9 @@ public class TransactionLogCursor {
     private long currentPosition;
     private final long endPosition;
     private final ByteBuffer page;
+    private final int formatVersion;
+    private final List<byte[]> dictionary = new ArrayList<>();
+    private final List<String> dictionaryNames = new ArrayList<>();
 
     /**
      * Create a TransactionLogCursor that will read from the specified file.
@@ -56,11 +64,27 @@ public class TransactionLogCursor {
         this.fileChannel = fis.getChannel();
         this.page = ByteBuffer.allocate(8192);
 
-        fileChannel.position(TransactionLogHeader.CURRENT_POSITION_HEADER);
+        fileChannel.position(TransactionLogHeader.FORMAT_ID_HEADER);
         fileChannel.read(page);
         page.rewind();
+        formatVersion = TransactionLogHeader.formatVersionOf(page.getInt());
+        page.position(TransactionLogHeader.CURRENT_POSITION_HEADER);
         endPosition = page.getLong();
-        currentPosition = TransactionLogHeader.CURRENT_POSITION_HEADER + 8;
+        currentPosition = TransactionLogHeader.HEADER_LENGTH;
+    }
+
+    /**
+     * @return the version of the on-disk format of the file, see {@link TransactionLogHeader#FORMAT_VERSION_2}.
+     */
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    /**
+     * @return the dictionary entries read so far from a file in the compact format, in entry number order.
+     */
+    List<byte[]> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
     }
 
     /**
@@ -83,6 +107,10 @@ public class TransactionLogCursor {
      * @throws IOException if an I/O error occurs.
      */
     public TransactionLogRecord readLog(boolean skipCrcCheck) throws IOException {
+        if (formatVersion == TransactionLogHeader.FORMAT_VERSION_2) {
+            return readCompactLog(skipCrcCheck);
+        }
+
         if (currentPosition >= endPosition) {
             if (log.isDebugEnabled()) {
                 log.debug("end of transaction log file reached at {}", currentPosition);
@@ -182,6 +210,140 @@ public class TransactionLogCursor {
         return tlog;
     }
 
+    private TransactionLogRecord readCompactLog(boolean skipCrcCheck) throws IOException {
+        while (true) {
+            if (currentPosition >= endPosition) {
+                if (log.isDebugEnabled()) {
+                    log.debug("end of transaction log file reached at {}", currentPosition);
+                }
+                return null;
+            }
+
+            ensureAvailable(1 + CompactRecordFormat.MAX_VAR_INT_LENGTH);
+            final int recordStart = page.position();
+            final int type = page.get() & 0xFF;
+            final int recordLength = CompactRecordFormat.getVarInt(page);
+            currentPosition += page.position() - recordStart;
+
+            if (recordLength < 4 || currentPosition + recordLength > endPosition) {
+                throw new CorruptedTransactionLogException("corrupted log found at position " + currentPosition
+                        + " (record terminator outside of file bounds: " + (currentPosition + recordLength) + " of "
+                        + endPosition + ", recordLength: " + recordLength + ")");
+            }
+            if (recordLength + 1 + CompactRecordFormat.MAX_VAR_INT_LENGTH > page.capacity()) {
+                throw new CorruptedTransactionLogException("corrupted log found at position " + currentPosition
+                        + " (record too long, recordLength: " + recordLength + ")");
+            }
+            ensureAvailable(recordLength + 1 + CompactRecordFormat.MAX_VAR_INT_LENGTH);
+            final long recordPosition = currentPosition;
+            final int endOfRecordPosition = page.position() + recordLength;
+            currentPosition += recordLength;
+
+            if (page.getInt(endOfRecordPosition - 4) != TransactionLogAppender.END_RECORD) {
+                page.position(endOfRecordPosition);
+                throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition + " (no record terminator found)");
+            }
+
+            try {
+                if (type == CompactRecordFormat.DEFINITION_RECORD) {
+                    readDefinition(recordPosition, endOfRecordPosition);
+                    continue;
+                }
+                return readCompactTransaction(type, recordPosition, endOfRecordPosition, skipCrcCheck);
+            } finally {
+                page.position(endOfRecordPosition);
+            }
+        }
+    }
+
+    private void readDefinition(long recordPosition, int endOfRecordPosition) throws CorruptedTransactionLogException {
+        final int entryNumber = CompactRecordFormat.getVarInt(page);
+        final int length = CompactRecordFormat.getVarInt(page);
+        if (entryNumber != dictionary.size()) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (dictionary entry " + entryNumber + " defined after " + dictionary.size() + " entries)");
+        }
+        if (length < 0 || page.position() + length + 4 != endOfRecordPosition) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (dictionary entry length " + length + " does not match the record length)");
+        }
+
+        final byte[] entry = new byte[length];
+        page.get(entry);
+        dictionary.add(entry);
+        dictionaryNames.add(new String(entry, StandardCharsets.US_ASCII));
+    }
+
+    private TransactionLogRecord readCompactTransaction(int status, long recordPosition, int endOfRecordPosition, boolean skipCrcCheck) throws CorruptedTransactionLogException {
+        final long time = page.getLong();
+        final int sequenceNumber = CompactRecordFormat.getVarInt(page);
+        final int crc32 = page.getInt();
+
+        final byte[] gtridArray;
+        final int serverIdEntry = CompactRecordFormat.getVarInt(page) - 1;
+        if (serverIdEntry < 0) {
+            final int gtridSize = page.get() & 0xFF;
+            if (page.position() + gtridSize + 4 > endOfRecordPosition) {
+                throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                        + " (GTRID size too long)");
+            }
+            gtridArray = new byte[gtridSize];
+            page.get(gtridArray);
+        } else {
+            final byte[] serverId = getEntry(serverIdEntry, recordPosition);
+            gtridArray = new byte[serverId.length + CompactRecordFormat.GTRID_SUFFIX_LENGTH];
+            System.arraycopy(serverId, 0, gtridArray, 0, serverId.length);
+            page.get(gtridArray, serverId.length, CompactRecordFormat.GTRID_SUFFIX_LENGTH);
+        }
+        final Uid gtrid = new Uid(gtridArray);
+
+        final int uniqueNamesCount = CompactRecordFormat.getVarInt(page);
+        if (uniqueNamesCount < 0 || page.position() + uniqueNamesCount + 4 > endOfRecordPosition) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (unique names too long, count: " + uniqueNamesCount + ")");
+        }
+        final Set<String> uniqueNames = new HashSet<>();
+        for (int i = 0; i < uniqueNamesCount; i++) {
+            int entryNumber = CompactRecordFormat.getVarInt(page);
+            getEntry(entryNumber, recordPosition);
+            uniqueNames.add(dictionaryNames.get(entryNumber));
+        }
+        if (page.position() + 4 != endOfRecordPosition) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (record content does not match the record length)");
+        }
+
+        TransactionLogRecord tlog = TransactionLogRecord.restoreCompact(status, time, sequenceNumber, crc32, gtrid, uniqueNames);
+
+        // check that CRC is okay
+        if (!skipCrcCheck && !tlog.isCrc32Correct()) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + "(invalid CRC, recorded: " + tlog.getCrc32() + ", calculated: " + tlog.calculateCrc32() + ")");
+        }
+
+        return tlog;
+    }
+
+    private byte[] getEntry(int entryNumber, long recordPosition) throws CorruptedTransactionLogException {
+        if (entryNumber < 0 || entryNumber >= dictionary.size()) {
+            throw new CorruptedTransactionLogException("corrupted log found at position " + recordPosition
+                    + " (undefined dictionary entry " + entryNumber + ")");
+        }
+        return dictionary.get(entryNumber);
+    }
+
+    /**
+     * Make sure the page contains at least the specified amount of bytes after its position, reading more of the
+     * file if needed.
+     */
+    private void ensureAvailable(int length) throws IOException {
+        if (page.position() + length > page.limit()) {
+            page.compact();
+            fileChannel.read(page);
+            page.rewind();
+        }
+    }
+
     /**
      * Close the cursor and the underlying file
      *
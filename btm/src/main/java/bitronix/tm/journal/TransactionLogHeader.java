@@ -15,6 +15,7 @@
  */
 package bitronix.tm.journal;
 
+import bitronix.tm.BitronixXid;
 import bitronix.tm.utils.Decoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +28,8 @@ import java.nio.channels.FileChannel;
  * Used to control a log file's header.
  * <p>The physical data is read when this object is created then cached. Calling setter methods sets the header field
  * then moves the file pointer back to the previous location.</p>
+ * <p>Once {@link #map(ByteBuffer)} has been called, setters store the header fields in the mapped file region instead
+ * of writing them through the file channel.</p>
  *
  * @author Ludovic Orban
  */
@@ -59,6 +62,22 @@ public class TransactionLogHeader {
      */
     public static final int HEADER_LENGTH = CURRENT_POSITION_HEADER + 8;
 
+    /**
+     * Version of the original on-disk format, see {@link TransactionLogRecord}.
+     */
+    public static final int FORMAT_VERSION_1 = 1;
+
+    /**
+     * Version of the compact on-disk format, see {@link CompactRecordFormat}.
+     */
+    public static final int FORMAT_VERSION_2 = 2;
+
+    /**
+     * int-encoded "Btm2" ASCII string stored in place of the format ID by files in {@link #FORMAT_VERSION_2}. Files
+     * in {@link #FORMAT_VERSION_1} store {@link bitronix.tm.BitronixXid#FORMAT_ID}.
+     */
+    public static final int FORMAT_VERSION_2_ID = 0x42746d32;
+
     /**
      * State of the log file when it has been closed properly.
      */
@@ -71,6 +90,7 @@ public class TransactionLogHeader {
 
     private final FileChannel fc;
     private final long maxFileLength;
+    private volatile ByteBuffer mappedFile;
 
     private volatile int formatId;
     private volatile long timestamp;
@@ -105,6 +125,15 @@ public class TransactionLogHeader {
         }
     }
 
+    /**
+     * Store header fields in the specified mapped region of the file instead of writing them through the file channel.
+     *
+     * @param mappedFile a buffer mapping the log file, starting at offset 0.
+     */
+    void map(ByteBuffer mappedFile) {
+        this.mappedFile = mappedFile;
+    }
+
     /**
      * Get FORMAT_ID_HEADER.
      *
@@ -115,6 +144,15 @@ public class TransactionLogHeader {
         return formatId;
     }
 
+    /**
+     * Get the version of the on-disk format of the records, which is derived from FORMAT_ID_HEADER.
+     *
+     * @return {@link #FORMAT_VERSION_2} if the file is in the compact format, {@link #FORMAT_VERSION_1} otherwise.
+     */
+    public int getFormatVersion() {
+        return formatVersionOf(formatId);
+    }
+
     /**
      * Get TIMESTAMP_HEADER.
      *
@@ -153,15 +191,30 @@ public class TransactionLogHeader {
      * @see #FORMAT_ID_HEADER
      */
     public void setFormatId(int formatId) throws IOException {
-        ByteBuffer buf = ByteBuffer.allocate(8);
-        buf.putInt(formatId);
-        buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, FORMAT_ID_HEADER + buf.position());
+        ByteBuffer mapped = mappedFile;
+        if (mapped != null) {
+            mapped.putInt(FORMAT_ID_HEADER, formatId);
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            buf.putInt(formatId);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                fc.write(buf, FORMAT_ID_HEADER + buf.position());
+            }
         }
         this.formatId = formatId;
     }
 
+    /**
+     * Set FORMAT_ID_HEADER to the value identifying a version of the on-disk format of the records.
+     *
+     * @param formatVersion {@link #FORMAT_VERSION_1} or {@link #FORMAT_VERSION_2}.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void setFormatVersion(int formatVersion) throws IOException {
+        setFormatId(formatIdOf(formatVersion));
+    }
+
     /**
      * Set TIMESTAMP_HEADER.
      *
@@ -170,11 +223,16 @@ public class TransactionLogHeader {
      * @see #TIMESTAMP_HEADER
      */
     public void setTimestamp(long timestamp) throws IOException {
-        ByteBuffer buf = ByteBuffer.allocate(8);
-        buf.putLong(timestamp);
-        buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, TIMESTAMP_HEADER + buf.position());
+        ByteBuffer mapped = mappedFile;
+        if (mapped != null) {
+            mapped.putLong(TIMESTAMP_HEADER, timestamp);
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            buf.putLong(timestamp);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                fc.write(buf, TIMESTAMP_HEADER + buf.position());
+            }
         }
         this.timestamp = timestamp;
     }
@@ -187,11 +245,16 @@ public class TransactionLogHeader {
      * @see #STATE_HEADER
      */
     public void setState(byte state) throws IOException {
-        ByteBuffer buf = ByteBuffer.allocate(1);
-        buf.put(state);
-        buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, STATE_HEADER + buf.position());
+        ByteBuffer mapped = mappedFile;
+        if (mapped != null) {
+            mapped.put(STATE_HEADER, state);
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            buf.put(state);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                fc.write(buf, STATE_HEADER + buf.position());
+            }
         }
         this.state = state;
     }
@@ -211,11 +274,16 @@ public class TransactionLogHeader {
             throw new IOException("invalid position " + position + " (too high)");
         }
 
-        ByteBuffer buf = ByteBuffer.allocate(8);
-        buf.putLong(position);
-        buf.flip();
-        while (buf.hasRemaining()) {
-            fc.write(buf, CURRENT_POSITION_HEADER + buf.position());
+        ByteBuffer mapped = mappedFile;
+        if (mapped != null) {
+            mapped.putLong(CURRENT_POSITION_HEADER, position);
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            buf.putLong(position);
+            buf.flip();
+            while (buf.hasRemaining()) {
+                fc.write(buf, CURRENT_POSITION_HEADER + buf.position());
+            }
         }
 
         this.position = position;
@@ -232,6 +300,24 @@ public class TransactionLogHeader {
         setPosition(HEADER_LENGTH);
     }
 
+    /**
+     * Get the value of FORMAT_ID_HEADER identifying a version of the on-disk format of the records.
+     *
+     * @param formatVersion {@link #FORMAT_VERSION_1} or {@link #FORMAT_VERSION_2}.
+     * @return the format ID.
+     */
+    static int formatIdOf(int formatVersion) {
+        return switch (formatVersion) {
+            case FORMAT_VERSION_1 -> BitronixXid.FORMAT_ID;
+            case FORMAT_VERSION_2 -> FORMAT_VERSION_2_ID;
+            default -> throw new IllegalArgumentException("unsupported transaction log format version " + formatVersion);
+        };
+    }
+
+    static int formatVersionOf(int formatId) {
+        return formatId == FORMAT_VERSION_2_ID ? FORMAT_VERSION_2 : FORMAT_VERSION_1;
+    }
+
     /**
      * Create human-readable String representation.
      *
@@ -239,7 +325,8 @@ public class TransactionLogHeader {
      */
     @Override
     public String toString() {
-        return "a Bitronix TransactionLogHeader with timestamp=" + timestamp +
+        return "a Bitronix TransactionLogHeader with formatVersion=" + getFormatVersion() +
+                ", timestamp=" + timestamp +
                 ", state=" + Decoder.decodeHeaderState(state) +
                 ", position=" + position;
     }
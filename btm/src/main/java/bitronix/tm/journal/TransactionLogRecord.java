@@ -27,6 +27,8 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 
@@ -60,6 +62,9 @@ import java.util.zip.CRC32;
  * which makes a major difference with Mike's proposed format because here a record can vary in length: the GTRID size
  * is A bytes long (A being the GTRID length) and there can be X unique names that are Y characters long, Y being eventually
  * different for each name.</p>
+ * <p>This is version 1 of the on-disk format, records written to a file in version 2 are serialized as described in
+ * {@link CompactRecordFormat}. The values of {@link #getRecordLength()}, {@link #getHeaderLength()} and
+ * {@link #getCrc32()} always are the ones of version 1.</p>
  *
  * @author Ludovic Orban
  * @see <a href="http://jroller.com/page/pyrasun?entry=xa_exposed_part_iii_the">XA Exposed, Part III: The Implementor's Notebook</a>
@@ -71,10 +76,19 @@ public class TransactionLogRecord implements JournalRecord {
     // status + record length + record header length + current time + sequence number + checksum
     private static final int RECORD_HEADER_LENGTH = 4 + 4 + 4 + 8 + 4 + 4;
 
+    // offset of the checksum in the on-disk record, the checksum and the GTRID length are not part of the CRC
+    private static final int CRC32_OFFSET = 4 + 4 + 4 + 8 + 4;
+    private static final int GTRID_OFFSET = CRC32_OFFSET + 4 + 1;
+
+    private static final int MAX_ENCODED_NAMES = 1024;
+
     private static final Charset US_ASCII = StandardCharsets.US_ASCII;
 
     private static final AtomicInteger sequenceGenerator = new AtomicInteger();
 
+    private static final ConcurrentMap<String, byte[]> encodedNames = new ConcurrentHashMap<>();
+    private static final ThreadLocal<CRC32> checksums = ThreadLocal.withInitial(CRC32::new);
+
     private final int status;
     private int recordLength;
     private final int headerLength;
@@ -85,6 +99,7 @@ public class TransactionLogRecord implements JournalRecord {
     private final SortedSet<String> uniqueNames;
     private final int endRecord;
     private long writePosition;
+    private byte[] compactForm;
 
     /**
      * Use this constructor when restoring a log from the disk.
@@ -111,6 +126,24 @@ public class TransactionLogRecord implements JournalRecord {
         this.endRecord = endRecord;
     }
 
+    /**
+     * Use this factory when restoring a log from a disk file in the compact format.
+     *
+     * @param status         record type
+     * @param time           current time in milliseconds
+     * @param sequenceNumber atomically generated sequence number during a JVM's lifespan
+     * @param crc32          checksum of the full record in the original format
+     * @param gtrid          global transaction id
+     * @param uniqueNames    unique names of XA data sources used in this transaction
+     * @return the record.
+     */
+    static TransactionLogRecord restoreCompact(int status, long time, int sequenceNumber, int crc32, Uid gtrid, Set<String> uniqueNames) {
+        TransactionLogRecord tlog = new TransactionLogRecord(status, 0, RECORD_HEADER_LENGTH, time, sequenceNumber, crc32, gtrid,
+                uniqueNames, TransactionLogAppender.END_RECORD);
+        tlog.recordLength = tlog.calculateRecordLength();
+        return tlog;
+    }
+
     /**
      * Create a new transaction log ready to be stored.
      *
@@ -169,6 +202,37 @@ public class TransactionLogRecord implements JournalRecord {
         writePosition = position;
     }
 
+    /**
+     * Set the serialized form of this record in the compact format of the file it is about to be written to.
+     *
+     * @param compactForm the serialized record, or null to write this record in its original format.
+     */
+    void setCompactForm(byte[] compactForm) {
+        this.compactForm = compactForm;
+    }
+
+    /**
+     * @return the amount of bytes {@link #writeRecord(ByteBuffer)} writes.
+     */
+    int getWriteSize() {
+        byte[] compact = compactForm;
+        return compact != null ? compact.length : calculateTotalRecordSize();
+    }
+
+    /**
+     * Serialize this record in the format of the file it is about to be written to.
+     *
+     * @param buf the buffer to write to, it must have {@link #getWriteSize()} bytes remaining.
+     */
+    void writeRecord(ByteBuffer buf) {
+        byte[] compact = compactForm;
+        if (compact != null) {
+            buf.put(compact);
+        } else {
+            writeTo(buf);
+        }
+    }
+
     @Override
     public Set<String> getUniqueNames() {
         return Collections.unmodifiableSortedSet(uniqueNames);
@@ -222,31 +286,57 @@ public class TransactionLogRecord implements JournalRecord {
      * @return the CRC32 value of this record.
      */
     public int calculateCrc32() {
-        int total = 0;
+        recordLength = calculateRecordLength();
+
+        ByteBuffer buf = RecordBuffers.heapBuffer(calculateTotalRecordSize());
+        writeTo(buf);
+
+        CRC32 checksum = checksums.get();
+        checksum.reset();
+        checksum.update(buf.array(), 0, CRC32_OFFSET);                          // status, lengths, time and sequence number
+        checksum.update(buf.array(), GTRID_OFFSET, buf.position() - GTRID_OFFSET); // GTRID, unique names and end record
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Serialize this record in its on-disk format.
+     *
+     * @param buf the buffer to write to, it must have {@link #calculateTotalRecordSize()} bytes remaining.
+     */
+    void writeTo(ByteBuffer buf) {
+        buf.putInt(status);
+        buf.putInt(recordLength);
+        buf.putInt(headerLength);
+        buf.putLong(time);
+        buf.putInt(sequenceNumber);
+        buf.putInt(crc32);
+        buf.put((byte) gtrid.length());
+        buf.put(gtrid.getArray());
+        buf.putInt(uniqueNames.size());
         for (String uniqueName : uniqueNames) {
-            total += 2 + uniqueName.length(); // 2 bytes for storing the unique name length + unique name length
-        }
-        recordLength = total + getFixedRecordLength();
-
-        ByteBuffer buf = ByteBuffer.allocate(24 + gtrid.length() + 4 /*uniqueNames.size*/ + total + 4 /*endRecord*/);
-        buf.putInt(status);              // offset: 0
-        buf.putInt(recordLength);        // offset: 4
-        buf.putInt(headerLength);        // offset: 8
-        buf.putLong(time);               // offset: 12
-        buf.putInt(sequenceNumber);      // offset: 20
-        buf.put(gtrid.getArray());       // offset: 24
-        buf.putInt(uniqueNames.size());  // offset: 24 + gtridArray.length
-
-        for (String name : uniqueNames) {
-            buf.putShort((short) name.length());
-            buf.put(name.getBytes(US_ASCII));
+            byte[] nameBytes = encodeName(uniqueName);
+            buf.putShort((short) nameBytes.length);
+            buf.put(nameBytes);
         }
-
         buf.putInt(endRecord);
+    }
 
-        CRC32 crc32 = new CRC32();
-        crc32.update(buf.array());
-        return (int) crc32.getValue();
+    /**
+     * Get the US-ASCII encoded form of a unique name. Encoded names are cached as the set of resources is small,
+     * the returned array is shared and must not be modified.
+     *
+     * @param uniqueName the unique name to encode.
+     * @return the encoded unique name.
+     */
+    static byte[] encodeName(String uniqueName) {
+        byte[] nameBytes = encodedNames.get(uniqueName);
+        if (nameBytes == null) {
+            nameBytes = uniqueName.getBytes(US_ASCII);
+            if (encodedNames.size() < MAX_ENCODED_NAMES) {
+                encodedNames.putIfAbsent(uniqueName, nameBytes);
+            }
+        }
+        return nameBytes;
     }
 
     @Override
@@ -298,6 +388,14 @@ public class TransactionLogRecord implements JournalRecord {
         return recordLength + 4 + 4; // + status + record length
     }
 
+    private int calculateRecordLength() {
+        int total = 0;
+        for (String uniqueName : uniqueNames) {
+            total += 2 + encodeName(uniqueName).length; // 2 bytes for storing the unique name length + unique name length
+        }
+        return total + getFixedRecordLength();
+    }
+
     /**
      * Length of all the fixed size fields part of the record length header except status and record length.
      *
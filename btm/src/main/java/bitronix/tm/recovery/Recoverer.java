@@ -27,6 +27,7 @@ import bitronix.tm.utils.Decoder;
 import bitronix.tm.utils.ManagementRegistrar;
 import bitronix.tm.utils.Service;
 import bitronix.tm.utils.Uid;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jakarta.transaction.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,9 +36,13 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Recovery process implementation. Here is Mike Spille's description of XA recovery:
@@ -76,6 +81,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *   <li>commit dangling COMMITTING transactions (Mike's step 6)</li>
  *   <li>rollback any remaining recovered transaction (Mike's step 7)</li>
  * </ul>
+ * <p>Each step works on every resource independently. When the recovery parallelism is configured above 1, the work of
+ * the different resources is spread over a pool of threads so that a slow resource does not delay the others. The
+ * resources which did not complete a step within the recovery timeout are then left for the next run. As the abandoned
+ * step keeps working on its resource until the resource answers, the following runs skip that resource until the step
+ * is over.</p>
  *
  * @author Ludovic Orban
  */
@@ -83,13 +93,22 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
 
     private static final Logger log = LoggerFactory.getLogger(Recoverer.class);
 
-    private final Map<String, XAResourceProducer> registeredResources = new HashMap<>();
-    private final Map<String, Set<BitronixXid>> recoveredXidSets = new HashMap<>();
+    private final Map<String, XAResourceProducer> registeredResources = new ConcurrentHashMap<>();
+    private final Map<String, Set<BitronixXid>> recoveredXidSets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> resourceRecoveryNanos = new ConcurrentHashMap<>();
+    // resources whose step is still running after it was abandoned on timeout, kept across runs
+    private final Set<String> abandonedResources = ConcurrentHashMap.newKeySet();
+
+    // those fields are only accessed by the thread running the recovery
+    private ExecutorService executorService;
+    private long stepTimeoutNanos;
 
     private volatile Exception completionException;
     private volatile int committedCount;
     private volatile int rolledbackCount;
     private volatile int executionsCount;
+    private volatile Map<String, Long> resourceRecoveryTimesMillis = Collections.emptyMap();
+    private volatile long lastRecoveryDurationMillis;
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
     private final String jmxName;
 
@@ -119,6 +138,7 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
             return;
         }
 
+        long startNanos = System.nanoTime();
         try {
             committedCount = 0;
             rolledbackCount = 0;
@@ -130,6 +150,10 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
             // Query resources from ResourceRegistrar
             synchronized (ResourceRegistrar.class) {
                 for (String name : ResourceRegistrar.getResourcesUniqueNames()) {
+                    if (abandonedResources.contains(name)) {
+                        log.warn("recovery of resource '" + name + "' abandoned during a previous run is still in progress, skipping it");
+                        continue;
+                    }
                     registeredResources.put(name, ResourceRegistrar.get(name));
                 }
 
@@ -138,6 +162,8 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
                 }
             }
 
+            startExecutor();
+
             // 1. call recover on all known resources
             recoverAllResources();
 
@@ -162,6 +188,8 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
             this.completionException = ex;
             log.warn("recovery failed, registered resource(s): " + getRegisteredResourcesUniqueNames(), ex);
         } finally {
+            stopExecutor();
+            publishRecoveryTimes(startNanos);
             recoveredXidSets.clear();
             registeredResources.clear();
             executionsCount++;
@@ -220,37 +248,201 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
     }
 
     /**
-     * Recover all configured resources and fill the <code>recoveredXidSets</code> with all recovered XIDs.
-     * Step 1.
+     * Get the time spent working on each resource during the last recovery run, all steps included.
+     *
+     * @return a Map using resources unique names as key and the time spent on them in milliseconds as value.
      */
-    private void recoverAllResources() {
-        // a cloned registeredResources Map must be iterated as the original one can be modified in the loop
-        for (Map.Entry<String, XAResourceProducer> entry : new HashMap<String, XAResourceProducer>(registeredResources).entrySet()) {
-            String uniqueName = entry.getKey();
-            XAResourceProducer producer = entry.getValue();
+    @Override
+    public Map<String, Long> getResourceRecoveryTimesMillis() {
+        return resourceRecoveryTimesMillis;
+    }
 
-            try {
-                if (log.isDebugEnabled()) {
-                    log.debug("performing recovery on " + uniqueName);
+    /**
+     * Get the duration of the last recovery run.
+     *
+     * @return the duration of the last recovery run in milliseconds.
+     */
+    @Override
+    public long getLastRecoveryDurationMillis() {
+        return lastRecoveryDurationMillis;
+    }
+
+    /**
+     * Get the unique names of the resources on which a recovery step abandoned on timeout is still running.
+     *
+     * @return the unique names of the resources skipped by recovery until their abandoned step is over.
+     */
+    Set<String> getAbandonedResourcesUniqueNames() {
+        return Collections.unmodifiableSet(abandonedResources);
+    }
+
+    /**
+     * Create the pool of threads working on the resources when recovery is parallel.
+     */
+    private void startExecutor() {
+        int parallelism = Math.min(TransactionManagerServices.getConfiguration().getRecoveryParallelism(), registeredResources.size());
+        if (parallelism <= 1) {
+            return;
+        }
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-recovery-%d").setDaemon(true).build();
+        executorService = Executors.newFixedThreadPool(parallelism, threadFactory);
+
+        Duration timeout = TransactionManagerServices.getConfiguration().getRecoveryTimeout();
+        if (timeout != null && !timeout.isZero() && !timeout.isNegative()) {
+            stepTimeoutNanos = timeout.toNanos();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("recovering " + registeredResources.size() + " resource(s) with " + parallelism + " thread(s)" +
+                    (stepTimeoutNanos == 0L ? "" : " and a " + timeout.toMillis() + "ms timeout per step"));
+        }
+    }
+
+    private void stopExecutor() {
+        if (executorService != null) {
+            // threads still stuck in a resource after the timeout are abandoned but not interrupted, an interrupted
+            // driver could otherwise fail the resource or leave its connection in an unknown state
+            executorService.shutdown();
+            executorService = null;
+        }
+        stepTimeoutNanos = 0L;
+    }
+
+    private void publishRecoveryTimes(long startNanos) {
+        Map<String, Long> times = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : resourceRecoveryNanos.entrySet()) {
+            times.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().get()));
+        }
+        resourceRecoveryNanos.clear();
+        resourceRecoveryTimesMillis = Collections.unmodifiableMap(times);
+        lastRecoveryDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Run a task on each of the specified resources, concurrently if recovery is parallel. When the recovery timeout
+     * elapses, the resources which have not completed their task yet are removed from <code>registeredResources</code>
+     * and from <code>recoveredXidSets</code> so that the next steps skip them. Their abandoned tasks keep running and
+     * the resources are skipped by the next runs until those tasks are over.
+     * A failing task does not stop the other ones: its exception is rethrown once all tasks are done.
+     *
+     * @param uniqueNames the unique names of the resources on which to run the task.
+     * @param task        the task to run.
+     * @param <T>         the type of the task result.
+     * @return a Map using the unique names as key and the non-null task results as value.
+     * @throws RecoveryException if a task failed with an error preventing recovery.
+     */
+    private <T> Map<String, T> runOnResources(Collection<String> uniqueNames, ResourceTask<T> task) throws RecoveryException {
+        Map<String, T> results = new HashMap<>();
+        if (executorService == null) {
+            for (String uniqueName : uniqueNames) {
+                T result = new ResourceJob<>(uniqueName, task).call();
+                if (result != null) {
+                    results.put(uniqueName, result);
                 }
-                Set<BitronixXid> xids = recover(producer);
-                if (log.isDebugEnabled()) {
-                    log.debug("recovered " + xids.size() + " XID(s) from resource " + uniqueName);
+            }
+            return results;
+        }
+
+        List<ResourceJob<T>> jobs = new ArrayList<>(uniqueNames.size());
+        List<Future<T>> futures = new ArrayList<>(uniqueNames.size());
+        for (String uniqueName : uniqueNames) {
+            ResourceJob<T> job = new ResourceJob<>(uniqueName, task);
+            jobs.add(job);
+            futures.add(executorService.submit(job));
+        }
+        long deadlineNanos = System.nanoTime() + stepTimeoutNanos;
+
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            String uniqueName = jobs.get(i).uniqueName;
+            Future<T> future = futures.get(i);
+            try {
+                T result = stepTimeoutNanos == 0L ? future.get() : future.get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (result != null) {
+                    results.put(uniqueName, result);
                 }
-                recoveredXidSets.put(uniqueName, xids);
-                producer.setFailed(false);
-            } catch (XAException ex) {
-                producer.setFailed(true);
+            } catch (TimeoutException ex) {
+                jobs.get(i).abandon();
                 registeredResources.remove(uniqueName);
-                String extraErrorDetails = TransactionManagerServices.getExceptionAnalyzer().extractExtraXAExceptionDetails(ex);
-                log.warn("error running recovery on resource '" + uniqueName + "', resource marked as failed (background recoverer will retry recovery)" +
-                        " (error=" + Decoder.decodeXAExceptionErrorCode(ex) + ")" + (extraErrorDetails == null ? "" : ", extra error=" + extraErrorDetails), ex);
-            } catch (Exception ex) {
-                producer.setFailed(true);
-                registeredResources.remove(uniqueName);
-                log.warn("error running recovery on resource '" + uniqueName + "', resource marked as failed (background recoverer will retry recovery)", ex);
+                recoveredXidSets.remove(uniqueName);
+                log.warn("recovery of resource '" + uniqueName + "' did not complete in time, leaving it for the next run");
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RecoveryException("interrupted while waiting for recovery of resource " + uniqueName, ex);
             }
         }
+
+        if (failure instanceof RecoveryException) {
+            throw (RecoveryException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new RecoveryException("error running recovery", failure);
+        }
+        return results;
+    }
+
+    /**
+     * Recover all configured resources and fill the <code>recoveredXidSets</code> with all recovered XIDs.
+     * Step 1.
+     *
+     * @throws RecoveryException if an error preventing recovery happened.
+     */
+    private void recoverAllResources() throws RecoveryException {
+        // a copy of the registeredResources keys must be iterated as the map can be modified by the tasks
+        Map<String, Set<BitronixXid>> xidSets = runOnResources(new ArrayList<>(registeredResources.keySet()), this::recoverResource);
+        recoveredXidSets.putAll(xidSets);
+    }
+
+    /**
+     * Recover a single resource, marking it as failed and removing it from <code>registeredResources</code> if it
+     * cannot be recovered. A resource whose recovery has been abandoned on timeout is left untouched.
+     * Step 1.
+     *
+     * @param uniqueName the unique name of the resource to recover.
+     * @return a Set of BitronixXids or null if the resource could not be recovered.
+     */
+    private Set<BitronixXid> recoverResource(String uniqueName) {
+        XAResourceProducer producer = registeredResources.get(uniqueName);
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("performing recovery on " + uniqueName);
+            }
+            Set<BitronixXid> xids = recover(producer);
+            if (log.isDebugEnabled()) {
+                log.debug("recovered " + xids.size() + " XID(s) from resource " + uniqueName);
+            }
+            producer.setFailed(false);
+            return xids;
+        } catch (XAException ex) {
+            if (abandonedResources.contains(uniqueName)) {
+                log.warn("abandoned recovery of resource '" + uniqueName + "' failed (error=" + Decoder.decodeXAExceptionErrorCode(ex) + ")", ex);
+                return null;
+            }
+            producer.setFailed(true);
+            registeredResources.remove(uniqueName);
+            String extraErrorDetails = TransactionManagerServices.getExceptionAnalyzer().extractExtraXAExceptionDetails(ex);
+            log.warn("error running recovery on resource '" + uniqueName + "', resource marked as failed (background recoverer will retry recovery)" +
+                    " (error=" + Decoder.decodeXAExceptionErrorCode(ex) + ")" + (extraErrorDetails == null ? "" : ", extra error=" + extraErrorDetails), ex);
+        } catch (Exception ex) {
+            if (abandonedResources.contains(uniqueName)) {
+                log.warn("abandoned recovery of resource '" + uniqueName + "' failed", ex);
+                return null;
+            }
+            producer.setFailed(true);
+            registeredResources.remove(uniqueName);
+            log.warn("error running recovery on resource '" + uniqueName + "', resource marked as failed (background recoverer will retry recovery)", ex);
+        }
+        return null;
     }
 
     /**
@@ -295,13 +487,12 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
         if (log.isDebugEnabled()) {
             log.debug("found {} dangling record(s) in journal", danglingRecords.size());
         }
+        List<JournalRecord> tlogsToCommit = new ArrayList<>();
+        Map<String, List<Xid>> branchesToCommit = new HashMap<>();
         for (Entry<Uid, JournalRecord> entry : danglingRecords.entrySet()) {
             Uid gtrid = entry.getKey();
             JournalRecord tlog = entry.getValue();
 
-            Set<String> uniqueNames = tlog.getUniqueNames();
-            Set<DanglingTransaction> danglingTransactions = getDanglingTransactionsInRecoveredXids(uniqueNames, tlog.getGtrid());
-
             long txTimestamp = gtrid.extractTimestamp();
             if (log.isDebugEnabled()) {
                 log.debug("recovered XID timestamp: " + txTimestamp + " - oldest in-flight TX timestamp: " + oldestTransactionTimestamp);
@@ -311,28 +502,34 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
                 if (log.isDebugEnabled()) {
                     log.debug("committing dangling transaction with GTRID {}", gtrid);
                 }
-                commit(danglingTransactions);
+                tlogsToCommit.add(tlog);
+                for (DanglingTransaction danglingTransaction : getDanglingTransactionsInRecoveredXids(tlog.getUniqueNames(), tlog.getGtrid())) {
+                    branchesToCommit.computeIfAbsent(danglingTransaction.getUniqueName(), k -> new ArrayList<>()).add(danglingTransaction.getXid());
+                }
+            } else {
                 if (log.isDebugEnabled()) {
-                    log.debug("committed dangling transaction with GTRID {}", gtrid);
+                    log.debug("skipping in-flight transaction with GTRID " + gtrid);
                 }
-                committedGtrids.add(gtrid);
+            }
+        }
 
-                Set<String> participatingUniqueNames = filterParticipatingUniqueNamesInRecoveredXids(uniqueNames);
+        // all branches are committed before the journal is updated, resources which did not complete in time are
+        // not participating anymore and are left for the next run
+        runOnResources(branchesToCommit.keySet(), uniqueName -> commit(uniqueName, branchesToCommit.get(uniqueName)));
 
-                if (participatingUniqueNames.size() > 0) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("updating journal's transaction with GTRID " + gtrid + " status to COMMITTED for names [" + buildUniqueNamesString(participatingUniqueNames) + "]");
-                    }
-                    TransactionManagerServices.getJournal().log(Status.STATUS_COMMITTED, tlog.getGtrid(), participatingUniqueNames);
-                } else {
-                    if (log.isDebugEnabled()) {
-                        log.debug("not updating journal's transaction with GTRID " + gtrid + " status to COMMITTED as no resource could be found (incremental recovery will need to clean this)");
-                    }
-                    committedGtrids.remove(gtrid);
+        for (JournalRecord tlog : tlogsToCommit) {
+            Uid gtrid = tlog.getGtrid();
+            Set<String> participatingUniqueNames = filterParticipatingUniqueNamesInRecoveredXids(tlog.getUniqueNames());
+
+            if (participatingUniqueNames.size() > 0) {
+                if (log.isDebugEnabled()) {
+                    log.debug("updating journal's transaction with GTRID " + gtrid + " status to COMMITTED for names [" + buildUniqueNamesString(participatingUniqueNames) + "]");
                 }
+                TransactionManagerServices.getJournal().log(Status.STATUS_COMMITTED, gtrid, participatingUniqueNames);
+                committedGtrids.add(gtrid);
             } else {
                 if (log.isDebugEnabled()) {
-                    log.debug("skipping in-flight transaction with GTRID " + gtrid);
+                    log.debug("not updating journal's transaction with GTRID " + gtrid + " status to COMMITTED as no resource could be found (incremental recovery will need to clean this)");
                 }
             }
         }
@@ -401,42 +598,31 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
     }
 
     /**
-     * Commit all branches of a dangling transaction.
+     * Commit branches of dangling transactions on a single resource.
      * Step 2.
      *
-     * @param danglingTransactions a set of {@link DanglingTransaction}s to commit.
+     * @param uniqueName the unique name of the resource on which the commits should be done.
+     * @param xids       the {@link Xid}s to commit.
+     * @return the amount of successfully committed branches.
      * @throws RecoveryException if an error preventing recovery happened.
      */
-    private void commit(Set<DanglingTransaction> danglingTransactions) throws RecoveryException {
+    private Integer commit(String uniqueName, List<Xid> xids) throws RecoveryException {
         if (log.isDebugEnabled()) {
-            log.debug(danglingTransactions.size() + " branch(es) to commit");
+            log.debug(xids.size() + " branch(es) to commit on " + uniqueName);
         }
-
-        for (DanglingTransaction danglingTransaction : danglingTransactions) {
-            Xid xid = danglingTransaction.getXid();
-            String uniqueName = danglingTransaction.getUniqueName();
-
-            if (log.isDebugEnabled()) {
-                log.debug("committing branch with XID " + xid + " on " + uniqueName);
-            }
-            commit(uniqueName, xid);
-        }
-    }
-
-    /**
-     * Commit the specified branch of a dangling transaction.
-     * Step 2.
-     *
-     * @param uniqueName the unique name of the resource on which the commit should be done.
-     * @param xid        the {@link Xid} to commit.
-     * @return true when commit was successful.
-     * @throws RecoveryException if an error preventing recovery happened.
-     */
-    private boolean commit(String uniqueName, Xid xid) throws RecoveryException {
         XAResourceProducer producer = registeredResources.get(uniqueName);
+        int committed = 0;
         try {
             XAResourceHolderState xaResourceHolderState = producer.startRecovery();
-            return RecoveryHelper.commit(xaResourceHolderState, xid);
+            for (Xid xid : xids) {
+                if (log.isDebugEnabled()) {
+                    log.debug("committing branch with XID " + xid + " on " + uniqueName);
+                }
+                if (RecoveryHelper.commit(xaResourceHolderState, xid)) {
+                    committed++;
+                }
+            }
+            return committed;
         } finally {
             producer.endRecovery();
         }
@@ -456,11 +642,8 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
         if (log.isDebugEnabled()) {
             log.debug("rolling back aborted branch(es)");
         }
-        int rollbackCount = 0;
-        for (Map.Entry<String, Set<BitronixXid>> entry : recoveredXidSets.entrySet()) {
-            String uniqueName = entry.getKey();
-            Set<BitronixXid> recoveredXids = entry.getValue();
-
+        Map<String, Integer> counts = runOnResources(new ArrayList<>(recoveredXidSets.keySet()), uniqueName -> {
+            Set<BitronixXid> recoveredXids = recoveredXidSets.get(uniqueName);
             if (log.isDebugEnabled()) {
                 log.debug("checking " + recoveredXids.size() + " branch(es) on " + uniqueName + " for rollback");
             }
@@ -468,6 +651,10 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
             if (log.isDebugEnabled()) {
                 log.debug("checked " + recoveredXids.size() + " branch(es) on " + uniqueName + " for rollback");
             }
+            return count;
+        });
+        int rollbackCount = 0;
+        for (int count : counts.values()) {
             rollbackCount += count;
         }
 
@@ -568,4 +755,75 @@ public class Recoverer implements Runnable, Service, RecovererMBean {
         return resourcesUniqueNames.toString();
     }
 
+
+    /**
+     * Work done by a recovery step on a single resource.
+     */
+    @FunctionalInterface
+    private interface ResourceTask<T> {
+        T run(String uniqueName) throws RecoveryException;
+    }
+
+    /**
+     * Run a {@link ResourceTask} and account the time it took to the resource. The time of a task that did not complete
+     * in time is accounted when the timeout elapses and the task is abandoned. A task abandoned before it started never
+     * runs while a running one keeps its resource in <code>abandonedResources</code> until it is over.
+     */
+    private final class ResourceJob<T> implements Callable<T> {
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final String uniqueName;
+        private final ResourceTask<T> task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final AtomicBoolean recorded = new AtomicBoolean(false);
+        private volatile long startNanos;
+
+        private ResourceJob(String uniqueName, ResourceTask<T> task) {
+            this.uniqueName = uniqueName;
+            this.task = task;
+        }
+
+        @Override
+        public T call() throws RecoveryException {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                return null;
+            }
+            startNanos = System.nanoTime();
+            try {
+                return task.run(uniqueName);
+            } finally {
+                recordElapsedTime();
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    abandonedResources.remove(uniqueName);
+                    log.info("abandoned recovery of resource '" + uniqueName + "' is over, next run will recover it");
+                }
+            }
+        }
+
+        /**
+         * Give up waiting for the task. The resource is added to <code>abandonedResources</code> before the state
+         * changes so that a task completing concurrently always finds it there when it has to remove it.
+         */
+        private void abandon() {
+            recordElapsedTime();
+            if (state.compareAndSet(PENDING, DONE)) {
+                return;
+            }
+            abandonedResources.add(uniqueName);
+            if (!state.compareAndSet(RUNNING, ABANDONED)) {
+                abandonedResources.remove(uniqueName);
+            }
+        }
+
+        private void recordElapsedTime() {
+            long start = startNanos;
+            if (recorded.compareAndSet(false, true) && start != 0L) {
+                resourceRecoveryNanos.computeIfAbsent(uniqueName, k -> new AtomicLong()).addAndGet(System.nanoTime() - start);
+            }
+        }
+    }
+
 }
@@ -15,6 +15,8 @@
  */
 package bitronix.tm.recovery;
 
+import java.util.Map;
+
 /**
  * {@link Recoverer} Management interface.
  *
@@ -34,4 +36,8 @@ public interface RecovererMBean {
 
     boolean isRunning();
 
+    Map<String, Long> getResourceRecoveryTimesMillis();
+
+    long getLastRecoveryDurationMillis();
+
 }
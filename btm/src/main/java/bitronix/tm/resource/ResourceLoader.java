@@ -21,6 +21,8 @@ import bitronix.tm.utils.ClassLoaderUtils;
 import bitronix.tm.utils.InitializationException;
 import bitronix.tm.utils.PropertyUtils;
 import bitronix.tm.utils.Service;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import jakarta.jms.XAConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +33,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * XA resources pools configurator &amp; loader.
@@ -39,6 +47,10 @@ import java.util.*;
  * ({@link bitronix.tm.resource.jms.PoolingConnectionFactory}) configuration file and create the resources.</p>
  * <p>When <code>bitronix.tm.resource.configuration</code> is not specified, ResourceLoader is disabled and resources
  * should be manually created.</p>
+ * <p>Resources are initialized concurrently when <code>bitronix.tm.resource.startup.parallelism</code> is greater
+ * than 1. The time each resource took to initialize is available from {@link #getResourceStartupTimesMillis()}.
+ * Likewise, resources are closed concurrently when <code>bitronix.tm.resource.shutdown.parallelism</code> is greater
+ * than 1.</p>
  *
  * @author Ludovic Orban
  */
@@ -50,6 +62,7 @@ public class ResourceLoader implements Service {
     private static final String JMS_RESOURCE_CLASSNAME = "bitronix.tm.resource.jms.PoolingConnectionFactory";
 
     private final Map<String, XAResourceProducer> resourcesByUniqueName = new HashMap<>();
+    private volatile Map<String, Long> resourceStartupTimesMillis = Collections.emptyMap();
 
     public ResourceLoader() {
     }
@@ -63,6 +76,15 @@ public class ResourceLoader implements Service {
         return resourcesByUniqueName;
     }
 
+    /**
+     * Get the time each resource took to initialize during the last call to {@link #init()}.
+     *
+     * @return a Map using the uniqueName as key and the initialization time in milliseconds as value.
+     */
+    public Map<String, Long> getResourceStartupTimesMillis() {
+        return resourceStartupTimesMillis;
+    }
+
     /**
      * Initialize the ResourceLoader and load the resources configuration file specified in
      * <code>bitronix.tm.resource.configuration</code> property.
@@ -91,15 +113,12 @@ public class ResourceLoader implements Service {
             log.debug("resource loader has registered {} resource(s), unregistering them now",
                     resourcesByUniqueName.entrySet().size());
         }
-        for (Map.Entry<String, XAResourceProducer> entry : resourcesByUniqueName.entrySet()) {
-            XAResourceProducer producer = entry.getValue();
-            if (log.isDebugEnabled()) {
-                log.debug("closing {}", producer);
-            }
-            try {
-                producer.close();
-            } catch (Exception ex) {
-                log.warn("error closing resource " + producer, ex);
+        int parallelism = Math.min(TransactionManagerServices.getConfiguration().getResourceShutdownParallelism(), resourcesByUniqueName.size());
+        if (parallelism > 1) {
+            closeXAResourceProducersConcurrently(resourcesByUniqueName.values(), parallelism);
+        } else {
+            for (XAResourceProducer producer : resourcesByUniqueName.values()) {
+                closeXAResourceProducer(producer);
             }
         }
         resourcesByUniqueName.clear();
@@ -170,35 +189,162 @@ public class ResourceLoader implements Service {
      */
     int initXAResourceProducers(Properties properties) {
         Map<String, List<PropertyPair>> entries = buildConfigurationEntriesMap(properties);
-        int errorCount = 0;
+        Map<String, XAResourceProducer> producers = new LinkedHashMap<>();
 
         for (Map.Entry<String, List<PropertyPair>> entry : entries.entrySet()) {
             String uniqueName = entry.getKey();
             List<PropertyPair> propertyPairs = entry.getValue();
             XAResourceProducer producer = buildXAResourceProducer(uniqueName, propertyPairs);
 
-            if (ResourceRegistrar.get(producer.getUniqueName()) != null) {
+            if (ResourceRegistrar.get(producer.getUniqueName()) != null || producers.containsKey(producer.getUniqueName())) {
                 if (log.isDebugEnabled()) {
                     log.debug("resource already registered, skipping it:" + producer.getUniqueName());
                 }
                 continue;
             }
+            producers.put(producer.getUniqueName(), producer);
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("creating resource " + producer);
+        Map<String, Long> startupTimes = new ConcurrentHashMap<>();
+        try {
+            int parallelism = Math.min(TransactionManagerServices.getConfiguration().getResourceStartupParallelism(), producers.size());
+            if (parallelism > 1) {
+                return initXAResourceProducersConcurrently(producers.values(), parallelism, startupTimes);
             }
-            try {
-                producer.init();
-            } catch (ResourceConfigurationException ex) {
-                log.warn("unable to create resource with unique name " + producer.getUniqueName(), ex);
-                producer.close();
-                errorCount++;
+
+            int errorCount = 0;
+            for (XAResourceProducer producer : producers.values()) {
+                if (!initXAResourceProducer(producer, startupTimes)) {
+                    errorCount++;
+                }
+                resourcesByUniqueName.put(producer.getUniqueName(), producer);
             }
+            return errorCount;
+        } finally {
+            resourceStartupTimesMillis = Collections.unmodifiableMap(new HashMap<>(startupTimes));
+        }
+    }
 
-            resourcesByUniqueName.put(producer.getUniqueName(), producer);
+    /**
+     * Initialize {@link XAResourceProducer}s with a pool of threads.
+     *
+     * @param producers    the producers to initialize.
+     * @param parallelism  the amount of threads initializing producers.
+     * @param startupTimes the map in which the initialization times are recorded.
+     * @return the number of resources which failed to initialize.
+     */
+    private int initXAResourceProducersConcurrently(Collection<XAResourceProducer> producers, int parallelism, Map<String, Long> startupTimes) {
+        if (log.isDebugEnabled()) {
+            log.debug("initializing " + producers.size() + " resource(s) with " + parallelism + " thread(s)");
         }
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-resource-loader-%d").setDaemon(true).build());
+        try {
+            Map<XAResourceProducer, Future<Boolean>> futures = new LinkedHashMap<>();
+            for (XAResourceProducer producer : producers) {
+                futures.put(producer, executorService.submit(() -> initXAResourceProducer(producer, startupTimes)));
+            }
 
-        return errorCount;
+            int errorCount = 0;
+            RuntimeException failure = null;
+            for (Map.Entry<XAResourceProducer, Future<Boolean>> entry : futures.entrySet()) {
+                XAResourceProducer producer = entry.getKey();
+                try {
+                    if (!entry.getValue().get()) {
+                        errorCount++;
+                    }
+                    resourcesByUniqueName.put(producer.getUniqueName(), producer);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    if (failure == null) {
+                        failure = ex.getCause() instanceof RuntimeException runtimeException ? runtimeException
+                                : new InitializationException("cannot initialize resource " + producer.getUniqueName(), ex.getCause());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InitializationException("interrupted while initializing resources", ex);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return errorCount;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Close {@link XAResourceProducer}s with a pool of threads, waiting for all of them to be closed like the sequential
+     * shutdown does.
+     *
+     * @param producers   the producers to close.
+     * @param parallelism the amount of threads closing producers.
+     */
+    private void closeXAResourceProducersConcurrently(Collection<XAResourceProducer> producers, int parallelism) {
+        if (log.isDebugEnabled()) {
+            log.debug("closing " + producers.size() + " resource(s) with " + parallelism + " thread(s)");
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-resource-closer-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> futures = new ArrayList<>(producers.size());
+            for (XAResourceProducer producer : producers) {
+                futures.add(executorService.submit(() -> closeXAResourceProducer(producer)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    Uninterruptibles.getUninterruptibly(future);
+                } catch (ExecutionException ex) {
+                    // closeXAResourceProducer catches exceptions, only errors can end up here
+                    if (ex.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    log.warn("error closing resource", ex.getCause());
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static void closeXAResourceProducer(XAResourceProducer producer) {
+        if (log.isDebugEnabled()) {
+            log.debug("closing {}", producer);
+        }
+        try {
+            producer.close();
+        } catch (Exception ex) {
+            log.warn("error closing resource " + producer, ex);
+        }
+    }
+
+    /**
+     * Initialize a {@link XAResourceProducer} and record the time it took.
+     *
+     * @param producer     the producer to initialize.
+     * @param startupTimes the map in which the initialization time is recorded.
+     * @return false if the resource failed to initialize because of its configuration.
+     */
+    private boolean initXAResourceProducer(XAResourceProducer producer, Map<String, Long> startupTimes) {
+        if (log.isDebugEnabled()) {
+            log.debug("creating resource " + producer);
+        }
+        long startNanos = System.nanoTime();
+        try {
+            producer.init();
+            return true;
+        } catch (ResourceConfigurationException ex) {
+            log.warn("unable to create resource with unique name " + producer.getUniqueName(), ex);
+            producer.close();
+            return false;
+        } finally {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            startupTimes.put(producer.getUniqueName(), millis);
+            log.info("resource {} took {}ms to initialize", producer.getUniqueName(), millis);
+        }
     }
 
     /**
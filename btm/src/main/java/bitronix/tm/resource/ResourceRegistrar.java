@@ -20,6 +20,7 @@ import bitronix.tm.recovery.IncrementalRecoverer;
 import bitronix.tm.recovery.RecoveryException;
 import bitronix.tm.resource.common.XAResourceHolder;
 import bitronix.tm.resource.common.XAResourceProducer;
+import bitronix.tm.utils.IdentityKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,15 +30,16 @@ import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Collection of initialized {@link XAResourceProducer}s. All resources must be registered in the {@link ResourceRegistrar}
  * before they can be used by the transaction manager.
  * <p>
- * Note: The implementation is based on a thread safe, read-optimized list (copy-on-write) assuming that the
- * number of registered resources is around 1 to 16 entries and does not change often. If this assumption is
- * not-true it may be required to re-implement this with a ConcurrentMap instead.
+ * Producers are kept in a map indexed by unique name. Producers can also index the {@link XAResourceHolder}s they
+ * create with {@link #registerXAResourceHolder(XAResourceProducer, XAResourceHolder)} so that
+ * {@link #findXAResourceHolder(XAResource)} does not have to ask every registered producer on each enlistment.
  *
  * @author Ludovic Orban
  * @author Juergen Kellerer
@@ -51,7 +53,9 @@ public final class ResourceRegistrar {
      */
     public static final Charset UNIQUE_NAME_CHARSET = StandardCharsets.US_ASCII;
 
-    private static final Set<ProducerHolder> resources = new CopyOnWriteArraySet<>();
+    private static final ConcurrentMap<String, ProducerHolder> resources = new ConcurrentHashMap<>();
+    // keyed by identity: vendors' XAResource.equals() may consider the resources of different connections equal
+    private static final ConcurrentMap<IdentityKey<XAResource>, IndexedXAResourceHolder> xaResourceHolders = new ConcurrentHashMap<>();
 
     /**
      * Get a registered {@link XAResourceProducer}.
@@ -61,13 +65,9 @@ public final class ResourceRegistrar {
      */
     public static XAResourceProducer get(final String uniqueName) {
         if (uniqueName != null) {
-            for (ProducerHolder holder : resources) {
-                if (!holder.isInitialized()) {
-                    continue;
-                }
-                if (uniqueName.equals(holder.getUniqueName())) {
-                    return holder.producer;
-                }
+            final ProducerHolder holder = resources.get(uniqueName);
+            if (holder != null && holder.isInitialized()) {
+                return holder.producer;
             }
         }
         return null;
@@ -80,7 +80,7 @@ public final class ResourceRegistrar {
      */
     public static Set<String> getResourcesUniqueNames() {
         final Set<String> names = new HashSet<>(resources.size());
-        for (ProducerHolder holder : resources) {
+        for (ProducerHolder holder : resources.values()) {
             if (!holder.isInitialized()) {
                 continue;
             }
@@ -102,7 +102,7 @@ public final class ResourceRegistrar {
             final boolean alreadyRunning = TransactionManagerServices.isTransactionManagerRunning();
             final ProducerHolder holder = alreadyRunning ? new InitializableProducerHolder(producer) : new ProducerHolder(producer);
 
-            if (resources.add(holder)) {
+            if (resources.putIfAbsent(holder.getUniqueName(), holder) == null) {
                 if (holder instanceof InitializableProducerHolder) {
                     boolean recovered = false;
                     try {
@@ -114,7 +114,7 @@ public final class ResourceRegistrar {
                         recovered = true;
                     } finally {
                         if (!recovered) {
-                            resources.remove(holder);
+                            resources.remove(holder.getUniqueName(), holder);
                         }
                     }
                 }
@@ -135,10 +135,38 @@ public final class ResourceRegistrar {
     public static void unregister(XAResourceProducer producer) {
         final ProducerHolder holder = new ProducerHolder(producer);
 
-        if (!resources.remove(holder)) {
+        final ProducerHolder removed = resources.remove(holder.getUniqueName());
+        if (removed == null) {
             if (log.isDebugEnabled()) {
                 log.debug("resource with uniqueName '{}' has not been registered", holder.getUniqueName());
             }
+        } else {
+            xaResourceHolders.values().removeIf(indexed -> indexed.producer == removed.producer);
+        }
+    }
+
+    /**
+     * Index a {@link XAResourceHolder} created by a {@link XAResourceProducer} so that its {@link XAResource} can be
+     * found without scanning all registered producers. The holder must be unindexed with
+     * {@link #unregisterXAResourceHolder(XAResourceHolder)} when it gets closed.
+     *
+     * @param producer the {@link XAResourceProducer} that created the holder.
+     * @param xaResourceHolder the {@link XAResourceHolder} to index.
+     */
+    public static void registerXAResourceHolder(XAResourceProducer producer, XAResourceHolder xaResourceHolder) {
+        xaResourceHolders.put(new IdentityKey<>(xaResourceHolder.getXAResource()), new IndexedXAResourceHolder(producer, xaResourceHolder));
+    }
+
+    /**
+     * Remove a {@link XAResourceHolder} previously indexed with {@link #registerXAResourceHolder(XAResourceProducer, XAResourceHolder)}.
+     *
+     * @param xaResourceHolder the {@link XAResourceHolder} to remove from the index.
+     */
+    public static void unregisterXAResourceHolder(XAResourceHolder xaResourceHolder) {
+        final IdentityKey<XAResource> key = new IdentityKey<>(xaResourceHolder.getXAResource());
+        final IndexedXAResourceHolder indexed = xaResourceHolders.get(key);
+        if (indexed != null && indexed.xaResourceHolder == xaResourceHolder) {
+            xaResourceHolders.remove(key, indexed);
         }
     }
 
@@ -151,7 +179,19 @@ public final class ResourceRegistrar {
     public static XAResourceHolder findXAResourceHolder(XAResource xaResource) {
         final boolean debug = log.isDebugEnabled();
 
-        for (ProducerHolder holder : resources) {
+        final IndexedXAResourceHolder indexed = xaResourceHolders.get(new IdentityKey<>(xaResource));
+        if (indexed != null && indexed.xaResourceHolder.getXAResource() == xaResource) {
+            final ProducerHolder holder = resources.get(indexed.producer.getUniqueName());
+            if (holder != null && holder.producer == indexed.producer && holder.isInitialized()) {
+                if (debug) {
+                    log.debug("XAResource " + xaResource + " belongs to " + indexed.xaResourceHolder + " that itself belongs to " + indexed.producer);
+                }
+                return indexed.xaResourceHolder;
+            }
+        }
+
+        // producers which do not index their holders have to be asked one by one
+        for (ProducerHolder holder : resources.values()) {
             if (!holder.isInitialized()) {
                 continue;
             }
@@ -235,6 +275,20 @@ public final class ResourceRegistrar {
         }
     }
 
+    /**
+     * Entry of the {@link XAResource} index, remembering which producer created the holder.
+     */
+    private static final class IndexedXAResourceHolder {
+
+        private final XAResourceProducer producer;
+        private final XAResourceHolder xaResourceHolder;
+
+        private IndexedXAResourceHolder(XAResourceProducer producer, XAResourceHolder xaResourceHolder) {
+            this.producer = producer;
+            this.xaResourceHolder = xaResourceHolder;
+        }
+    }
+
     /**
      * Extends the default holder with thread safe initialization to put uninitialized holders in the set.
      */
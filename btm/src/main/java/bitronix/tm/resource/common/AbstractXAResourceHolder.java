@@ -23,7 +23,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Implementation of all services required by a {@link XAResourceHolder}. This class keeps a list of all
@@ -37,57 +36,62 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
 
     private static final Logger log = LoggerFactory.getLogger(AbstractXAResourceHolder.class);
 
-    private final Map<Uid, Map<Uid, XAResourceHolderState>> xaResourceHolderStates = new HashMap<>();
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    // copy-on-write branches in insertion order: null, a single Branch or a Branch[] of two or more. A holder is
+    // almost always enlisted in a single branch and only in a handful at once, so the array is only allocated for a
+    // second branch and scanning it is cheaper than hashing. Readers neither lock nor allocate, writes are guarded by
+    // branchesLock.
+    private volatile Object branches;
+    private final Object branchesLock = new Object();
 
-    // This method is only used by tests.  It is (and always was) potentially thread-unsafe depending on what callers do with the returned map.
+    // This method is only used by tests.  It returns a snapshot of the states of the GTRID, in insertion order.
     protected Map<Uid, XAResourceHolderState> getXAResourceHolderStatesForGtrid(Uid gtrid) {
-        rwLock.readLock().lock();
-        try {
-            return xaResourceHolderStates.get(gtrid);
-        } finally {
-            rwLock.readLock().unlock();
+        Map<Uid, XAResourceHolderState> statesForGtrid = null;
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            if (branch.gtrid.equals(gtrid)) {
+                if (statesForGtrid == null) {
+                    statesForGtrid = new LinkedHashMap<>(4);
+                }
+                statesForGtrid.put(branch.bqual, branch.state);
+            }
         }
+        return statesForGtrid;
     }
 
     @Override
     public boolean isExistXAResourceHolderStatesForGtrid(Uid gtrid) {
-        rwLock.readLock().lock();
-        try {
-            return xaResourceHolderStates.containsKey(gtrid);
-        } finally {
-            rwLock.readLock().unlock();
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            if (branch.gtrid.equals(gtrid)) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
     public int getXAResourceHolderStateCountForGtrid(Uid gtrid) {
-        rwLock.readLock().lock();
-        try {
-            Map<Uid, XAResourceHolderState> statesForGtrid = xaResourceHolderStates.get(gtrid);
-            if (statesForGtrid != null) {
-                return statesForGtrid.size();
+        int gtridCount = 0;
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            if (branch.gtrid.equals(gtrid)) {
+                gtridCount++;
             }
-            return 0;
-        } finally {
-            rwLock.readLock().unlock();
         }
+        return gtridCount;
     }
 
     @Override
     public void acceptVisitorForXAResourceHolderStates(Uid gtrid, XAResourceHolderStateVisitor visitor) {
-        rwLock.readLock().lock();
-        try {
-            Map<Uid, XAResourceHolderState> statesForGtrid = xaResourceHolderStates.get(gtrid);
-            if (statesForGtrid != null) {
-                for (XAResourceHolderState xaResourceHolderState : statesForGtrid.values()) {
-                    if (!visitor.visit(xaResourceHolderState)) {
-                        break;
-                    }
-                }
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            if (branch.gtrid.equals(gtrid) && !visitor.visit(branch.state)) {
+                break;
             }
-        } finally {
-            rwLock.readLock().unlock();
         }
     }
 
@@ -96,30 +100,44 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
         Uid gtrid = xid.getGlobalTransactionIdUid();
         Uid bqual = xid.getBranchQualifierUid();
 
-        rwLock.writeLock().lock();
-        try {
+        synchronized (branchesLock) {
             if (log.isDebugEnabled()) {
                 log.debug("putting XAResourceHolderState [" + xaResourceHolderState + "] on " + this);
             }
-            if (!xaResourceHolderStates.containsKey(gtrid)) {
-                if (log.isDebugEnabled()) {
-                    log.debug("GTRID [" + gtrid + "] previously unknown to " + this + ", adding it to the resource's transactions list");
+            Object current = branches;
+            int count = branchCount(current);
+            boolean knownGtrid = false;
+            for (int i = 0; i < count; i++) {
+                Branch branch = branchAt(current, i);
+                if (branch.gtrid.equals(gtrid)) {
+                    knownGtrid = true;
+                    if (branch.bqual.equals(bqual)) {
+                        // replace the state in place to keep the iteration order
+                        if (count == 1) {
+                            branches = new Branch(gtrid, bqual, xaResourceHolderState);
+                        } else {
+                            Branch[] updated = ((Branch[]) current).clone();
+                            updated[i] = new Branch(gtrid, bqual, xaResourceHolderState);
+                            branches = updated;
+                        }
+                        return;
+                    }
                 }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("GTRID [" + gtrid + "] previously " + (knownGtrid ? "known" : "unknown") + " to " + this + ", adding it to the resource's transactions list");
+            }
 
-                // use a LinkedHashMap as iteration order must be guaranteed
-                Map<Uid, XAResourceHolderState> statesForGtrid = new LinkedHashMap<>(4);
-                statesForGtrid.put(bqual, xaResourceHolderState);
-                xaResourceHolderStates.put(gtrid, statesForGtrid);
+            Branch added = new Branch(gtrid, bqual, xaResourceHolderState);
+            if (count == 0) {
+                branches = added;
+            } else if (count == 1) {
+                branches = new Branch[] { (Branch) current, added };
             } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("GTRID [" + gtrid + "] previously known to " + this + ", adding it to the resource's transactions list");
-                }
-
-                Map<Uid, XAResourceHolderState> statesForGtrid = xaResourceHolderStates.get(gtrid);
-                statesForGtrid.put(bqual, xaResourceHolderState);
+                Branch[] updated = Arrays.copyOf((Branch[]) current, count + 1);
+                updated[count] = added;
+                branches = updated;
             }
-        } finally {
-            rwLock.writeLock().unlock();
         }
     }
 
@@ -128,54 +146,60 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
         Uid gtrid = xid.getGlobalTransactionIdUid();
         Uid bqual = xid.getBranchQualifierUid();
 
-        rwLock.writeLock().lock();
-        try {
+        synchronized (branchesLock) {
             if (log.isDebugEnabled()) {
                 log.debug("removing XAResourceHolderState of xid " + xid + " from " + this);
             }
 
-            Map<Uid, XAResourceHolderState> statesForGtrid = xaResourceHolderStates.get(gtrid);
-            if (statesForGtrid == null) {
-                log.warn("tried to remove unknown GTRID [" + gtrid + "] from " + this + " - Bug?");
-                return;
+            Object current = branches;
+            int count = branchCount(current);
+            boolean knownGtrid = false;
+            for (int i = 0; i < count; i++) {
+                Branch branch = branchAt(current, i);
+                if (branch.gtrid.equals(gtrid)) {
+                    knownGtrid = true;
+                    if (branch.bqual.equals(bqual)) {
+                        if (count == 1) {
+                            branches = null;
+                        } else if (count == 2) {
+                            branches = ((Branch[]) current)[1 - i];
+                        } else {
+                            Branch[] updated = new Branch[count - 1];
+                            System.arraycopy(current, 0, updated, 0, i);
+                            System.arraycopy(current, i + 1, updated, i, count - i - 1);
+                            branches = updated;
+                        }
+                        return;
+                    }
+                }
             }
 
-            XAResourceHolderState removed = statesForGtrid.remove(bqual);
-            if (removed == null) {
+            if (!knownGtrid) {
+                log.warn("tried to remove unknown GTRID [" + gtrid + "] from " + this + " - Bug?");
+            } else {
                 log.warn("tried to remove unknown BQUAL [" + bqual + "] from " + this + " - Bug?");
-                return;
             }
-
-            if (statesForGtrid.isEmpty()) {
-                xaResourceHolderStates.remove(gtrid);
-            }
-        } finally {
-            rwLock.writeLock().unlock();
         }
     }
 
     @Override
     public boolean hasStateForXAResource(XAResourceHolder<? extends XAResourceHolder> xaResourceHolder) {
-        rwLock.readLock().lock();
-        try {
-            for (Map<Uid, XAResourceHolderState> statesForGtrid : xaResourceHolderStates.values()) {
-                for (XAResourceHolderState otherXaResourceHolderState : statesForGtrid.values()) {
-                    if (otherXaResourceHolderState.getXAResource() == xaResourceHolder.getXAResource()) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("resource " + xaResourceHolder + " is enlisted in another transaction with " + otherXaResourceHolderState.getXid().toString());
-                        }
-                        return true;
-                    }
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            XAResourceHolderState otherXaResourceHolderState = branch.state;
+            if (otherXaResourceHolderState.getXAResource() == xaResourceHolder.getXAResource()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("resource " + xaResourceHolder + " is enlisted in another transaction with " + otherXaResourceHolderState.getXid().toString());
                 }
+                return true;
             }
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("resource not enlisted in any transaction: " + xaResourceHolder);
-            }
-            return false;
-        } finally {
-            rwLock.readLock().unlock();
+        if (log.isDebugEnabled()) {
+            log.debug("resource not enlisted in any transaction: " + xaResourceHolder);
         }
+        return false;
     }
 
     /**
@@ -184,31 +208,24 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
      * @return true if start() has been successfully called but not end() yet <i>and</i> the transaction is not suspended.
      */
     public boolean isParticipatingInActiveGlobalTransaction() {
-        rwLock.readLock().lock();
-        try {
-            BitronixTransaction currentTransaction = TransactionContextHelper.currentTransaction();
-            Uid gtrid = currentTransaction == null ? null : currentTransaction.getResourceManager().getGtrid();
-            if (gtrid == null) {
-                return false;
-            }
-
-            Map<Uid, XAResourceHolderState> statesForGtrid = xaResourceHolderStates.get(gtrid);
-            if (statesForGtrid == null) {
-                return false;
-            }
+        BitronixTransaction currentTransaction = TransactionContextHelper.currentTransaction();
+        Uid gtrid = currentTransaction == null ? null : currentTransaction.getResourceManager().getGtrid();
+        if (gtrid == null) {
+            return false;
+        }
 
-            for (XAResourceHolderState xaResourceHolderState : statesForGtrid.values()) {
-                if (xaResourceHolderState != null &&
-                        xaResourceHolderState.isStarted() &&
-                        !xaResourceHolderState.isSuspended() &&
-                        !xaResourceHolderState.isEnded()) {
-                    return true;
-                }
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            XAResourceHolderState xaResourceHolderState = branch.state;
+            if (branch.gtrid.equals(gtrid) &&
+                    xaResourceHolderState.isStarted() &&
+                    !xaResourceHolderState.isSuspended() &&
+                    !xaResourceHolderState.isEnded()) {
+                return true;
             }
-            return false;
-        } finally {
-            rwLock.readLock().unlock();
         }
+        return false;
     }
 
     /**
@@ -218,17 +235,37 @@ public abstract class AbstractXAResourceHolder<T extends XAResourceHolder<T>> ex
      * @return a set of String-encoded GTRIDs of transactions in which this resource is enlisted.
      */
     public Set<String> getXAResourceHolderStateGtrids() {
-        rwLock.readLock().lock();
-        try {
-            HashSet<String> gtridsAsStrings = new HashSet<>();
+        HashSet<String> gtridsAsStrings = new HashSet<>();
 
-            for (Uid uid : xaResourceHolderStates.keySet()) {
-                gtridsAsStrings.add(uid.toString());
-            }
+        Object snapshot = branches;
+        for (int i = 0, count = branchCount(snapshot); i < count; i++) {
+            Branch branch = branchAt(snapshot, i);
+            gtridsAsStrings.add(branch.gtrid.toString());
+        }
+
+        return gtridsAsStrings;
+    }
+
+    private static int branchCount(Object branches) {
+        if (branches == null) {
+            return 0;
+        }
+        return branches instanceof Branch ? 1 : ((Branch[]) branches).length;
+    }
+
+    private static Branch branchAt(Object branches, int index) {
+        return branches instanceof Branch ? (Branch) branches : ((Branch[]) branches)[index];
+    }
+
+    private static final class Branch {
+        private final Uid gtrid;
+        private final Uid bqual;
+        private final XAResourceHolderState state;
 
-            return gtridsAsStrings;
-        } finally {
-            rwLock.readLock().unlock();
+        private Branch(Uid gtrid, Uid bqual, XAResourceHolderState state) {
+            this.gtrid = gtrid;
+            this.bqual = bqual;
+            this.state = state;
         }
     }
 }
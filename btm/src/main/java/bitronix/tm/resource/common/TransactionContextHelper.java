@@ -21,10 +21,8 @@ import bitronix.tm.TransactionManagerServices;
 import bitronix.tm.internal.BitronixSystemException;
 import bitronix.tm.internal.XAResourceHolderState;
 import bitronix.tm.resource.common.XAStatefulHolder.State;
-import bitronix.tm.utils.Scheduler;
 import bitronix.tm.utils.Uid;
 import jakarta.transaction.RollbackException;
-import jakarta.transaction.Synchronization;
 import jakarta.transaction.SystemException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -180,12 +178,10 @@ public final class TransactionContextHelper {
                 log.debug("deferring release to pool of " + xaStatefulHolder);
             }
 
-            if (!TransactionContextHelper.isAlreadyRegisteredForDeferredRelease(xaStatefulHolder, currentTransaction)) {
+            if (currentTransaction.registerDeferredRelease(xaStatefulHolder)) {
                 if (log.isDebugEnabled()) {
-                    log.debug("registering DeferredReleaseSynchronization for " + xaStatefulHolder);
+                    log.debug("registered DeferredReleaseSynchronization for " + xaStatefulHolder);
                 }
-                DeferredReleaseSynchronization synchronization = new DeferredReleaseSynchronization(xaStatefulHolder);
-                currentTransaction.getSynchronizationScheduler().add(synchronization, Scheduler.ALWAYS_LAST_POSITION);
             } else if (log.isDebugEnabled()) {
                 log.debug("already registered DeferredReleaseSynchronization for " + xaStatefulHolder);
             }
@@ -210,42 +206,14 @@ public final class TransactionContextHelper {
         if (log.isDebugEnabled()) {
             log.debug("marking " + xaStatefulHolder + " as recycled in " + currentTransaction);
         }
-        Scheduler<Synchronization> synchronizationScheduler = currentTransaction.getSynchronizationScheduler();
-
-        DeferredReleaseSynchronization deferredReleaseSynchronization = findDeferredRelease(xaStatefulHolder, currentTransaction);
-        if (deferredReleaseSynchronization != null) {
-            if (log.isDebugEnabled()) {
-                log.debug(xaStatefulHolder + " has been recycled, unregistering deferred release from " + currentTransaction);
-            }
-            synchronizationScheduler.remove(deferredReleaseSynchronization);
+        if (currentTransaction.unregisterDeferredRelease(xaStatefulHolder) && log.isDebugEnabled()) {
+            log.debug(xaStatefulHolder + " has been recycled, unregistered deferred release from " + currentTransaction);
         }
     }
 
 
     /* private methods must not call TransactionManagerServices.getTransactionManager().getCurrentTransaction() */
 
-    private static boolean isAlreadyRegisteredForDeferredRelease(XAStatefulHolder<? extends XAStatefulHolder> xaStatefulHolder, BitronixTransaction currentTransaction) {
-        boolean alreadyDeferred = findDeferredRelease(xaStatefulHolder, currentTransaction) != null;
-        if (log.isDebugEnabled()) {
-            log.debug(xaStatefulHolder + " is " + (alreadyDeferred ? "" : "not ") + "already registered for deferred release in " + currentTransaction);
-        }
-        return alreadyDeferred;
-    }
-
-    private static DeferredReleaseSynchronization findDeferredRelease(XAStatefulHolder<? extends XAStatefulHolder> xaStatefulHolder, BitronixTransaction currentTransaction) {
-        Scheduler<Synchronization> synchronizationScheduler = currentTransaction.getSynchronizationScheduler();
-
-        for (Synchronization synchronization : synchronizationScheduler) {
-            if (synchronization instanceof DeferredReleaseSynchronization deferredReleaseSynchronization) {
-                if (deferredReleaseSynchronization.getXAStatefulHolder() == xaStatefulHolder) {
-                    return deferredReleaseSynchronization;
-                }
-            } // if synchronization instanceof DeferredReleaseSynchronization
-        } // for
-
-        return null;
-    }
-
     private static boolean isEnlistedInSomeTransaction(XAResourceHolder<? extends XAResourceHolder> xaResourceHolder) throws BitronixSystemException {
         if (log.isDebugEnabled()) {
             log.debug("looking in in-flight transactions for XAResourceHolderState of " + xaResourceHolder);
@@ -25,6 +25,8 @@ import bitronix.tm.recovery.RecoveryException;
 import bitronix.tm.resource.common.XAStatefulHolder.State;
 import bitronix.tm.utils.MonotonicClock;
 import bitronix.tm.utils.Uid;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import jakarta.transaction.Synchronization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,18 +35,27 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Generic XA pool. {@link XAStatefulHolder} instances are created by the {@link XAPool} out of a
  * {@link XAResourceProducer}. Those objects are then pooled and can be retrieved and/or recycled by the pool
  * depending on the running XA transaction's and the {@link XAStatefulHolder}'s states.
+ * <p>Acquiring and releasing a connection does not take any pool-wide lock: IN_POOL connections are kept in a
+ * lock-free deque which head is the most recently released connection, NOT_ACCESSIBLE connections are indexed by the
+ * GTRID of the transaction in which they were released, and the pool grows by reserving slots with a compare-and-set
+ * so that a thread never waits for another thread to create a connection.</p>
  *
  * @author Ludovic Orban
  * @author Brett Wooldridge
@@ -54,19 +65,29 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     private static final Logger log = LoggerFactory.getLogger(XAPool.class);
 
     /**
-     * The stateTransitionLock makes sure that transitions of XAStatefulHolders from one state to another
-     * (movement from one pool to another) are atomic.  A ReentrantReadWriteLock allows any number of
-     * readers to access and iterate the accessiblePool and inaccessiblePool without blocking.  Readers
-     * are blocked only for the instant when a connection is moving between pools.  These locks are
-     * sufficient to protect the collections, which are left intentionally non-concurrent so that failures
-     * in locking logic will be quickly uncovered.
+     * All the pooled objects which have not been closed, whatever their state. Holders are added before they are made
+     * available and removed once they are closed so that iterating this set never misses a holder moving from one
+     * state to another.
      */
-    private final ReentrantReadWriteLock stateTransitionLock = new ReentrantReadWriteLock();
+    private final Set<T> allHolders = ConcurrentHashMap.newKeySet();
 
-    private final BlockingDeque<T> availablePool = new LinkedBlockingDeque<>();
-    private final Queue<T> accessiblePool = new LinkedList<>();
-    private final Queue<T> inaccessiblePool = new LinkedList<>();
+    /**
+     * The IN_POOL objects. A permit of availablePermits is released after an object has been added to the deque and
+     * must be acquired before an object is polled from it so that waiting for an object does not need any lock.
+     */
+    private final Deque<T> availablePool = new ConcurrentLinkedDeque<>();
+    private final Semaphore availablePermits = new Semaphore(0);
+
+    /**
+     * The NOT_ACCESSIBLE objects, indexed by the GTRID of the transaction in which they were released.
+     */
+    private final Map<Uid, Set<T>> inaccessibleByGtrid = new ConcurrentHashMap<>();
+    private final Map<T, Uid> inaccessibleGtrids = new ConcurrentHashMap<>();
+    private final Set<T> unindexedInaccessible = ConcurrentHashMap.newKeySet();
 
+    /**
+     * The amount of pooled objects, including the ones being created.
+     */
     private final AtomicInteger poolSize = new AtomicInteger();
 
     /**
@@ -79,6 +100,12 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     private final Object xaFactory;
     private final AtomicBoolean failed = new AtomicBoolean();
     private final Object poolGrowthShrinkLock = new Object();
+    // incremented each time the pool is closed so that a background prefill started before stops creating objects
+    private volatile int generation;
+
+    // acquisition statistics, never reset
+    private final LongAdder acquisitionCount = new LongAdder();
+    private final LongAdder acquisitionNanos = new LongAdder();
 
     public XAPool(XAResourceProducer<R, T> xaResourceProducer, ResourceBean bean, Object xaFactory) throws Exception {
         this.xaResourceProducer = xaResourceProducer;
@@ -103,7 +130,14 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     }
 
     private void init() throws Exception {
-        growUntilMinPoolSize();
+        if (TransactionManagerServices.getConfiguration().isBackgroundPoolPrefill() && bean.getMinPoolSize() > 1) {
+            // a single connection is enough to recover the resource, the pool reaches its minimum size after startup
+            createPooledObjects(reserveSlots(1, bean.getMinPoolSize()));
+            int prefillGeneration = generation;
+            PrefillExecutorHolder.EXECUTOR.execute(() -> prefillInBackground(prefillGeneration));
+        } else {
+            growUntilMinPoolSize();
+        }
 
         if (bean.getMaxIdleTime() > 0 || bean.getMaxLifeTime() > 0) {
             TransactionManagerServices.getTaskScheduler().schedulePoolShrinking(this);
@@ -115,6 +149,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
      */
     public void close() {
         synchronized (poolGrowthShrinkLock) {
+            generation++;
             if (log.isDebugEnabled()) {
                 log.debug("closing all connections of " + this);
             }
@@ -133,15 +168,14 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
                 TransactionManagerServices.getTaskScheduler().cancelPoolShrinking(this);
             }
 
-            stateTransitionLock.writeLock().lock();
-            try {
-                availablePool.clear();
-                accessiblePool.clear();
-                inaccessiblePool.clear();
-                failed.set(false);
-            } finally {
-                stateTransitionLock.writeLock().unlock();
+            while (pollAvailable() != null) {
+                // drain the available pool
             }
+            allHolders.clear();
+            inaccessibleByGtrid.clear();
+            inaccessibleGtrids.clear();
+            unindexedInaccessible.clear();
+            failed.set(false);
         }
     }
 
@@ -163,9 +197,21 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
      * @throws Exception throw in the pool is unrecoverable or a timeout occurs getting a connection
      */
     public Object getConnectionHandle(boolean recycle) throws Exception {
-        synchronized (poolGrowthShrinkLock) {
-            if (isFailed()) {
-                reinitializePool();
+        long startNanos = System.nanoTime();
+        try {
+            return acquireConnectionHandle(recycle);
+        } finally {
+            acquisitionCount.increment();
+            acquisitionNanos.add(System.nanoTime() - startNanos);
+        }
+    }
+
+    private Object acquireConnectionHandle(boolean recycle) throws Exception {
+        if (isFailed()) {
+            synchronized (poolGrowthShrinkLock) {
+                if (isFailed()) {
+                    reinitializePool();
+                }
             }
         }
 
@@ -241,74 +287,93 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     }
 
     /* -----------------------------------------------------------------------------------
-     * Pool Transition.  stateChanging() and stateChanged() obtain the stateTransitionLock
-     * write lock to prevent other threads from iterating the pools while a coonection is
-     * in transition from one pool to another.  However, this window of time is extremely
-     * small, and in general allows high-concurrency.
+     * Pool Transition.  stateChanging() and stateChanged() move a connection from one
+     * internal collection to another.  All collections are concurrent and a connection's
+     * transitions are never concurrent, so no lock is needed.
      * ----------------------------------------------------------------------------------*/
 
     @Override
     public void stateChanging(T source, State currentState, State futureState) {
-        stateTransitionLock.writeLock().lock();
-        try {
-            switch (currentState) {
-                case IN_POOL:
-                    // no-op.  calling availablePool.remove(source) here is reduncant because it was
-                    // already removed when availablePool.poll() was called.
-                    break;
-                case ACCESSIBLE:
-                    if (log.isDebugEnabled()) {
-                        log.debug("removed " + source + " from the accessible pool");
-                    }
-                    accessiblePool.remove(source);
-                    break;
-                case NOT_ACCESSIBLE:
-                    if (log.isDebugEnabled()) {
-                        log.debug("removed " + source + " from the inaccessible pool");
-                    }
-                    inaccessiblePool.remove(source);
-                    break;
-                case CLOSED:
-                    break;
-            }
-        } finally {
-            stateTransitionLock.writeLock().unlock();
+        switch (currentState) {
+            case IN_POOL:
+                // no-op.  calling availablePool.remove(source) here is reduncant because it was
+                // already removed when pollAvailable() was called.
+                break;
+            case ACCESSIBLE:
+                break;
+            case NOT_ACCESSIBLE:
+                if (log.isDebugEnabled()) {
+                    log.debug("removed " + source + " from the inaccessible pool");
+                }
+                removeInaccessible(source);
+                break;
+            case CLOSED:
+                break;
         }
     }
 
     @Override
     public void stateChanged(T source, State oldState, State newState) {
-        stateTransitionLock.writeLock().lock();
-        try {
-            switch (newState) {
-                case IN_POOL -> {
-                    if (log.isDebugEnabled()) {
-                        log.debug("added " + source + " to the available pool");
-                    }
-                    availablePool.addFirst(source);
+        switch (newState) {
+            case IN_POOL -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("added " + source + " to the available pool");
                 }
-                case ACCESSIBLE -> {
-                    if (log.isDebugEnabled()) {
-                        log.debug("added " + source + " to the accessible pool");
-                    }
-                    accessiblePool.add(source);
+                availablePool.addFirst(source);
+                availablePermits.release();
+            }
+            case ACCESSIBLE -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("added " + source + " to the accessible pool");
                 }
-                case NOT_ACCESSIBLE -> {
-                    if (log.isDebugEnabled()) {
-                        log.debug("added " + source + " to the inaccessible pool");
-                    }
-                    inaccessiblePool.add(source);
+            }
+            case NOT_ACCESSIBLE -> {
+                if (log.isDebugEnabled()) {
+                    log.debug("added " + source + " to the inaccessible pool");
                 }
-                case CLOSED -> {
-                    source.removeStateChangeEventListener(this);
+                addInaccessible(source);
+            }
+            case CLOSED -> {
+                source.removeStateChangeEventListener(this);
+                if (allHolders.remove(source)) {
                     poolSize.decrementAndGet();
                 }
             }
-        } finally {
-            stateTransitionLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Index a NOT_ACCESSIBLE connection by the GTRID of the current transaction. Connections are only put in that
+     * state when their handle is closed in the global transaction in which they are enlisted, see
+     * {@link TransactionContextHelper#requeue(XAStatefulHolder, ResourceBean)}.
+     *
+     * @param xaStatefulHolder the connection which became NOT_ACCESSIBLE.
+     */
+    private void addInaccessible(T xaStatefulHolder) {
+        BitronixTransaction transaction = TransactionContextHelper.currentTransaction();
+        if (transaction == null) {
+            unindexedInaccessible.add(xaStatefulHolder);
+            return;
+        }
+
+        Uid gtrid = transaction.getResourceManager().getGtrid();
+        inaccessibleGtrids.put(xaStatefulHolder, gtrid);
+        inaccessibleByGtrid.computeIfAbsent(gtrid, key -> ConcurrentHashMap.newKeySet()).add(xaStatefulHolder);
+    }
+
+    private void removeInaccessible(T xaStatefulHolder) {
+        Uid gtrid = inaccessibleGtrids.remove(xaStatefulHolder);
+        if (gtrid == null) {
+            unindexedInaccessible.remove(xaStatefulHolder);
+            return;
+        }
+
+        inaccessibleByGtrid.computeIfPresent(gtrid, (key, holders) -> {
+            holders.remove(xaStatefulHolder);
+            return holders.isEmpty() ? null : holders;
+        });
+    }
+
     /* ------------------------------------------------------------------------
      * Methods to obtain a connection from one of the internal pools.
      * ------------------------------------------------------------------------*/
@@ -316,8 +381,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     /**
      * Get an IN_POOL connection.  This method blocks for up to remainingTimeMs milliseconds
      * for someone to return or create a connection in the available pool.  If remainingTimeMs
-     * expires, an exception is thrown.  It does not use stateTransitionLock.readLock() because
-     * the availablePool [a LinkedBlockingQueue] is already thread safe.
+     * expires, an exception is thrown.
      *
      * @param remainingTimeMs the maximum time to wait for a connection
      * @return a connection from the available (IN_POOL) pool
@@ -336,7 +400,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
         }
 
         try {
-            T xaStatefulHolder = availablePool.pollFirst(remainingTimeMs, TimeUnit.MILLISECONDS);
+            T xaStatefulHolder = pollAvailable(remainingTimeMs);
             if (xaStatefulHolder == null) {
                 if (TransactionManagerServices.isTransactionManagerRunning()) {
                     TransactionManagerServices.getTransactionManager().dumpTransactionContexts();
@@ -356,9 +420,8 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
     }
 
     /**
-     * Get a XAStatefulHolder (connection) from the NOT_ACCESSIBLE pool.  This method obtains
-     * the stateTransitionLock.readLock() which prevents any modification during iteration, but
-     * allows multiple threads to iterate simultaneously.
+     * Get a XAStatefulHolder (connection) from the NOT_ACCESSIBLE pool.  Only the connections
+     * released in the current transaction are looked at.
      *
      * @return a connection, or null if there are no connections in the inaccessible pool for the current transaction
      */
@@ -378,24 +441,28 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
             log.debug("current transaction GTRID is [" + currentTxGtrid + "]");
         }
 
-        stateTransitionLock.readLock().lock();
-        try {
-            for (T xaStatefulHolder : inaccessiblePool) {
-                if (log.isDebugEnabled()) {
-                    log.debug("found a connection in NOT_ACCESSIBLE state: " + xaStatefulHolder);
-                }
-                if (containsXAResourceHolderMatchingGtrid(xaStatefulHolder, currentTxGtrid)) {
-                    return xaStatefulHolder;
-                }
-            }
+        Set<T> candidates = inaccessibleByGtrid.get(currentTxGtrid);
+        T xaStatefulHolder = candidates == null ? null : findMatchingGtrid(candidates, currentTxGtrid);
+        if (xaStatefulHolder == null && !unindexedInaccessible.isEmpty()) {
+            xaStatefulHolder = findMatchingGtrid(unindexedInaccessible, currentTxGtrid);
+        }
+
+        if (xaStatefulHolder == null && log.isDebugEnabled()) {
+            log.debug("no NOT_ACCESSIBLE connection enlisted in this transaction");
+        }
+        return xaStatefulHolder;
+    }
 
+    private T findMatchingGtrid(Set<T> candidates, Uid currentTxGtrid) {
+        for (T xaStatefulHolder : candidates) {
             if (log.isDebugEnabled()) {
-                log.debug("no NOT_ACCESSIBLE connection enlisted in this transaction");
+                log.debug("found a connection in NOT_ACCESSIBLE state: " + xaStatefulHolder);
+            }
+            if (containsXAResourceHolderMatchingGtrid(xaStatefulHolder, currentTxGtrid)) {
+                return xaStatefulHolder;
             }
-            return null;
-        } finally {
-            stateTransitionLock.readLock().unlock();
         }
+        return null;
     }
 
     /**
@@ -477,53 +544,206 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
      * ------------------------------------------------------------------------*/
 
     /**
-     * Grow the pool by "acquire increment" amount up to the max pool size.
+     * Grow the pool by "acquire increment" amount up to the max pool size. The slots are reserved before the
+     * connections are created so that concurrent callers reserve their own slots instead of waiting, and each
+     * connection is made available as soon as it is created.
      *
      * @throws Exception thrown if creating a pooled objects fails
      */
     private void grow() throws Exception {
-        synchronized (poolGrowthShrinkLock) {
-            final long totalPoolSize = totalPoolSize();
-            if (totalPoolSize < bean.getMaxPoolSize()) {
-                long increment = bean.getAcquireIncrement();
-                if (totalPoolSize + increment > bean.getMaxPoolSize()) {
-                    increment = bean.getMaxPoolSize() - totalPoolSize;
-                }
+        int increment = reserveSlots(bean.getAcquireIncrement(), bean.getMaxPoolSize());
+        if (increment == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("pool " + bean.getUniqueName() + " already at max size of " + totalPoolSize() + " connection(s), not growing it");
+            }
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("incrementing " + bean.getUniqueName() + " pool size by " + increment + " unit(s) to reach " + totalPoolSize() + " connection(s)");
+            }
+            createPooledObjects(increment);
+        }
 
-                if (log.isDebugEnabled()) {
-                    log.debug("incrementing " + bean.getUniqueName() + " pool size by " + increment + " unit(s) to reach " + (totalPoolSize() + increment) + " connection(s)");
-                }
-                for (int i = 0; i < increment; i++) {
+        growUntilMinPoolSize();
+    }
+
+    private void growUntilMinPoolSize() throws Exception {
+        int missing = reserveSlots(Integer.MAX_VALUE, bean.getMinPoolSize());
+        if (missing > 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("growing " + this + " to minimum pool size " + bean.getMinPoolSize());
+            }
+            createPooledObjects(missing);
+        }
+    }
+
+    /**
+     * Atomically increase the pool size by up to count slots without exceeding a limit.
+     *
+     * @param count the amount of slots wanted.
+     * @param limit the pool size which must not be exceeded.
+     * @return the amount of slots actually reserved.
+     */
+    private int reserveSlots(int count, int limit) {
+        while (true) {
+            int current = poolSize.get();
+            int reserved = Math.min(count, limit - current);
+            if (reserved <= 0) {
+                return 0;
+            }
+            if (poolSize.compareAndSet(current, current + reserved)) {
+                return reserved;
+            }
+        }
+    }
+
+    /**
+     * Create pooled objects in slots previously reserved with {@link #reserveSlots(int, int)}. The slots of the objects
+     * which could not be created are released.
+     *
+     * @param count the amount of reserved slots.
+     * @throws Exception thrown if creating a pooled objects fails
+     */
+    private void createPooledObjects(int count) throws Exception {
+        int parallelism = Math.min(TransactionManagerServices.getConfiguration().getPoolPrefillParallelism(), count);
+        if (parallelism > 1) {
+            createPooledObjectsConcurrently(count, parallelism);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                createPooledObject(xaFactory);
+            } catch (Exception ex) {
+                poolSize.addAndGet(-(count - i));
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Create pooled objects in reserved slots with the calling thread and parallelism - 1 prefill threads. Creation
+     * stops at the first failure and the slots of the objects which were not created are released.
+     *
+     * @param count the amount of reserved slots.
+     * @param parallelism the amount of threads creating objects.
+     * @throws Exception the first exception thrown while creating a pooled object.
+     */
+    private void createPooledObjectsConcurrently(int count, int parallelism) throws Exception {
+        final AtomicInteger remaining = new AtomicInteger(count);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            while (failure.get() == null && takeSlot(remaining)) {
+                try {
                     createPooledObject(xaFactory);
+                } catch (Exception ex) {
+                    poolSize.decrementAndGet();
+                    failure.compareAndSet(null, ex);
                 }
-            } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("pool " + bean.getUniqueName() + " already at max size of " + totalPoolSize() + " connection(s), not growing it");
+            }
+        };
+
+        List<Future<?>> futures = new ArrayList<>(parallelism - 1);
+        for (int i = 1; i < parallelism; i++) {
+            futures.add(PrefillExecutorHolder.EXECUTOR.submit(worker));
+        }
+        worker.run();
+        for (Future<?> future : futures) {
+            try {
+                Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException ex) {
+                // workers catch exceptions, only errors can end up here
+                if (ex.getCause() instanceof Error error) {
+                    throw error;
                 }
+                throw ex;
             }
+        }
 
-            if (totalPoolSize() < bean.getMinPoolSize()) {
-                growUntilMinPoolSize();
+        int left = remaining.getAndSet(0);
+        if (left > 0) {
+            poolSize.addAndGet(-left);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static boolean takeSlot(AtomicInteger remaining) {
+        while (true) {
+            int current = remaining.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (remaining.compareAndSet(current, current - 1)) {
+                return true;
             }
         }
     }
 
-    private void growUntilMinPoolSize() throws Exception {
-        synchronized (poolGrowthShrinkLock) {
-            if (log.isDebugEnabled()) {
-                log.debug("growing " + this + " to minimum pool size " + bean.getMinPoolSize());
+    /**
+     * Grow the pool to its minimum size after it has been initialized with a single object. Objects are created by
+     * batches of the prefill parallelism and the lock is only held while a batch is created, so that closing, shrinking
+     * or resetting the pool does not wait for the whole prefill. The prefill stops as soon as the pool has been closed
+     * since it was started.
+     *
+     * @param prefillGeneration the generation of the pool when the prefill was started.
+     */
+    private void prefillInBackground(int prefillGeneration) {
+        long startNanos = System.nanoTime();
+        int batchSize = Math.max(1, TransactionManagerServices.getConfiguration().getPoolPrefillParallelism());
+        try {
+            while (true) {
+                synchronized (poolGrowthShrinkLock) {
+                    if (generation != prefillGeneration) {
+                        return;
+                    }
+                    int count = reserveSlots(batchSize, bean.getMinPoolSize());
+                    if (count == 0) {
+                        break;
+                    }
+                    createPooledObjects(count);
+                }
             }
-            for (int i = totalPoolSize(); i < bean.getMinPoolSize(); i++) {
-                createPooledObject(xaFactory);
+            if (log.isDebugEnabled()) {
+                log.debug("pool " + bean.getUniqueName() + " reached its minimum size of " + bean.getMinPoolSize() + " connection(s) in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
             }
+        } catch (Exception ex) {
+            log.warn("error opening the connections of " + this + " in the background, the pool will grow when connections are requested", ex);
         }
     }
 
     private void createPooledObject(Object xaFactory) throws Exception {
         T xaStatefulHolder = xaResourceProducer.createPooledConnection(xaFactory, bean);
         xaStatefulHolder.addStateChangeEventListener(this);
+        allHolders.add(xaStatefulHolder);
         availablePool.addLast(xaStatefulHolder);
-        poolSize.incrementAndGet();
+        availablePermits.release();
+    }
+
+    /**
+     * Poll the most recently released IN_POOL object without waiting.
+     *
+     * @return an IN_POOL object or null if there is none.
+     */
+    private T pollAvailable() {
+        if (!availablePermits.tryAcquire()) {
+            return null;
+        }
+        return availablePool.pollFirst();
+    }
+
+    /**
+     * Poll the most recently released IN_POOL object, waiting up to the specified time for one to become available.
+     *
+     * @param timeoutMs the maximum time to wait.
+     * @return an IN_POOL object or null if there is none after the specified time.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private T pollAvailable(long timeoutMs) throws InterruptedException {
+        if (!availablePermits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        return availablePool.pollFirst();
     }
 
     /* ------------------------------------------------------------------------
@@ -561,9 +781,9 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
 
     private void expireOrCloseStatefulHolders(boolean forceClose) throws Exception {
         int closed = 0;
-        final int availableSize = availablePool.size();
+        final int availableSize = inPoolSize();
         for (int i = 0; i < availableSize; i++) {
-            T xaStatefulHolder = availablePool.pollFirst();
+            T xaStatefulHolder = pollAvailable();
             if (xaStatefulHolder == null) {
                 break;
             }
@@ -572,6 +792,7 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
                 closed++;
             } else {
                 availablePool.addLast(xaStatefulHolder);
+                availablePermits.release();
             }
         }
 
@@ -669,20 +890,29 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
      * @return the number of available objects
      */
     public int inPoolSize() {
-        return availablePool.size();
+        return availablePermits.availablePermits();
+    }
+
+    /**
+     * Get the number of times a connection handle has been requested from this pool, successfully or not.
+     *
+     * @return the number of connection handle acquisitions
+     */
+    public long acquisitionCount() {
+        return acquisitionCount.sum();
+    }
+
+    /**
+     * Get the total time spent acquiring connection handles from this pool, waiting for a connection included.
+     *
+     * @return the total acquisition time in microseconds
+     */
+    public long totalAcquisitionTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquisitionNanos.sum());
     }
 
     public List<T> getXAResourceHolders() {
-        stateTransitionLock.readLock().lock();
-        try {
-            List<T> holders = new ArrayList<>();
-            holders.addAll(availablePool);
-            holders.addAll(accessiblePool);
-            holders.addAll(inaccessiblePool);
-            return holders;
-        } finally {
-            stateTransitionLock.readLock().unlock();
-        }
+        return new ArrayList<>(allHolders);
     }
 
     @Override
@@ -775,4 +1005,13 @@ public class XAPool<R extends XAResourceHolder<R>, T extends XAStatefulHolder<T>
             super.set(value);
         }
     }
+
+    /**
+     * Threads opening pooled objects concurrently or in the background, shared by all pools.
+     */
+    private static final class PrefillExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("bitronix-pool-prefill-%d").setDaemon(true).build());
+    }
+
 }
@@ -115,6 +115,7 @@ public final class EhCacheXAResourceProducer extends ResourceBean implements XAR
         int key = xaResourceHolderCounter.incrementAndGet();
 
         xaResourceHolders.put(key, xaResourceHolder);
+        ResourceRegistrar.registerXAResourceHolder(this, xaResourceHolder);
     }
 
     private boolean removeXAResource(XAResource xaResource) {
@@ -123,6 +124,7 @@ public final class EhCacheXAResourceProducer extends ResourceBean implements XAR
             EhCacheXAResourceHolder xaResourceHolder = entry.getValue();
             if (xaResourceHolder.getXAResource() == xaResource) {
                 xaResourceHolders.remove(key);
+                ResourceRegistrar.unregisterXAResourceHolder(xaResourceHolder);
                 return true;
             }
         }
@@ -193,6 +195,9 @@ public final class EhCacheXAResourceProducer extends ResourceBean implements XAR
      */
     @Override
     public void close() {
+        for (EhCacheXAResourceHolder xaResourceHolder : xaResourceHolders.values()) {
+            ResourceRegistrar.unregisterXAResourceHolder(xaResourceHolder);
+        }
         xaResourceHolders.clear();
         xaResourceHolderCounter.set(0);
         ResourceRegistrar.unregister(this);
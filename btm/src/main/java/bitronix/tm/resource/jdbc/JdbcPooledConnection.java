@@ -69,7 +69,7 @@ public class JdbcPooledConnection extends AbstractXAResourceHolder<JdbcPooledCon
         this.poolingDataSource = poolingDataSource;
         this.xaConnection = xaConnection;
         this.xaResource = xaConnection.getXAResource();
-        this.statementsCache = new LruStatementCache(poolingDataSource.getPreparedStatementCacheSize());
+        this.statementsCache = new LruStatementCache(poolingDataSource.getPreparedStatementCacheSize(), poolingDataSource.getStatementCacheStatistics());
         this.uncachedStatements = Collections.synchronizedList(new ArrayList<>());
         this.lastReleaseDate = Instant.ofEpochMilli(MonotonicClock.currentTimeMillis()).atZone(ZoneId.systemDefault()).toLocalDateTime();
         statementsCache.addEvictionListener(stmt -> {
@@ -391,6 +391,17 @@ public class JdbcPooledConnection extends AbstractXAResourceHolder<JdbcPooledCon
         return statementsCache.get(key);
     }
 
+    /**
+     * Get the key under which a PreparedStatement without any other attribute than its SQL is cached, shared with the
+     * other connections of the pool when {@link PoolingDataSource#getShareStatementCacheKeys()} is enabled.
+     *
+     * @param sql the statement's SQL.
+     * @return the statement's cache key.
+     */
+    public CacheKey getCacheKey(String sql) {
+        return poolingDataSource.getStatementCacheKey(sql);
+    }
+
     /**
      * Put a PreparedStatement in the cache.
      *
@@ -492,4 +503,24 @@ public class JdbcPooledConnection extends AbstractXAResourceHolder<JdbcPooledCon
     public Collection<String> getTransactionGtridsCurrentlyHoldingThis() {
         return getXAResourceHolderStateGtrids();
     }
+
+    @Override
+    public long getStatementCacheHits() {
+        return statementsCache.getHits();
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        return statementsCache.getMisses();
+    }
+
+    @Override
+    public long getStatementCacheEvictions() {
+        return statementsCache.getEvictions();
+    }
+
+    @Override
+    public long getStatementCacheInUse() {
+        return statementsCache.getInUse();
+    }
 }
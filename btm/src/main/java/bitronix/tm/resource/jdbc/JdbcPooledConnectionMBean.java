@@ -31,4 +31,12 @@ public interface JdbcPooledConnectionMBean {
 
     Collection<String> getTransactionGtridsCurrentlyHoldingThis();
 
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    long getStatementCacheEvictions();
+
+    long getStatementCacheInUse();
+
 }
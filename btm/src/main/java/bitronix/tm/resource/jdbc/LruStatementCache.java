@@ -21,16 +21,21 @@ import org.slf4j.LoggerFactory;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Last Recently Used PreparedStatement cache with eviction listeners
- * support implementation.
+ * PreparedStatement cache with eviction listeners support implementation.
+ * <p>The cache follows the W-TinyLFU policy: new statements enter a small LRU admission window, statements leaving
+ * the window are only admitted in the main space if they have been requested more often than the statement they
+ * would replace, according to a {@link FrequencySketch}. The main space is a segmented LRU: statements requested
+ * again are promoted from its probation segment to its protected segment, so that hot statements are not evicted by
+ * a burst of statements used only once.</p>
+ * <p>Statements in use are never evicted: they are unlinked from their segment's LRU list while in use and linked
+ * back as most recently used when released, so eviction always takes constant time.</p>
  *
  * @author Ludovic Orban
  * @author Brett Wooldridge
@@ -45,47 +50,67 @@ public class LruStatementCache {
      * in use and therefore nothing can be evicted.  But eventually
      * (probably quickly) the cache will return to maxSize.
      */
-    private int maxSize;
+    private final int maxSize;
 
     /**
-     * We use a LinkedHashMap with _access order_ specified in the
-     * constructor.  According to the LinkedHashMap documentation:
-     * <pre>
-     *   A special constructor is provided to create a linked hash map
-     *   whose order of iteration is the order in which its entries
-     *   were last accessed, from least-recently accessed to most-recently
-     *   (access-order). This kind of map is well-suited to building LRU
-     *   caches. Invoking the put or get method results in an access to
-     *   the corresponding entry (assuming it exists after the invocation
-     *   completes).
-     * </pre>
+     * The target sizes of the admission window and of the protected
+     * segment, the probation segment gets the rest.
      */
-    private final LinkedHashMap<CacheKey, StatementTracker> cache;
+    private final int maxWindowSize;
+    private final int maxProtectedSize;
+
+    private final Map<CacheKey, StatementTracker> cache;
+
+    private final FrequencySketch sketch;
 
     /**
-     * A list of listeners concerned with prepared statement cache
-     * evictions.
+     * The statements of each segment which are not in use, from least
+     * to most recently used.
      */
-    private final List<LruEvictionListener<PreparedStatement>> evictionListeners;
+    private final AccessOrderList window;
+    private final AccessOrderList probation;
+    private final AccessOrderList protectedSegment;
 
     /**
-     * See the LinkedHashMap documentation.  We maintain our own size
-     * here, rather than calling size(), because size() on a LinkedHashMap
-     * is proportional in time (O(n)) with the size of the collection -- i.e.
-     * calling size() must traverse the entire list and count the elements.
-     * Tracking size ourselves provides O(1) access.
+     * The amount of statements of each segment, including the ones in use.
      */
     private int size;
+    private int windowSize;
+    private int protectedSize;
+    private int inUseSize;
+
+    private final StatementCacheStatistics statistics;
+
+    /**
+     * A list of listeners concerned with prepared statement cache
+     * evictions.
+     */
+    private final List<LruEvictionListener<PreparedStatement>> evictionListeners;
 
     /**
      * A flag that is set during clear operations to prevent statements that
      * are closing from coming back into the cache.
      */
-    private AtomicBoolean clearInProgress;
+    private final AtomicBoolean clearInProgress;
 
     public LruStatementCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * @param maxSize          the target maximum size of the cache.
+     * @param parentStatistics the statistics also counting this cache's activity, or null.
+     */
+    LruStatementCache(int maxSize, StatementCacheStatistics parentStatistics) {
         this.maxSize = maxSize;
-        cache = new LinkedHashMap<>(maxSize, 0.75f, true /* access order */);
+        this.maxWindowSize = Math.max(1, maxSize / 100);
+        this.maxProtectedSize = (int) (Math.max(0, maxSize - maxWindowSize) * 0.8);
+        cache = new HashMap<>();
+        sketch = new FrequencySketch(maxSize);
+        window = new AccessOrderList();
+        probation = new AccessOrderList();
+        protectedSegment = new AccessOrderList();
+        statistics = new StatementCacheStatistics(parentStatistics);
         evictionListeners = new CopyOnWriteArrayList<>();
         clearInProgress = new AtomicBoolean();
     }
@@ -106,18 +131,28 @@ public class LruStatementCache {
      */
     public PreparedStatement get(CacheKey key) {
         synchronized (cache) {
-            // See LinkedHashMap documentation.  Getting an entry means it is
-            // updated as the 'youngest' (Most Recently Used) entry.
+            sketch.increment(key);
             StatementTracker cached = cache.get(key);
-            if (cached != null) {
-                cached.usageCount++;
-                if (log.isDebugEnabled()) {
-                    log.debug("delivered from cache with usage count " + cached.usageCount + " statement <" + key + ">");
-                }
-                return cached.statement;
+            if (cached == null) {
+                statistics.recordMiss();
+                return null;
             }
 
-            return null;
+            statistics.recordHit();
+            if (cached.usageCount++ == 0) {
+                cached.unlink();
+                inUseSize++;
+                statistics.recordInUse(1);
+            }
+            if (cached.segment == Segment.PROBATION) {
+                cached.segment = Segment.PROTECTED;
+                protectedSize++;
+                demoteProtected();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("delivered from cache with usage count " + cached.usageCount + " statement <" + key + ">");
+            }
+            return cached.statement;
         }
     }
 
@@ -141,17 +176,22 @@ public class LruStatementCache {
                 return null;
             }
 
-            // See LinkedHashMap documentation.  Getting an entry means it is
-            // updated as the 'youngest' (Most Recently Used) entry.
             StatementTracker cached = cache.get(key);
             if (cached == null) {
                 if (log.isDebugEnabled()) {
                     log.debug("adding to cache statement <" + key + ">");
                 }
-                cache.put(key, new StatementTracker(statement));
+                cache.put(key, new StatementTracker(key, statement));
                 size++;
+                windowSize++;
+                inUseSize++;
+                statistics.recordInUse(1);
             } else {
-                cached.usageCount--;
+                if (cached.usageCount > 0 && --cached.usageCount == 0) {
+                    listOf(cached.segment).addLast(cached);
+                    inUseSize--;
+                    statistics.recordInUse(-1);
+                }
                 statement = cached.statement;
                 if (log.isDebugEnabled()) {
                     log.debug("returning to cache statement <" + key + "> with usage count " + cached.usageCount);
@@ -162,9 +202,7 @@ public class LruStatementCache {
             // statements until the max level is again reached.  However, if
             // every statement in the cache is 'in use', the size of the cache
             // is not reduced.  Eventually the cache will be reduced, no worries.
-            if (size > maxSize) {
-                tryEviction();
-            }
+            tryEviction();
 
             return statement;
         }
@@ -178,6 +216,34 @@ public class LruStatementCache {
         evictionListeners.remove(listener);
     }
 
+    /**
+     * @return the amount of statements delivered from this cache.
+     */
+    public long getHits() {
+        return statistics.getHits();
+    }
+
+    /**
+     * @return the amount of statements requested but not found in this cache.
+     */
+    public long getMisses() {
+        return statistics.getMisses();
+    }
+
+    /**
+     * @return the amount of statements evicted to keep this cache under its maximum size.
+     */
+    public long getEvictions() {
+        return statistics.getEvictions();
+    }
+
+    /**
+     * @return the amount of cached statements currently in use.
+     */
+    public long getInUse() {
+        return statistics.getInUse();
+    }
+
     /**
      * Evict all statements from the cache.  This likely happens on
      * connection close.
@@ -186,15 +252,18 @@ public class LruStatementCache {
         if (clearInProgress.compareAndSet(false, true)) {
             try {
                 synchronized (cache) {
-                    Iterator<Entry<CacheKey, StatementTracker>> it = cache.entrySet().iterator();
-                    while (it.hasNext()) {
-                        Entry<CacheKey, StatementTracker> entry = it.next();
-                        StatementTracker tracker = entry.getValue();
-                        it.remove();
+                    for (StatementTracker tracker : cache.values()) {
                         fireEvictionEvent(tracker.statement);
                     }
                     cache.clear();
+                    window.clear();
+                    probation.clear();
+                    protectedSegment.clear();
+                    statistics.recordInUse(-inUseSize);
                     size = 0;
+                    windowSize = 0;
+                    protectedSize = 0;
+                    inUseSize = 0;
                 }
             } finally {
                 clearInProgress.set(false);
@@ -208,25 +277,86 @@ public class LruStatementCache {
      * evicted until the cache is reduced to maxSize.
      */
     private void tryEviction() {
-        // Iteration order of the LinkedHashMap is from LRU to MRU
-        Iterator<Entry<CacheKey, StatementTracker>> it = cache.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<CacheKey, StatementTracker> entry = it.next();
-            StatementTracker tracker = entry.getValue();
-            if (tracker.usageCount == 0) {
-                it.remove();
-                size--;
-                CacheKey key = entry.getKey();
-                if (log.isDebugEnabled()) {
-                    log.debug("evicting from cache statement <" + key + "> " + entry.getValue().statement);
+        demoteProtected();
+
+        // Statements overflowing the window move to the main space, but only
+        // replace the main space's victim if they are more frequently used.
+        while (windowSize > maxWindowSize) {
+            StatementTracker candidate = window.first();
+            if (candidate == null) {
+                break;
+            }
+            if (size > maxSize) {
+                StatementTracker victim = probation.first();
+                if (victim == null) {
+                    victim = protectedSegment.first();
                 }
-                fireEvictionEvent(tracker.statement);
-                // We can stop evicting if we're at maxSize...
-                if (size <= maxSize) {
-                    break;
+                if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                    evict(candidate);
+                    continue;
                 }
+                evict(victim);
+            }
+            candidate.unlink();
+            windowSize--;
+            candidate.segment = Segment.PROBATION;
+            probation.addLast(candidate);
+        }
+
+        while (size > maxSize) {
+            StatementTracker victim = probation.first();
+            if (victim == null) {
+                victim = protectedSegment.first();
+            }
+            if (victim == null) {
+                victim = window.first();
             }
+            if (victim == null) {
+                break;
+            }
+            evict(victim);
+        }
+    }
+
+    /**
+     * Move the least recently used statements of the protected segment back to
+     * the probation segment until the protected segment's target size is reached.
+     */
+    private void demoteProtected() {
+        while (protectedSize > maxProtectedSize) {
+            StatementTracker demoted = protectedSegment.first();
+            if (demoted == null) {
+                break;
+            }
+            demoted.unlink();
+            protectedSize--;
+            demoted.segment = Segment.PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private void evict(StatementTracker tracker) {
+        tracker.unlink();
+        cache.remove(tracker.key);
+        size--;
+        if (tracker.segment == Segment.WINDOW) {
+            windowSize--;
+        } else if (tracker.segment == Segment.PROTECTED) {
+            protectedSize--;
         }
+        statistics.recordEviction();
+        if (log.isDebugEnabled()) {
+            log.debug("evicting from cache statement <" + tracker.key + "> " + tracker.statement);
+        }
+        fireEvictionEvent(tracker.statement);
+    }
+
+    private AccessOrderList listOf(Segment segment) {
+        return switch (segment) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedSegment;
+        };
     }
 
     private void fireEvictionEvent(PreparedStatement stmt) {
@@ -319,13 +449,60 @@ public class LruStatementCache {
         }
     }
 
+    private enum Segment {
+        WINDOW, PROBATION, PROTECTED
+    }
+
     private static final class StatementTracker {
+        private final CacheKey key;
         private final PreparedStatement statement;
         private int usageCount;
+        private Segment segment;
+        private StatementTracker previous;
+        private StatementTracker next;
 
-        private StatementTracker(PreparedStatement stmt) {
+        private StatementTracker(CacheKey key, PreparedStatement stmt) {
+            this.key = key;
             this.statement = stmt;
             this.usageCount = 1;
+            this.segment = Segment.WINDOW;
+        }
+
+        private void unlink() {
+            if (previous != null) {
+                previous.next = next;
+                next.previous = previous;
+                previous = null;
+                next = null;
+            }
+        }
+    }
+
+    /**
+     * Circular doubly linked list of the trackers of statements not in use, from least to most recently used.
+     */
+    private static final class AccessOrderList {
+        private final StatementTracker head = new StatementTracker(null, null);
+
+        private AccessOrderList() {
+            head.previous = head;
+            head.next = head;
+        }
+
+        private StatementTracker first() {
+            return head.next == head ? null : head.next;
+        }
+
+        private void addLast(StatementTracker tracker) {
+            tracker.previous = head.previous;
+            tracker.next = head;
+            head.previous.next = tracker;
+            head.previous = tracker;
+        }
+
+        private void clear() {
+            head.previous = head;
+            head.next = head;
         }
     }
 }
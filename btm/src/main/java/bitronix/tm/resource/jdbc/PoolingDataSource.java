@@ -24,6 +24,7 @@ import bitronix.tm.resource.common.RecoveryXAResourceHolder;
 import bitronix.tm.resource.common.ResourceBean;
 import bitronix.tm.resource.common.XAPool;
 import bitronix.tm.resource.common.XAResourceProducer;
+import bitronix.tm.resource.jdbc.LruStatementCache.CacheKey;
 import bitronix.tm.utils.ManagementRegistrar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,11 +61,14 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
     private volatile transient RecoveryXAResourceHolder recoveryXAResourceHolder;
     private volatile transient Connection recoveryConnectionHandle;
     private volatile transient Map<XAResource, JdbcPooledConnection> xaResourceHolderMap;
+    private volatile transient StatementCacheStatistics statementCacheStatistics;
+    private volatile transient Map<String, CacheKey> sharedStatementCacheKeys;
 
     private volatile String testQuery;
     private volatile boolean enableJdbc4ConnectionTest;
     private volatile int connectionTestTimeout;
     private volatile int preparedStatementCacheSize = 0;
+    private volatile boolean shareStatementCacheKeys;
     private volatile String isolationLevel;
     private volatile String cursorHoldability;
     private volatile String localAutoCommit;
@@ -73,6 +77,8 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
 
     public PoolingDataSource() {
         xaResourceHolderMap = new ConcurrentHashMap<>();
+        statementCacheStatistics = new StatementCacheStatistics();
+        sharedStatementCacheKeys = new ConcurrentHashMap<>();
     }
 
     /**
@@ -221,6 +227,44 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
         this.preparedStatementCacheSize = preparedStatementCacheSize;
     }
 
+    /**
+     * @return true if the connections of this pool share the cache keys of the statements they prepare.
+     */
+    public boolean getShareStatementCacheKeys() {
+        return shareStatementCacheKeys;
+    }
+
+    /**
+     * Set whether the connections of this pool should share the cache keys of the statements prepared without any
+     * other attribute than their SQL instead of creating one per prepared statement. Up to four times
+     * preparedStatementCacheSize keys are kept. Default value is false.
+     *
+     * @param shareStatementCacheKeys true if the connections should share statement cache keys.
+     */
+    public void setShareStatementCacheKeys(boolean shareStatementCacheKeys) {
+        this.shareStatementCacheKeys = shareStatementCacheKeys;
+    }
+
+    StatementCacheStatistics getStatementCacheStatistics() {
+        return statementCacheStatistics;
+    }
+
+    CacheKey getStatementCacheKey(String sql) {
+        if (!shareStatementCacheKeys || sql == null) {
+            return new CacheKey(sql);
+        }
+
+        CacheKey key = sharedStatementCacheKeys.get(sql);
+        if (key == null) {
+            // forget the keys of one-off statements once the table is full, the hot ones get shared again
+            if (sharedStatementCacheKeys.size() >= 4 * preparedStatementCacheSize) {
+                sharedStatementCacheKeys.clear();
+            }
+            key = sharedStatementCacheKeys.computeIfAbsent(sql, CacheKey::new);
+        }
+        return key;
+    }
+
     /**
      * @return the default isolation level.
      */
@@ -435,6 +479,7 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
         pool = null;
 
         xaResourceHolderMap.clear();
+        sharedStatementCacheKeys.clear();
 
         connectionCustomizers.clear();
 
@@ -451,6 +496,7 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
         }
         JdbcPooledConnection pooledConnection = new JdbcPooledConnection(this, xads.getXAConnection());
         xaResourceHolderMap.put(pooledConnection.getXAResource(), pooledConnection);
+        ResourceRegistrar.registerXAResourceHolder(this, pooledConnection);
         return pooledConnection;
     }
 
@@ -528,6 +574,36 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
         return pool.totalPoolSize();
     }
 
+    @Override
+    public long getAcquisitionCount() {
+        return pool.acquisitionCount();
+    }
+
+    @Override
+    public long getTotalAcquisitionTimeMicros() {
+        return pool.totalAcquisitionTimeMicros();
+    }
+
+    @Override
+    public long getStatementCacheHits() {
+        return statementCacheStatistics.getHits();
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        return statementCacheStatistics.getMisses();
+    }
+
+    @Override
+    public long getStatementCacheEvictions() {
+        return statementCacheStatistics.getEvictions();
+    }
+
+    @Override
+    public long getStatementCacheInUse() {
+        return statementCacheStatistics.getInUse();
+    }
+
     @Override
     public void reset() throws Exception {
         pool.reset();
@@ -535,7 +611,7 @@ public class PoolingDataSource extends ResourceBean implements DataSource, XARes
 
     public void unregister(JdbcPooledConnection xaResourceHolder) {
         xaResourceHolderMap.remove(xaResourceHolder.getXAResource());
-
+        ResourceRegistrar.unregisterXAResourceHolder(xaResourceHolder);
     }
 
     @Override
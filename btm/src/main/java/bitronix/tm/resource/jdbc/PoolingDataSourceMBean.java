@@ -28,6 +28,10 @@ public interface PoolingDataSourceMBean {
 
     int getTotalPoolSize();
 
+    long getAcquisitionCount();
+
+    long getTotalAcquisitionTimeMicros();
+
     boolean isFailed();
 
     void reset() throws Exception;
@@ -36,4 +40,12 @@ public interface PoolingDataSourceMBean {
 
     void setDisabled(boolean disabled);
 
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    long getStatementCacheEvictions();
+
+    long getStatementCacheInUse();
+
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.resource.jdbc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Activity counters of the prepared statement cache of a {@link JdbcPooledConnection}. Every count is also added to
+ * the counters of the parent, which aggregate the caches of all the connections of a {@link PoolingDataSource}.
+ */
+final class StatementCacheStatistics {
+
+    private final StatementCacheStatistics parent;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder inUse = new LongAdder();
+
+    StatementCacheStatistics() {
+        this(null);
+    }
+
+    /**
+     * @param parent the statistics also counting this object's counts, or null.
+     */
+    StatementCacheStatistics(StatementCacheStatistics parent) {
+        this.parent = parent;
+    }
+
+    void recordHit() {
+        hits.increment();
+        if (parent != null) {
+            parent.recordHit();
+        }
+    }
+
+    void recordMiss() {
+        misses.increment();
+        if (parent != null) {
+            parent.recordMiss();
+        }
+    }
+
+    void recordEviction() {
+        evictions.increment();
+        if (parent != null) {
+            parent.recordEviction();
+        }
+    }
+
+    /**
+     * @param delta the change of the amount of cached statements currently in use.
+     */
+    void recordInUse(int delta) {
+        inUse.add(delta);
+        if (parent != null) {
+            parent.recordInUse(delta);
+        }
+    }
+
+    /**
+     * @return the amount of statements delivered from the cache.
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the amount of statements requested but not found in the cache.
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the amount of statements evicted to keep the cache under its maximum size.
+     */
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the amount of cached statements currently in use, which cannot be evicted.
+     */
+    long getInUse() {
+        return inUse.sum();
+    }
+
+}
@@ -248,7 +248,7 @@ public class ConnectionJavaProxy extends JavaProxyBase<Connection> implements Po
         enlistResource();
 
         if (useStatementCache) {
-            CacheKey cacheKey = new CacheKey(sql);
+            CacheKey cacheKey = jdbcPooledConnection.getCacheKey(sql);
             PreparedStatement cachedStmt = jdbcPooledConnection.getCachedStatement(cacheKey);
             if (cachedStmt == null) {
                 cachedStmt = delegate.prepareStatement(sql);
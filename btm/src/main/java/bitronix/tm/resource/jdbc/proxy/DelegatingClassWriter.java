@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.resource.jdbc.proxy;
+
+import bitronix.tm.utils.ClassLoaderUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the bytecode of a class extending one of the JavaProxy classes and implementing a JDBC interface. The
+ * constructors call the super constructors and every interface method the super class does not implement is a
+ * direct call on the {@link JavaProxyBase#delegate} field.
+ * <p>The generated methods contain no branch so the class file needs no stack map frame.</p>
+ */
+final class DelegatingClassWriter {
+
+    private static final int JAVA_17_CLASS_VERSION = 61;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int GETFIELD = 0xb4;
+    private static final int CHECKCAST = 0xc0;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int RETURN = 0xb1;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    private final List<byte[]> methods = new ArrayList<>();
+
+    private final String className;
+    private final Class<?> superClass;
+    private final Class<?> primaryInterface;
+
+    private DelegatingClassWriter(String className, Class<?> superClass, Class<?> primaryInterface) {
+        this.className = className;
+        this.superClass = superClass;
+        this.primaryInterface = primaryInterface;
+    }
+
+    /**
+     * Generate the bytes of a class named after the super class with its JavaProxy suffix replaced.
+     * @param primaryInterface the JDBC interface the class implements along with all its super interfaces.
+     * @param superClass the JavaProxy class the generated class extends.
+     * @param suffix the suffix replacing JavaProxy in the name of the generated class.
+     * @return the class file bytes.
+     */
+    static byte[] generate(Class<?> primaryInterface, Class<?> superClass, String suffix) {
+        String className = internalName(superClass).replace("JavaProxy", suffix);
+        return new DelegatingClassWriter(className, superClass, primaryInterface).toByteArray();
+    }
+
+    private byte[] toByteArray() {
+        try {
+            int thisClassIndex = classConstant(className);
+            int superClassIndex = classConstant(internalName(superClass));
+
+            Set<Class<?>> interfaces = new LinkedHashSet<>(ClassLoaderUtils.getAllInterfaces(primaryInterface));
+            List<Integer> interfaceIndexes = new ArrayList<>();
+            for (Class<?> intf : interfaces) {
+                interfaceIndexes.add(classConstant(internalName(intf)));
+            }
+
+            for (Constructor<?> constructor : superClass.getConstructors()) {
+                writeConstructor(constructor);
+            }
+
+            // Don't generate delegates for methods the super class implements
+            Set<String> signatures = new HashSet<>();
+            for (Method method : superClass.getMethods()) {
+                if (!Modifier.isAbstract(method.getModifiers())) {
+                    signatures.add(method.getName() + methodDescriptor(method));
+                }
+            }
+            for (Class<?> intf : interfaces) {
+                for (Method method : intf.getDeclaredMethods()) {
+                    if (Modifier.isStatic(method.getModifiers()) || method.isSynthetic()) {
+                        continue;
+                    }
+                    // add() also ignores methods already added from another interface
+                    if (signatures.add(method.getName() + methodDescriptor(method))) {
+                        writeDelegateMethod(method);
+                    }
+                }
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(JAVA_17_CLASS_VERSION);
+            out.writeShort(constantCount);
+            constantPool.flush();
+            constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClassIndex);
+            out.writeShort(superClassIndex);
+            out.writeShort(interfaceIndexes.size());
+            for (int index : interfaceIndexes) {
+                out.writeShort(index);
+            }
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * public Xxx(args) { super(args); }
+     */
+    private void writeConstructor(Constructor<?> constructor) throws IOException {
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        String descriptor = methodDescriptor(parameterTypes, void.class);
+
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(code);
+        out.writeByte(ALOAD_0);
+        int slots = writeLoadParameters(out, parameterTypes);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(memberConstant(CONSTANT_METHODREF, internalName(superClass), "<init>", descriptor));
+        out.writeByte(RETURN);
+
+        writeMethod("<init>", descriptor, 1 + slots, 1 + slots, code.toByteArray());
+    }
+
+    /**
+     * public T method(args) { return ((PrimaryInterface) delegate).method(args); }
+     */
+    private void writeDelegateMethod(Method method) throws IOException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        String descriptor = methodDescriptor(parameterTypes, returnType);
+
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(code);
+        out.writeByte(ALOAD_0);
+        out.writeByte(GETFIELD);
+        out.writeShort(memberConstant(CONSTANT_FIELDREF, internalName(JavaProxyBase.class), "delegate", "Ljava/lang/Object;"));
+        out.writeByte(CHECKCAST);
+        out.writeShort(classConstant(internalName(primaryInterface)));
+        int slots = writeLoadParameters(out, parameterTypes);
+        out.writeByte(INVOKEINTERFACE);
+        out.writeShort(memberConstant(CONSTANT_INTERFACE_METHODREF, internalName(primaryInterface), method.getName(), descriptor));
+        out.writeByte(1 + slots);
+        out.writeByte(0);
+        out.writeByte(returnOpcode(returnType));
+
+        int maxStack = Math.max(1 + slots, slotSize(returnType));
+        writeMethod(method.getName(), descriptor, maxStack, 1 + slots, code.toByteArray());
+    }
+
+    private void writeMethod(String name, String descriptor, int maxStack, int maxLocals, byte[] code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(utf8Constant(name));
+        out.writeShort(utf8Constant(descriptor));
+        out.writeShort(1); // attributes
+        out.writeShort(utf8Constant("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+        out.flush();
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * @return the amount of local variable slots used by the parameters.
+     */
+    private static int writeLoadParameters(DataOutputStream out, Class<?>[] parameterTypes) throws IOException {
+        int slot = 1;
+        for (Class<?> type : parameterTypes) {
+            if (slot > 0xff) {
+                throw new IllegalArgumentException("too many parameters to generate a delegate: " + parameterTypes.length);
+            }
+            out.writeByte(loadOpcode(type));
+            out.writeByte(slot);
+            slot += slotSize(type);
+        }
+        return slot - 1;
+    }
+
+    private static int loadOpcode(Class<?> type) {
+        if (type == long.class) {
+            return 0x16; // lload
+        }
+        if (type == float.class) {
+            return 0x17; // fload
+        }
+        if (type == double.class) {
+            return 0x18; // dload
+        }
+        if (type.isPrimitive()) {
+            return 0x15; // iload
+        }
+        return 0x19; // aload
+    }
+
+    private static int returnOpcode(Class<?> type) {
+        if (type == void.class) {
+            return RETURN;
+        }
+        if (type == long.class) {
+            return 0xad; // lreturn
+        }
+        if (type == float.class) {
+            return 0xae; // freturn
+        }
+        if (type == double.class) {
+            return 0xaf; // dreturn
+        }
+        if (type.isPrimitive()) {
+            return 0xac; // ireturn
+        }
+        return 0xb0; // areturn
+    }
+
+    private static int slotSize(Class<?> type) {
+        if (type == void.class) {
+            return 0;
+        }
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    /* Constant pool */
+
+    private int utf8Constant(String value) throws IOException {
+        Integer index = constantIndexes.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        constantPool.writeByte(CONSTANT_UTF8);
+        constantPool.writeUTF(value);
+        return addConstant("U" + value);
+    }
+
+    private int classConstant(String internalName) throws IOException {
+        Integer index = constantIndexes.get("C" + internalName);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8Constant(internalName);
+        constantPool.writeByte(CONSTANT_CLASS);
+        constantPool.writeShort(nameIndex);
+        return addConstant("C" + internalName);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) throws IOException {
+        String key = tag + owner + '.' + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int classIndex = classConstant(owner);
+        int nameAndTypeIndex = nameAndTypeConstant(name, descriptor);
+        constantPool.writeByte(tag);
+        constantPool.writeShort(classIndex);
+        constantPool.writeShort(nameAndTypeIndex);
+        return addConstant(key);
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor) throws IOException {
+        String key = "N" + name + ':' + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+        constantPool.writeShort(nameIndex);
+        constantPool.writeShort(descriptorIndex);
+        return addConstant(key);
+    }
+
+    private int addConstant(String key) {
+        int index = constantCount++;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    /* Descriptors */
+
+    private static String internalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+    private static String methodDescriptor(Method method) {
+        return methodDescriptor(method.getParameterTypes(), method.getReturnType());
+    }
+
+    private static String methodDescriptor(Class<?>[] parameterTypes, Class<?> returnType) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> type : parameterTypes) {
+            sb.append(type.descriptorString());
+        }
+        return sb.append(')').append(returnType.descriptorString()).toString();
+    }
+
+}
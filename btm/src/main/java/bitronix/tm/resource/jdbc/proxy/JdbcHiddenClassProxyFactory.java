@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.resource.jdbc.proxy;
+
+import bitronix.tm.resource.jdbc.JdbcPooledConnection;
+import bitronix.tm.resource.jdbc.LruStatementCache.CacheKey;
+import bitronix.tm.resource.jdbc.lrc.LrcXAResource;
+
+import javax.sql.XAConnection;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * This class generates JDBC proxy classes as JDK hidden classes. Like the Javassist ones, the generated classes
+ * extend the JavaProxy classes and call the delegate directly for every method the JavaProxy classes do not
+ * implement, but no bytecode library is required.
+ *
+ * @author Ludovic Orban
+ */
+public class JdbcHiddenClassProxyFactory implements JdbcProxyFactory {
+
+    private final MethodHandle proxyConnectionConstructor;
+    private final MethodHandle proxyStatementConstructor;
+    private final MethodHandle proxyCallableStatementConstructor;
+    private final MethodHandle proxyPreparedStatementConstructor;
+    private final MethodHandle proxyResultSetConstructor;
+
+    // For LRC we just use the standard Java Proxies
+    private final JdbcJavaProxyFactory lrcProxyFactory;
+
+    JdbcHiddenClassProxyFactory() {
+        proxyConnectionConstructor = createProxyClass(Connection.class, ConnectionJavaProxy.class,
+                JdbcPooledConnection.class, Connection.class);
+        proxyStatementConstructor = createProxyClass(Statement.class, StatementJavaProxy.class,
+                JdbcPooledConnection.class, Statement.class);
+        proxyCallableStatementConstructor = createProxyClass(CallableStatement.class, CallableStatementJavaProxy.class,
+                JdbcPooledConnection.class, CallableStatement.class);
+        proxyPreparedStatementConstructor = createProxyClass(PreparedStatement.class, PreparedStatementJavaProxy.class,
+                JdbcPooledConnection.class, PreparedStatement.class, CacheKey.class);
+        proxyResultSetConstructor = createProxyClass(ResultSet.class, ResultSetJavaProxy.class,
+                Statement.class, ResultSet.class);
+
+        lrcProxyFactory = new JdbcJavaProxyFactory();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Connection getProxyConnection(JdbcPooledConnection jdbcPooledConnection, Connection connection) {
+        try {
+            return (Connection) proxyConnectionConstructor.invokeExact(jdbcPooledConnection, connection);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement getProxyStatement(JdbcPooledConnection jdbcPooledConnection, Statement statement) {
+        try {
+            return (Statement) proxyStatementConstructor.invokeExact(jdbcPooledConnection, statement);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CallableStatement getProxyCallableStatement(JdbcPooledConnection jdbcPooledConnection, CallableStatement statement) {
+        try {
+            return (CallableStatement) proxyCallableStatementConstructor.invokeExact(jdbcPooledConnection, statement);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedStatement getProxyPreparedStatement(JdbcPooledConnection jdbcPooledConnection, PreparedStatement statement, CacheKey cacheKey) {
+        try {
+            return (PreparedStatement) proxyPreparedStatementConstructor.invokeExact(jdbcPooledConnection, statement, cacheKey);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet getProxyResultSet(Statement statement, ResultSet resultSet) {
+        try {
+            return (ResultSet) proxyResultSetConstructor.invokeExact(statement, resultSet);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public XAConnection getProxyXaConnection(Connection connection) {
+        return lrcProxyFactory.getProxyXaConnection(connection);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Connection getProxyConnection(LrcXAResource xaResource, Connection connection) {
+        return lrcProxyFactory.getProxyConnection(xaResource, connection);
+    }
+
+    // ---------------------------------------------------------------
+    //  Generate Hidden Proxy Classes
+    // ---------------------------------------------------------------
+
+    /**
+     * Define a class XxxHiddenClassProxy extends XxxJavaProxy implements primaryInterface and return its
+     * constructor, typed to return the primary interface.
+     */
+    private static MethodHandle createProxyClass(Class<?> primaryInterface, Class<?> superClass, Class<?>... parameterTypes) {
+        try {
+            byte[] bytes = DelegatingClassWriter.generate(primaryInterface, superClass, "HiddenClassProxy");
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, parameterTypes));
+            return constructor.asType(MethodType.methodType(primaryInterface, parameterTypes));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -132,6 +132,7 @@ public class DualSessionWrapper extends AbstractXAResourceHolder<DualSessionWrap
                 }
             }
             xaResource = xaSession.getXAResource();
+            pooledConnection.getPoolingConnectionFactory().register(this);
         }
         return xaSession.getSession();
     }
@@ -198,6 +199,7 @@ public class DualSessionWrapper extends AbstractXAResourceHolder<DualSessionWrap
             }
 
             if (xaSession != null) {
+                pooledConnection.getPoolingConnectionFactory().unregister(this);
                 try {
                     xaSession.close();
                 } catch (JMSException ex) {
@@ -33,6 +33,7 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of a JMS pooled connection wrapping vendor's {@link XAConnection} implementation.
@@ -46,7 +47,8 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
 
     private volatile XAConnection xaConnection;
     private final PoolingConnectionFactory poolingConnectionFactory;
-    private final Set<DualSessionWrapper> sessions = Collections.synchronizedSet(new HashSet<DualSessionWrapper>());
+    private final Set<DualSessionWrapper> sessions = ConcurrentHashMap.newKeySet();
+    private final Object sessionCreationLock = new Object();
 
     /* management */
     private final String jmxName;
@@ -96,6 +98,9 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
     public synchronized void close() throws JMSException {
         if (xaConnection != null) {
             poolingConnectionFactory.unregister(this);
+            for (DualSessionWrapper dualSessionWrapper : sessions) {
+                poolingConnectionFactory.unregister(dualSessionWrapper);
+            }
             setState(State.CLOSED);
             try {
                 xaConnection.close();
@@ -107,9 +112,7 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
 
     @Override
     public List<DualSessionWrapper> getXAResourceHolders() {
-        synchronized (sessions) {
-            return new ArrayList<>(sessions);
-        }
+        return new ArrayList<>(sessions);
     }
 
     @Override
@@ -174,26 +177,25 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
     }
 
     private void closePendingSessions() {
-        synchronized (sessions) {
-            for (DualSessionWrapper dualSessionWrapper : sessions) {
-                if (dualSessionWrapper.getState() != State.ACCESSIBLE) {
-                    continue;
-                }
+        for (DualSessionWrapper dualSessionWrapper : sessions) {
+            if (dualSessionWrapper.getState() != State.ACCESSIBLE) {
+                continue;
+            }
 
-                try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("trying to close pending session " + dualSessionWrapper);
-                    }
-                    dualSessionWrapper.close();
-                } catch (JMSException ex) {
-                    log.warn("error closing pending session " + dualSessionWrapper, ex);
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("trying to close pending session " + dualSessionWrapper);
                 }
+                dualSessionWrapper.close();
+            } catch (JMSException ex) {
+                log.warn("error closing pending session " + dualSessionWrapper, ex);
             }
         }
     }
 
     protected Session createSession(boolean transacted, int acknowledgeMode) throws JMSException {
-        synchronized (sessions) {
+        // only serializes session creation and recycling, readers of the sessions set do not lock
+        synchronized (sessionCreationLock) {
             DualSessionWrapper sessionHandle = getNotAccessibleSession();
 
             if (sessionHandle == null) {
@@ -215,17 +217,15 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
     }
 
     private DualSessionWrapper getNotAccessibleSession() {
-        synchronized (sessions) {
-            if (log.isDebugEnabled()) {
-                log.debug(sessions.size() + " session(s) open from " + this);
-            }
-            for (DualSessionWrapper sessionHandle : sessions) {
-                if (sessionHandle.getState() == State.NOT_ACCESSIBLE) {
-                    return sessionHandle;
-                }
+        if (log.isDebugEnabled()) {
+            log.debug(sessions.size() + " session(s) open from " + this);
+        }
+        for (DualSessionWrapper sessionHandle : sessions) {
+            if (sessionHandle.getState() == State.NOT_ACCESSIBLE) {
+                return sessionHandle;
             }
-            return null;
         }
+        return null;
     }
 
     @Override
@@ -253,13 +253,11 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
 
     @Override
     public Collection<String> getTransactionGtridsCurrentlyHoldingThis() {
-        synchronized (sessions) {
-            Set<String> result = new HashSet<>();
-            for (DualSessionWrapper dsw : sessions) {
-                result.addAll(dsw.getXAResourceHolderStateGtrids());
-            }
-            return result;
+        Set<String> result = new HashSet<>();
+        for (DualSessionWrapper dsw : sessions) {
+            result.addAll(dsw.getXAResourceHolderStateGtrids());
         }
+        return result;
     }
 
     /**
@@ -297,11 +295,9 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
         @Override
         public void stateChanged(DualSessionWrapper source, State oldState, State newState) {
             if (newState == State.CLOSED) {
-                synchronized (sessions) {
-                    sessions.remove(source);
-                    if (log.isDebugEnabled()) {
-                        log.debug("DualSessionWrapper has been closed, " + sessions.size() + " session(s) left open in pooled connection");
-                    }
+                sessions.remove(source);
+                if (log.isDebugEnabled()) {
+                    log.debug("DualSessionWrapper has been closed, " + sessions.size() + " session(s) left open in pooled connection");
                 }
             }
         }
@@ -312,13 +308,11 @@ public class JmsPooledConnection extends AbstractXAStatefulHolder<JmsPooledConne
     }
 
     public DualSessionWrapper getXAResourceHolderForXaResource(XAResource xaResource) {
-        synchronized (sessions) {
-            for (DualSessionWrapper xaResourceHolder : sessions) {
-                if (xaResourceHolder.getXAResource() == xaResource) {
-                    return xaResourceHolder;
-                }
+        for (DualSessionWrapper xaResourceHolder : sessions) {
+            if (xaResourceHolder.getXAResource() == xaResource) {
+                return xaResourceHolder;
             }
-            return null;
         }
+        return null;
     }
 }
@@ -24,6 +24,7 @@ import bitronix.tm.resource.common.RecoveryXAResourceHolder;
 import bitronix.tm.resource.common.ResourceBean;
 import bitronix.tm.resource.common.XAPool;
 import bitronix.tm.resource.common.XAResourceProducer;
+import bitronix.tm.utils.IdentityKey;
 import bitronix.tm.utils.ManagementRegistrar;
 import jakarta.jms.*;
 import org.slf4j.Logger;
@@ -34,6 +35,8 @@ import javax.naming.Reference;
 import javax.naming.StringRefAddr;
 import javax.transaction.xa.XAResource;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -51,6 +54,8 @@ public class PoolingConnectionFactory extends ResourceBean implements Connection
     private volatile transient JmsPooledConnection recoveryPooledConnection;
     private volatile transient RecoveryXAResourceHolder recoveryXAResourceHolder;
     private final transient List<JmsPooledConnection> xaStatefulHolders;
+    // keyed by identity: vendors' XAResource.equals() may consider the resources of different sessions equal
+    private final transient Map<IdentityKey<XAResource>, DualSessionWrapper> xaResourceHolderMap;
 
     private volatile boolean cacheProducersConsumers = true;
     private volatile boolean testConnections = false;
@@ -61,6 +66,7 @@ public class PoolingConnectionFactory extends ResourceBean implements Connection
 
     public PoolingConnectionFactory() {
         xaStatefulHolders = new CopyOnWriteArrayList<>();
+        xaResourceHolderMap = new ConcurrentHashMap<>();
     }
 
     /**
@@ -203,6 +209,30 @@ public class PoolingConnectionFactory extends ResourceBean implements Connection
         xaStatefulHolders.remove(jmsPooledConnection);
     }
 
+    /**
+     * Index a session by the {@link XAResource} of its XA session, called when the XA session gets created.
+     *
+     * @param dualSessionWrapper the session.
+     */
+    void register(DualSessionWrapper dualSessionWrapper) {
+        xaResourceHolderMap.put(new IdentityKey<>(dualSessionWrapper.getXAResource()), dualSessionWrapper);
+        ResourceRegistrar.registerXAResourceHolder(this, dualSessionWrapper);
+    }
+
+    /**
+     * Remove a session from the index, called before its XA session gets closed.
+     *
+     * @param dualSessionWrapper the session.
+     */
+    void unregister(DualSessionWrapper dualSessionWrapper) {
+        XAResource xaResource = dualSessionWrapper.getXAResource();
+        if (xaResource == null) {
+            return;
+        }
+        xaResourceHolderMap.remove(new IdentityKey<>(xaResource), dualSessionWrapper);
+        ResourceRegistrar.unregisterXAResourceHolder(dualSessionWrapper);
+    }
+
     @Override
     public String toString() {
         return "a PoolingConnectionFactory with " + pool;
@@ -285,6 +315,8 @@ public class PoolingConnectionFactory extends ResourceBean implements Connection
         pool.close();
         pool = null;
 
+        xaResourceHolderMap.clear();
+
         ManagementRegistrar.unregister(jmxName);
         jmxName = null;
 
@@ -317,15 +349,11 @@ public class PoolingConnectionFactory extends ResourceBean implements Connection
 
     @Override
     public DualSessionWrapper findXAResourceHolder(XAResource xaResource) {
-        synchronized (xaStatefulHolders) {
-            for (JmsPooledConnection jmsPooledConnection : xaStatefulHolders) {
-                DualSessionWrapper xaResourceHolder = jmsPooledConnection.getXAResourceHolderForXaResource(xaResource);
-                if (xaResourceHolder != null) {
-                    return xaResourceHolder;
-                }
-            }
-            return null;
+        DualSessionWrapper xaResourceHolder = xaResourceHolderMap.get(new IdentityKey<>(xaResource));
+        if (xaResourceHolder != null && xaResourceHolder.getXAResource() == xaResource) {
+            return xaResourceHolder;
         }
+        return null;
     }
 
     /* Referenceable implementation */
@@ -360,6 +388,16 @@ public class PoolingConnectionFactory extends ResourceBean implements Connection
         return pool.totalPoolSize();
     }
 
+    @Override
+    public long getAcquisitionCount() {
+        return pool.acquisitionCount();
+    }
+
+    @Override
+    public long getTotalAcquisitionTimeMicros() {
+        return pool.totalAcquisitionTimeMicros();
+    }
+
     @Override
     public void reset() throws Exception {
         pool.reset();
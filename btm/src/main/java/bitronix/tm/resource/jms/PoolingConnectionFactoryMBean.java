@@ -28,6 +28,10 @@ public interface PoolingConnectionFactoryMBean {
 
     long getTotalPoolSize();
 
+    long getAcquisitionCount();
+
+    long getTotalAcquisitionTimeMicros();
+
     boolean isFailed();
 
     void reset() throws Exception;
@@ -29,16 +29,23 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Timed tasks service.
+ * <p>Transaction timeouts are kept in a {@link TimingWheel} so that scheduling and cancelling them, which happens
+ * once per transaction, does not depend on the amount of in-flight transactions. The few other tasks (recovery and
+ * pool shrinking) are kept in a queue sorted by execution time.</p>
  *
  * @author Ludovic Orban
  */
@@ -46,8 +53,12 @@ public class TaskScheduler extends Thread implements Service {
 
     private static final Logger log = LoggerFactory.getLogger(TaskScheduler.class);
 
+    private static final long TICK_MILLIS = 500L; // execute twice per second. That's enough precision.
+    private static final int WHEEL_SIZE = 512;
+
     private final SortedSet<Task> tasks;
     private final Lock tasksLock;
+    private final TimingWheel timeouts;
     private final AtomicBoolean active = new AtomicBoolean(true);
 
     public TaskScheduler() {
@@ -75,6 +86,7 @@ public class TaskScheduler extends Thread implements Service {
         }
         this.tasks = tasks;
         this.tasksLock = tasksLock;
+        this.timeouts = new TimingWheel(TICK_MILLIS, WHEEL_SIZE, MonotonicClock.currentTimeMillis());
     }
 
     private void lock() {
@@ -105,7 +117,7 @@ public class TaskScheduler extends Thread implements Service {
     public int countTasksQueued() {
         lock();
         try {
-            return tasks.size();
+            return tasks.size() + timeouts.size();
         } finally {
             unlock();
         }
@@ -116,6 +128,7 @@ public class TaskScheduler extends Thread implements Service {
         boolean wasActive = setActive(false);
 
         if (wasActive) {
+            LockSupport.unpark(this);
             try {
                 Duration gracefulShutdownTime = TransactionManagerServices.getConfiguration().getGracefulShutdownInterval();
                 if (log.isDebugEnabled()) {
@@ -129,13 +142,16 @@ public class TaskScheduler extends Thread implements Service {
     }
 
     /**
-     * Schedule a task that will mark the transaction as timed out at the specified date. If this method is called
-     * with the same transaction multiple times, the previous timeout date is dropped and replaced by the new one.
+     * Schedule a task that will mark the transaction as timed out at the specified date. The returned task is the
+     * handle with which the timeout can be cancelled, see {@link #cancelTransactionTimeout(TransactionTimeoutTask)}.
+     * <p>Each call schedules a separate task: calling this method again with the same transaction does not replace the
+     * previously scheduled timeout, which has to be cancelled with its own handle.</p>
      *
      * @param transaction   the transaction to mark as timeout.
      * @param executionTime the date at which the transaction must be marked.
+     * @return the scheduled task.
      */
-    public void scheduleTransactionTimeout(BitronixTransaction transaction, LocalDateTime executionTime) {
+    public TransactionTimeoutTask scheduleTransactionTimeout(BitronixTransaction transaction, LocalDateTime executionTime) {
         if (log.isDebugEnabled()) {
             log.debug("scheduling transaction timeout task on " + transaction + " for " + executionTime);
         }
@@ -147,17 +163,42 @@ public class TaskScheduler extends Thread implements Service {
         }
 
         TransactionTimeoutTask task = new TransactionTimeoutTask(transaction, executionTime, this);
-        addTask(task);
+        timeouts.schedule(task);
         if (log.isDebugEnabled()) {
             log.debug("scheduled " + task + ", total task(s) queued: " + countTasksQueued());
         }
+        return task;
+    }
+
+    /**
+     * Cancel the task that will mark a transaction as timed out.
+     *
+     * @param task the task returned by {@link #scheduleTransactionTimeout(BitronixTransaction, LocalDateTime)}.
+     */
+    public void cancelTransactionTimeout(TransactionTimeoutTask task) {
+        if (log.isDebugEnabled()) {
+            log.debug("cancelling " + task);
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("expected a non-null transaction timeout task");
+        }
+
+        if (!timeouts.cancel(task)) {
+            if (log.isDebugEnabled()) {
+                log.debug("task already executed or cancelled: " + task);
+            }
+        }
     }
 
     /**
-     * Cancel the task that will mark the transaction as timed out at the specified date.
+     * Cancel the tasks that will mark the transaction as timed out. Unlike
+     * {@link #cancelTransactionTimeout(TransactionTimeoutTask)}, this walks all the scheduled timeouts.
      *
-     * @param transaction the transaction to mark as timeout.
+     * @param transaction the transaction whose timeout must be cancelled.
+     * @deprecated keep the task returned by {@link #scheduleTransactionTimeout(BitronixTransaction, LocalDateTime)}
+     * and cancel it with {@link #cancelTransactionTimeout(TransactionTimeoutTask)} instead.
      */
+    @Deprecated
     public void cancelTransactionTimeout(BitronixTransaction transaction) {
         if (log.isDebugEnabled()) {
             log.debug("cancelling transaction timeout task on " + transaction);
@@ -166,9 +207,9 @@ public class TaskScheduler extends Thread implements Service {
             throw new IllegalArgumentException("expected a non-null transaction");
         }
 
-        if (!removeTaskByObject(transaction)) {
+        if (timeouts.cancelAll(transaction) == 0) {
             if (log.isDebugEnabled()) {
-                log.debug("no task found based on object " + transaction);
+                log.debug("no transaction timeout task found for " + transaction);
             }
         }
     }
@@ -257,6 +298,11 @@ public class TaskScheduler extends Thread implements Service {
     }
 
     void addTask(Task task) {
+        if (task instanceof TransactionTimeoutTask timeoutTask) {
+            timeouts.schedule(timeoutTask);
+            return;
+        }
+
         lock();
         try {
             removeTaskByObject(task.getObject());
@@ -299,43 +345,43 @@ public class TaskScheduler extends Thread implements Service {
     @Override
     public void run() {
         while (isActive()) {
-            try {
-                executeElapsedTasks();
-                Thread.sleep(500); // execute twice per second. That's enough precision.
-            } catch (InterruptedException ex) {
-                // ignore
+            executeElapsedTasks();
+            // parked rather than sleeping so that shutdown() can wake this thread up without interrupting a task
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS));
+            // parkNanos() returns at once while the interrupt flag is set, which tasks like the recoverer can set
+            if (Thread.interrupted() && log.isDebugEnabled()) {
+                log.debug("task scheduler thread interrupted, ignoring it");
             }
         }
     }
 
     private void executeElapsedTasks() {
+        long now = MonotonicClock.currentTimeMillis();
+
+        List<TransactionTimeoutTask> expiredTimeouts = new ArrayList<>();
+        timeouts.expire(now, expiredTimeouts);
+        for (TransactionTimeoutTask task : expiredTimeouts) {
+            execute(task);
+        }
+
         lock();
         try {
             if (this.tasks.isEmpty()) {
                 return;
             }
 
+            LocalDateTime nowDate = Instant.ofEpochMilli(now).atZone(ZoneId.systemDefault()).toLocalDateTime();
             Set<Task> toRemove = new HashSet<>();
             for (Task task : getSafeIterableTasks()) {
-                if (task.getExecutionTime().compareTo(Instant.ofEpochMilli(MonotonicClock.currentTimeMillis()).atZone(ZoneId.systemDefault()).toLocalDateTime()) <= 0) {
-                    // if the execution time is now or in the past
-                    if (log.isDebugEnabled()) {
-                        log.debug("running " + task);
-                    }
-                    try {
-                        task.execute();
-                        if (log.isDebugEnabled()) {
-                            log.debug("successfully ran " + task);
-                        }
-                    } catch (Exception ex) {
-                        log.warn("error running " + task, ex);
-                    } finally {
-                        toRemove.add(task);
-                        if (log.isDebugEnabled()) {
-                            log.debug("total task(s) still queued: " + tasks.size());
-                        }
-                    }
-                } // if
+                if (task.getExecutionTime().compareTo(nowDate) > 0) {
+                    // tasks are sorted by execution time, all the remaining ones are in the future
+                    break;
+                }
+                try {
+                    execute(task);
+                } finally {
+                    toRemove.add(task);
+                }
             }
             this.tasks.removeAll(toRemove);
         } finally {
@@ -343,4 +389,21 @@ public class TaskScheduler extends Thread implements Service {
         }
     }
 
+    private void execute(Task task) {
+        if (log.isDebugEnabled()) {
+            log.debug("running " + task);
+        }
+        try {
+            task.execute();
+            if (log.isDebugEnabled()) {
+                log.debug("successfully ran " + task);
+            }
+        } catch (Exception ex) {
+            log.warn("error running " + task, ex);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("total task(s) still queued: " + countTasksQueued());
+        }
+    }
+
 }
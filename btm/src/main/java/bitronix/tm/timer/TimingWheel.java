@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.timer;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed timing wheel holding {@link TransactionTimeoutTask}s.
+ * <p>Each task is linked in the bucket of the tick at which it expires, so both scheduling and cancelling a task are
+ * constant time operations no matter how many tasks are queued. Tasks expiring more than one wheel rotation away share
+ * their bucket with tasks of earlier rotations and are simply skipped until their own rotation comes.</p>
+ * <p>Expiring tasks only walks the buckets of the ticks elapsed since the last call. The bucket of the current tick is
+ * walked again by the next call since it can still contain tasks expiring later during that tick.</p>
+ */
+final class TimingWheel {
+
+    private final long tickMillis;
+    private final TransactionTimeoutTask[] buckets;
+    private final int mask;
+    private final Lock lock = new ReentrantLock();
+
+    // all those fields are guarded by lock
+    private long currentTick;
+    private int size;
+
+    /**
+     * Create a wheel.
+     *
+     * @param tickMillis  the duration of a tick in milliseconds.
+     * @param bucketCount the amount of buckets, rounded up to a power of two.
+     * @param nowMillis   the current time in milliseconds.
+     */
+    TimingWheel(long tickMillis, int bucketCount, long nowMillis) {
+        this.tickMillis = tickMillis;
+        int count = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.buckets = new TransactionTimeoutTask[count];
+        this.mask = count - 1;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Add a task to the wheel. A task already in the wheel is first removed from it.
+     *
+     * @param task the task to add.
+     */
+    void schedule(TransactionTimeoutTask task) {
+        lock.lock();
+        try {
+            if (task.bucket >= 0) {
+                unlink(task);
+            }
+            // a task that already expired is put in the current bucket so that it is expired by the next call to expire
+            long tick = Math.max(task.getExecutionTimeMillis() / tickMillis, currentTick);
+            int index = (int) (tick & mask);
+            TransactionTimeoutTask head = buckets[index];
+            task.next = head;
+            task.prev = null;
+            if (head != null) {
+                head.prev = task;
+            }
+            buckets[index] = task;
+            task.bucket = index;
+            size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a task from the wheel.
+     *
+     * @param task the task to remove.
+     * @return true if the task was in the wheel, false otherwise.
+     */
+    boolean cancel(TransactionTimeoutTask task) {
+        lock.lock();
+        try {
+            if (task.bucket < 0) {
+                return false;
+            }
+            unlink(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove all the tasks of an object. Unlike {@link #cancel(TransactionTimeoutTask)}, this walks the whole wheel.
+     *
+     * @param object the object whose tasks must be removed, see {@link TransactionTimeoutTask#getObject()}.
+     * @return the amount of removed tasks.
+     */
+    int cancelAll(Object object) {
+        lock.lock();
+        try {
+            int removed = 0;
+            for (int i = 0; i < buckets.length && size > 0; i++) {
+                TransactionTimeoutTask task = buckets[i];
+                while (task != null) {
+                    TransactionTimeoutTask next = task.next;
+                    if (task.getObject() == object) {
+                        unlink(task);
+                        removed++;
+                    }
+                    task = next;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove all tasks which execution time is now or in the past.
+     *
+     * @param nowMillis the current time in milliseconds.
+     * @param expired   the list to which the removed tasks are added.
+     */
+    void expire(long nowMillis, List<TransactionTimeoutTask> expired) {
+        lock.lock();
+        try {
+            long nowTick = nowMillis / tickMillis;
+            if (size > 0) {
+                // after a whole rotation, all the buckets have been walked
+                long fromTick = Math.max(currentTick, nowTick - mask);
+                for (long tick = fromTick; tick <= nowTick; tick++) {
+                    TransactionTimeoutTask task = buckets[(int) (tick & mask)];
+                    while (task != null) {
+                        TransactionTimeoutTask next = task.next;
+                        if (task.getExecutionTimeMillis() <= nowMillis) {
+                            unlink(task);
+                            expired.add(task);
+                        }
+                        task = next;
+                    }
+                }
+            }
+            if (nowTick > currentTick) {
+                currentTick = nowTick;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the amount of tasks in the wheel.
+     */
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Internal impl.
+     */
+
+    /**
+     * Unlink a task from its bucket. Must be called with lock held.
+     */
+    private void unlink(TransactionTimeoutTask task) {
+        if (task.prev != null) {
+            task.prev.next = task.next;
+        } else {
+            buckets[task.bucket] = task.next;
+        }
+        if (task.next != null) {
+            task.next.prev = task.prev;
+        }
+        task.prev = null;
+        task.next = null;
+        task.bucket = -1;
+        size--;
+    }
+
+}
@@ -21,9 +21,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * This task is used to mark a transaction as timed-out.
+ * <p>Instances are queued in the {@link TimingWheel} of the {@link TaskScheduler} and act as the handle with which the
+ * timeout is cancelled.</p>
  *
  * @author Ludovic Orban
  */
@@ -32,10 +35,21 @@ public class TransactionTimeoutTask extends Task {
     private static final Logger log = LoggerFactory.getLogger(TransactionTimeoutTask.class);
 
     private final BitronixTransaction transaction;
+    private final long executionTimeMillis;
+
+    // all those fields are guarded by the lock of the timing wheel
+    TransactionTimeoutTask prev;
+    TransactionTimeoutTask next;
+    int bucket = -1;
 
     public TransactionTimeoutTask(BitronixTransaction transaction, LocalDateTime executionTime, TaskScheduler scheduler) {
         super(executionTime, scheduler);
         this.transaction = transaction;
+        this.executionTimeMillis = executionTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    long getExecutionTimeMillis() {
+        return executionTimeMillis;
     }
 
     @Override
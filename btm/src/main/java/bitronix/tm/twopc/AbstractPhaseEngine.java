@@ -16,6 +16,7 @@
 package bitronix.tm.twopc;
 
 import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.internal.BitronixRuntimeException;
 import bitronix.tm.internal.XAResourceHolderState;
 import bitronix.tm.internal.XAResourceManager;
 import bitronix.tm.twopc.executor.Executor;
@@ -27,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.transaction.xa.XAException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Abstract phase execution engine.
@@ -54,6 +56,7 @@ public abstract class AbstractPhaseEngine {
      * @throws PhaseException if one or more resource threw an exception during phase execution.
      * @see bitronix.tm.twopc.executor.SyncExecutor
      * @see bitronix.tm.twopc.executor.AsyncExecutor
+     * @see bitronix.tm.twopc.executor.VirtualThreadExecutor
      */
     protected void executePhase(XAResourceManager resourceManager, boolean reverse) throws PhaseException {
         SortedSet<Integer> positions;
@@ -114,7 +117,6 @@ public abstract class AbstractPhaseEngine {
         List<Exception> exceptions = new ArrayList<>();
         List<XAResourceHolderState> errorResources = new ArrayList<>();
 
-        // start threads
         for (XAResourceHolderState resource : resources) {
             if (!isParticipating(resource)) {
                 if (log.isDebugEnabled()) {
@@ -122,20 +124,27 @@ public abstract class AbstractPhaseEngine {
                 }
                 continue;
             }
+            jobs.add(createJob(resource));
+        }
 
-            Job job = createJob(resource);
+        // start threads, the latch must be set before submitting as the executor may run the job right away
+        CountDownLatch completionLatch = new CountDownLatch(jobs.size());
+        for (Job job : jobs) {
+            job.setCompletionLatch(completionLatch);
             Object future = executor.submit(job);
             job.setFuture(future);
-            jobs.add(job);
         }
 
-        // wait for threads to finish and check results
-        for (Job job : jobs) {
-            Object future = job.getFuture();
-            while (!executor.isDone(future)) {
-                executor.waitFor(future, 1000L);
-            }
+        // wait for all threads to finish at once
+        try {
+            completionLatch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BitronixRuntimeException("interrupted while waiting for jobs to finish", ex);
+        }
 
+        // check results
+        for (Job job : jobs) {
             XAException xaException = job.getXAException();
             RuntimeException runtimeException = job.getRuntimeException();
 
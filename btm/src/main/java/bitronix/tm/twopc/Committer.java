@@ -62,6 +62,15 @@ public final class Committer extends AbstractPhaseEngine {
      * @throws bitronix.tm.internal.BitronixRollbackException during 1PC when resource fails to commit
      */
     public void commit(BitronixTransaction transaction, List<XAResourceHolderState> interestedResources) throws HeuristicMixedException, HeuristicRollbackException, BitronixSystemException, BitronixRollbackException {
+        long startNanos = System.nanoTime();
+        try {
+            commitResources(transaction, interestedResources);
+        } finally {
+            PhaseStatistics.COMMIT.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void commitResources(BitronixTransaction transaction, List<XAResourceHolderState> interestedResources) throws HeuristicMixedException, HeuristicRollbackException, BitronixSystemException, BitronixRollbackException {
         XAResourceManager resourceManager = transaction.getResourceManager();
         if (resourceManager.size() == 0) {
             transaction.setStatus(Status.STATUS_COMMITTING); //TODO: there is a disk force here that could be avoided
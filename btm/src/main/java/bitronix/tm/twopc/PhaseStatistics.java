@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative execution statistics of one of the two-phase commit phases, for all the transactions of the transaction
+ * manager. The counters are never reset, which makes them suitable to be sampled by monitoring tools computing rates.
+ *
+ * @author Ludovic Orban
+ */
+public final class PhaseStatistics {
+
+    /**
+     * Statistics of {@link Preparer#prepare(bitronix.tm.BitronixTransaction)}.
+     */
+    public static final PhaseStatistics PREPARE = new PhaseStatistics("prepare");
+
+    /**
+     * Statistics of {@link Committer#commit(bitronix.tm.BitronixTransaction, java.util.List)}.
+     */
+    public static final PhaseStatistics COMMIT = new PhaseStatistics("commit");
+
+    /**
+     * Statistics of {@link Rollbacker#rollback(bitronix.tm.BitronixTransaction, java.util.List)}.
+     */
+    public static final PhaseStatistics ROLLBACK = new PhaseStatistics("rollback");
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    private PhaseStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the phase.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the amount of times the phase has been executed, successfully or not.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the total time spent executing the phase in microseconds.
+     */
+    public long getTotalTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(totalNanos.sum());
+    }
+
+    void record(long elapsedNanos) {
+        count.increment();
+        totalNanos.add(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "a PhaseStatistics of the " + name + " phase";
+    }
+}
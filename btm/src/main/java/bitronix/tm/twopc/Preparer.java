@@ -61,6 +61,15 @@ public final class Preparer extends AbstractPhaseEngine {
      * @throws bitronix.tm.internal.BitronixSystemException when an internal error occured.
      */
     public List<XAResourceHolderState> prepare(BitronixTransaction transaction) throws RollbackException, BitronixSystemException {
+        long startNanos = System.nanoTime();
+        try {
+            return prepareResources(transaction);
+        } finally {
+            PhaseStatistics.PREPARE.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private List<XAResourceHolderState> prepareResources(BitronixTransaction transaction) throws RollbackException, BitronixSystemException {
         XAResourceManager resourceManager = transaction.getResourceManager();
         transaction.setStatus(Status.STATUS_PREPARING);
         preparedResources.clear();
@@ -58,6 +58,15 @@ public final class Rollbacker extends AbstractPhaseEngine {
      * @throws bitronix.tm.internal.BitronixSystemException when an internal error occured.
      */
     public void rollback(BitronixTransaction transaction, List<XAResourceHolderState> interestedResources) throws HeuristicMixedException, HeuristicCommitException, BitronixSystemException {
+        long startNanos = System.nanoTime();
+        try {
+            rollbackResources(transaction, interestedResources);
+        } finally {
+            PhaseStatistics.ROLLBACK.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void rollbackResources(BitronixTransaction transaction, List<XAResourceHolderState> interestedResources) throws HeuristicMixedException, HeuristicCommitException, BitronixSystemException {
         XAResourceManager resourceManager = transaction.getResourceManager();
         transaction.setStatus(Status.STATUS_ROLLING_BACK);
         this.interestedResources.clear();
@@ -36,6 +36,10 @@ public class AsyncExecutor implements Executor {
         executorService = Executors.newCachedThreadPool(namedThreadFactory);
     }
 
+    protected AsyncExecutor(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     @Override
     public Object submit(Job job) {
         return executorService.submit(job);
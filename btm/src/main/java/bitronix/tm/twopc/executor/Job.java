@@ -19,6 +19,7 @@ import bitronix.tm.TransactionManagerServices;
 import bitronix.tm.internal.XAResourceHolderState;
 
 import javax.transaction.xa.XAException;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Abstract job definition executable by the 2PC thread pools.
@@ -29,6 +30,7 @@ public abstract class Job implements Runnable {
     private final XAResourceHolderState resourceHolder;
 
     private volatile Object future;
+    private volatile CountDownLatch completionLatch;
     protected volatile XAException xaException;
     protected volatile RuntimeException runtimeException;
 
@@ -56,6 +58,15 @@ public abstract class Job implements Runnable {
         return future;
     }
 
+    /**
+     * Set a latch counted down once this job has executed, whether it succeeded or not.
+     *
+     * @param completionLatch the latch to count down.
+     */
+    public void setCompletionLatch(CountDownLatch completionLatch) {
+        this.completionLatch = completionLatch;
+    }
+
     @Override
     public final void run() {
         String oldThreadName = null;
@@ -65,9 +76,16 @@ public abstract class Job implements Runnable {
                     resourceHolder.getXid().toString() +
                     " ]");
         }
-        execute();
-        if (oldThreadName != null) {
-            Thread.currentThread().setName(oldThreadName);
+        try {
+            execute();
+        } finally {
+            if (oldThreadName != null) {
+                Thread.currentThread().setName(oldThreadName);
+            }
+            CountDownLatch latch = completionLatch;
+            if (latch != null) {
+                latch.countDown();
+            }
         }
     }
 
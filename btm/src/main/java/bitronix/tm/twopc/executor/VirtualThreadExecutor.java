@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc.executor;
+
+import bitronix.tm.internal.BitronixRuntimeException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This implementation executes submitted jobs asynchronously, each one on its own virtual thread.
+ * <p>Virtual threads are only available by default since JDK 21 so they are looked up reflectively, use
+ * {@link #isSupported()} to check if this implementation can be used on the running JVM.</p>
+ */
+public class VirtualThreadExecutor extends AsyncExecutor {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupFactory();
+
+    public VirtualThreadExecutor() {
+        super(newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Check if the running JVM supports virtual threads.
+     *
+     * @return true if virtual threads are supported, false otherwise.
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new BitronixRuntimeException("virtual threads are not supported by this JVM");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new BitronixRuntimeException("cannot create virtual thread executor", ex);
+        }
+    }
+
+    private static Method lookupFactory() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // JDK 19 and 20 have the method but refuse to call it unless preview features are enabled
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+}
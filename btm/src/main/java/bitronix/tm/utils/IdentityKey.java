@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.utils;
+
+/**
+ * A map key comparing the wrapped object by identity, for concurrent maps which have no identity counterpart of
+ * {@link java.util.IdentityHashMap}. Objects implemented by vendors, like XA resources, can consider different
+ * instances equal: keying them by identity keeps those instances in distinct entries.
+ *
+ * @param <T> the type of the wrapped object.
+ */
+public final class IdentityKey<T> {
+
+    private final T referent;
+
+    public IdentityKey(T referent) {
+        this.referent = referent;
+    }
+
+    /**
+     * Get the wrapped object.
+     *
+     * @return the wrapped object.
+     */
+    public T get() {
+        return referent;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IdentityKey<?> other && other.referent == referent;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(referent);
+    }
+
+    @Override
+    public String toString() {
+        return "an IdentityKey of " + referent;
+    }
+}
@@ -21,6 +21,10 @@ import java.util.*;
  * Positional object container. Objects can be added to a scheduler at a certain position (or priority) and can be
  * retrieved later on in their position + added order. All the objects of a scheduler can be iterated in order or
  * objects of a cetain position can be retrieved for iteration.
+ * <p>Transactions seldom use more than one or two positions, so positions are kept in a small array sorted by position
+ * and looked up by binary search. Updates are made under lock by replacing arrays which are never modified after
+ * having been published, so reads need no locking and the position and objects views returned by this class wrap
+ * these arrays instead of copying them.</p>
  *
  * @param <T> the type the scheduler handles
  * @author Ludovic Orban
@@ -31,210 +35,372 @@ public class Scheduler<T> implements Iterable<T> {
     public static final Integer ALWAYS_FIRST_POSITION = Integer.MIN_VALUE;
     public static final Integer ALWAYS_LAST_POSITION = Integer.MAX_VALUE;
 
-    private final List<Integer> keys = new ArrayList<>();
-    private final Map<Integer, List<T>> objects = new TreeMap<>();
-    private int size = 0;
+    private static final Bucket[] NO_BUCKETS = new Bucket[0];
+
+    // sorted by position, replaced when a position is added or removed
+    private volatile Bucket[] buckets = NO_BUCKETS;
+    private volatile int size = 0;
 
 
     public Scheduler() {
     }
 
     public synchronized void add(T obj, Integer position) {
-        List<T> list = objects.get(position);
-        if (list == null) {
-            if (!keys.contains(position)) {
-                keys.add(position);
-                Collections.sort(keys);
-            }
-            list = new ArrayList<>();
-            objects.put(position, list);
+        Bucket[] current = buckets;
+        int index = indexOf(current, position);
+        if (index >= 0) {
+            Bucket bucket = current[index];
+            Object[] objects = Arrays.copyOf(bucket.objects, bucket.objects.length + 1);
+            objects[objects.length - 1] = obj;
+            bucket.objects = objects;
+        } else {
+            int insertionIndex = -index - 1;
+            Bucket[] updated = new Bucket[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertionIndex);
+            updated[insertionIndex] = new Bucket(position, new Object[]{obj});
+            System.arraycopy(current, insertionIndex, updated, insertionIndex + 1, current.length - insertionIndex);
+            buckets = updated;
         }
-        list.add(obj);
         size++;
     }
 
+    /**
+     * Remove an object. Objects are searched for from the last position to the first one and from the most recently
+     * added, as the ones removed are usually the last added ones.
+     *
+     * @param obj the object to remove.
+     * @throws NoSuchElementException if the object is not in this scheduler.
+     */
     public synchronized void remove(T obj) {
-        Iterator<T> it = iterator();
-        while (it.hasNext()) {
-            T o = it.next();
-            if (o == obj) {
-                it.remove();
-                return;
+        Bucket[] current = buckets;
+        for (int i = current.length - 1; i >= 0; i--) {
+            Object[] objects = current[i].objects;
+            for (int j = objects.length - 1; j >= 0; j--) {
+                if (objects[j] == obj) {
+                    removeAt(current[i].position, j);
+                    return;
+                }
             }
         }
         throw new NoSuchElementException("no such element: " + obj);
     }
 
-    public synchronized SortedSet<Integer> getNaturalOrderPositions() {
-        return new TreeSet<>(objects.keySet());
+    /**
+     * Remove all objects.
+     */
+    public synchronized void clear() {
+        buckets = NO_BUCKETS;
+        size = 0;
     }
 
-    public synchronized SortedSet<Integer> getReverseOrderPositions() {
-        TreeSet<Integer> result = new TreeSet<>(Collections.reverseOrder());
-        result.addAll(getNaturalOrderPositions());
-        return result;
+    /**
+     * @return a view of the positions in natural order, reflecting the positions at the time of the call.
+     */
+    public SortedSet<Integer> getNaturalOrderPositions() {
+        return new PositionsView(buckets, false);
     }
 
-    public synchronized List<T> getByNaturalOrderForPosition(Integer position) {
-        return objects.get(position);
+    /**
+     * @return a view of the positions in reverse order, reflecting the positions at the time of the call.
+     */
+    public SortedSet<Integer> getReverseOrderPositions() {
+        return new PositionsView(buckets, true);
     }
 
-    public synchronized List<T> getByReverseOrderForPosition(Integer position) {
-        List<T> result = new ArrayList<>(getByNaturalOrderForPosition(position));
-        Collections.reverse(result);
-        return result;
+    /**
+     * @param position the position.
+     * @return a view of the objects of the position in added order, reflecting the objects at the time of the call,
+     * or null if there is no object at that position.
+     */
+    public List<T> getByNaturalOrderForPosition(Integer position) {
+        return objectsView(position, false);
+    }
+
+    /**
+     * @param position the position.
+     * @return a view of the objects of the position in reverse added order, reflecting the objects at the time of the
+     * call, or null if there is no object at that position.
+     */
+    public List<T> getByReverseOrderForPosition(Integer position) {
+        return objectsView(position, true);
     }
 
-    public synchronized int size() {
+    public int size() {
         return size;
     }
 
     @Override
     public Iterator<T> iterator() {
-        return new SchedulerNaturalOrderIterator();
+        return new SchedulerIterator(false);
     }
 
+    /**
+     * Iterate over the positions in reverse order, the objects of each position being iterated in added order.
+     *
+     * @return the iterator.
+     */
     public Iterator<T> reverseIterator() {
-        return new SchedulerReverseOrderIterator();
+        return new SchedulerIterator(true);
     }
 
     @Override
     public String toString() {
-        return "a Scheduler with " + size() + " object(s) in " + getNaturalOrderPositions().size() + " position(s)";
+        return "a Scheduler with " + size() + " object(s) in " + buckets.length + " position(s)";
+    }
+
+    private List<T> objectsView(int position, boolean reverse) {
+        Bucket[] current = buckets;
+        int index = indexOf(current, position);
+        if (index < 0) {
+            return null;
+        }
+        return new ObjectsView<>(current[index].objects, reverse);
     }
 
     /**
-     * This iterator supports in-flight updates of the iterated object.
+     * Must be called while holding the lock.
      */
-    private final class SchedulerNaturalOrderIterator implements Iterator<T> {
-        private int nextKeyIndex;
-        private List<T> objectsOfCurrentKey;
-        private int objectsOfCurrentKeyIndex;
+    private void removeAt(int position, int objectIndex) {
+        Bucket[] current = buckets;
+        int index = indexOf(current, position);
+        Bucket bucket = current[index];
+        Object[] objects = bucket.objects;
+        if (objects.length == 1) {
+            Bucket[] updated = current.length == 1 ? NO_BUCKETS : new Bucket[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            buckets = updated;
+        } else {
+            Object[] updated = new Object[objects.length - 1];
+            System.arraycopy(objects, 0, updated, 0, objectIndex);
+            System.arraycopy(objects, objectIndex + 1, updated, objectIndex, objects.length - objectIndex - 1);
+            bucket.objects = updated;
+        }
+        size--;
+    }
 
-        private SchedulerNaturalOrderIterator() {
-            this.nextKeyIndex = 0;
+    private static int indexOf(Bucket[] buckets, int position) {
+        int low = 0;
+        int high = buckets.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middlePosition = buckets[middle].position;
+            if (middlePosition < position) {
+                low = middle + 1;
+            } else if (middlePosition > position) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static final class Bucket {
+        private final int position;
+        // replaced on every update, never modified once published
+        private volatile Object[] objects;
+
+        private Bucket(int position, Object[] objects) {
+            this.position = position;
+            this.objects = objects;
+        }
+    }
+
+    private static final class ObjectsView<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] objects;
+        private final boolean reverse;
+
+        private ObjectsView(Object[] objects, boolean reverse) {
+            this.objects = objects;
+            this.reverse = reverse;
         }
 
         @Override
-        public void remove() {
-            synchronized (Scheduler.this) {
-                if (objectsOfCurrentKey == null) {
-                    throw new NoSuchElementException("iterator not yet placed on an element");
-                }
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            Objects.checkIndex(index, objects.length);
+            return (T) objects[reverse ? objects.length - 1 - index : index];
+        }
 
-                objectsOfCurrentKeyIndex--;
-                objectsOfCurrentKey.remove(objectsOfCurrentKeyIndex);
-                if (objectsOfCurrentKey.isEmpty()) {
-                    // there are no more objects in the current position's list -> remove it
-                    nextKeyIndex--;
-                    Integer key = Scheduler.this.keys.get(nextKeyIndex);
-                    Scheduler.this.keys.remove(nextKeyIndex);
-                    Scheduler.this.objects.remove(key);
-                    objectsOfCurrentKey = null;
-                }
-                Scheduler.this.size--;
-            }
+        @Override
+        public int size() {
+            return objects.length;
+        }
+    }
+
+    private static final class PositionsView extends AbstractSet<Integer> implements SortedSet<Integer> {
+        private final Bucket[] buckets;
+        private final boolean reverse;
+
+        private PositionsView(Bucket[] buckets, boolean reverse) {
+            this.buckets = buckets;
+            this.reverse = reverse;
         }
 
         @Override
-        public boolean hasNext() {
-            synchronized (Scheduler.this) {
-                if (objectsOfCurrentKey == null || objectsOfCurrentKeyIndex >= objectsOfCurrentKey.size()) {
-                    // we reached the end of the current position's list
-
-                    if (nextKeyIndex < Scheduler.this.keys.size()) {
-                        // there is another position after this one
-                        Integer currentKey = Scheduler.this.keys.get(nextKeyIndex++);
-                        objectsOfCurrentKey = Scheduler.this.objects.get(currentKey);
-                        objectsOfCurrentKeyIndex = 0;
-                        return true;
-                    } else {
-                        // there is no other position after this one
-                        return false;
+        public Iterator<Integer> iterator() {
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < buckets.length;
+                }
+
+                @Override
+                public Integer next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException("iterator bounds reached");
                     }
+                    return get(index++);
                 }
+            };
+        }
+
+        @Override
+        public int size() {
+            return buckets.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer position && indexOf(buckets, position) >= 0;
+        }
 
-                // there are still objects in the current position's list
-                return true;
+        @Override
+        public Comparator<? super Integer> comparator() {
+            return reverse ? Collections.reverseOrder() : null;
+        }
+
+        @Override
+        public Integer first() {
+            if (buckets.length == 0) {
+                throw new NoSuchElementException("no position");
             }
+            return get(0);
         }
 
         @Override
-        public T next() {
-            synchronized (Scheduler.this) {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("iterator bounds reached");
-                }
-                return objectsOfCurrentKey.get(objectsOfCurrentKeyIndex++);
+        public Integer last() {
+            if (buckets.length == 0) {
+                throw new NoSuchElementException("no position");
             }
+            return get(buckets.length - 1);
+        }
+
+        // ranges are never needed by the transaction manager, they are served from a copy
+
+        @Override
+        public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+            return copy().subSet(fromElement, toElement);
+        }
+
+        @Override
+        public SortedSet<Integer> headSet(Integer toElement) {
+            return copy().headSet(toElement);
+        }
+
+        @Override
+        public SortedSet<Integer> tailSet(Integer fromElement) {
+            return copy().tailSet(fromElement);
+        }
+
+        private Integer get(int index) {
+            return buckets[reverse ? buckets.length - 1 - index : index].position;
+        }
+
+        private SortedSet<Integer> copy() {
+            SortedSet<Integer> copy = new TreeSet<>(comparator());
+            copy.addAll(this);
+            return Collections.unmodifiableSortedSet(copy);
         }
     }
 
     /**
-     * This iterator supports in-flight updates of the iterated object.
+     * This iterator supports in-flight updates of the iterated object: it keeps track of the position it is at and of
+     * the index of the next object in that position, and looks them up again at every step. {@link #hasNext()} keeps
+     * the objects of the position it placed the iterator on so that {@link #next()} returns an object of the same
+     * snapshot.
      */
-    private final class SchedulerReverseOrderIterator implements Iterator<T> {
-        private int nextKeyIndex;
-        private List<T> objectsOfCurrentKey;
-        private int objectsOfCurrentKeyIndex;
-
-        private SchedulerReverseOrderIterator() {
-            synchronized (Scheduler.this) {
-                this.nextKeyIndex = Scheduler.this.keys.size() - 1;
-            }
+    private final class SchedulerIterator implements Iterator<T> {
+        private final boolean reverse;
+        private boolean placed;
+        private int position;
+        private int nextIndex;
+        private Object[] nextObjects;
+        private T lastReturned;
+        private int lastReturnedPosition;
+
+        private SchedulerIterator(boolean reverse) {
+            this.reverse = reverse;
         }
 
         @Override
         public void remove() {
             synchronized (Scheduler.this) {
-                if (objectsOfCurrentKey == null) {
+                if (lastReturned == null) {
                     throw new NoSuchElementException("iterator not yet placed on an element");
                 }
-
-                objectsOfCurrentKeyIndex--;
-                objectsOfCurrentKey.remove(objectsOfCurrentKeyIndex);
-                if (objectsOfCurrentKey.isEmpty()) {
-                    // there are no more objects in the current position's list -> remove it
-                    Integer key = Scheduler.this.keys.get(nextKeyIndex + 1);
-                    Scheduler.this.keys.remove(nextKeyIndex + 1);
-                    Scheduler.this.objects.remove(key);
-                    objectsOfCurrentKey = null;
+                Bucket[] current = buckets;
+                int index = indexOf(current, lastReturnedPosition);
+                Object[] objects = index < 0 ? new Object[0] : current[index].objects;
+                int objectIndex = objects.length - 1;
+                while (objectIndex >= 0 && objects[objectIndex] != lastReturned) {
+                    objectIndex--;
                 }
-                Scheduler.this.size--;
+                if (objectIndex < 0) {
+                    throw new NoSuchElementException("no such element: " + lastReturned);
+                }
+                removeAt(lastReturnedPosition, objectIndex);
+                if (lastReturnedPosition == position && objectIndex < nextIndex) {
+                    nextIndex--;
+                }
+                lastReturned = null;
             }
         }
 
         @Override
         public boolean hasNext() {
-            synchronized (Scheduler.this) {
-                if (objectsOfCurrentKey == null || objectsOfCurrentKeyIndex >= objectsOfCurrentKey.size()) {
-                    // we reached the end of the current position's list
-
-                    if (nextKeyIndex >= 0) {
-                        // there is another position after this one
-                        Integer currentKey = Scheduler.this.keys.get(nextKeyIndex--);
-                        objectsOfCurrentKey = Scheduler.this.objects.get(currentKey);
-                        objectsOfCurrentKeyIndex = 0;
-                        return true;
-                    } else {
-                        // there is no other position after this one
-                        return false;
-                    }
+            Bucket[] current = buckets;
+            int index = indexOf(current, position);
+            if (placed && index >= 0) {
+                Object[] objects = current[index].objects;
+                if (nextIndex < objects.length) {
+                    // there are still objects in the current position
+                    nextObjects = objects;
+                    return true;
                 }
+            }
 
-                // there are still objects in the current position's list
-                return true;
+            // move to the following position, whether the current one is still there or not
+            int followingIndex;
+            if (!placed) {
+                followingIndex = reverse ? current.length - 1 : 0;
+            } else if (index >= 0) {
+                followingIndex = reverse ? index - 1 : index + 1;
+            } else {
+                followingIndex = reverse ? -index - 2 : -index - 1;
+            }
+            if (followingIndex < 0 || followingIndex >= current.length) {
+                return false;
             }
+            placed = true;
+            position = current[followingIndex].position;
+            nextIndex = 0;
+            nextObjects = current[followingIndex].objects;
+            return true;
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public T next() {
-            synchronized (Scheduler.this) {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("iterator bounds reached");
-                }
-                return objectsOfCurrentKey.get(objectsOfCurrentKeyIndex++);
+            if (!hasNext()) {
+                throw new NoSuchElementException("iterator bounds reached");
             }
+            lastReturned = (T) nextObjects[nextIndex++];
+            lastReturnedPosition = position;
+            return lastReturned;
         }
     }
 
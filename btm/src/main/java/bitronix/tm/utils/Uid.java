@@ -15,24 +15,47 @@
  */
 package bitronix.tm.utils;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
  * <p>a constant uid byte array container optimized for use with hashed collections.</p>
+ * <p>The timestamp and sequence of a generated UID are kept decoded next to the byte array, the hex string form is
+ * only built when first requested.</p>
  *
  * @author Ludovic Orban
  */
 public final class Uid {
 
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final int SUFFIX_LENGTH = 8 + 4; // timestamp + sequence
+
     private final byte[] array;
+    private final long timestamp;
+    private final int sequence;
     private final int hashCodeValue;
-    private final String toStringValue;
+    private String toStringValue;
 
     public Uid(byte[] array) {
-        this.array = new byte[array.length];
-        System.arraycopy(array, 0, this.array, 0, array.length);
+        this(array.clone(), array.length >= SUFFIX_LENGTH);
+    }
+
+    /**
+     * Wrap an array built by {@link UidGenerator} without copying it.
+     */
+    Uid(byte[] array, long timestamp, int sequence) {
+        this.array = array;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
         this.hashCodeValue = arrayHashCode(array);
-        this.toStringValue = arrayToString(array);
+    }
+
+    private Uid(byte[] array, boolean decodeSuffix) {
+        this(array,
+                decodeSuffix ? Encoder.bytesToLong(array, array.length - SUFFIX_LENGTH) : 0L,
+                decodeSuffix ? Encoder.bytesToInt(array, array.length - 4) : 0);
     }
 
     public byte[] getArray() {
@@ -40,7 +63,7 @@ public final class Uid {
     }
 
     public byte[] extractServerId() {
-        int serverIdLength = array.length - 4 - 8; // - sequence - timestamp
+        int serverIdLength = array.length - SUFFIX_LENGTH;
         if (serverIdLength < 1) {
             return new byte[0];
         }
@@ -51,11 +74,17 @@ public final class Uid {
     }
 
     public long extractTimestamp() {
-        return Encoder.bytesToLong(array, array.length - 4 - 8); // - sequence - timestamp
+        if (array.length < SUFFIX_LENGTH) {
+            return Encoder.bytesToLong(array, array.length - SUFFIX_LENGTH);
+        }
+        return timestamp;
     }
 
     public int extractSequence() {
-        return Encoder.bytesToInt(array, array.length - 4); // - sequence
+        if (array.length < SUFFIX_LENGTH) {
+            return Encoder.bytesToInt(array, array.length - 4);
+        }
+        return sequence;
     }
 
     public int length() {
@@ -64,9 +93,12 @@ public final class Uid {
 
     @Override
     public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof Uid otherUid) {
-            // optimizes performance a bit
-            if (hashCodeValue != otherUid.hashCodeValue) {
+            // generated UIDs differ by their timestamp and sequence far more often than by their server ID
+            if (hashCodeValue != otherUid.hashCodeValue || sequence != otherUid.sequence || timestamp != otherUid.timestamp) {
                 return false;
             }
 
@@ -82,7 +114,13 @@ public final class Uid {
 
     @Override
     public String toString() {
-        return toStringValue;
+        // racy single-check: all threads compute the same immutable string
+        String result = toStringValue;
+        if (result == null) {
+            result = arrayToString(array);
+            toStringValue = result;
+        }
+        return result;
     }
 
     /**
@@ -92,20 +130,16 @@ public final class Uid {
      * @return a constant hash value for the specified uid.
      */
     private static int arrayHashCode(byte[] uid) {
-        int hash = 0;
-        // Common fast but good hash with wide dispersion
-        for (int i = uid.length - 1; i > 0; i--) {
-            // rotate left and xor
-            // (very fast in assembler, a bit clumsy in Java)
-            hash <<= 1;
-
-            if (hash < 0) {
-                hash |= 1;
-            }
-
-            hash ^= uid[i];
+        long hash = uid.length;
+        int i = uid.length;
+        // read the array by 8 bytes words starting from its end, where the timestamp and sequence are
+        for (; i >= 8; i -= 8) {
+            hash = (hash ^ (long) LONG_VIEW.get(uid, i - 8)) * 0x9E3779B97F4A7C15L;
         }
-        return hash;
+        for (; i > 0; i--) {
+            hash = (hash ^ uid[i - 1]) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ (hash >>> 32));
     }
 
     /**
@@ -128,4 +162,3 @@ public final class Uid {
 
     private static final char[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
 }
-
@@ -40,18 +40,16 @@ public class UidGenerator {
      * @return the generated UID.
      */
     public static Uid generateUid() {
-        byte[] timestamp = Encoder.longToBytes(MonotonicClock.currentTimeMillis());
-        byte[] sequence = Encoder.intToBytes(sequenceGenerator.incrementAndGet());
+        long timestamp = MonotonicClock.currentTimeMillis();
+        int sequence = sequenceGenerator.incrementAndGet();
         byte[] serverId = TransactionManagerServices.getConfiguration().buildServerIdArray();
 
-        int uidLength = serverId.length + timestamp.length + sequence.length;
-        byte[] uidArray = new byte[uidLength];
-
+        byte[] uidArray = new byte[serverId.length + 8 + 4];
         System.arraycopy(serverId, 0, uidArray, 0, serverId.length);
-        System.arraycopy(timestamp, 0, uidArray, serverId.length, timestamp.length);
-        System.arraycopy(sequence, 0, uidArray, serverId.length + timestamp.length, sequence.length);
+        Encoder.longToBytes(timestamp, uidArray, serverId.length);
+        Encoder.intToBytes(sequence, uidArray, serverId.length + 8);
 
-        return new Uid(uidArray);
+        return new Uid(uidArray, timestamp, sequence);
     }
 
     /**
@@ -95,15 +95,16 @@ public class ConfigurationTest {
 
     @Test
     public void testToString() {
-        final String expectation = "a Configuration with [allowMultipleLrc=false, asynchronous2Pc=false," +
-                " backgroundRecoveryInterval=PT1M, conservativeJournaling=false, currentNodeOnlyRecovery=true," +
+        final String expectation = "a Configuration with [allowMultipleLrc=false, asynchronous2Pc=false, asynchronous2PcVirtualThreads=false," +
+                " backgroundPoolPrefill=false, backgroundRecoveryInterval=PT1M, conservativeJournaling=false, currentNodeOnlyRecovery=true," +
                 " debugZeroResourceTransaction=false, defaultTransactionTimeout=PT1M, disableJmx=false," +
                 " exceptionAnalyzer=null, filterLogStatus=false," +
-                " forceBatchingEnabled=true, forcedWriteEnabled=true, gracefulShutdownInterval=PT10S, jdbcProxyFactoryClass=auto," +
+                " forceBatchingEnabled=true, forceBatchingMaxSize=64, forceBatchingWindow=PT0S, forcedWriteEnabled=true," +
+                " gracefulShutdownInterval=PT10S, jdbcProxyFactoryClass=auto," +
                 " jndiTransactionSynchronizationRegistryName=java:comp/TransactionSynchronizationRegistry," +
                 " jndiUserTransactionName=java:comp/UserTransaction, journal=disk," +
-                " logPart1Filename=target/btm1.tlog, logPart2Filename=target/btm2.tlog, maxLogSizeInMb=2," +
-                " resourceConfigurationFilename=null, serverId=null, skipCorruptedLogs=false, synchronousJmxRegistration=false," +
+                " logFormatVersion=1, logPart1Filename=target/btm1.tlog, logPart2Filename=target/btm2.tlog, maxLogSizeInMb=2, poolPrefillParallelism=1," +
+                " recoveryLogsOnly=false, recoveryParallelism=1, recoveryTimeout=PT0S, resourceConfigurationFilename=null, resourceShutdownParallelism=1, resourceStartupParallelism=1, serverId=null, skipCorruptedLogs=false, synchronousJmxRegistration=false," +
                 " warnAboutZeroResourceTransaction=true]";
 
         assertEquals(expectation, new Configuration().toString());
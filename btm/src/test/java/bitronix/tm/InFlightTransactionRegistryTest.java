@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm;
+
+import bitronix.tm.internal.XAResourceManager;
+import bitronix.tm.utils.Encoder;
+import bitronix.tm.utils.Uid;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ludovic Orban
+ */
+public class InFlightTransactionRegistryTest {
+
+    private int sequence;
+
+    @Test
+    public void testOldestTimestampFollowsCompletions() {
+        InFlightTransactionRegistry<String> registry = new InFlightTransactionRegistry<>(4);
+        assertEquals(Long.MIN_VALUE, registry.getOldestTimestamp());
+
+        BitronixTransaction tx1 = transaction(1000L);
+        BitronixTransaction tx2 = transaction(1000L);
+        BitronixTransaction tx3 = transaction(2000L);
+        BitronixTransaction tx4 = transaction(3000L);
+        registry.put(tx3, "tx3");
+        registry.put(tx1, "tx1");
+        registry.put(tx4, "tx4");
+        registry.put(tx2, "tx2");
+        assertEquals(4, registry.size());
+        assertEquals(1000L, registry.getOldestTimestamp());
+        assertEquals("tx3", registry.get(tx3));
+
+        assertEquals("tx1", registry.remove(tx1));
+        assertNull(registry.remove(tx1));
+        assertEquals(3, registry.size());
+        assertEquals(1000L, registry.getOldestTimestamp());
+
+        registry.remove(tx2);
+        assertEquals(2000L, registry.getOldestTimestamp());
+
+        registry.remove(tx3);
+        assertEquals(3000L, registry.getOldestTimestamp());
+
+        // a transaction which began earlier may be registered late
+        BitronixTransaction tx5 = transaction(500L);
+        registry.put(tx5, "tx5");
+        assertEquals(500L, registry.getOldestTimestamp());
+
+        registry.remove(tx4);
+        registry.remove(tx5);
+        assertEquals(0, registry.size());
+        assertNull(registry.get(tx4));
+        assertEquals(Long.MIN_VALUE, registry.getOldestTimestamp());
+    }
+
+    @Test
+    public void testTransactionsView() {
+        InFlightTransactionRegistry<String> registry = new InFlightTransactionRegistry<>(2);
+        Set<BitronixTransaction> expected = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            BitronixTransaction tx = transaction(i);
+            registry.put(tx, "tx" + i);
+            expected.add(tx);
+        }
+
+        assertEquals(10, registry.transactions().size());
+        assertEquals(expected, new HashSet<>(registry.transactions()));
+    }
+
+    @Test
+    public void testConcurrentRegistrations() throws Exception {
+        InFlightTransactionRegistry<String> registry = new InFlightTransactionRegistry<>();
+        List<BitronixTransaction> kept = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            kept.add(transaction(100L + i));
+        }
+        List<List<BitronixTransaction>> batches = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            List<BitronixTransaction> batch = new ArrayList<>();
+            for (int j = 0; j < 200; j++) {
+                batch.add(transaction(50L + j));
+            }
+            batches.add(batch);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                BitronixTransaction keptTransaction = kept.get(i);
+                List<BitronixTransaction> batch = batches.get(i);
+                futures.add(executor.submit(() -> {
+                    registry.put(keptTransaction, "kept");
+                    for (BitronixTransaction tx : batch) {
+                        registry.put(tx, "transient");
+                        assertEquals("transient", registry.get(tx));
+                        registry.getOldestTimestamp();
+                        assertEquals("transient", registry.remove(tx));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(8, registry.size());
+        assertEquals(new HashSet<>(kept), new HashSet<>(registry.transactions()));
+        assertEquals(100L, registry.getOldestTimestamp());
+    }
+
+    @Test
+    public void testAwaitEmptyReturnsWhenLastTransactionCompletes() throws Exception {
+        InFlightTransactionRegistry<String> registry = new InFlightTransactionRegistry<>(4);
+        List<BitronixTransaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BitronixTransaction tx = transaction(i);
+            registry.put(tx, "tx" + i);
+            transactions.add(tx);
+        }
+
+        assertEquals(3, registry.awaitEmpty(Duration.ZERO, null));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> completions = executor.submit(() -> {
+                for (BitronixTransaction tx : transactions) {
+                    Thread.sleep(50L);
+                    registry.remove(tx);
+                }
+                return null;
+            });
+
+            List<Integer> progress = new CopyOnWriteArrayList<>();
+            long startNanos = System.nanoTime();
+            assertEquals(0, registry.awaitEmpty(Duration.ofMinutes(1L), progress::add));
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(30L));
+            completions.get();
+
+            assertEquals(3, progress.get(0).intValue());
+            assertEquals(0, progress.get(progress.size() - 1).intValue());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private BitronixTransaction transaction(long timestamp) {
+        byte[] array = new byte[4 + 12];
+        Encoder.longToBytes(timestamp, array, 4);
+        Encoder.intToBytes(sequence++, array, 12);
+        Uid gtrid = new Uid(array);
+
+        XAResourceManager resourceManager = mock(XAResourceManager.class);
+        when(resourceManager.getGtrid()).thenReturn(gtrid);
+        BitronixTransaction transaction = mock(BitronixTransaction.class);
+        when(transaction.getResourceManager()).thenReturn(resourceManager);
+        return transaction;
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm;
+
+import bitronix.tm.utils.ManagementRegistrar;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Ludovic Orban
+ */
+public class InFlightTransactionsTest {
+
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private BitronixTransactionManager btm;
+    private ObjectName objectName;
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        TransactionManagerServices.getConfiguration().buildServerIdArray();
+        objectName = new ObjectName("bitronix.tm:type=InFlightTransactions,ServerId=" +
+                ManagementRegistrar.makeValidName(TransactionManagerServices.getConfiguration().getServerId()));
+        if (!TransactionManagerServices.isTransactionManagerRunning()) {
+            // the MBean of a transaction manager which just shut down may not be unregistered yet
+            waitForRegistration(false);
+        }
+        btm = TransactionManagerServices.getTransactionManager();
+        waitForRegistration(true);
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        btm.shutdown();
+        waitForRegistration(false);
+    }
+
+    @Test
+    public void testTransactionsAreListedWhileInFlight() throws Exception {
+        assertEquals(0, mBeanServer.getAttribute(objectName, "TransactionCount"));
+
+        btm.begin();
+        BitronixTransaction transaction = btm.getCurrentTransaction();
+
+        assertEquals(1, mBeanServer.getAttribute(objectName, "TransactionCount"));
+        TabularData transactions = (TabularData) mBeanServer.getAttribute(objectName, "Transactions");
+        assertEquals(1, transactions.size());
+        CompositeData row = transactions.get(new Object[]{transaction.getGtrid()});
+        assertNotNull(row);
+        assertEquals("ACTIVE", row.get("status"));
+        assertEquals(Thread.currentThread().getName(), row.get("threadName"));
+        assertEquals(0, ((String[]) row.get("enlistedResources")).length);
+
+        btm.commit();
+
+        assertEquals(0, mBeanServer.getAttribute(objectName, "TransactionCount"));
+        assertTrue(((TabularData) mBeanServer.getAttribute(objectName, "Transactions")).isEmpty());
+    }
+
+    @Test
+    public void testTransactionsAreNotRegisteredIndividually() throws Exception {
+        btm.begin();
+        try {
+            assertTrue(mBeanServer.queryNames(new ObjectName("bitronix.tm:type=Transaction,*"), null).isEmpty());
+        } finally {
+            btm.rollback();
+        }
+    }
+
+    private void waitForRegistration(boolean registered) throws InterruptedException {
+        for (int i = 0; i < 100 && mBeanServer.isRegistered(objectName) != registered; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(registered, mBeanServer.isRegistered(objectName));
+    }
+
+}
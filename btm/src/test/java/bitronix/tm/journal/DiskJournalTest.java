@@ -16,6 +16,7 @@
 package bitronix.tm.journal;
 
 import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.mock.resource.MockJournal;
 import bitronix.tm.utils.Uid;
 import bitronix.tm.utils.UidGenerator;
 import jakarta.transaction.Status;
@@ -24,7 +25,11 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -316,6 +321,225 @@ public class DiskJournalTest {
         journal.shutdown();
     }
 
+    @Test
+    public void testDanglingRecordsSurviveReopenAndRollover() throws Exception {
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+
+        DiskJournal journal = new DiskJournal();
+        journal.open();
+        journal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        journal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name3"));
+        journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+        journal.close();
+
+        journal = new DiskJournal();
+        journal.open();
+        assertEquals(2, journal.getDanglingRecordCount());
+
+        // enough terminated transactions to swap the log files a few times
+        for (int i = 0; i < 20000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1"));
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1"));
+        }
+
+        Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+        assertEquals(2, danglingRecords.size());
+        assertEquals(csvToSet("name2"), danglingRecords.get(gtrid1).getUniqueNames());
+        assertEquals(csvToSet("name3"), danglingRecords.get(gtrid2).getUniqueNames());
+        journal.close();
+
+        // the index rebuilt from the active file must match the one maintained while writing
+        journal = new DiskJournal();
+        journal.open();
+        assertEquals(danglingRecords.keySet(), journal.collectDanglingRecords().keySet());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testForceBatching() throws Exception {
+        final int threads = 8;
+        TransactionManagerServices.getConfiguration().setForcedWriteEnabled(true);
+        TransactionManagerServices.getConfiguration().setForceBatchingEnabled(true);
+        TransactionManagerServices.getConfiguration().setForceBatchingWindow(Duration.ofSeconds(5));
+        TransactionManagerServices.getConfiguration().setForceBatchingMaxSize(threads);
+        try {
+            final DiskJournal journal = new DiskJournal();
+            journal.open();
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+
+            class Runner extends Thread {
+                private final int ndx;
+                private volatile Exception failure;
+
+                Runner(int i) {
+                    this.ndx = i;
+                }
+
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        journal.log(Status.STATUS_COMMITTING, UidGenerator.generateUid(), csvToSet(ndx + ".name1," + ndx + ".name2"));
+                        journal.force();
+                    } catch (Exception ex) {
+                        failure = ex;
+                    }
+                }
+            }
+
+            long before = System.nanoTime();
+            Runner[] runners = new Runner[threads];
+            for (int i = 0; i < threads; i++) {
+                runners[i] = new Runner(i);
+                runners[i].start();
+            }
+            for (int i = 0; i < threads; i++) {
+                runners[i].join();
+                assertNull(runners[i].failure);
+            }
+
+            // the window must have been closed early by the batch filling up
+            assertTrue(System.nanoTime() - before < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(journal.getForceCount() < threads, "expected fewer forces than threads, got " + journal.getForceCount());
+            assertTrue(journal.getMaxForceBatchSize() > 1);
+            assertEquals(threads, journal.getForceRequestCount());
+
+            // nothing was written since the last force
+            long forceCount = journal.getForceCount();
+            journal.force();
+            assertEquals(forceCount, journal.getForceCount());
+
+            journal.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setForceBatchingWindow(Duration.ZERO);
+            TransactionManagerServices.getConfiguration().setForceBatchingMaxSize(64);
+        }
+    }
+
+    @Test
+    public void testCompactFormatWritesSmallerRecords() throws Exception {
+        String names = "com.example.orders.OrdersXADataSource,com.example.orders.OrderEventsConnectionFactory,com.example.billing.BillingXADataSource";
+        try {
+            long[] sizes = new long[2];
+            for (int formatVersion = 1; formatVersion <= 2; formatVersion++) {
+                setUp();
+                TransactionManagerServices.getConfiguration().setLogFormatVersion(formatVersion);
+                DiskJournal journal = new DiskJournal();
+                journal.open();
+                assertEquals(formatVersion, journal.getActiveLogFormatVersion());
+                for (int i = 0; i < 100; i++) {
+                    Uid gtrid = UidGenerator.generateUid();
+                    journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet(names));
+                    journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet(names));
+                }
+                journal.close();
+                sizes[formatVersion - 1] = activeHeader().getPosition() - TransactionLogHeader.HEADER_LENGTH;
+            }
+
+            assertTrue(sizes[1] * 4 < sizes[0], "expected version 2 records to be at least 4 times smaller, got " + sizes[1] + " vs " + sizes[0] + " bytes");
+        } finally {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+        }
+    }
+
+    @Test
+    public void testCompactFormatDictionarySurvivesReopen() throws Exception {
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        // a GTRID which is not prefixed by the local server ID is stored whole
+        Uid foreignGtrid = new Uid("another-server".getBytes());
+        TransactionManagerServices.getConfiguration().setLogFormatVersion(2);
+        try {
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+            journal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+            journal.log(Status.STATUS_COMMITTING, foreignGtrid, csvToSet("name2"));
+            journal.close();
+
+            // the dictionary is reloaded, name2 is reused and name3 defined after the existing entries
+            journal = new DiskJournal();
+            journal.open();
+            journal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name2,name3"));
+            journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+            journal.close();
+
+            journal = new DiskJournal();
+            journal.open();
+            Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+            assertEquals(3, danglingRecords.size());
+            assertEquals(csvToSet("name2"), danglingRecords.get(gtrid1).getUniqueNames());
+            assertEquals(csvToSet("name2,name3"), danglingRecords.get(gtrid2).getUniqueNames());
+            assertEquals(csvToSet("name2"), danglingRecords.get(foreignGtrid).getUniqueNames());
+
+            List<JournalRecord> records = new ArrayList<>();
+            journal.unsafeReadRecordsInto(records, false);
+            assertEquals(4, records.size());
+            for (JournalRecord record : records) {
+                assertTrue(record.isValid());
+            }
+            assertEquals(2, journal.getActiveLogFormatVersion());
+            journal.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+        }
+    }
+
+    @Test
+    public void testFormatConversionOnOpen() throws Exception {
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        try {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+            DiskJournal journal = new DiskJournal();
+            journal.open();
+            assertEquals(1, journal.getActiveLogFormatVersion());
+            journal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+            journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+            journal.close();
+
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(2);
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(2, journal.getActiveLogFormatVersion());
+            assertEquals(csvToSet("name2"), journal.collectDanglingRecords().get(gtrid1).getUniqueNames());
+            journal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name3"));
+            journal.close();
+
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+            journal = new DiskJournal();
+            journal.open();
+            assertEquals(1, journal.getActiveLogFormatVersion());
+            Map<Uid, JournalRecord> danglingRecords = journal.collectDanglingRecords();
+            assertEquals(2, danglingRecords.size());
+            assertEquals(csvToSet("name2"), danglingRecords.get(gtrid1).getUniqueNames());
+            assertEquals(csvToSet("name3"), danglingRecords.get(gtrid2).getUniqueNames());
+
+            MockJournal mockJournal = new MockJournal();
+            mockJournal.open();
+            journal.migrateTo(mockJournal);
+            assertEquals(danglingRecords.keySet(), mockJournal.collectDanglingRecords().keySet());
+            journal.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setLogFormatVersion(1);
+        }
+    }
+
+    private static TransactionLogHeader activeHeader() throws IOException {
+        TransactionLogHeader active = null;
+        for (String filename : List.of(TransactionManagerServices.getConfiguration().getLogPart1Filename(), TransactionManagerServices.getConfiguration().getLogPart2Filename())) {
+            try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+                TransactionLogHeader header = new TransactionLogHeader(raf.getChannel(), raf.length());
+                if (active == null || header.getTimestamp() > active.getTimestamp()) {
+                    active = header;
+                }
+            }
+        }
+        return active;
+    }
+
     private SortedSet<String> csvToSet(String s) {
         String[] names = s.split(",");
         return new TreeSet<>(Arrays.asList(names));
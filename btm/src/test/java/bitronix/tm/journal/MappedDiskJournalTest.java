@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.journal;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.mock.resource.MockJournal;
+import bitronix.tm.utils.Uid;
+import bitronix.tm.utils.UidGenerator;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedDiskJournalTest {
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+        TransactionManagerServices.getConfiguration().setMaxLogSizeInMb(1);
+        TransactionManagerServices.getConfiguration().setForcedWriteEnabled(true);
+    }
+
+    @Test
+    public void testCollectDanglingRecords() throws Exception {
+        MappedDiskJournal journal = new MappedDiskJournal();
+        journal.open();
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+
+        assertEquals(0, journal.collectDanglingRecords().size());
+
+        journal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        journal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name1"));
+        journal.force();
+        assertEquals(2, journal.collectDanglingRecords().size());
+
+        journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+        assertEquals(2, journal.collectDanglingRecords().size());
+
+        journal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name2"));
+        journal.log(Status.STATUS_COMMITTED, gtrid2, csvToSet("name1"));
+        assertEquals(0, journal.collectDanglingRecords().size());
+
+        List<JournalRecord> records = new ArrayList<>();
+        journal.unsafeReadRecordsInto(records, false);
+        assertEquals(5, records.size());
+        for (JournalRecord record : records) {
+            assertTrue(record.isValid());
+        }
+
+        journal.shutdown();
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        MappedDiskJournal journal = new MappedDiskJournal();
+        journal.open();
+
+        List<Uid> uncommitted = new ArrayList<>();
+        for (int i = 1; i < 10000; i++) {
+            Uid gtrid = UidGenerator.generateUid();
+            journal.log(Status.STATUS_COMMITTING, gtrid, csvToSet("name1,name2,name3"));
+
+            if (i < 9600) {
+                journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2,name3"));
+            } else {
+                uncommitted.add(gtrid);
+            }
+            journal.force();
+        }
+
+        assertEquals(400, journal.collectDanglingRecords().size());
+
+        for (Uid gtrid : uncommitted) {
+            journal.log(Status.STATUS_COMMITTED, gtrid, csvToSet("name1,name2,name3"));
+        }
+        assertEquals(0, journal.collectDanglingRecords().size());
+
+        journal.shutdown();
+    }
+
+    @Test
+    public void testFilesAreInterchangeableWithDiskJournal() throws Exception {
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+
+        MappedDiskJournal mappedJournal = new MappedDiskJournal();
+        mappedJournal.open();
+        mappedJournal.log(Status.STATUS_COMMITTING, gtrid1, csvToSet("name1,name2"));
+        mappedJournal.force();
+        mappedJournal.close();
+
+        DiskJournal diskJournal = new DiskJournal();
+        diskJournal.open();
+        Map<Uid, JournalRecord> danglingRecords = diskJournal.collectDanglingRecords();
+        assertEquals(1, danglingRecords.size());
+        assertEquals(csvToSet("name1,name2"), danglingRecords.get(gtrid1).getUniqueNames());
+        diskJournal.log(Status.STATUS_COMMITTED, gtrid1, csvToSet("name1"));
+        diskJournal.log(Status.STATUS_COMMITTING, gtrid2, csvToSet("name3"));
+        diskJournal.force();
+        diskJournal.close();
+
+        mappedJournal = new MappedDiskJournal();
+        mappedJournal.open();
+        danglingRecords = mappedJournal.collectDanglingRecords();
+        assertEquals(2, danglingRecords.size());
+        assertEquals(csvToSet("name2"), danglingRecords.get(gtrid1).getUniqueNames());
+        assertEquals(csvToSet("name3"), danglingRecords.get(gtrid2).getUniqueNames());
+
+        MockJournal mockJournal = new MockJournal();
+        mockJournal.open();
+        mappedJournal.migrateTo(mockJournal);
+        assertEquals(2, mockJournal.collectDanglingRecords().size());
+
+        mappedJournal.shutdown();
+    }
+
+    private SortedSet<String> csvToSet(String s) {
+        String[] names = s.split(",");
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+}
@@ -27,7 +27,7 @@ public abstract class Event {
     private final long timestamp;
 
     protected Event(Object source, Exception ex) {
-        this.callStack = new Exception();
+        this.callStack = EventRecorder.isEnabled() ? new Exception() : null;
         this.source = source;
         this.exception = ex;
         this.timestamp = Chrono.getTime();
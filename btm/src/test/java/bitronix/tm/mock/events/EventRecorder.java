@@ -28,6 +28,19 @@ import java.util.Map;
 public class EventRecorder {
 
     private static final Map<Object, EventRecorder> eventRecorders = new HashMap<>();
+    private static volatile boolean enabled = true;
+
+    /**
+     * Enable or disable recording of events, events are recorded by default. Benchmarks disable recording as events
+     * capture their call stack and are kept until cleared.
+     */
+    public static void setEnabled(boolean enabled) {
+        EventRecorder.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
 
     public synchronized static EventRecorder getEventRecorder(Object key) {
         EventRecorder er = eventRecorders.get(key);
@@ -82,7 +95,9 @@ public class EventRecorder {
     }
 
     public void addEvent(Event evt) {
-        events.add(evt);
+        if (enabled) {
+            events.add(evt);
+        }
     }
 
     public List<Event> getEvents() {
@@ -45,8 +45,8 @@ public class MockXAResource implements XAResource {
     private XAException commitException;
     private XAException rollbackException;
     private RuntimeException prepareRuntimeException;
-    private XAException recoverException;
-    private long recoveryDelay;
+    private volatile XAException recoverException;
+    private volatile long recoveryDelay;
 
     public MockXAResource(MockitoXADataSource xads) {
         this.xads = xads;
@@ -17,6 +17,8 @@ package bitronix.tm.mock.resource.jdbc;
 
 import bitronix.tm.mock.events.*;
 import bitronix.tm.mock.resource.MockXAResource;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.mockito.MockSettings;
 import org.mockito.stubbing.Answer;
 
 import javax.sql.XAConnection;
@@ -29,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -48,6 +51,7 @@ public class MockitoXADataSource implements XADataSource {
     private SQLException getXAConnectionException;
     private static SQLException staticGetXAConnectionException;
     private static SQLException staticCloseXAConnectionException;
+    private static volatile long staticCloseXAConnectionDelay;
 
     @Override
     public int getLoginTimeout() throws SQLException {
@@ -79,9 +83,12 @@ public class MockitoXADataSource implements XADataSource {
 
 
         // Setup mock XAConnection
-        final XAConnection mockXAConnection = mock(XAConnection.class);
+        final XAConnection mockXAConnection = mock(XAConnection.class, mockSettings());
         // Handle XAConnection.close(), first time we answer, after that we throw
         doAnswer((Answer<Object>) invocation -> {
+            if (staticCloseXAConnectionDelay > 0) {
+                Uninterruptibles.sleepUninterruptibly(staticCloseXAConnectionDelay, TimeUnit.MILLISECONDS);
+            }
             EventRecorder eventRecorder = EventRecorder.getEventRecorder(mockXAConnection);
             eventRecorder.addEvent(new XAConnectionCloseEvent(mockXAConnection));
             return null;
@@ -171,9 +178,13 @@ public class MockitoXADataSource implements XADataSource {
         staticCloseXAConnectionException = ex;
     }
 
+    public static void setStaticCloseXAConnectionDelay(long millis) {
+        staticCloseXAConnectionDelay = millis;
+    }
+
     public static Connection createMockConnection() throws SQLException {
         // Setup mock connection
-        final Connection mockConnection = mock(Connection.class);
+        final Connection mockConnection = mock(Connection.class, mockSettings());
 
         // Autocommit is always true by default
         when(mockConnection.getAutoCommit()).thenReturn(true);
@@ -229,15 +240,22 @@ public class MockitoXADataSource implements XADataSource {
     }
 
     private static Answer<Statement> mockStatement() {
-        return invocation -> mock(Statement.class);
+        return invocation -> mock(Statement.class, mockSettings());
     }
 
     private static Answer<PreparedStatement> mockPreparedStatement() {
-        return invocation -> mock(PreparedStatement.class);
+        return invocation -> mock(PreparedStatement.class, mockSettings());
     }
 
     private static Answer<CallableStatement> mockCallableStatement() {
-        return invocation -> mock(CallableStatement.class);
+        return invocation -> mock(CallableStatement.class, mockSettings());
+    }
+
+    /**
+     * Mocks remember all their invocations for verification, which is not needed when events are not recorded.
+     */
+    private static MockSettings mockSettings() {
+        return EventRecorder.isEnabled() ? withSettings() : withSettings().stubOnly();
     }
 
     public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
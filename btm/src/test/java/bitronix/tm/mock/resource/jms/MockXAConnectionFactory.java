@@ -35,6 +35,7 @@ public class MockXAConnectionFactory implements XAConnectionFactory {
     private static JMSException staticCreateXAConnectionException;
 
     private String endPoint;
+    private boolean equalXAResources;
 
     public XAConnection createXAConnection() throws JMSException {
         if (staticCreateXAConnectionException != null)
@@ -52,7 +53,7 @@ public class MockXAConnectionFactory implements XAConnectionFactory {
 			when(mockXASession.createQueue(anyString())).thenReturn(queue);
 			Topic topic = mock(Topic.class);
 			when(mockXASession.createTopic(anyString())).thenReturn(topic);
-			MockXAResource mockXAResource = new MockXAResource(null);
+			MockXAResource mockXAResource = equalXAResources ? new EqualMockXAResource() : new MockXAResource(null);
 			when(mockXASession.getXAResource()).thenReturn(mockXAResource);
 			Answer<Session> sessionAnswer = invocation1 -> {
 				Session session = mock(Session.class);
@@ -103,4 +104,29 @@ public class MockXAConnectionFactory implements XAConnectionFactory {
     public void setEndpoint(String endPoint) {
         this.endPoint = endPoint;
     }
+
+    /**
+     * Make the XA resources of all sessions equal to each other, like some vendors' XA resources are.
+     *
+     * @param equalXAResources true if the XA resources must be equal.
+     */
+    public void setEqualXAResources(boolean equalXAResources) {
+        this.equalXAResources = equalXAResources;
+    }
+
+    private static final class EqualMockXAResource extends MockXAResource {
+        private EqualMockXAResource() {
+            super(null);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof EqualMockXAResource;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
 }
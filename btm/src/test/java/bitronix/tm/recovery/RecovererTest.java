@@ -42,12 +42,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.transaction.Status;
+import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -403,4 +406,69 @@ public class RecovererTest {
         assertEquals(1, recoverer.getExecutionsCount());
     }
 
+    @Test
+    public void testParallelRecoveryLeavesSlowResourceForNextRun() throws Exception {
+        PoolingDataSource pds2 = new PoolingDataSource();
+        pds2.setClassName(MockitoXADataSource.class.getName());
+        pds2.setUniqueName("mock-xads2");
+        pds2.setMinPoolSize(1);
+        pds2.setMaxPoolSize(1);
+        pds2.init();
+
+        Connection connection2 = pds2.getConnection();
+        MockXAResource xaResource2 = (MockXAResource) ((PooledConnectionProxy) connection2).getPooledConnection().getXAResource();
+        connection2.close();
+
+        TransactionManagerServices.getConfiguration().setRecoveryParallelism(4);
+        TransactionManagerServices.getConfiguration().setRecoveryTimeout(Duration.ofMillis(500));
+        try {
+            xaResource.addInDoubtXid(new MockXid(0, UidGenerator.generateUid().getArray(), BitronixXid.FORMAT_ID));
+            xaResource2.addInDoubtXid(new MockXid(0, UidGenerator.generateUid().getArray(), BitronixXid.FORMAT_ID));
+            xaResource2.setRecoveryDelay(2000);
+
+            Recoverer recoverer = new Recoverer();
+            recoverer.run();
+
+            assertNull(recoverer.getCompletionException());
+            assertEquals(1, recoverer.getRolledbackCount());
+            assertEquals(0, xaResource.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+            assertFalse(pds2.isFailed(), "a resource that did not recover in time must not be marked as failed");
+            assertTrue(recoverer.getResourceRecoveryTimesMillis().containsKey("mock-xads"));
+            assertTrue(recoverer.getResourceRecoveryTimesMillis().get("mock-xads2") >= 400L);
+            assertTrue(recoverer.getLastRecoveryDurationMillis() < 2000L);
+
+            // the abandoned recovery of mock-xads2 is still running: the next run skips the resource, and the failure
+            // of the abandoned recovery must not mark it as failed either
+            xaResource2.setRecoveryDelay(0);
+            xaResource2.setRecoverException(new XAException(XAException.XAER_RMFAIL));
+            assertEquals(Collections.singleton("mock-xads2"), recoverer.getAbandonedResourcesUniqueNames());
+            recoverer.run();
+
+            assertNull(recoverer.getCompletionException());
+            assertEquals(0, recoverer.getRolledbackCount());
+            assertFalse(recoverer.getResourceRecoveryTimesMillis().containsKey("mock-xads2"));
+            assertFalse(pds2.isFailed(), "a resource still recovering in the background must not be marked as failed");
+
+            long waitUntil = System.currentTimeMillis() + 10000L;
+            while (!recoverer.getAbandonedResourcesUniqueNames().isEmpty() && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(50L);
+            }
+            assertTrue(recoverer.getAbandonedResourcesUniqueNames().isEmpty());
+            assertFalse(pds2.isFailed(), "the failure of an abandoned recovery must not mark the resource as failed");
+            xaResource2.setRecoverException(null);
+            assertEquals(1, xaResource2.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+
+            // once the abandoned recovery is over, the resource is recovered again
+            recoverer.run();
+
+            assertEquals(1, recoverer.getRolledbackCount());
+            assertEquals(0, xaResource2.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+            recoverer.shutdown();
+        } finally {
+            TransactionManagerServices.getConfiguration().setRecoveryParallelism(1);
+            TransactionManagerServices.getConfiguration().setRecoveryTimeout(Duration.ZERO);
+            pds2.close();
+        }
+    }
+
 }
@@ -15,6 +15,10 @@
  */
 package bitronix.tm.resource;
 
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.mock.events.Event;
+import bitronix.tm.mock.events.EventRecorder;
+import bitronix.tm.mock.events.XAConnectionCloseEvent;
 import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
 import bitronix.tm.mock.resource.jms.MockXAConnectionFactory;
 import bitronix.tm.resource.common.XAResourceProducer;
@@ -25,6 +29,7 @@ import org.junit.jupiter.api.Test;
 
 import javax.sql.XADataSource;
 import java.lang.reflect.Field;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Properties;
 
@@ -181,6 +186,100 @@ public class ResourceLoaderTest {
         assertEquals(0, pds.getDriverProperties().size());
     }
 
+    @Test
+    public void testParallelStartup() throws Exception {
+        TransactionManagerServices.getConfiguration().setResourceStartupParallelism(4);
+        ResourceLoader loader = new ResourceLoader();
+        try {
+            Properties p = new Properties();
+            for (int i = 0; i < 6; i++) {
+                p.setProperty("resource.pds" + i + ".className", MockitoXADataSource.class.getName());
+                p.setProperty("resource.pds" + i + ".uniqueName", "parallel" + i);
+                p.setProperty("resource.pds" + i + ".minPoolSize", "2");
+                p.setProperty("resource.pds" + i + ".maxPoolSize", "2");
+            }
+
+            assertEquals(0, loader.initXAResourceProducers(p));
+
+            Map<String, XAResourceProducer> dataSources = loader.getResources();
+            assertEquals(6, dataSources.size());
+            for (int i = 0; i < 6; i++) {
+                PoolingDataSource pds = (PoolingDataSource) dataSources.get("parallel" + i);
+                assertEquals(2, pds.getTotalPoolSize());
+                assertSame(pds, ResourceRegistrar.get("parallel" + i));
+            }
+            assertEquals(dataSources.keySet(), loader.getResourceStartupTimesMillis().keySet());
+        } finally {
+            loader.shutdown();
+            TransactionManagerServices.getConfiguration().setResourceStartupParallelism(1);
+        }
+    }
+
+    @Test
+    public void testParallelShutdown() throws Exception {
+        TransactionManagerServices.getConfiguration().setResourceShutdownParallelism(4);
+        ResourceLoader loader = new ResourceLoader();
+        try {
+            Properties p = new Properties();
+            for (int i = 0; i < 6; i++) {
+                p.setProperty("resource.pds" + i + ".className", MockitoXADataSource.class.getName());
+                p.setProperty("resource.pds" + i + ".uniqueName", "parallel-close" + i);
+                p.setProperty("resource.pds" + i + ".maxPoolSize", "1");
+            }
+            assertEquals(0, loader.initXAResourceProducers(p));
+
+            loader.shutdown();
+
+            assertTrue(loader.getResources().isEmpty());
+            for (int i = 0; i < 6; i++) {
+                assertNull(ResourceRegistrar.get("parallel-close" + i));
+            }
+        } finally {
+            TransactionManagerServices.getConfiguration().setResourceShutdownParallelism(1);
+        }
+    }
+
+    @Test
+    public void testParallelShutdownWithoutGracefulShutdownInterval() throws Exception {
+        Duration gracefulShutdownInterval = TransactionManagerServices.getConfiguration().getGracefulShutdownInterval();
+        TransactionManagerServices.getConfiguration().setResourceShutdownParallelism(4);
+        TransactionManagerServices.getConfiguration().setGracefulShutdownInterval(Duration.ZERO);
+        MockitoXADataSource.setStaticCloseXAConnectionException(null);
+        ResourceLoader loader = new ResourceLoader();
+        try {
+            Properties p = new Properties();
+            for (int i = 0; i < 6; i++) {
+                p.setProperty("resource.pds" + i + ".className", MockitoXADataSource.class.getName());
+                p.setProperty("resource.pds" + i + ".uniqueName", "slow-close" + i);
+                p.setProperty("resource.pds" + i + ".minPoolSize", "1");
+                p.setProperty("resource.pds" + i + ".maxPoolSize", "1");
+            }
+            assertEquals(0, loader.initXAResourceProducers(p));
+
+            // the graceful shutdown interval only bounds the in-flight transactions drain, closing waits for all pools
+            EventRecorder.clear();
+            MockitoXADataSource.setStaticCloseXAConnectionDelay(200L);
+            loader.shutdown();
+
+            assertTrue(loader.getResources().isEmpty());
+            for (int i = 0; i < 6; i++) {
+                assertNull(ResourceRegistrar.get("slow-close" + i));
+            }
+            int closedConnections = 0;
+            for (Event event : EventRecorder.getOrderedEvents()) {
+                if (event instanceof XAConnectionCloseEvent) {
+                    closedConnections++;
+                }
+            }
+            assertEquals(6, closedConnections);
+        } finally {
+            MockitoXADataSource.setStaticCloseXAConnectionDelay(0L);
+            EventRecorder.clear();
+            TransactionManagerServices.getConfiguration().setGracefulShutdownInterval(gracefulShutdownInterval);
+            TransactionManagerServices.getConfiguration().setResourceShutdownParallelism(1);
+        }
+    }
+
     @Test
     public void testConfigErrors() throws Exception {
         ResourceLoader loader = new ResourceLoader();
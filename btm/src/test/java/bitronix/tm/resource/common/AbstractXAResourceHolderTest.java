@@ -15,6 +15,7 @@
  */
 package bitronix.tm.resource.common;
 
+import bitronix.tm.BitronixXid;
 import bitronix.tm.internal.XAResourceHolderState;
 import bitronix.tm.utils.Uid;
 import bitronix.tm.utils.UidGenerator;
@@ -22,6 +23,8 @@ import org.junit.jupiter.api.Test;
 
 import javax.transaction.xa.XAResource;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -92,4 +95,103 @@ public class AbstractXAResourceHolderTest {
         assertSame(state3, statesForGtridIt.next());
         assertFalse(statesForGtridIt.hasNext());
     }
+
+    @Test
+    public void testRemoveKeepsRemainingStatesOrder() throws Exception {
+        final ResourceBean resourceBean = new ResourceBean() {
+        };
+        AbstractXAResourceHolder<DummyResourceHolder> xaResourceHolder = createXAResourceHolder(resourceBean);
+
+        Uid gtrid1 = UidGenerator.generateUid();
+        Uid gtrid2 = UidGenerator.generateUid();
+        BitronixXid xid1 = UidGenerator.generateXid(gtrid1);
+        BitronixXid xid2 = UidGenerator.generateXid(gtrid2);
+        BitronixXid xid3 = UidGenerator.generateXid(gtrid1);
+        XAResourceHolderState state1 = new XAResourceHolderState(xaResourceHolder, resourceBean);
+        XAResourceHolderState state2 = new XAResourceHolderState(xaResourceHolder, resourceBean);
+        XAResourceHolderState state3 = new XAResourceHolderState(xaResourceHolder, resourceBean);
+
+        assertFalse(xaResourceHolder.isExistXAResourceHolderStatesForGtrid(gtrid1));
+        xaResourceHolder.putXAResourceHolderState(xid1, state1);
+        xaResourceHolder.putXAResourceHolderState(xid2, state2);
+        xaResourceHolder.putXAResourceHolderState(xid3, state3);
+        assertEquals(2, xaResourceHolder.getXAResourceHolderStateCountForGtrid(gtrid1));
+        assertEquals(1, xaResourceHolder.getXAResourceHolderStateCountForGtrid(gtrid2));
+        assertEquals(2, xaResourceHolder.getXAResourceHolderStateGtrids().size());
+
+        xaResourceHolder.removeXAResourceHolderState(xid1);
+        final List<XAResourceHolderState> visited = new ArrayList<>();
+        xaResourceHolder.acceptVisitorForXAResourceHolderStates(gtrid1, xaResourceHolderState -> visited.add(xaResourceHolderState));
+        assertEquals(Collections.singletonList(state3), visited);
+
+        xaResourceHolder.removeXAResourceHolderState(xid3);
+        assertFalse(xaResourceHolder.isExistXAResourceHolderStatesForGtrid(gtrid1));
+        assertNull(xaResourceHolder.getXAResourceHolderStatesForGtrid(gtrid1));
+        assertTrue(xaResourceHolder.isExistXAResourceHolderStatesForGtrid(gtrid2));
+
+        xaResourceHolder.removeXAResourceHolderState(xid2);
+        assertTrue(xaResourceHolder.getXAResourceHolderStateGtrids().isEmpty());
+    }
+
+    @Test
+    public void testSingleBranch() throws Exception {
+        final ResourceBean resourceBean = new ResourceBean() {
+        };
+        AbstractXAResourceHolder<DummyResourceHolder> xaResourceHolder = createXAResourceHolder(resourceBean);
+
+        Uid gtrid = UidGenerator.generateUid();
+        BitronixXid xid1 = UidGenerator.generateXid(gtrid);
+        BitronixXid xid2 = UidGenerator.generateXid(gtrid);
+        XAResourceHolderState state1 = new XAResourceHolderState(xaResourceHolder, resourceBean);
+        XAResourceHolderState state2 = new XAResourceHolderState(xaResourceHolder, resourceBean);
+        XAResourceHolderState state3 = new XAResourceHolderState(xaResourceHolder, resourceBean);
+
+        xaResourceHolder.putXAResourceHolderState(xid1, state1);
+        assertEquals(1, xaResourceHolder.getXAResourceHolderStateCountForGtrid(gtrid));
+        xaResourceHolder.putXAResourceHolderState(xid1, state2);
+        assertEquals(1, xaResourceHolder.getXAResourceHolderStateCountForGtrid(gtrid));
+        assertSame(state2, xaResourceHolder.getXAResourceHolderStatesForGtrid(gtrid).get(xid1.getBranchQualifierUid()));
+
+        xaResourceHolder.putXAResourceHolderState(xid2, state3);
+        xaResourceHolder.removeXAResourceHolderState(xid1);
+        Map<Uid, XAResourceHolderState> statesForGtrid = xaResourceHolder.getXAResourceHolderStatesForGtrid(gtrid);
+        assertEquals(1, statesForGtrid.size());
+        assertSame(state3, statesForGtrid.get(xid2.getBranchQualifierUid()));
+
+        xaResourceHolder.removeXAResourceHolderState(xid2);
+        assertFalse(xaResourceHolder.isExistXAResourceHolderStatesForGtrid(gtrid));
+    }
+
+    private static AbstractXAResourceHolder<DummyResourceHolder> createXAResourceHolder(final ResourceBean resourceBean) {
+        return new AbstractXAResourceHolder<DummyResourceHolder>() {
+            @Override
+            public XAResource getXAResource() {
+                return null;
+            }
+
+            @Override
+            public ResourceBean getResourceBean() {
+                return resourceBean;
+            }
+
+            @Override
+            public List<? extends XAResourceHolder<? extends XAResourceHolder>> getXAResourceHolders() {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public Object getConnectionHandle() throws Exception {
+                return null;
+            }
+
+            @Override
+            public void close() throws Exception {
+            }
+
+            @Override
+            public LocalDateTime getLastReleaseDate() {
+                return null;
+            }
+        };
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.resource.common;
+
+import bitronix.tm.BitronixTransaction;
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.mock.events.EventRecorder;
+import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Ludovic Orban
+ */
+public class DeferredReleaseTest {
+
+    private static final int CYCLES = 10000;
+    private static final int INTERLEAVED_CYCLES = 1000;
+
+    private BitronixTransactionManager btm;
+    private PoolingDataSource pds;
+
+    @BeforeEach
+    public void setUp() {
+        TransactionManagerServices.getConfiguration().setJournal("null");
+        btm = TransactionManagerServices.getTransactionManager();
+
+        pds = new PoolingDataSource();
+        pds.setClassName(MockitoXADataSource.class.getName());
+        pds.setUniqueName("deferred-release");
+        pds.setMinPoolSize(1);
+        pds.setMaxPoolSize(2);
+        pds.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pds.close();
+        btm.shutdown();
+        EventRecorder.clear();
+    }
+
+    @Test
+    public void testOpenCloseCyclesInOneTransaction() throws Exception {
+        btm.setTransactionTimeout(600);
+        btm.begin();
+        BitronixTransaction transaction = btm.getCurrentTransaction();
+        int synchronizations = transaction.getSynchronizationScheduler().size();
+
+        for (int i = 0; i < CYCLES; i++) {
+            Connection connection = pds.getConnection();
+            connection.createStatement();
+            connection.close();
+            // a single deferred release is registered for the recycled connection
+            assertEquals(synchronizations + 1, transaction.getSynchronizationScheduler().size());
+        }
+
+        assertEquals(1, pds.getTotalPoolSize());
+        assertEquals(0, pds.getInPoolSize());
+        btm.commit();
+        assertEquals(1, pds.getInPoolSize());
+    }
+
+    @Test
+    public void testEachConnectionGetsItsDeferredRelease() throws Exception {
+        btm.setTransactionTimeout(600);
+        btm.begin();
+        BitronixTransaction transaction = btm.getCurrentTransaction();
+        int synchronizations = transaction.getSynchronizationScheduler().size();
+
+        for (int i = 0; i < INTERLEAVED_CYCLES; i++) {
+            Connection connection1 = pds.getConnection();
+            connection1.createStatement();
+            Connection connection2 = pds.getConnection();
+            connection2.createStatement();
+            connection2.close();
+            connection1.close();
+        }
+
+        assertEquals(synchronizations + 2, transaction.getSynchronizationScheduler().size());
+        assertEquals(2, pds.getTotalPoolSize());
+        assertEquals(0, pds.getInPoolSize());
+        btm.rollback();
+        assertEquals(2, pds.getInPoolSize());
+    }
+
+}
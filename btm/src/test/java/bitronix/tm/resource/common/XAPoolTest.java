@@ -22,8 +22,11 @@ import bitronix.tm.resource.jdbc.PoolingDataSource;
 import bitronix.tm.utils.CryptoEngine;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import java.sql.Connection;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  *
@@ -65,4 +68,123 @@ public class XAPoolTest {
         assertFalse(TransactionManagerServices.isTaskSchedulerRunning());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testConcurrentGrowthNeverExceedsMaxPoolSize() throws Exception {
+        final int threads = 16;
+        final PoolingDataSource pds = new PoolingDataSource();
+        pds.setClassName(MockitoXADataSource.class.getName());
+        pds.setMinPoolSize(0);
+        pds.setMaxPoolSize(4);
+        pds.setAcquireIncrement(3);
+        pds.setAllowLocalTransactions(true);
+        pds.setUniqueName("concurrent-growth");
+        pds.init();
+        try {
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final AtomicInteger maxTotalPoolSize = new AtomicInteger();
+            final AtomicInteger failures = new AtomicInteger();
+
+            Thread[] workers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(() -> {
+                    try {
+                        barrier.await();
+                        for (int j = 0; j < 50; j++) {
+                            try (Connection c = pds.getConnection()) {
+                                maxTotalPoolSize.accumulateAndGet(pds.getTotalPoolSize(), Math::max);
+                            }
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                    }
+                });
+                workers[i].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            assertEquals(0, failures.get());
+            assertTrue(maxTotalPoolSize.get() <= 4, "pool grew to " + maxTotalPoolSize.get() + " connection(s)");
+            assertEquals(pds.getTotalPoolSize(), pds.getInPoolSize());
+        } finally {
+            pds.close();
+        }
+    }
+
+    @Test
+    public void testParallelPrefill() throws Exception {
+        TransactionManagerServices.getConfiguration().setPoolPrefillParallelism(4);
+        PoolingDataSource pds = new PoolingDataSource();
+        try {
+            pds.setClassName(MockitoXADataSource.class.getName());
+            pds.setMinPoolSize(10);
+            pds.setMaxPoolSize(10);
+            pds.setUniqueName("parallel-prefill");
+            pds.init();
+
+            assertEquals(10, pds.getTotalPoolSize());
+            assertEquals(10, pds.getInPoolSize());
+        } finally {
+            pds.close();
+            TransactionManagerServices.getConfiguration().setPoolPrefillParallelism(1);
+        }
+    }
+
+    @Test
+    public void testBackgroundPrefill() throws Exception {
+        TransactionManagerServices.getConfiguration().setBackgroundPoolPrefill(true);
+        PoolingDataSource pds = new PoolingDataSource();
+        try {
+            pds.setClassName(MockitoXADataSource.class.getName());
+            pds.setMinPoolSize(5);
+            pds.setMaxPoolSize(5);
+            pds.setUniqueName("background-prefill");
+            pds.init();
+
+            assertTrue(pds.getTotalPoolSize() >= 1);
+            for (int i = 0; i < 100 && pds.getInPoolSize() < 5; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(5, pds.getTotalPoolSize());
+            assertEquals(5, pds.getInPoolSize());
+        } finally {
+            pds.close();
+            TransactionManagerServices.getConfiguration().setBackgroundPoolPrefill(false);
+        }
+    }
+
+    @Test
+    public void testBackgroundPrefillAfterReinitialization() throws Exception {
+        TransactionManagerServices.getConfiguration().setBackgroundPoolPrefill(true);
+        // the incremental recovery run when the pool is initialized again needs the journal
+        BitronixTransactionManager btm = TransactionManagerServices.getTransactionManager();
+        PoolingDataSource pds = new PoolingDataSource();
+        try {
+            pds.setClassName(MockitoXADataSource.class.getName());
+            pds.setMinPoolSize(5);
+            pds.setMaxPoolSize(5);
+            pds.setUniqueName("background-prefill-reinit");
+            pds.init();
+            for (int i = 0; i < 100 && pds.getInPoolSize() < 5; i++) {
+                Thread.sleep(50);
+            }
+
+            // a failed pool is closed and initialized again when a connection is requested
+            pds.setFailed(true);
+            pds.getConnection().close();
+
+            for (int i = 0; i < 100 && pds.getInPoolSize() < 5; i++) {
+                Thread.sleep(50);
+            }
+            assertFalse(pds.isFailed());
+            assertEquals(5, pds.getTotalPoolSize());
+            assertEquals(5, pds.getInPoolSize());
+        } finally {
+            pds.close();
+            btm.shutdown();
+            TransactionManagerServices.getConfiguration().setBackgroundPoolPrefill(false);
+        }
+    }
+
+}
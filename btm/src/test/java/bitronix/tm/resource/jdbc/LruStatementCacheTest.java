@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.resource.jdbc;
+
+import bitronix.tm.resource.jdbc.LruStatementCache.CacheKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ludovic Orban
+ */
+public class LruStatementCacheTest {
+
+    private StatementCacheStatistics poolStatistics;
+    private LruStatementCache cache;
+    private List<PreparedStatement> evicted;
+
+    @BeforeEach
+    public void setUp() {
+        poolStatistics = new StatementCacheStatistics();
+        cache = new LruStatementCache(10, poolStatistics);
+        evicted = new ArrayList<>();
+        cache.addEvictionListener(evicted::add);
+    }
+
+    @Test
+    public void testHotStatementsSurviveOneOffStatements() {
+        List<PreparedStatement> hotStatements = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            hotStatements.add(use("SELECT " + i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertSame(hotStatements.get(i), use("SELECT " + i));
+            }
+        }
+
+        for (int i = 0; i < 100; i++) {
+            use("SELECT ONE OFF " + i);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertSame(hotStatements.get(i), use("SELECT " + i));
+        }
+        assertEquals(95, evicted.size());
+        assertTrue(evicted.stream().noneMatch(hotStatements::contains));
+    }
+
+    @Test
+    public void testStatementsInUseAreNotEvicted() {
+        List<PreparedStatement> inUse = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            CacheKey key = new CacheKey("SELECT " + i);
+            assertNull(cache.get(key));
+            PreparedStatement statement = mock(PreparedStatement.class);
+            cache.put(key, statement);
+            inUse.add(statement);
+        }
+        assertEquals(0, evicted.size());
+        assertEquals(12, cache.getInUse());
+
+        for (int i = 0; i < 12; i++) {
+            cache.put(new CacheKey("SELECT " + i), inUse.get(i));
+        }
+        assertEquals(2, evicted.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(0, cache.getInUse());
+    }
+
+    @Test
+    public void testStatementSharedWhileInUse() {
+        CacheKey key = new CacheKey("SELECT 1");
+        PreparedStatement statement = use("SELECT 1");
+
+        assertSame(statement, cache.get(key));
+        assertSame(statement, cache.get(key));
+        assertEquals(1, cache.getInUse());
+        cache.put(key, statement);
+        assertEquals(1, cache.getInUse());
+        cache.put(key, statement);
+        assertEquals(0, cache.getInUse());
+    }
+
+    @Test
+    public void testStatisticsAreAddedToParent() {
+        LruStatementCache otherCache = new LruStatementCache(10, poolStatistics);
+        use("SELECT 1");
+        use("SELECT 1");
+        otherCache.get(new CacheKey("SELECT 1"));
+        otherCache.put(new CacheKey("SELECT 1"), mock(PreparedStatement.class));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, otherCache.getHits());
+        assertEquals(1, otherCache.getMisses());
+        assertEquals(1, otherCache.getInUse());
+        assertEquals(1, poolStatistics.getHits());
+        assertEquals(2, poolStatistics.getMisses());
+        assertEquals(1, poolStatistics.getInUse());
+
+        otherCache.clear();
+        assertEquals(0, otherCache.getInUse());
+        assertEquals(0, poolStatistics.getInUse());
+    }
+
+    @Test
+    public void testClearEvictsAllStatements() {
+        use("SELECT 1");
+        CacheKey key = new CacheKey("SELECT 2");
+        cache.get(key);
+        cache.put(key, mock(PreparedStatement.class));
+
+        cache.clear();
+
+        assertEquals(2, evicted.size());
+        assertEquals(0, cache.getEvictions());
+        assertNull(cache.get(new CacheKey("SELECT 1")));
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        LruStatementCache disabledCache = new LruStatementCache(0);
+        CacheKey key = new CacheKey("SELECT 1");
+        assertNull(disabledCache.get(key));
+        assertNull(disabledCache.put(key, mock(PreparedStatement.class)));
+        assertNull(disabledCache.get(key));
+    }
+
+    /**
+     * Prepare a statement the way the connection proxy does, then close it.
+     */
+    private PreparedStatement use(String sql) {
+        CacheKey key = new CacheKey(sql);
+        PreparedStatement statement = cache.get(key);
+        if (statement == null) {
+            statement = mock(PreparedStatement.class);
+            cache.put(key, statement);
+        }
+        assertNotNull(statement);
+        cache.put(key, statement);
+        return statement;
+    }
+
+}
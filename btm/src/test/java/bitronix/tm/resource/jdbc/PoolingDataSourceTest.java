@@ -1,11 +1,16 @@
 package bitronix.tm.resource.jdbc;
 
 import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.resource.ResourceRegistrar;
 import org.junit.jupiter.api.Test;
 
+import javax.transaction.xa.XAResource;
 import java.sql.Connection;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * @author Ludovic Orban
@@ -31,6 +36,58 @@ public class PoolingDataSourceTest {
         }
     }
 
+    @Test
+    public void testRegistrarIndexesPooledConnections() throws Exception {
+        PoolingDataSource other = new PoolingDataSource();
+        PoolingDataSource pds = new PoolingDataSource();
+        XAResource xaResource;
+        try {
+            other.setUniqueName("other-pds");
+            other.setMinPoolSize(1);
+            other.setMaxPoolSize(1);
+            other.setXaDataSource(new MockitoXADataSource());
+            other.init();
+
+            pds.setUniqueName("pds");
+            pds.setMinPoolSize(1);
+            pds.setMaxPoolSize(1);
+            pds.setXaDataSource(new MockitoXADataSource());
+            pds.init();
+
+            Connection connection = pds.getConnection();
+            JdbcPooledConnection pooledConnection = ((PooledConnectionProxy) connection).getPooledConnection();
+            xaResource = pooledConnection.getXAResource();
+
+            assertSame(pooledConnection, ResourceRegistrar.findXAResourceHolder(xaResource));
+
+            connection.close();
+        } finally {
+            pds.close();
+            other.close();
+        }
+
+        assertNull(ResourceRegistrar.findXAResourceHolder(xaResource));
+    }
+
+    @Test
+    public void testSharedStatementCacheKeys() {
+        PoolingDataSource pds = new PoolingDataSource();
+        pds.setPreparedStatementCacheSize(1);
+        assertNotSame(pds.getStatementCacheKey("SELECT 1"), pds.getStatementCacheKey("SELECT 1"));
+
+        pds.setShareStatementCacheKeys(true);
+        LruStatementCache.CacheKey key = pds.getStatementCacheKey("SELECT 1");
+        assertSame(key, pds.getStatementCacheKey("SELECT 1"));
+
+        for (int i = 2; i <= 4; i++) {
+            pds.getStatementCacheKey("SELECT " + i);
+        }
+        assertSame(key, pds.getStatementCacheKey("SELECT 1"));
+        pds.getStatementCacheKey("SELECT 5");
+        assertNotSame(key, pds.getStatementCacheKey("SELECT 1"));
+        assertEquals(key, pds.getStatementCacheKey("SELECT 1"));
+    }
+
     @Test
     public void testEffectiveConnectionTimeoutWhenSet() {
         PoolingDataSource pds = new PoolingDataSource();
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.resource.jdbc.proxy;
+
+import bitronix.tm.resource.jdbc.JdbcPooledConnection;
+import bitronix.tm.resource.jdbc.LruStatementCache.CacheKey;
+import bitronix.tm.resource.jdbc.PooledConnectionProxy;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ludovic Orban
+ */
+public class JdbcHiddenClassProxyFactoryTest {
+
+    private JdbcHiddenClassProxyFactory factory;
+    private JdbcPooledConnection pooledConnection;
+
+    @BeforeEach
+    public void setup() {
+        factory = new JdbcHiddenClassProxyFactory();
+        pooledConnection = mock(JdbcPooledConnection.class);
+        when(pooledConnection.getPoolingDataSource()).thenReturn(mock(PoolingDataSource.class));
+    }
+
+    @Test
+    public void testConnectionDelegatesAndKeepsOverriddenMethods() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.getCatalog()).thenReturn("catalog");
+
+        Connection proxy = factory.getProxyConnection(pooledConnection, connection);
+
+        assertTrue(proxy instanceof PooledConnectionProxy);
+        assertSame(connection, ((PooledConnectionProxy) proxy).getProxiedDelegate());
+        assertEquals("catalog", proxy.getCatalog());
+        proxy.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        verify(connection).setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+
+        proxy.close();
+        assertTrue(proxy.isClosed());
+        verify(connection, never()).close();
+        verify(pooledConnection).release();
+    }
+
+    @Test
+    public void testStatementsDelegatePrimitiveArguments() throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(statement.executeLargeUpdate("DELETE FROM TABLE_1")).thenReturn(42L);
+        Statement statementProxy = factory.getProxyStatement(pooledConnection, statement);
+        assertEquals(42L, statementProxy.executeLargeUpdate("DELETE FROM TABLE_1"));
+
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        PreparedStatement preparedStatementProxy = factory.getProxyPreparedStatement(pooledConnection, preparedStatement, new CacheKey("SELECT 1"));
+        preparedStatementProxy.setLong(1, Long.MAX_VALUE);
+        preparedStatementProxy.setDouble(2, 1.5d);
+        preparedStatementProxy.setFloat(3, 2.5f);
+        preparedStatementProxy.setBoolean(4, true);
+        verify(preparedStatement).setLong(1, Long.MAX_VALUE);
+        verify(preparedStatement).setDouble(2, 1.5d);
+        verify(preparedStatement).setFloat(3, 2.5f);
+        verify(preparedStatement).setBoolean(4, true);
+        assertSame(preparedStatement, preparedStatementProxy.unwrap(PreparedStatement.class));
+
+        CallableStatement callableStatement = mock(CallableStatement.class);
+        when(callableStatement.getBigDecimal(1)).thenReturn(BigDecimal.TEN);
+        CallableStatement callableStatementProxy = factory.getProxyCallableStatement(pooledConnection, callableStatement);
+        assertEquals(BigDecimal.TEN, callableStatementProxy.getBigDecimal(1));
+    }
+
+    @Test
+    public void testResultSetDelegates() throws SQLException {
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString("NAME")).thenReturn("name");
+        when(resultSet.getDouble(2)).thenReturn(3.5d);
+
+        ResultSet proxy = factory.getProxyResultSet(statement, resultSet);
+
+        assertTrue(proxy.next());
+        assertEquals("name", proxy.getString("NAME"));
+        assertEquals(3.5d, proxy.getDouble(2));
+        assertSame(statement, proxy.getStatement());
+    }
+
+}
@@ -1,10 +1,20 @@
 package bitronix.tm.resource.jms;
 
 import bitronix.tm.mock.resource.jms.MockXAConnectionFactory;
+import bitronix.tm.resource.ResourceRegistrar;
 
 import jakarta.jms.Connection;
+import jakarta.jms.Session;
 import org.junit.jupiter.api.Test;
 
+import javax.transaction.xa.XAResource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 
 /**
  * @author Ludovic Orban
@@ -29,4 +39,73 @@ public class PoolingConnectionFactoryTest {
         }
     }
 
+    @Test
+    public void testSessionsIndexedByXaResource() throws Exception {
+        PoolingConnectionFactory pcf = new PoolingConnectionFactory();
+        try {
+            pcf.setUniqueName("pcf");
+            pcf.setMinPoolSize(1);
+            pcf.setMaxPoolSize(1);
+            pcf.setXaConnectionFactory(new MockXAConnectionFactory());
+            pcf.init();
+
+            Connection connection = pcf.createConnection();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            DualSessionWrapper dualSessionWrapper = (DualSessionWrapper) session;
+            dualSessionWrapper.getSession(true);
+            XAResource xaResource = dualSessionWrapper.getXAResource();
+            assertNotNull(xaResource);
+
+            assertSame(dualSessionWrapper, pcf.findXAResourceHolder(xaResource));
+            assertSame(dualSessionWrapper, ResourceRegistrar.findXAResourceHolder(xaResource));
+
+            session.close();
+
+            assertNull(pcf.findXAResourceHolder(xaResource));
+            assertNull(ResourceRegistrar.findXAResourceHolder(xaResource));
+
+            connection.close();
+        } finally {
+            pcf.close();
+        }
+    }
+
+    @Test
+    public void testSessionsWithEqualXaResourcesAreIndexedApart() throws Exception {
+        PoolingConnectionFactory pcf = new PoolingConnectionFactory();
+        try {
+            MockXAConnectionFactory xaConnectionFactory = new MockXAConnectionFactory();
+            xaConnectionFactory.setEqualXAResources(true);
+            pcf.setUniqueName("pcf-equal");
+            pcf.setMinPoolSize(1);
+            pcf.setMaxPoolSize(1);
+            pcf.setXaConnectionFactory(xaConnectionFactory);
+            pcf.init();
+
+            Connection connection = pcf.createConnection();
+            DualSessionWrapper session1 = (DualSessionWrapper) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session1.getSession(true);
+            DualSessionWrapper session2 = (DualSessionWrapper) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session2.getSession(true);
+            assertNotSame(session1.getXAResource(), session2.getXAResource());
+            assertEquals(session1.getXAResource(), session2.getXAResource());
+
+            assertSame(session1, pcf.findXAResourceHolder(session1.getXAResource()));
+            assertSame(session2, pcf.findXAResourceHolder(session2.getXAResource()));
+            assertSame(session1, ResourceRegistrar.findXAResourceHolder(session1.getXAResource()));
+            assertSame(session2, ResourceRegistrar.findXAResourceHolder(session2.getXAResource()));
+
+            XAResource xaResource1 = session1.getXAResource();
+            session1.close();
+
+            assertNull(pcf.findXAResourceHolder(xaResource1));
+            assertSame(session2, pcf.findXAResourceHolder(session2.getXAResource()));
+            assertSame(session2, ResourceRegistrar.findXAResourceHolder(session2.getXAResource()));
+
+            connection.close();
+        } finally {
+            pcf.close();
+        }
+    }
+
 }
@@ -21,14 +21,19 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 
 /**
@@ -99,6 +104,25 @@ public class TaskSchedulerTest {
         ts.join(1000);
     }
 
+    @Test
+    public void testInterruptDoesNotMakeTheSchedulerSpin() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadCpuTimeSupported());
+
+        ts.interrupt();
+        long cpuTimeBefore = threadMXBean.getThreadCpuTime(ts.getId());
+        List<SimpleTask> result = Collections.synchronizedList(new ArrayList<SimpleTask>());
+        long scheduledAt = MonotonicClock.currentTimeMillis() + 600;
+        ts.addTask(new SimpleTask(Instant.ofEpochMilli(scheduledAt).atZone(ZoneId.systemDefault()).toLocalDateTime(), ts, 0, result));
+
+        ts.join(1500);
+
+        // the task still runs on the next tick after its execution time, without the thread busy-looping meanwhile
+        assertEquals(1, result.size());
+        long cpuMillis = TimeUnit.NANOSECONDS.toMillis(threadMXBean.getThreadCpuTime(ts.getId()) - cpuTimeBefore);
+        assertTrue(cpuMillis < 300, "task scheduler thread used " + cpuMillis + "ms of CPU in 1.5s");
+    }
+
     private static class SimpleTask extends Task {
 
         private final Object obj;
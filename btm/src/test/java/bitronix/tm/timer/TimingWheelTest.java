@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.timer;
+
+import bitronix.tm.BitronixTransaction;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 500L;
+    private static final long START = 1_000_000L * TICK;
+
+    @Test
+    public void testScheduleAndCancel() throws Exception {
+        TimingWheel wheel = new TimingWheel(TICK, 8, START);
+        TransactionTimeoutTask task1 = newTask(START + 1000);
+        TransactionTimeoutTask task2 = newTask(START + 1000);
+        TransactionTimeoutTask task3 = newTask(START + 1000);
+
+        wheel.schedule(task1);
+        wheel.schedule(task2);
+        wheel.schedule(task3);
+        assertEquals(3, wheel.size());
+
+        // cancel the task in the middle of the bucket, then its head
+        assertTrue(wheel.cancel(task2));
+        assertFalse(wheel.cancel(task2));
+        assertTrue(wheel.cancel(task3));
+        assertEquals(1, wheel.size());
+
+        List<TransactionTimeoutTask> expired = new ArrayList<>();
+        wheel.expire(START + 1000, expired);
+        assertEquals(List.of(task1), expired);
+        assertEquals(0, wheel.size());
+        assertFalse(wheel.cancel(task1));
+    }
+
+    @Test
+    public void testExpireOrdering() throws Exception {
+        TimingWheel wheel = new TimingWheel(TICK, 8, START);
+        TransactionTimeoutTask early = newTask(START + 100);
+        TransactionTimeoutTask sameTick = newTask(START + 400);
+        TransactionTimeoutTask nextRotation = newTask(START + 100 + 8 * TICK);
+
+        wheel.schedule(nextRotation);
+        wheel.schedule(sameTick);
+        wheel.schedule(early);
+
+        List<TransactionTimeoutTask> expired = new ArrayList<>();
+        wheel.expire(START + 200, expired);
+        assertEquals(List.of(early), expired);
+
+        // the current bucket is walked again
+        expired.clear();
+        wheel.expire(START + 400, expired);
+        assertEquals(List.of(sameTick), expired);
+
+        // the task of the next rotation shares the bucket but must not expire yet
+        expired.clear();
+        wheel.expire(START + 7 * TICK, expired);
+        assertTrue(expired.isEmpty());
+        assertEquals(1, wheel.size());
+
+        expired.clear();
+        wheel.expire(START + 100 + 8 * TICK, expired);
+        assertEquals(List.of(nextRotation), expired);
+    }
+
+    @Test
+    public void testLateScheduling() throws Exception {
+        TimingWheel wheel = new TimingWheel(TICK, 8, START);
+        List<TransactionTimeoutTask> expired = new ArrayList<>();
+        wheel.expire(START + 20 * TICK, expired);
+
+        // a task which should already have expired is expired by the next call
+        TransactionTimeoutTask late = newTask(START);
+        wheel.schedule(late);
+        wheel.expire(START + 20 * TICK, expired);
+        assertEquals(List.of(late), expired);
+    }
+
+    @Test
+    public void testExpireAfterLongPause() throws Exception {
+        TimingWheel wheel = new TimingWheel(TICK, 8, START);
+        List<TransactionTimeoutTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            TransactionTimeoutTask task = newTask(START + i * TICK);
+            tasks.add(task);
+            wheel.schedule(task);
+        }
+
+        List<TransactionTimeoutTask> expired = new ArrayList<>();
+        wheel.expire(START + 100 * TICK, expired);
+        assertEquals(32, expired.size());
+        assertTrue(expired.containsAll(tasks));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancelAllTasksOfTransaction() throws Exception {
+        TimingWheel wheel = new TimingWheel(TICK, 8, START);
+        BitronixTransaction transaction = mock(BitronixTransaction.class);
+        BitronixTransaction other = mock(BitronixTransaction.class);
+        TransactionTimeoutTask task1 = newTask(transaction, START + 1000);
+        TransactionTimeoutTask task2 = newTask(transaction, START + 20 * TICK);
+        TransactionTimeoutTask otherTask = newTask(other, START + 1000);
+        wheel.schedule(task1);
+        wheel.schedule(otherTask);
+        wheel.schedule(task2);
+
+        assertEquals(2, wheel.cancelAll(transaction));
+        assertEquals(0, wheel.cancelAll(transaction));
+        assertEquals(1, wheel.size());
+        assertFalse(wheel.cancel(task1));
+        assertTrue(wheel.cancel(otherTask));
+    }
+
+    private static TransactionTimeoutTask newTask(long executionTimeMillis) {
+        return newTask(null, executionTimeMillis);
+    }
+
+    private static TransactionTimeoutTask newTask(BitronixTransaction transaction, long executionTimeMillis) {
+        return new TransactionTimeoutTask(transaction, Instant.ofEpochMilli(executionTimeMillis).atZone(ZoneId.systemDefault()).toLocalDateTime(), null);
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc;
+
+import bitronix.tm.BitronixTransaction;
+import bitronix.tm.BitronixTransactionManager;
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.internal.XAResourceHolderState;
+import bitronix.tm.journal.JournalRecord;
+import bitronix.tm.journal.ReadableJournal;
+import bitronix.tm.mock.AbstractMockJdbcTest;
+import bitronix.tm.mock.resource.MockXAResource;
+import bitronix.tm.mock.resource.jdbc.MockitoXADataSource;
+import bitronix.tm.recovery.Recoverer;
+import bitronix.tm.resource.ResourceRegistrar;
+import bitronix.tm.resource.jdbc.PooledConnectionProxy;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+import jakarta.transaction.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.XAConnection;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check which statuses get logged with {@link bitronix.tm.Configuration#isRecoveryLogsOnly()} enabled, and that the
+ * recoverer still resolves the resources left prepared by a crash at any point of a two-phase commit.
+ *
+ * @author Ludovic Orban
+ */
+public class RecoveryLogsOnlyTest {
+
+    private PoolingDataSource poolingDataSource1;
+    private PoolingDataSource poolingDataSource2;
+    private BitronixTransactionManager tm;
+
+    @BeforeEach
+    protected void setUp() throws Exception {
+        for (String name : ResourceRegistrar.getResourcesUniqueNames()) {
+            ResourceRegistrar.unregister(ResourceRegistrar.get(name));
+        }
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+
+        poolingDataSource1 = createPoolingDataSource("pds1");
+        poolingDataSource2 = createPoolingDataSource("pds2");
+
+        TransactionManagerServices.getConfiguration().setRecoveryLogsOnly(true);
+        tm = TransactionManagerServices.getTransactionManager();
+    }
+
+    @AfterEach
+    protected void tearDown() throws Exception {
+        if (TransactionManagerServices.isTransactionManagerRunning()) {
+            tm.shutdown();
+        }
+        TransactionManagerServices.getJournal().close();
+        poolingDataSource1.close();
+        poolingDataSource2.close();
+        new File(TransactionManagerServices.getConfiguration().getLogPart1Filename()).delete();
+        new File(TransactionManagerServices.getConfiguration().getLogPart2Filename()).delete();
+    }
+
+    @Test
+    public void testZeroResourceTransactionsAreNotLogged() throws Exception {
+        tm.begin();
+        tm.commit();
+
+        tm.begin();
+        tm.setRollbackOnly();
+        tm.rollback();
+
+        assertEquals(List.of(), loggedStatuses());
+    }
+
+    @Test
+    public void testOnePhaseTransactionsAreNotLogged() throws Exception {
+        tm.begin();
+        Connection connection = poolingDataSource1.getConnection();
+        connection.createStatement();
+        connection.close();
+        tm.commit();
+
+        tm.begin();
+        connection = poolingDataSource1.getConnection();
+        connection.createStatement();
+        connection.close();
+        tm.rollback();
+
+        assertEquals(List.of(), loggedStatuses());
+    }
+
+    @Test
+    public void testReadOnlyTransactionsAreNotLogged() throws Exception {
+        tm.begin();
+        enlistBoth(XAResource.XA_RDONLY, XAResource.XA_RDONLY);
+        tm.commit();
+
+        assertEquals(List.of(), loggedStatuses());
+    }
+
+    @Test
+    public void testTwoPhaseTransactionsOnlyLogCommittingAndCommitted() throws Exception {
+        tm.begin();
+        enlistBoth(XAResource.XA_OK, XAResource.XA_RDONLY);
+        tm.commit();
+
+        tm.begin();
+        enlistBoth(XAResource.XA_OK, XAResource.XA_OK);
+        tm.commit();
+
+        assertEquals(List.of(Status.STATUS_COMMITTING, Status.STATUS_COMMITTED, Status.STATUS_COMMITTING, Status.STATUS_COMMITTED), loggedStatuses());
+        assertEquals(0, TransactionManagerServices.getJournal().collectDanglingRecords().size());
+    }
+
+    @Test
+    public void testCrashDuringPrepareIsRolledBack() throws Exception {
+        // the first resource got prepared, the crash happened before the second one was
+        Recoverer recoverer = crashAt(Status.STATUS_PREPARING, 1);
+        assertEquals(0, recoverer.getCommittedCount());
+        assertEquals(1, recoverer.getRolledbackCount());
+    }
+
+    @Test
+    public void testCrashAfterPrepareIsRolledBack() throws Exception {
+        Recoverer recoverer = crashAt(Status.STATUS_PREPARED, 2);
+        assertEquals(0, recoverer.getCommittedCount());
+        assertEquals(2, recoverer.getRolledbackCount());
+    }
+
+    @Test
+    public void testCrashAfterCommittingIsCommitted() throws Exception {
+        Recoverer recoverer = crashAt(Status.STATUS_COMMITTING, 2);
+        assertEquals(1, recoverer.getCommittedCount());
+        assertEquals(0, recoverer.getRolledbackCount());
+    }
+
+    @Test
+    public void testCrashAfterCommittedNeedsNoRecovery() throws Exception {
+        Recoverer recoverer = crashAt(Status.STATUS_COMMITTED, 0);
+        assertEquals(0, recoverer.getCommittedCount());
+        assertEquals(0, recoverer.getRolledbackCount());
+    }
+
+    @Test
+    public void testFailedPhase2CommitIsCommitted() throws Exception {
+        tm.begin();
+        MockXAResource[] xaResources = enlistBoth(XAResource.XA_OK, XAResource.XA_OK);
+        BitronixTransaction transaction = tm.getCurrentTransaction();
+        transaction.addTransactionStatusChangeListener((oldStatus, newStatus) -> {
+            if (newStatus == Status.STATUS_COMMITTING) {
+                leavePrepared(transaction, 2);
+            }
+        });
+        XAException commitException = new XAException("resource 2 commit failed with XAER_RMERR");
+        commitException.errorCode = XAException.XAER_RMERR;
+        xaResources[1].setCommitException(commitException);
+
+        tm.commit();
+        xaResources[1].setCommitException(null);
+
+        assertEquals(List.of(Status.STATUS_COMMITTING, Status.STATUS_COMMITTED), loggedStatuses());
+        Recoverer recoverer = restartAndRecover();
+        assertEquals(1, recoverer.getCommittedCount());
+        assertEquals(0, recoverer.getRolledbackCount());
+        assertEquals(0, xaResources[1].recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+    }
+
+    /**
+     * Run a two-phase transaction and crash the transaction manager when it reaches a status, leaving some of the
+     * resources prepared, then recover.
+     */
+    private Recoverer crashAt(int crashStatus, int preparedResourceCount) throws Exception {
+        tm.begin();
+        MockXAResource[] xaResources = enlistBoth(XAResource.XA_OK, XAResource.XA_OK);
+        BitronixTransaction transaction = tm.getCurrentTransaction();
+        transaction.addTransactionStatusChangeListener((oldStatus, newStatus) -> {
+            if (newStatus == crashStatus) {
+                leavePrepared(transaction, preparedResourceCount);
+                throw new IllegalStateException("crash");
+            }
+        });
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> tm.commit());
+        assertEquals("crash", ex.getMessage());
+
+        Recoverer recoverer = restartAndRecover();
+        for (MockXAResource xaResource : xaResources) {
+            assertEquals(0, xaResource.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN).length);
+        }
+        return recoverer;
+    }
+
+    private void leavePrepared(BitronixTransaction transaction, int count) {
+        List<XAResourceHolderState> resources = transaction.getResourceManager().getAllResources();
+        for (int i = 0; i < count; i++) {
+            XAResourceHolderState resource = resources.get(i);
+            ((MockXAResource) resource.getXAResource()).addInDoubtXid(resource.getXid());
+        }
+    }
+
+    private Recoverer restartAndRecover() throws Exception {
+        tm.shutdown();
+        TransactionManagerServices.getJournal().open();
+        Recoverer recoverer = TransactionManagerServices.getRecoverer();
+        recoverer.run();
+        return recoverer;
+    }
+
+    private MockXAResource[] enlistBoth(int prepareRc1, int prepareRc2) throws Exception {
+        MockXAResource xaResource1 = enlist(poolingDataSource1);
+        xaResource1.setPrepareRc(prepareRc1);
+        MockXAResource xaResource2 = enlist(poolingDataSource2);
+        xaResource2.setPrepareRc(prepareRc2);
+        return new MockXAResource[]{xaResource1, xaResource2};
+    }
+
+    private static MockXAResource enlist(PoolingDataSource poolingDataSource) throws Exception {
+        Connection connection = poolingDataSource.getConnection();
+        connection.createStatement();
+        XAConnection xaConnection = (XAConnection) AbstractMockJdbcTest.getWrappedXAConnectionOf(((PooledConnectionProxy) connection).getPooledConnection());
+        connection.close();
+        return (MockXAResource) xaConnection.getXAResource();
+    }
+
+    private static List<Integer> loggedStatuses() throws Exception {
+        List<JournalRecord> records = new ArrayList<>();
+        ((ReadableJournal) TransactionManagerServices.getJournal()).unsafeReadRecordsInto(records, false);
+        List<Integer> statuses = new ArrayList<>();
+        for (JournalRecord record : records) {
+            statuses.add(record.getStatus());
+        }
+        return statuses;
+    }
+
+    private static PoolingDataSource createPoolingDataSource(String uniqueName) {
+        PoolingDataSource poolingDataSource = new PoolingDataSource();
+        poolingDataSource.setClassName(MockitoXADataSource.class.getName());
+        poolingDataSource.setUniqueName(uniqueName);
+        poolingDataSource.setMinPoolSize(1);
+        poolingDataSource.setMaxPoolSize(1);
+        poolingDataSource.setAutomaticEnlistingEnabled(true);
+        poolingDataSource.init();
+        return poolingDataSource;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2006-2013 Bitronix Software (http://www.bitronix.be)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bitronix.tm.twopc.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadExecutorTest {
+
+    @Test
+    public void testJobsCountDownLatch() throws Exception {
+        AsyncExecutor executor = new AsyncExecutor();
+        try {
+            runJobs(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadExecutor() throws Exception {
+        assumeTrue(VirtualThreadExecutor.isSupported(), "virtual threads are not supported by this JVM");
+
+        VirtualThreadExecutor executor = new VirtualThreadExecutor();
+        try {
+            runJobs(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void runJobs(Executor executor) throws InterruptedException {
+        List<TestJob> jobs = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            TestJob job = new TestJob(i % 2 == 0);
+            job.setCompletionLatch(latch);
+            job.setFuture(executor.submit(job));
+            jobs.add(job);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (TestJob job : jobs) {
+            assertTrue(job.executed);
+            assertEquals(job.failing, job.getRuntimeException() != null);
+        }
+    }
+
+    private static class TestJob extends Job {
+        private final boolean failing;
+        private volatile boolean executed;
+
+        private TestJob(boolean failing) {
+            super(null);
+            this.failing = failing;
+        }
+
+        @Override
+        protected void execute() {
+            executed = true;
+            if (failing) {
+                runtimeException = new IllegalStateException("failing job");
+            }
+        }
+    }
+
+}
@@ -266,6 +266,48 @@ public class SchedulerTest {
         }
     }
 
+    @Test
+    public void testInFlightUpdates() {
+        Scheduler<XAResourceHolderState> resourceScheduler = new Scheduler<>();
+
+        XAResourceHolderState xarhs0 = new XAResourceHolderState(null, new MockResourceBean(0));
+        XAResourceHolderState xarhs1 = new XAResourceHolderState(null, new MockResourceBean(10));
+        XAResourceHolderState xarhs2 = new XAResourceHolderState(null, new MockResourceBean(10));
+        XAResourceHolderState xarhs3 = new XAResourceHolderState(null, new MockResourceBean(5));
+
+        resourceScheduler.add(xarhs0, xarhs0.getTwoPcOrderingPosition());
+        resourceScheduler.add(xarhs1, xarhs1.getTwoPcOrderingPosition());
+        Set<Integer> positions = resourceScheduler.getNaturalOrderPositions();
+        List<XAResourceHolderState> list10 = resourceScheduler.getByNaturalOrderForPosition(10);
+
+        // objects added to the current or to a following position while iterating are iterated
+        Iterator<XAResourceHolderState> it = resourceScheduler.reverseIterator();
+        assertSame(xarhs1, it.next());
+        resourceScheduler.add(xarhs2, xarhs2.getTwoPcOrderingPosition());
+        resourceScheduler.add(xarhs3, xarhs3.getTwoPcOrderingPosition());
+        assertSame(xarhs2, it.next());
+        assertTrue(it.hasNext());
+        it.remove();
+        assertSame(xarhs3, it.next());
+        assertSame(xarhs0, it.next());
+        assertFalse(it.hasNext());
+
+        // views are not affected by later updates
+        assertEquals(2, positions.size());
+        assertEquals(List.of(xarhs1), list10);
+        assertEquals(List.of(0, 5, 10), List.copyOf(resourceScheduler.getNaturalOrderPositions()));
+        assertEquals(List.of(10, 5, 0), List.copyOf(resourceScheduler.getReverseOrderPositions()));
+        assertNull(resourceScheduler.getByNaturalOrderForPosition(1));
+        assertEquals("a Scheduler with 3 object(s) in 3 position(s)", resourceScheduler.toString());
+
+        try {
+            list10.add(xarhs2);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
     private static int counter = 0;
     private static int incCounter() {
         return counter++;
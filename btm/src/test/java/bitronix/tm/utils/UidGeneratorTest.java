@@ -15,6 +15,7 @@
  */
 package bitronix.tm.utils;
 
+import bitronix.tm.TransactionManagerServices;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
@@ -116,4 +117,24 @@ public class UidGeneratorTest {
         assertEquals(Encoder.bytesToInt(sequence, 0), uid.extractSequence());
     }
 
+    @Test
+    public void testGeneratedUidLayout() throws Exception {
+        Uid uid = UidGenerator.generateUid();
+        byte[] serverId = TransactionManagerServices.getConfiguration().buildServerIdArray();
+
+        byte[] expected = new byte[serverId.length + 8 + 4];
+        System.arraycopy(serverId, 0, expected, 0, serverId.length);
+        System.arraycopy(Encoder.longToBytes(uid.extractTimestamp()), 0, expected, serverId.length, 8);
+        System.arraycopy(Encoder.intToBytes(uid.extractSequence()), 0, expected, serverId.length + 8, 4);
+        assertArrayEquals(expected, uid.getArray());
+
+        Uid copy = new Uid(uid.getArray());
+        assertEquals(uid, copy);
+        assertEquals(uid.hashCode(), copy.hashCode());
+        assertEquals(uid.toString(), copy.toString());
+        assertEquals(uid.extractTimestamp(), copy.extractTimestamp());
+        assertEquals(uid.extractSequence(), copy.extractSequence());
+        assertArrayEquals(serverId, copy.extractServerId());
+    }
+
 }